@@ -1,6 +1,7 @@
 plugins {
     java
     application
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "com.example"
@@ -33,6 +34,9 @@ dependencies {
     implementation("org.slf4j:slf4j-api:1.7.36")
     implementation("ch.qos.logback:logback-classic:1.2.11")
 
+    // Latency histograms
+    implementation("org.hdrhistogram:HdrHistogram:2.2.2")
+
     compileOnly("org.projectlombok:lombok:1.18.36")
     annotationProcessor("org.projectlombok:lombok:1.18.36")
     testCompileOnly("org.projectlombok:lombok:1.18.36")
@@ -42,6 +46,14 @@ dependencies {
 
 }
 
+// Benchmarks live in src/jmh/java, run them with ./gradlew jmh
+jmh {
+    jmhVersion.set("1.37")
+    profilers.add("gc") // Reports gc.alloc.rate.norm, the bytes allocated per operation
+    resultFormat.set("JSON")
+    resultsFile.set(layout.buildDirectory.file("results/jmh/results.json"))
+}
+
 tasks.withType<JavaCompile> {
     options.encoding = "UTF-8"
 }
@@ -51,8 +63,37 @@ tasks.named<JavaExec>("run") {
 }
 
 tasks.test {
-    useJUnitPlatform() // Use JUnit 5 platform for running tests
+    useJUnitPlatform { // Use JUnit 5 platform for running tests
+        excludeTags("allocation", "soak")
+    }
     testLogging {
         events("passed", "skipped", "failed") // Log test events
     }
 }
+
+// Allocation tests count bytes per packet, in a JVM where no other test has instrumented classes
+val allocationTest by tasks.registering(Test::class) {
+    description = "Runs the tests that assert the receive path does not allocate."
+    group = "verification"
+    testClassesDirs = sourceSets.test.get().output.classesDirs
+    classpath = sourceSets.test.get().runtimeClasspath
+    useJUnitPlatform {
+        includeTags("allocation")
+    }
+    shouldRunAfter(tasks.test)
+}
+
+tasks.check {
+    dependsOn(allocationTest)
+}
+
+// Soak tests measure wall-clock rates on real sockets, run them on an otherwise idle machine
+val soakTest by tasks.registering(Test::class) {
+    description = "Runs the short load soak, which needs an otherwise idle machine."
+    group = "verification"
+    testClassesDirs = sourceSets.test.get().output.classesDirs
+    classpath = sourceSets.test.get().runtimeClasspath
+    useJUnitPlatform {
+        includeTags("soak")
+    }
+}
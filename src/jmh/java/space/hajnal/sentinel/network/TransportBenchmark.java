@@ -0,0 +1,138 @@
+package space.hajnal.sentinel.network;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import space.hajnal.sentinel.camera.RTPClock;
+import space.hajnal.sentinel.network.inprocess.InProcessChannel;
+import space.hajnal.sentinel.network.inprocess.InProcessReceiver;
+import space.hajnal.sentinel.network.inprocess.InProcessTransmitter;
+import space.hajnal.sentinel.network.model.RTPPacket;
+import space.hajnal.sentinel.network.model.ServerOptions;
+import space.hajnal.sentinel.network.receiver.PacketReceiver;
+import space.hajnal.sentinel.network.receiver.RTPSocketReceiver;
+import space.hajnal.sentinel.network.sender.RTPSocketSender;
+import space.hajnal.sentinel.network.serialization.RTPPacketDeserializer;
+import space.hajnal.sentinel.network.serialization.RTPPacketSerializer;
+import space.hajnal.sentinel.network.shm.SharedMemoryReceiver;
+import space.hajnal.sentinel.network.shm.SharedMemoryRing;
+import space.hajnal.sentinel.network.shm.SharedMemoryTransmitter;
+import space.hajnal.sentinel.network.video.FrameProcessor;
+
+/**
+ * Time from handing an encoded frame to the sender until the receiver returned all of its packets,
+ * over loopback sockets, an {@link InProcessChannel} and a {@link SharedMemoryRing}. All go
+ * through the same sender and receiver contract, so the differences are the cost of the transport.
+ * The shared memory ring is mapped twice, as by two processes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransportBenchmark {
+
+  private static final int FPS = 30;
+  private static final int MTU = 1400;
+
+  @Param({"udp", "inprocess", "shm"})
+  private String transport;
+
+  @Param({"8000", "60000"})
+  private int frameSize;
+
+  private RTPSocketSender sender;
+  private PacketReceiver receiver;
+  private ExecutorService receiverThread;
+  private SharedMemoryRing ring;
+  private Path ringPath;
+  private byte[] frame;
+  private int packetsPerFrame;
+  private long frameNumber = 0;
+
+  @Setup
+  public void setUp() throws Exception {
+    RTPPacketSerializer serializer = new RTPPacketSerializer();
+    // The default one keeps every packet sent, for comparing them with the received ones
+    FrameProcessor frameProcessor = new FrameProcessor() {
+      @Override
+      public synchronized void addSentPacket(RTPPacket rtpPacket) {
+      }
+    };
+    if (transport.equals("inprocess")) {
+      InProcessChannel channel = new InProcessChannel();
+      sender = new RTPSocketSender(new InProcessTransmitter(channel),
+          ServerOptions.builder().mtu(MTU).build(), null, serializer, frameProcessor);
+      receiver = new InProcessReceiver(channel);
+      sender.open(null);
+    } else if (transport.equals("shm")) {
+      Path directory = Path.of("/dev/shm");
+      ringPath = Files.createTempFile(Files.isDirectory(directory) ? directory
+          : Path.of(System.getProperty("java.io.tmpdir")), "transport", ".ring");
+      ring = SharedMemoryRing.create(ringPath, 1024, MTU);
+      sender = new RTPSocketSender(new SharedMemoryTransmitter(ring, MTU),
+          ServerOptions.builder().mtu(MTU).build(), null, serializer, frameProcessor);
+      receiver = new SharedMemoryReceiver(SharedMemoryRing.open(ringPath),
+          new RTPPacketDeserializer());
+      sender.open(null);
+    } else {
+      DatagramSocket receiverSocket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+      receiverSocket.setReceiveBufferSize(4 << 20);
+      sender = new RTPSocketSender(ServerOptions.builder()
+          .serverAddress(InetAddress.getLoopbackAddress().getHostAddress())
+          .serverPort(receiverSocket.getLocalPort())
+          .mtu(MTU)
+          .build(), null, serializer, frameProcessor);
+      receiver = new RTPSocketReceiver(ServerOptions.builder().mtu(MTU + 100).build(),
+          new RTPPacketDeserializer(), 0);
+      receiverThread = Executors.newSingleThreadExecutor();
+      receiverThread.submit(() -> receiver.startReceiving(receiverSocket));
+      sender.open(new DatagramSocket());
+    }
+
+    frame = new byte[frameSize];
+    new SplittableRandom(42).nextBytes(frame);
+    packetsPerFrame = serializer.serialize(frame, MTU, 0, 0).size();
+  }
+
+  @Benchmark
+  public void sendAndReceive(Blackhole blackhole) throws InterruptedException {
+    sender.sendFrameData(frame, frameNumber++ * RTPClock.VIDEO_CLOCK_RATE / FPS);
+    for (int i = 0; i < packetsPerFrame; i++) {
+      blackhole.consume(receiver.retrievePacket());
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    sender.close();
+    receiver.close();
+    if (receiverThread != null) {
+      receiverThread.shutdownNow();
+    }
+    if (ring != null) {
+      ring.close();
+      Files.delete(ringPath);
+    }
+  }
+}
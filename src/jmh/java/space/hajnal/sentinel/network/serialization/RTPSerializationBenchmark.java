@@ -0,0 +1,94 @@
+package space.hajnal.sentinel.network.serialization;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import space.hajnal.sentinel.network.model.FrameMarking;
+import space.hajnal.sentinel.network.model.RTPPacket;
+
+/**
+ * Packetizing one encoded frame and parsing its datagrams back, as done once per frame on the send
+ * and receive paths. One operation is one whole frame.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RTPSerializationBenchmark {
+
+  private static final int SSRC = 123456;
+  private static final long TIMESTAMP = 90_000;
+
+  /**
+   * From a small P-frame to a large IDR frame, in bytes.
+   */
+  @Param({"5000", "50000", "500000"})
+  private int frameSize;
+
+  /**
+   * From the IPv4 minimum to jumbo frames.
+   */
+  @Param({"576", "1400", "1500", "9000"})
+  private int mtu;
+
+  private final RTPPacketSerializer serializer = new RTPPacketSerializer();
+  private final RTPPacketDeserializer deserializer = new RTPPacketDeserializer();
+  private final FrameMarking frameMarking = FrameMarking.builder().independent(true).build();
+  private byte[] frame;
+  private List<RTPPacket> packets;
+  private byte[][] datagrams;
+
+  @Setup
+  public void setUp() {
+    frame = new byte[frameSize];
+    new SplittableRandom(42).nextBytes(frame);
+    packets = serializer.serialize(frame, mtu, TIMESTAMP, SSRC, frameMarking);
+    datagrams = packets.stream().map(RTPPacket::toBytes).toArray(byte[][]::new);
+  }
+
+  @Benchmark
+  public List<RTPPacket> serialize() {
+    return serializer.serialize(frame, mtu, TIMESTAMP, SSRC);
+  }
+
+  @Benchmark
+  public List<RTPPacket> serializeWithFrameMarking() {
+    return serializer.serialize(frame, mtu, TIMESTAMP, SSRC, frameMarking);
+  }
+
+  /**
+   * The older packetizer, kept as a reference point.
+   */
+  @Benchmark
+  public List<RTPPacket> serialize2() {
+    return serializer.serialize2(frame, mtu, TIMESTAMP, SSRC);
+  }
+
+  @Benchmark
+  public void toBytes(Blackhole blackhole) {
+    for (RTPPacket packet : packets) {
+      blackhole.consume(packet.toBytes());
+    }
+  }
+
+  @Benchmark
+  public void deserialize(Blackhole blackhole) {
+    for (byte[] datagram : datagrams) {
+      blackhole.consume(deserializer.deserialize(datagram));
+    }
+  }
+}
@@ -0,0 +1,54 @@
+package space.hajnal.sentinel.network.video;
+
+import java.util.SortedMap;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import space.hajnal.sentinel.network.model.RTPPacket;
+import space.hajnal.sentinel.network.serialization.RTPPacketSerializer;
+
+/**
+ * Reassembling one frame from its packets, as done once per frame on the receive path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameProcessorBenchmark {
+
+  @Param({"5000", "50000", "500000"})
+  private int frameSize;
+
+  @Param({"576", "1400", "1500", "9000"})
+  private int mtu;
+
+  private final FrameProcessor frameProcessor = new FrameProcessor();
+  private SortedMap<Integer, RTPPacket> packets;
+
+  @Setup
+  public void setUp() {
+    byte[] frame = new byte[frameSize];
+    new SplittableRandom(42).nextBytes(frame);
+    packets = new TreeMap<>();
+    new RTPPacketSerializer().serialize(frame, mtu, 90_000, 123456)
+        .forEach(packet -> packets.put(packet.getSequenceNumber(), packet));
+  }
+
+  @Benchmark
+  public byte[] reassembleFrame() {
+    return frameProcessor.reassembleFrame(packets);
+  }
+}
@@ -0,0 +1,116 @@
+package space.hajnal.sentinel.network.video.simulation;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import space.hajnal.sentinel.camera.RTPClock;
+import space.hajnal.sentinel.network.model.ServerOptions;
+import space.hajnal.sentinel.network.sender.RTPSocketSender;
+import space.hajnal.sentinel.network.serialization.RTPPacketDeserializer;
+import space.hajnal.sentinel.network.serialization.RTPPacketSerializer;
+import space.hajnal.sentinel.network.video.FrameProcessor;
+
+/**
+ * Time from sending a frame until all of its packets reached the receiving socket, over real
+ * loopback sockets through an {@link ImpairmentProxy}. A frame that is not complete within a second
+ * counts as lost.
+ * <p>
+ * Assembly is left out on purpose: the processor plays frames out on its own clock, which would
+ * hide what the network does to them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImpairedLoopbackBenchmark {
+
+  private static final int FPS = 30;
+  private static final int MTU = 1400;
+
+  @Param({"0", "20"})
+  private long jitterMillis;
+
+  @Param({"0", "0.05"})
+  private double reorderRate;
+
+  @Param({"8000", "60000"})
+  private int frameSize;
+
+  private final RTPPacketDeserializer deserializer = new RTPPacketDeserializer();
+  private final DatagramPacket datagram = new DatagramPacket(new byte[MTU + 100], MTU + 100);
+  private DatagramSocket receiver;
+  private ImpairmentProxy proxy;
+  private RTPSocketSender sender;
+  private byte[] frame;
+  private int packetsPerFrame;
+  private long frameNumber = 0;
+
+  @Setup
+  public void setUp() throws Exception {
+    receiver = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+    receiver.setReceiveBufferSize(1 << 20);
+    receiver.setSoTimeout(1000);
+    proxy = new ImpairmentProxy(NetworkImpairment.builder().jitterMillis(jitterMillis)
+        .reorderRate(reorderRate).reorderDepth(3).build(),
+        (InetSocketAddress) receiver.getLocalSocketAddress()).start();
+
+    RTPPacketSerializer serializer = new RTPPacketSerializer();
+    sender = new RTPSocketSender(ServerOptions.builder()
+        .serverAddress(proxy.getLocalAddress().getHostString())
+        .serverPort(proxy.getLocalAddress().getPort())
+        .mtu(MTU)
+        .build(), null, serializer, new FrameProcessor());
+    sender.open(new DatagramSocket());
+
+    frame = new byte[frameSize];
+    new SplittableRandom(42).nextBytes(frame);
+    packetsPerFrame = serializer.serialize(frame, MTU, 0, 0).size();
+  }
+
+  @Benchmark
+  public boolean sendAndReceive() throws IOException {
+    long timestamp = frameNumber++ * RTPClock.VIDEO_CLOCK_RATE / FPS;
+    sender.sendFrameData(frame, timestamp);
+    int received = 0;
+    while (received < packetsPerFrame) {
+      datagram.setLength(datagram.getData().length);
+      try {
+        receiver.receive(datagram);
+      } catch (SocketTimeoutException e) {
+        return false;
+      }
+      // Stragglers of a frame that timed out do not count
+      if (deserializer.deserialize(datagram.getData(), datagram.getLength()).getTimestamp()
+          == timestamp) {
+        received++;
+      }
+    }
+    return true;
+  }
+
+  @TearDown
+  public void tearDown() {
+    sender.close();
+    proxy.close();
+    receiver.close();
+  }
+}
@@ -0,0 +1,105 @@
+package space.hajnal.sentinel.recording;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import space.hajnal.sentinel.camera.RTPClock;
+import space.hajnal.sentinel.codec.EncodedFrameCache;
+import space.hajnal.sentinel.codec.NalUnits;
+import space.hajnal.sentinel.network.model.FrameMarking;
+import space.hajnal.sentinel.network.model.RTPPacket;
+import space.hajnal.sentinel.network.serialization.RTPPacketSerializer;
+
+/**
+ * Recording 50 streams to one disk at once, each with a recorder of its own, as on a receiver
+ * keeping evidence of all its cameras. One operation is one frame of one stream, so real time
+ * needs 1500 operations per second at 30 fps. The GOP is that of a 2 Mbit/s stream.
+ * <p>
+ * Set {@code directory} to a path on the disk under test, the default is the temporary
+ * directory. The segments are deleted after every iteration.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(50)
+@Fork(1)
+public class RecorderBenchmark {
+
+  private static final int MTU = 1400;
+  private static final int FPS = 30;
+  private static final AtomicInteger streams = new AtomicInteger();
+
+  @Param({""})
+  private String directory;
+
+  private final int stream = streams.incrementAndGet();
+  private List<List<RTPPacket>> gop;
+  private Path recordings;
+  private StreamRecorder recorder;
+  private int frame = 0;
+
+  @Setup(Level.Trial)
+  public void setUpStream() {
+    // About 2 Mbit/s at 30 fps with a keyframe 8 times the size of a P-frame
+    EncodedFrameCache cache = EncodedFrameCache.synthetic(FPS, 38_000, 4_800, stream);
+    RTPPacketSerializer serializer = new RTPPacketSerializer();
+    gop = new ArrayList<>();
+    for (int i = 0; i < cache.size(); i++) {
+      byte[] accessUnit = cache.get(i);
+      gop.add(serializer.serialize(accessUnit, MTU, (long) i * RTPClock.VIDEO_CLOCK_RATE / FPS,
+          stream, FrameMarking.builder().independent(NalUnits.isKeyframe(accessUnit)).build()));
+    }
+    Path base = directory.isEmpty() ? Path.of(System.getProperty("java.io.tmpdir"))
+        : Path.of(directory);
+    recordings = base.resolve("sentinel-recorder-benchmark").resolve("stream-" + stream);
+  }
+
+  @Setup(Level.Iteration)
+  public void setUp() {
+    recorder = new StreamRecorder(RecorderOptions.builder()
+        .directory(recordings)
+        .stream("stream-" + stream)
+        .maxSegmentBytes(64L * 1024 * 1024)
+        .build());
+  }
+
+  @Benchmark
+  public void recordFrame() {
+    List<RTPPacket> packets = gop.get(frame++ % gop.size());
+    for (int i = 0; i < packets.size(); i++) {
+      recorder.record(packets.get(i));
+    }
+  }
+
+  @TearDown(Level.Iteration)
+  public void tearDown() throws IOException {
+    recorder.close();
+    try (Stream<Path> files = Files.walk(recordings)) {
+      for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(path);
+      }
+    }
+  }
+}
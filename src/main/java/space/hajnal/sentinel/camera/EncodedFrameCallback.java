@@ -0,0 +1,6 @@
+package space.hajnal.sentinel.camera;
+
+public interface EncodedFrameCallback {
+
+  void onFrameEncoded(byte[] accessUnit, long timestamp);
+}
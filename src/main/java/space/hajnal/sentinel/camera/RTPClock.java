@@ -0,0 +1,67 @@
+package space.hajnal.sentinel.camera;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongSupplier;
+import lombok.Getter;
+
+/**
+ * Derives RTP media timestamps from the monotonic {@link System#nanoTime()} clock.
+ * <p>
+ * The timestamp starts at a random offset (RFC 3550, section 5.1) and wraps around at 32 bits, so
+ * it always reflects the real capture instant instead of an assumed frame interval.
+ */
+public class RTPClock {
+
+  public static final int VIDEO_CLOCK_RATE = 90_000;
+  private static final long NANOS_PER_SECOND = 1_000_000_000L;
+  private static final long TIMESTAMP_MASK = 0xFFFFFFFFL;
+
+  @Getter
+  private final int clockRate;
+  private final long initialOffset;
+  private final LongSupplier nanoTime;
+  private final long originNanos;
+
+  public RTPClock() {
+    this(VIDEO_CLOCK_RATE, ThreadLocalRandom.current().nextLong(TIMESTAMP_MASK + 1),
+        System::nanoTime);
+  }
+
+  public RTPClock(int clockRate, long initialOffset, LongSupplier nanoTime) {
+    if (clockRate <= 0) {
+      throw new IllegalArgumentException("Clock rate must be positive");
+    }
+    this.clockRate = clockRate;
+    this.initialOffset = initialOffset & TIMESTAMP_MASK;
+    this.nanoTime = nanoTime;
+    this.originNanos = nanoTime.getAsLong();
+  }
+
+  /**
+   * @return the current monotonic time in nanoseconds, from the same source used for timestamps
+   */
+  public long nanoTime() {
+    return nanoTime.getAsLong();
+  }
+
+  /**
+   * @return the RTP timestamp of the current instant
+   */
+  public long timestamp() {
+    return toTimestamp(nanoTime.getAsLong());
+  }
+
+  /**
+   * Converts a {@link #nanoTime()} reading into an RTP timestamp.
+   *
+   * @param nanos The monotonic time of the capture
+   * @return The unsigned 32-bit RTP timestamp
+   */
+  public long toTimestamp(long nanos) {
+    long elapsed = nanos - originNanos;
+    // Split into whole seconds and remainder so the multiplication cannot overflow on long runs
+    long ticks = (elapsed / NANOS_PER_SECOND) * clockRate
+                 + (elapsed % NANOS_PER_SECOND) * clockRate / NANOS_PER_SECOND;
+    return (initialOffset + ticks) & TIMESTAMP_MASK;
+  }
+}
@@ -3,10 +3,10 @@ package space.hajnal.sentinel.camera;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
 import lombok.extern.slf4j.Slf4j;
 import org.bytedeco.javacv.Frame;
 import org.bytedeco.javacv.FrameGrabber;
+import space.hajnal.sentinel.jfr.FrameCapturedEvent;
 
 @Slf4j
 public class SentinelFrameGrabber implements AutoCloseable {
@@ -14,7 +14,8 @@ public class SentinelFrameGrabber implements AutoCloseable {
   private final SentinelFrameGrabberOptions options;
   private final ScheduledExecutorService scheduler;
   private final FrameGrabberFactory frameGrabberFactory;
-  private boolean running = false;
+  private final RTPClock clock;
+  private volatile boolean running = false;
   private FrameGrabber grabber;
 
   public SentinelFrameGrabber(SentinelFrameGrabberOptions options,
@@ -22,14 +23,22 @@ public class SentinelFrameGrabber implements AutoCloseable {
     this.options = options;
     this.frameGrabberFactory = frameGrabberFactory;
     this.scheduler = Executors.newSingleThreadScheduledExecutor();
+    this.clock = new RTPClock();
   }
 
   public SentinelFrameGrabber(ScheduledExecutorService scheduler,
       SentinelFrameGrabberOptions options,
       FrameGrabberFactory frameGrabberFactory) {
+    this(scheduler, options, frameGrabberFactory, new RTPClock());
+  }
+
+  public SentinelFrameGrabber(ScheduledExecutorService scheduler,
+      SentinelFrameGrabberOptions options,
+      FrameGrabberFactory frameGrabberFactory, RTPClock clock) {
     this.options = options;
     this.scheduler = scheduler;
     this.frameGrabberFactory = frameGrabberFactory;
+    this.clock = clock;
   }
 
   public void capture(FrameGrabberCallback fn) throws Exception {
@@ -48,28 +57,11 @@ public class SentinelFrameGrabber implements AutoCloseable {
       grabber.setFrameRate(options.getFrameRate());
       grabber.start();
       log.info("Frame grabber started");
-      long frameDurationMillis = 1000 / options.getFrameRate();
-      AtomicLong timestamp = new AtomicLong(0);
 
       // CanvasFrame canvas = createCanvas("Source");
 
-      scheduler.scheduleAtFixedRate(() -> {
-        if (!running) {
-          return;
-        }
-
-        try {
-          Frame frame = grabber.grab();
-          if (frame == null) {
-            log.info("No more frames to grab.");
-          } else {
-            //canvas.showImage(frame);
-            fn.onFrameGrabbed(frame, timestamp.addAndGet(90000 / options.getFrameRate()));
-          }
-        } catch (Exception e) {
-          log.error("Error while capturing frames", e);
-        }
-      }, 200, frameDurationMillis, TimeUnit.MILLISECONDS);
+      // The camera paces the loop: grab() blocks until the next frame has been exposed
+      scheduler.execute(() -> captureLoop(fn));
 
     } catch (
         Exception e) {
@@ -78,6 +70,51 @@ public class SentinelFrameGrabber implements AutoCloseable {
     }
   }
 
+  private void captureLoop(FrameGrabberCallback fn) {
+    long frameNumber = 0;
+    while (running) {
+      try {
+        FrameCapturedEvent event = new FrameCapturedEvent();
+        event.begin();
+        Frame frame = grabber.grab();
+        long captureNanos = clock.nanoTime();
+        event.end();
+        if (frame == null) {
+          log.info("No more frames to grab.");
+          break;
+        }
+        long timestamp = clock.toTimestamp(captureNanos);
+        if (event.shouldCommit()) {
+          event.timestamp = timestamp;
+          event.width = frame.imageWidth;
+          event.height = frame.imageHeight;
+          event.frameNumber = frameNumber;
+          event.commit();
+        }
+        frameNumber++;
+        //canvas.showImage(frame);
+        fn.onFrameGrabbed(frame, timestamp);
+      } catch (Exception e) {
+        if (!running) {
+          break;
+        }
+        log.error("Error while capturing frames", e);
+        backOff();
+      }
+    }
+    log.info("Capture loop stopped");
+  }
+
+  // Avoid spinning on a camera that keeps failing
+  private void backOff() {
+    try {
+      TimeUnit.MILLISECONDS.sleep(1000 / Math.max(1, options.getFrameRate()));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      running = false;
+    }
+  }
+
   @Override
   public void close() throws Exception {
     running = false;
@@ -14,6 +14,7 @@ import org.bytedeco.javacv.Frame;
 import org.bytedeco.javacv.OpenCVFrameConverter;
 import org.bytedeco.opencv.global.opencv_imgcodecs;
 import org.bytedeco.opencv.opencv_core.Mat;
+import space.hajnal.sentinel.codec.EncodedFrameCache;
 
 @Slf4j
 public class SentinelFrameGrabberStatic extends SentinelFrameGrabber implements AutoCloseable {
@@ -22,13 +23,16 @@ public class SentinelFrameGrabberStatic extends SentinelFrameGrabber implements
   private final SentinelFrameGrabberOptions options;
   private boolean running = false;
   private final ScheduledExecutorService scheduler;
+  private final RTPClock clock = new RTPClock();
+  private final EncodedFrameCache encodedFrameCache;
   private Frame testFrame;  // Store the test frame to send repeatedly
 
   public SentinelFrameGrabberStatic(SentinelFrameGrabberOptions options) {
     super(options, new FrameGrabberFactory());
     this.options = options;
     this.scheduler = Executors.newSingleThreadScheduledExecutor();
-    loadTestImage(SRC_TEST_RESOURCES_TEST_FULL_HD_JPG);  // Load test image at startup
+    this.encodedFrameCache = null;
+    testFrame = loadTestImage(SRC_TEST_RESOURCES_TEST_FULL_HD_JPG);  // Load test image at startup
   }
 
   public SentinelFrameGrabberStatic(ScheduledExecutorService scheduler,
@@ -36,19 +40,38 @@ public class SentinelFrameGrabberStatic extends SentinelFrameGrabber implements
     super(scheduler, options, new FrameGrabberFactory());
     this.options = options;
     this.scheduler = scheduler;
-    loadTestImage(SRC_TEST_RESOURCES_TEST_FULL_HD_JPG);
+    this.encodedFrameCache = null;
+    testFrame = loadTestImage(SRC_TEST_RESOURCES_TEST_FULL_HD_JPG);
+  }
+
+  /**
+   * Creates a headless source that replays pre-encoded access units instead of encoding the test
+   * image on every tick. The cache can be shared, so one scheduler and one cache can drive many
+   * simulated cameras.
+   *
+   * @param scheduler         The scheduler pacing the replay
+   * @param options           The frame rate to replay at
+   * @param encodedFrameCache The cached GOP, see {@link EncodedFrameCache#encode}
+   */
+  public SentinelFrameGrabberStatic(ScheduledExecutorService scheduler,
+      SentinelFrameGrabberOptions options, EncodedFrameCache encodedFrameCache) {
+    super(scheduler, options, new FrameGrabberFactory());
+    this.options = options;
+    this.scheduler = scheduler;
+    this.encodedFrameCache = encodedFrameCache;
   }
 
   // Load the test image and convert it to a Frame
-  private void loadTestImage(String imagePath) {
+  public static Frame loadTestImage(String imagePath) {
     Mat image = opencv_imgcodecs.imread(imagePath);  // Load the image using OpenCV
     if (image.empty()) {
       log.error("Failed to load test image from {}", imagePath);
       throw new RuntimeException("Test image could not be loaded.");
     }
     OpenCVFrameConverter.ToMat converter = new OpenCVFrameConverter.ToMat();
-    testFrame = converter.convert(image);  // Convert the Mat to a JavaCV Frame
+    Frame frame = converter.convert(image);  // Convert the Mat to a JavaCV Frame
     log.info("Test image loaded successfully.");
+    return frame;
   }
 
   @SneakyThrows
@@ -57,11 +80,13 @@ public class SentinelFrameGrabberStatic extends SentinelFrameGrabber implements
     if (fn == null) {
       throw new IllegalArgumentException("Function cannot be null");
     }
+    if (isPreEncoded()) {
+      throw new IllegalStateException("Cached source delivers encoded frames, use replay()");
+    }
 
     try {
       running = true;
-      long frameDurationMillis = 1000 / options.getFrameRate();
-      AtomicLong timestamp = new AtomicLong(0);
+      long frameDurationNanos = TimeUnit.SECONDS.toNanos(1) / options.getFrameRate();
 
       CanvasFrame canvas = createCanvas("Test Image Source");
 
@@ -76,11 +101,11 @@ public class SentinelFrameGrabberStatic extends SentinelFrameGrabber implements
             return;
           }
           canvas.showImage(testFrame);  // Show the test image on CanvasFrame
-          fn.onFrameGrabbed(testFrame, timestamp.addAndGet(90000 / options.getFrameRate()));  // Simulate RTP timestamp
+          fn.onFrameGrabbed(testFrame, clock.timestamp());
         } catch (Exception e) {
           log.error("Error while sending test frame", e);
         }
-      }, 100, frameDurationMillis, TimeUnit.MILLISECONDS);
+      }, TimeUnit.MILLISECONDS.toNanos(100), frameDurationNanos, TimeUnit.NANOSECONDS);
 
     } catch (Exception e) {
       log.error("Error during test frame broadcasting", e);
@@ -88,6 +113,42 @@ public class SentinelFrameGrabberStatic extends SentinelFrameGrabber implements
     }
   }
 
+  /**
+   * @return true if this source delivers encoded access units through
+   * {@link #replay(EncodedFrameCallback)} instead of raw frames
+   */
+  public boolean isPreEncoded() {
+    return encodedFrameCache != null;
+  }
+
+  /**
+   * Replays the cached access units at the configured frame rate with fresh timestamps.
+   */
+  public void replay(EncodedFrameCallback fn) {
+    if (fn == null) {
+      throw new IllegalArgumentException("Function cannot be null");
+    }
+    if (!isPreEncoded()) {
+      throw new IllegalStateException("No encoded frame cache, use capture()");
+    }
+
+    running = true;
+    long frameDurationNanos = TimeUnit.SECONDS.toNanos(1) / options.getFrameRate();
+    AtomicLong frameIndex = new AtomicLong(0);
+
+    scheduler.scheduleAtFixedRate(() -> {
+      if (!running) {
+        return;
+      }
+
+      try {
+        fn.onFrameEncoded(encodedFrameCache.get(frameIndex.getAndIncrement()), clock.timestamp());
+      } catch (Exception e) {
+        log.error("Error while replaying cached frame", e);
+      }
+    }, 0, frameDurationNanos, TimeUnit.NANOSECONDS);
+  }
+
   @Override
   public void close() throws Exception {
     running = false;
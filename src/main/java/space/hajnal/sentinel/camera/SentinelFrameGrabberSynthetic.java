@@ -0,0 +1,212 @@
+package space.hajnal.sentinel.camera;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+import org.bytedeco.javacv.Frame;
+
+/**
+ * A headless source of procedurally generated moving test patterns.
+ * <p>
+ * Unlike {@link SentinelFrameGrabberStatic} every frame differs from the previous one, so the
+ * encoder has real work to do. Each pattern is drawn with bulk row copies from precomputed
+ * templates into a single reused frame, which keeps 4K at 60 fps within a few milliseconds per
+ * frame. Like a camera grabber, the frame passed to the callback is overwritten by the next tick.
+ */
+@Slf4j
+public class SentinelFrameGrabberSynthetic extends SentinelFrameGrabber implements AutoCloseable {
+
+  public enum Pattern {
+    /**
+     * A diagonal color gradient scrolling to the right.
+     */
+    GRADIENT,
+    /**
+     * Full-frame noise, the worst case for the encoder.
+     */
+    NOISE,
+    /**
+     * Solid blocks moving over a flat background.
+     */
+    BLOCKS,
+    /**
+     * Scrolling gradient with moving blocks and a noise band.
+     */
+    MIXED
+  }
+
+  private static final int CHANNELS = 3;
+  private static final int BLOCK_COUNT = 8;
+  private static final int SCROLL_PIXELS_PER_FRAME = 4;
+
+  private final SentinelFrameGrabberOptions options;
+  private final ScheduledExecutorService scheduler;
+  private final Pattern pattern;
+  private final RTPClock clock = new RTPClock();
+  private final SplittableRandom random = new SplittableRandom(42);
+  private final int rowBytes;
+  private final byte[] gradientRow;
+  private final byte[] noise;
+  private final byte[][] blockRows;
+  private final byte[] background;
+  private Frame frame;
+  private volatile boolean running = false;
+
+  public SentinelFrameGrabberSynthetic(SentinelFrameGrabberOptions options, Pattern pattern) {
+    this(Executors.newSingleThreadScheduledExecutor(), options, pattern);
+  }
+
+  public SentinelFrameGrabberSynthetic(ScheduledExecutorService scheduler,
+      SentinelFrameGrabberOptions options, Pattern pattern) {
+    super(scheduler, options, new FrameGrabberFactory());
+    this.options = options;
+    this.scheduler = scheduler;
+    this.pattern = pattern;
+    this.rowBytes = options.getImageWidth() * CHANNELS;
+    this.gradientRow = createGradientRow(options.getImageWidth());
+    this.noise = createNoise(rowBytes);
+    this.blockRows = createBlockRows(options.getImageWidth() / BLOCK_COUNT);
+    this.background = new byte[rowBytes];
+    Arrays.fill(background, (byte) 0x40);
+  }
+
+  @Override
+  public void capture(FrameGrabberCallback fn) {
+    if (fn == null) {
+      throw new IllegalArgumentException("Function cannot be null");
+    }
+
+    running = true;
+    frame = new Frame(options.getImageWidth(), options.getImageHeight(), Frame.DEPTH_UBYTE,
+        CHANNELS);
+    long frameDurationNanos = TimeUnit.SECONDS.toNanos(1) / options.getFrameRate();
+    AtomicLong frameIndex = new AtomicLong(0);
+    log.info("Synthetic {} source started at {}x{}@{}", pattern, options.getImageWidth(),
+        options.getImageHeight(), options.getFrameRate());
+
+    scheduler.scheduleAtFixedRate(() -> {
+      if (!running) {
+        return;
+      }
+
+      try {
+        render(frame, frameIndex.getAndIncrement());
+        fn.onFrameGrabbed(frame, clock.timestamp());
+      } catch (Exception e) {
+        log.error("Error while generating synthetic frame", e);
+      }
+    }, 0, frameDurationNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Draws the pattern for the given frame number into the frame.
+   */
+  void render(Frame target, long frameIndex) {
+    ByteBuffer pixels = (ByteBuffer) target.image[0];
+    int stride = target.imageStride;
+    int height = target.imageHeight;
+
+    switch (pattern) {
+      case GRADIENT -> drawGradient(pixels, stride, 0, height, frameIndex);
+      case NOISE -> drawNoise(pixels, stride, 0, height);
+      case BLOCKS -> {
+        drawBackground(pixels, stride, height);
+        drawBlocks(pixels, stride, height, frameIndex);
+      }
+      case MIXED -> {
+        drawGradient(pixels, stride, 0, height, frameIndex);
+        drawNoise(pixels, stride, height - height / 8, height);
+        drawBlocks(pixels, stride, height - height / 8, frameIndex);
+      }
+    }
+  }
+
+  private void drawGradient(ByteBuffer pixels, int stride, int fromRow, int toRow,
+      long frameIndex) {
+    int width = options.getImageWidth();
+    long scroll = frameIndex * SCROLL_PIXELS_PER_FRAME;
+    for (int y = fromRow; y < toRow; y++) {
+      // Shift every row a little further for a diagonal that moves across the frame
+      int offset = (int) ((scroll + y / 2) % width) * CHANNELS;
+      pixels.put(y * stride, gradientRow, offset, rowBytes);
+    }
+  }
+
+  private void drawNoise(ByteBuffer pixels, int stride, int fromRow, int toRow) {
+    int window = noise.length - rowBytes;
+    for (int y = fromRow; y < toRow; y++) {
+      pixels.put(y * stride, noise, random.nextInt(window), rowBytes);
+    }
+  }
+
+  private void drawBackground(ByteBuffer pixels, int stride, int height) {
+    for (int y = 0; y < height; y++) {
+      pixels.put(y * stride, background, 0, rowBytes);
+    }
+  }
+
+  private void drawBlocks(ByteBuffer pixels, int stride, int height, long frameIndex) {
+    int width = options.getImageWidth();
+    int blockWidth = width / BLOCK_COUNT;
+    int blockHeight = Math.max(1, height / BLOCK_COUNT);
+    int travel = Math.max(1, width - blockWidth);
+    for (int block = 0; block < BLOCK_COUNT; block++) {
+      // Each block bounces back and forth at its own speed
+      long distance = frameIndex * (block + 1) * SCROLL_PIXELS_PER_FRAME;
+      int position = (int) (distance % (2L * travel));
+      int x = position < travel ? position : 2 * travel - position;
+      int top = block * blockHeight;
+      int bottom = Math.min(height, top + blockHeight);
+      for (int y = top; y < bottom; y++) {
+        pixels.put(y * stride + x * CHANNELS, blockRows[block], 0, blockRows[block].length);
+      }
+    }
+  }
+
+  // Two periods wide, so any scroll offset can copy a whole row in one call
+  private static byte[] createGradientRow(int width) {
+    byte[] row = new byte[2 * width * CHANNELS];
+    for (int x = 0; x < 2 * width; x++) {
+      int phase = (x % width) * 256 / width;
+      row[x * CHANNELS] = (byte) phase;
+      row[x * CHANNELS + 1] = (byte) (255 - phase);
+      row[x * CHANNELS + 2] = (byte) (phase * 2);
+    }
+    return row;
+  }
+
+  private static byte[] createNoise(int rowBytes) {
+    byte[] noise = new byte[rowBytes + 64 * 1024];
+    new SplittableRandom(7).nextBytes(noise);
+    return noise;
+  }
+
+  private static byte[][] createBlockRows(int blockWidth) {
+    byte[][] rows = new byte[BLOCK_COUNT][blockWidth * CHANNELS];
+    for (int block = 0; block < BLOCK_COUNT; block++) {
+      int hue = block * 255 / BLOCK_COUNT;
+      for (int x = 0; x < blockWidth; x++) {
+        rows[block][x * CHANNELS] = (byte) hue;
+        rows[block][x * CHANNELS + 1] = (byte) (hue * 3);
+        rows[block][x * CHANNELS + 2] = (byte) (255 - hue);
+      }
+    }
+    return rows;
+  }
+
+  @Override
+  public void close() throws Exception {
+    running = false;
+    scheduler.shutdown();
+  }
+
+  @Override
+  boolean isRunning() {
+    return running;
+  }
+}
@@ -0,0 +1,13 @@
+package space.hajnal.sentinel.camera.model;
+
+import lombok.Builder;
+import lombok.Data;
+import space.hajnal.sentinel.camera.pool.PooledFrame;
+
+@Builder
+@Data
+public class CapturedFrame {
+
+  private final PooledFrame frame;
+  private final long timestamp;
+}
@@ -9,4 +9,8 @@ public class SentinelFrame {
 
   private final byte[] data;
   private final long timestamp;
+  /**
+   * The simulcast layer the frame was encoded for, 0 without simulcast.
+   */
+  private final int layer;
 }
@@ -0,0 +1,177 @@
+package space.hajnal.sentinel.camera.pool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.bytedeco.javacv.Frame;
+
+/**
+ * A fixed set of image buffers shared by the capture, encode and display stages.
+ * <p>
+ * The buffers are allocated once, on the first frame, with that frame's geometry. Afterwards
+ * grabbed frames are copied into a free buffer instead of cloning them, so the steady state does
+ * not allocate Java or native image memory. When every buffer is in use {@link #acquire(Frame)}
+ * returns null and the caller drops the frame.
+ */
+@Slf4j
+public class FramePool implements AutoCloseable {
+
+  @Getter
+  private final int size;
+  private final boolean trackLeaks;
+  private final BlockingQueue<PooledFrame> free;
+  private final List<PooledFrame> all;
+  private final AtomicInteger inUse = new AtomicInteger();
+  private final AtomicInteger peakInUse = new AtomicInteger();
+  private final LongAdder acquired = new LongAdder();
+  private final LongAdder exhausted = new LongAdder();
+  private volatile boolean allocated = false;
+  private volatile boolean closed = false;
+
+  public FramePool(int size) {
+    this(size, false);
+  }
+
+  /**
+   * @param size       The number of buffers
+   * @param trackLeaks Record the acquiring stack trace of every loan, for tests
+   */
+  public FramePool(int size, boolean trackLeaks) {
+    if (size <= 0) {
+      throw new IllegalArgumentException("Pool size must be positive");
+    }
+    this.size = size;
+    this.trackLeaks = trackLeaks;
+    this.free = new ArrayBlockingQueue<>(size);
+    this.all = new ArrayList<>(size);
+  }
+
+  /**
+   * Takes a free buffer and fills it with a copy of the source frame.
+   *
+   * @param source The grabbed frame, which the grabber may reuse afterwards
+   * @return The pooled copy with a reference count of one, or null if the pool is exhausted
+   */
+  public PooledFrame acquire(Frame source) {
+    if (closed) {
+      throw new IllegalStateException("Frame pool is closed");
+    }
+    if (!allocated) {
+      allocate(source);
+    }
+
+    PooledFrame pooledFrame = free.poll();
+    if (pooledFrame == null) {
+      exhausted.increment();
+      return null;
+    }
+    pooledFrame.onAcquire(trackLeaks);
+    acquired.increment();
+    peakInUse.accumulateAndGet(inUse.incrementAndGet(), Math::max);
+
+    try {
+      pooledFrame.copyFrom(source);
+    } catch (RuntimeException e) {
+      pooledFrame.release();
+      throw e;
+    }
+    return pooledFrame;
+  }
+
+  private synchronized void allocate(Frame source) {
+    if (allocated) {
+      return;
+    }
+    for (int i = 0; i < size; i++) {
+      PooledFrame pooledFrame = new PooledFrame(this, new Frame(source.imageWidth,
+          source.imageHeight, source.imageDepth, source.imageChannels));
+      all.add(pooledFrame);
+      free.add(pooledFrame);
+    }
+    allocated = true;
+    log.info("Frame pool allocated {} buffers of {}x{}x{}", size, source.imageWidth,
+        source.imageHeight, source.imageChannels);
+  }
+
+  void giveBack(PooledFrame pooledFrame) {
+    inUse.decrementAndGet();
+    if (closed) {
+      pooledFrame.getFrame().close();
+      return;
+    }
+    free.add(pooledFrame);
+    if (closed) {
+      // close() ran between the check and the add and may have drained the queue before it
+      freeBuffers();
+    }
+  }
+
+  private void freeBuffers() {
+    PooledFrame pooledFrame;
+    while ((pooledFrame = free.poll()) != null) {
+      pooledFrame.getFrame().close();
+    }
+  }
+
+  public int getInUse() {
+    return inUse.get();
+  }
+
+  public int getPeakInUse() {
+    return peakInUse.get();
+  }
+
+  public long getAcquired() {
+    return acquired.sum();
+  }
+
+  /**
+   * @return How often a frame was dropped because every buffer was in use
+   */
+  public long getExhausted() {
+    return exhausted.sum();
+  }
+
+  /**
+   * @return The fraction of buffers currently on loan
+   */
+  public double getUtilisation() {
+    return (double) inUse.get() / size;
+  }
+
+  /**
+   * @return The acquiring stack traces of all frames that are still on loan, empty unless leak
+   * tracking is enabled
+   */
+  public synchronized List<Throwable> getLeaks() {
+    return all.stream()
+        .filter(f -> f.getRefCount() > 0)
+        .map(PooledFrame::getAcquiredAt)
+        .filter(Objects::nonNull)
+        .toList();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("FramePool[size=%d, inUse=%d, peak=%d, acquired=%d, exhausted=%d]", size,
+        getInUse(), getPeakInUse(), getAcquired(), getExhausted());
+  }
+
+  /**
+   * Frees the buffers that are not on loan; outstanding ones are freed when they are released.
+   */
+  @Override
+  public synchronized void close() {
+    closed = true;
+    freeBuffers();
+    if (inUse.get() > 0) {
+      log.warn("Frame pool closed with {} frames still in use", inUse.get());
+    }
+  }
+}
@@ -0,0 +1,96 @@
+package space.hajnal.sentinel.camera.pool;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.Getter;
+import org.bytedeco.javacv.Frame;
+
+/**
+ * A pre-allocated image buffer on loan from a {@link FramePool}.
+ * <p>
+ * Every stage that keeps the frame beyond its own call must {@link #retain()} it, and every holder
+ * must {@link #release()} it exactly once. The buffer returns to the pool when the last reference
+ * is released.
+ */
+public class PooledFrame {
+
+  private final FramePool pool;
+  @Getter
+  private final Frame frame;
+  private final AtomicInteger refCount = new AtomicInteger();
+  private volatile Throwable acquiredAt;
+
+  PooledFrame(FramePool pool, Frame frame) {
+    this.pool = pool;
+    this.frame = frame;
+  }
+
+  void onAcquire(boolean trackLeaks) {
+    refCount.set(1);
+    acquiredAt = trackLeaks ? new Throwable("Pooled frame acquired here") : null;
+  }
+
+  /**
+   * Copies the pixels of a grabbed frame into this buffer, row by row to tolerate stride padding.
+   *
+   * @param source A frame with the same geometry as the pool
+   */
+  public void copyFrom(Frame source) {
+    if (source.imageWidth != frame.imageWidth || source.imageHeight != frame.imageHeight
+        || source.imageChannels != frame.imageChannels || source.imageDepth != frame.imageDepth) {
+      throw new IllegalArgumentException(
+          "Frame geometry %dx%dx%d does not match pool geometry %dx%dx%d".formatted(
+              source.imageWidth, source.imageHeight, source.imageChannels, frame.imageWidth,
+              frame.imageHeight, frame.imageChannels));
+    }
+
+    ByteBuffer src = (ByteBuffer) source.image[0];
+    ByteBuffer dst = (ByteBuffer) frame.image[0];
+    int rowBytes = frame.imageWidth * frame.imageChannels;
+    if (source.imageStride == frame.imageStride) {
+      dst.put(0, src, 0, frame.imageStride * frame.imageHeight);
+    } else {
+      for (int row = 0; row < frame.imageHeight; row++) {
+        dst.put(row * frame.imageStride, src, row * source.imageStride, rowBytes);
+      }
+    }
+    frame.timestamp = source.timestamp;
+    frame.keyFrame = source.keyFrame;
+  }
+
+  /**
+   * Adds a reference for a stage that holds on to the frame.
+   *
+   * @return this frame
+   */
+  public PooledFrame retain() {
+    int previous = refCount.getAndIncrement();
+    if (previous <= 0) {
+      refCount.decrementAndGet();
+      throw new IllegalStateException("Cannot retain a frame that was already returned to the pool");
+    }
+    return this;
+  }
+
+  /**
+   * Drops a reference and returns the buffer to the pool once no stage holds it anymore.
+   */
+  public void release() {
+    int remaining = refCount.decrementAndGet();
+    if (remaining == 0) {
+      acquiredAt = null;
+      pool.giveBack(this);
+    } else if (remaining < 0) {
+      refCount.incrementAndGet();
+      throw new IllegalStateException("Pooled frame released more often than retained");
+    }
+  }
+
+  public int getRefCount() {
+    return refCount.get();
+  }
+
+  Throwable getAcquiredAt() {
+    return acquiredAt;
+  }
+}
@@ -0,0 +1,154 @@
+package space.hajnal.sentinel.capture;
+
+import java.net.DatagramSocket;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import space.hajnal.sentinel.camera.SentinelFrameGrabber;
+import space.hajnal.sentinel.camera.model.CapturedFrame;
+import space.hajnal.sentinel.camera.pool.FramePool;
+import space.hajnal.sentinel.camera.pool.PooledFrame;
+import space.hajnal.sentinel.network.sender.RTPSocketSender;
+import space.hajnal.sentinel.pipeline.OverflowPolicy;
+import space.hajnal.sentinel.pipeline.StageMetrics;
+import space.hajnal.sentinel.pipeline.StageQueue;
+
+/**
+ * The per-camera half of a {@link CaptureManager}: the grabber, its frame pool and queue, and the
+ * camera's own encoder and sender.
+ * <p>
+ * A pipeline is handed to at most one encode worker at a time, so its encoder sees frames in
+ * capture order even though the workers are shared.
+ */
+@Slf4j
+public class CameraPipeline implements AutoCloseable {
+
+  @Getter
+  private final String name;
+  private final SentinelFrameGrabber grabber;
+  private final RTPSocketSender sender;
+  private final AutoCloseable encoder;
+  private final FramePool framePool;
+  private final StageQueue<CapturedFrame> queue;
+  private final StageMetrics captureMetrics;
+  private final StageMetrics encodeMetrics;
+  private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+  /**
+   * @param name    The camera name used in metrics and logs
+   * @param grabber The frame source
+   * @param sender  The sender owning this camera's encoder, SSRC and destination. Its socket is
+   *                shared by all cameras and closed by the {@link CaptureManager}
+   * @param encoder The encoder used by the sender, closed with the pipeline
+   * @param options The queue and pool sizing
+   */
+  public CameraPipeline(String name, SentinelFrameGrabber grabber, RTPSocketSender sender,
+      AutoCloseable encoder, CaptureManagerOptions options) {
+    this.name = name;
+    this.grabber = grabber;
+    this.sender = sender;
+    this.encoder = encoder;
+    this.framePool = new FramePool(options.getFramePoolSize());
+    this.queue = new StageQueue<>(name, options.getCameraQueueCapacity(),
+        OverflowPolicy.DROP_OLDEST, dropped -> dropped.getFrame().release());
+    this.captureMetrics = new StageMetrics(name + "-capture", null);
+    this.encodeMetrics = new StageMetrics(name + "-encode", queue);
+  }
+
+  void start(DatagramSocket socket, Runnable onFrameQueued) throws Exception {
+    sender.open(socket);
+    grabber.capture((frame, ts) -> {
+      long start = System.nanoTime();
+      PooledFrame pooledFrame = framePool.acquire(frame);
+      if (pooledFrame == null) {
+        captureMetrics.recordFailure();
+        return frame;
+      }
+      queue.offer(CapturedFrame.builder().frame(pooledFrame).timestamp(ts).build());
+      captureMetrics.recordService(System.nanoTime() - start);
+      onFrameQueued.run();
+      return frame;
+    });
+  }
+
+  /**
+   * Encodes and sends the oldest queued frame, if any.
+   *
+   * @return the encode and send time in nanoseconds, or -1 if nothing was processed
+   */
+  long encodeNext() {
+    CapturedFrame capturedFrame = queue.poll();
+    if (capturedFrame == null) {
+      return -1;
+    }
+
+    long start = System.nanoTime();
+    try {
+      byte[] data = sender.encode(capturedFrame.getFrame().getFrame());
+      if (data != null && data.length > 0) {
+        sender.sendFrameData(data, capturedFrame.getTimestamp());
+      }
+      long elapsed = System.nanoTime() - start;
+      encodeMetrics.recordService(elapsed);
+      return elapsed;
+    } catch (Exception e) {
+      encodeMetrics.recordFailure();
+      log.error("Error while encoding frame of camera {}", name, e);
+      return System.nanoTime() - start;
+    } finally {
+      capturedFrame.getFrame().release();
+    }
+  }
+
+  boolean hasPending() {
+    return queue.size() > 0;
+  }
+
+  /**
+   * Claims the pipeline for the ready queue.
+   *
+   * @return false if it is already queued or being encoded
+   */
+  boolean trySchedule() {
+    return scheduled.compareAndSet(false, true);
+  }
+
+  void unschedule() {
+    scheduled.set(false);
+  }
+
+  /**
+   * @return The capture and encode metrics of this camera, in pipeline order
+   */
+  public List<StageMetrics> getMetrics() {
+    return List.of(captureMetrics, encodeMetrics);
+  }
+
+  public long getEncodedFrames() {
+    return encodeMetrics.getProcessed();
+  }
+
+  /**
+   * @return Frames dropped for lack of a buffer or because the encoders fell behind
+   */
+  public long getDroppedFrames() {
+    return captureMetrics.getFailed() + queue.getDropped();
+  }
+
+  @Override
+  public void close() {
+    try {
+      grabber.close();
+    } catch (Exception e) {
+      log.error("Error while closing grabber of camera {}", name, e);
+    }
+    queue.clear();
+    framePool.close();
+    try {
+      encoder.close();
+    } catch (Exception e) {
+      log.error("Error while closing encoder of camera {}", name, e);
+    }
+  }
+}
@@ -0,0 +1,21 @@
+package space.hajnal.sentinel.capture;
+
+import lombok.Builder;
+import lombok.Data;
+import space.hajnal.sentinel.camera.SentinelFrameGrabberOptions;
+import space.hajnal.sentinel.network.model.ServerOptions;
+
+/**
+ * One camera managed by a {@link CaptureManager}: where to grab from and where to send to.
+ */
+@Builder
+@Data
+public class CameraSource {
+
+  private final String name;
+  private final SentinelFrameGrabberOptions grabberOptions;
+  /**
+   * The destination and SSRC of this camera's RTP stream.
+   */
+  private final ServerOptions serverOptions;
+}
@@ -0,0 +1,198 @@
+package space.hajnal.sentinel.capture;
+
+import java.net.DatagramSocket;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import space.hajnal.sentinel.camera.FrameGrabberFactory;
+import space.hajnal.sentinel.camera.SentinelFrameGrabber;
+import space.hajnal.sentinel.codec.H264Encoder;
+import space.hajnal.sentinel.network.sender.RTPSocketSender;
+import space.hajnal.sentinel.network.serialization.RTPPacketSerializer;
+import space.hajnal.sentinel.network.video.FrameProcessor;
+import space.hajnal.sentinel.pipeline.StageMetrics;
+
+/**
+ * Captures several cameras at once and encodes them on a shared, fixed-size worker pool.
+ * <p>
+ * Every camera keeps its own grab thread, frame pool, encoder and RTP stream, but the expensive
+ * encoding runs on {@link CaptureManagerOptions#getEncodeWorkers()} threads. Cameras with queued
+ * frames wait in a FIFO ready queue and are re-queued at the tail after each frame, so the pool
+ * serves them round-robin and a busy camera cannot starve the others. A camera that falls behind
+ * drops its own oldest frames.
+ */
+@Slf4j
+public class CaptureManager implements AutoCloseable {
+
+  private final List<CameraPipeline> cameras;
+  private final CaptureManagerOptions options;
+  private final BlockingQueue<CameraPipeline> ready = new LinkedBlockingQueue<>();
+  private final StageMetrics encodeMetrics;
+  private final List<Thread> workers = new ArrayList<>();
+  private volatile boolean running = false;
+  private DatagramSocket socket;
+  private long startNanos;
+
+  public CaptureManager(List<CameraSource> sources, FrameGrabberFactory frameGrabberFactory,
+      CaptureManagerOptions options) {
+    this(sources.stream().map(source -> createPipeline(source, frameGrabberFactory, options))
+        .toList(), options);
+  }
+
+  CaptureManager(List<CameraPipeline> cameras, CaptureManagerOptions options) {
+    if (options.getEncodeWorkers() <= 0) {
+      throw new IllegalArgumentException("At least one encode worker is required");
+    }
+    this.cameras = cameras;
+    this.options = options;
+    this.encodeMetrics = new StageMetrics("encode-pool", null);
+  }
+
+  private static CameraPipeline createPipeline(CameraSource source,
+      FrameGrabberFactory frameGrabberFactory, CaptureManagerOptions options) {
+    H264Encoder encoder = new H264Encoder(source.getGrabberOptions());
+    RTPSocketSender sender = new RTPSocketSender(source.getServerOptions(), encoder,
+        new RTPPacketSerializer(), new FrameProcessor());
+    SentinelFrameGrabber grabber = new SentinelFrameGrabber(source.getGrabberOptions(),
+        frameGrabberFactory);
+    return new CameraPipeline(source.getName(), grabber, sender, encoder, options);
+  }
+
+  /**
+   * Starts the encode workers and then every camera.
+   *
+   * @param socket The socket all cameras send from, each to its own destination and SSRC. The
+   *               manager owns it from now on and closes it after the last camera
+   */
+  public synchronized void start(DatagramSocket socket) {
+    if (running) {
+      throw new IllegalStateException("Capture manager is already running");
+    }
+    running = true;
+    this.socket = socket;
+    startNanos = System.nanoTime();
+    for (int i = 0; i < options.getEncodeWorkers(); i++) {
+      workers.add(Thread.ofPlatform()
+          .name("sentinel-encode-" + i)
+          .daemon()
+          .start(this::runWorker));
+    }
+    for (CameraPipeline camera : cameras) {
+      try {
+        camera.start(socket, () -> markReady(camera));
+        log.info("Camera {} started", camera.getName());
+      } catch (Exception e) {
+        log.error("Failed to start camera {}", camera.getName(), e);
+      }
+    }
+  }
+
+  private void markReady(CameraPipeline camera) {
+    if (camera.trySchedule()) {
+      ready.offer(camera);
+    }
+  }
+
+  private void runWorker() {
+    while (running) {
+      CameraPipeline camera;
+      try {
+        camera = ready.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+
+      long elapsed = camera.encodeNext();
+      if (elapsed >= 0) {
+        encodeMetrics.recordService(elapsed);
+      }
+
+      if (camera.hasPending()) {
+        // One frame per turn, then back to the end of the line
+        ready.offer(camera);
+      } else {
+        camera.unschedule();
+        // A frame may have arrived between the check and the unschedule
+        if (camera.hasPending()) {
+          markReady(camera);
+        }
+      }
+    }
+  }
+
+  public List<CameraPipeline> getCameras() {
+    return cameras;
+  }
+
+  /**
+   * @return The metrics of every camera by name
+   */
+  public Map<String, List<StageMetrics>> getCameraMetrics() {
+    Map<String, List<StageMetrics>> metrics = new LinkedHashMap<>();
+    cameras.forEach(camera -> metrics.put(camera.getName(), camera.getMetrics()));
+    return metrics;
+  }
+
+  /**
+   * @return The service time of the shared encode pool over all cameras
+   */
+  public StageMetrics getEncodeMetrics() {
+    return encodeMetrics;
+  }
+
+  /**
+   * @return Encoded frames per second of one camera since start
+   */
+  public double getFramesPerSecond(CameraPipeline camera) {
+    return perSecond(camera.getEncodedFrames());
+  }
+
+  /**
+   * @return Encoded frames per second of all cameras together since start
+   */
+  public double getFramesPerSecond() {
+    return perSecond(encodeMetrics.getProcessed());
+  }
+
+  private double perSecond(long count) {
+    long elapsed = System.nanoTime() - startNanos;
+    return startNanos == 0 || elapsed <= 0 ? 0
+        : count * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+  }
+
+  public boolean isRunning() {
+    return running;
+  }
+
+  @Override
+  public synchronized void close() {
+    running = false;
+    workers.forEach(Thread::interrupt);
+    // Let in-flight frames finish before their encoders are closed
+    workers.forEach(worker -> {
+      try {
+        worker.join(TimeUnit.SECONDS.toMillis(1));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    workers.clear();
+    ready.clear();
+    cameras.forEach(camera -> {
+      log.info("Camera {} stopped at {} fps: {}", camera.getName(),
+          String.format("%.1f", getFramesPerSecond(camera)), camera.getMetrics());
+      camera.close();
+    });
+    if (socket != null) {
+      socket.close();
+      socket = null;
+    }
+    log.info("Encode pool: {}", encodeMetrics);
+  }
+}
@@ -0,0 +1,30 @@
+package space.hajnal.sentinel.capture;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Sizing of the shared encode pool and the per-camera buffers of a {@link CaptureManager}.
+ */
+@Builder
+@Data
+public class CaptureManagerOptions {
+
+  /**
+   * Encoder threads shared by all cameras. More cameras than workers is fine, they take turns.
+   */
+  @Builder.Default
+  private final int encodeWorkers = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+  /**
+   * Raw frames a camera may have waiting for an encoder before its oldest frame is dropped.
+   */
+  @Builder.Default
+  private final int cameraQueueCapacity = 2;
+
+  /**
+   * Raw frame buffers per camera, must cover the queue plus the frame being encoded.
+   */
+  @Builder.Default
+  private final int framePoolSize = 4;
+}
@@ -0,0 +1,105 @@
+package space.hajnal.sentinel.codec;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import lombok.extern.slf4j.Slf4j;
+import org.bytedeco.javacv.Frame;
+
+/**
+ * One GOP of pre-encoded access units for a static picture.
+ * <p>
+ * The IDR frame is followed by P-frames that reference an identical picture, which the encoder
+ * codes as skip frames of a few bytes. Replaying the sequence in a loop is a valid H.264 stream,
+ * because every loop restarts at the IDR frame. The cache is immutable and can be shared by any
+ * number of senders.
+ */
+@Slf4j
+public class EncodedFrameCache {
+
+  private final List<byte[]> accessUnits;
+
+  EncodedFrameCache(List<byte[]> accessUnits) {
+    if (accessUnits.isEmpty()) {
+      throw new IllegalArgumentException("Cache must contain at least one access unit");
+    }
+    this.accessUnits = List.copyOf(accessUnits);
+  }
+
+  /**
+   * Encodes the picture until the encoder starts its second GOP.
+   *
+   * @param frame   The static picture
+   * @param encoder A freshly opened encoder, so its first output is an IDR frame
+   * @return The cached GOP
+   */
+  public static EncodedFrameCache encode(Frame frame, H264Encoder encoder) {
+    List<byte[]> accessUnits = new ArrayList<>();
+    for (int i = 0; i < 2 * H264Encoder.KEYFRAME_INTERVAL; i++) {
+      byte[] accessUnit = encoder.encode(frame);
+      if (accessUnit.length == 0) {
+        continue;
+      }
+      boolean keyframe = NalUnits.isKeyframe(accessUnit);
+      if (accessUnits.isEmpty() && !keyframe) {
+        throw new IllegalStateException("Encoder did not start with an IDR frame");
+      }
+      if (keyframe && !accessUnits.isEmpty()) {
+        break;
+      }
+      accessUnits.add(accessUnit);
+    }
+
+    EncodedFrameCache cache = new EncodedFrameCache(accessUnits);
+    log.info("Cached {} access units ({} bytes, IDR {} bytes)", cache.size(),
+        cache.getTotalBytes(), accessUnits.getFirst().length);
+    return cache;
+  }
+
+  /**
+   * Generates a GOP of access units with the sizes of real ones but random slice data, for load
+   * tests that need no encoder. Only the NAL unit headers are meaningful, the slices do not decode.
+   *
+   * @param gopLength       Access units from one keyframe to the next
+   * @param keyframeBytes   Size of the IDR access unit
+   * @param deltaFrameBytes Size of each P-frame access unit
+   * @param seed            Seed of the slice data
+   */
+  public static EncodedFrameCache synthetic(int gopLength, int keyframeBytes,
+      int deltaFrameBytes, long seed) {
+    SplittableRandom random = new SplittableRandom(seed);
+    List<byte[]> accessUnits = new ArrayList<>(gopLength);
+    accessUnits.add(syntheticAccessUnit(NalUnits.TYPE_IDR, keyframeBytes, random));
+    for (int i = 1; i < gopLength; i++) {
+      accessUnits.add(syntheticAccessUnit(NalUnits.TYPE_NON_IDR, deltaFrameBytes, random));
+    }
+    return new EncodedFrameCache(accessUnits);
+  }
+
+  private static byte[] syntheticAccessUnit(int nalType, int size, SplittableRandom random) {
+    byte[] accessUnit = new byte[Math.max(size, 6)];
+    accessUnit[3] = 1;
+    accessUnit[4] = (byte) (0x60 | nalType); // nal_ref_idc 3, used for reference
+    // Without zero bytes the slice data cannot contain a start code
+    for (int i = 5; i < accessUnit.length; i++) {
+      accessUnit[i] = (byte) random.nextInt(1, 256);
+    }
+    return accessUnit;
+  }
+
+  /**
+   * @param frameIndex The running frame number of the replay
+   * @return The access unit to send for that frame, looping over the GOP
+   */
+  public byte[] get(long frameIndex) {
+    return accessUnits.get((int) (frameIndex % accessUnits.size()));
+  }
+
+  public int size() {
+    return accessUnits.size();
+  }
+
+  public long getTotalBytes() {
+    return accessUnits.stream().mapToLong(au -> au.length).sum();
+  }
+}
@@ -0,0 +1,91 @@
+package space.hajnal.sentinel.codec;
+
+import static org.bytedeco.ffmpeg.global.avutil.AV_PIX_FMT_BGR24;
+import static org.bytedeco.ffmpeg.global.avutil.AV_PIX_FMT_BGRA;
+import static org.bytedeco.ffmpeg.global.avutil.AV_PIX_FMT_GRAY8;
+import static org.bytedeco.ffmpeg.global.swscale.SWS_BILINEAR;
+import static org.bytedeco.ffmpeg.global.swscale.sws_freeContext;
+import static org.bytedeco.ffmpeg.global.swscale.sws_getCachedContext;
+import static org.bytedeco.ffmpeg.global.swscale.sws_scale;
+
+import java.nio.ByteBuffer;
+import org.bytedeco.ffmpeg.avutil.AVFrame;
+import org.bytedeco.ffmpeg.swscale.SwsContext;
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.DoublePointer;
+import org.bytedeco.javacpp.IntPointer;
+import org.bytedeco.javacpp.PointerPointer;
+import org.bytedeco.javacv.Frame;
+
+/**
+ * Converts between JavaCV packed frames and FFmpeg planar pictures, resizing if needed.
+ * <p>
+ * The swscale context and the pointer arrays are reused for as long as the geometry does not
+ * change, so a steady stream of frames does not allocate scaler state per frame.
+ */
+class FrameScaler implements AutoCloseable {
+
+  private final PointerPointer<BytePointer> packedData = new PointerPointer<>(1);
+  private final IntPointer packedStride = new IntPointer(1);
+  private SwsContext context;
+  private ByteBuffer wrappedBuffer;
+  private BytePointer wrappedPointer;
+
+  /**
+   * Scales a packed JavaCV frame into a planar picture with the picture's size and format.
+   */
+  void scale(Frame source, AVFrame target) {
+    context = sws_getCachedContext(context, source.imageWidth, source.imageHeight,
+        pixelFormat(source), target.width(), target.height(), target.format(), SWS_BILINEAR,
+        null, null, (DoublePointer) null);
+    packedData.put(0, wrap((ByteBuffer) source.image[0]));
+    packedStride.put(0, source.imageStride);
+    sws_scale(context, packedData, packedStride, 0, source.imageHeight, target.data(),
+        target.linesize());
+  }
+
+  /**
+   * Scales a planar picture into a packed JavaCV frame with the frame's size and format.
+   */
+  void scale(AVFrame source, Frame target) {
+    context = sws_getCachedContext(context, source.width(), source.height(), source.format(),
+        target.imageWidth, target.imageHeight, pixelFormat(target), SWS_BILINEAR, null, null,
+        (DoublePointer) null);
+    packedData.put(0, wrap((ByteBuffer) target.image[0]));
+    packedStride.put(0, target.imageStride);
+    sws_scale(context, source.data(), source.linesize(), 0, source.height(), packedData,
+        packedStride);
+  }
+
+  // Pooled frames come back with the same buffer, so the native wrapper can be reused
+  private BytePointer wrap(ByteBuffer buffer) {
+    if (buffer != wrappedBuffer) {
+      wrappedBuffer = buffer;
+      wrappedPointer = new BytePointer(buffer);
+    }
+    return wrappedPointer;
+  }
+
+  static int pixelFormat(Frame frame) {
+    if (frame.imageDepth != Frame.DEPTH_UBYTE) {
+      throw new IllegalArgumentException("Unsupported frame depth: " + frame.imageDepth);
+    }
+    return switch (frame.imageChannels) {
+      case 1 -> AV_PIX_FMT_GRAY8;
+      case 3 -> AV_PIX_FMT_BGR24;
+      case 4 -> AV_PIX_FMT_BGRA;
+      default -> throw new IllegalArgumentException(
+          "Unsupported channel count: " + frame.imageChannels);
+    };
+  }
+
+  @Override
+  public void close() {
+    if (context != null) {
+      sws_freeContext(context);
+      context = null;
+    }
+    wrappedBuffer = null;
+    wrappedPointer = null;
+  }
+}
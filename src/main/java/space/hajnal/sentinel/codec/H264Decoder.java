@@ -0,0 +1,138 @@
+package space.hajnal.sentinel.codec;
+
+import static org.bytedeco.ffmpeg.global.avcodec.AV_CODEC_FLAG_LOW_DELAY;
+import static org.bytedeco.ffmpeg.global.avcodec.AV_CODEC_ID_H264;
+import static org.bytedeco.ffmpeg.global.avcodec.AV_INPUT_BUFFER_PADDING_SIZE;
+import static org.bytedeco.ffmpeg.global.avcodec.av_packet_alloc;
+import static org.bytedeco.ffmpeg.global.avcodec.av_packet_free;
+import static org.bytedeco.ffmpeg.global.avcodec.avcodec_alloc_context3;
+import static org.bytedeco.ffmpeg.global.avcodec.avcodec_find_decoder;
+import static org.bytedeco.ffmpeg.global.avcodec.avcodec_free_context;
+import static org.bytedeco.ffmpeg.global.avcodec.avcodec_open2;
+import static org.bytedeco.ffmpeg.global.avcodec.avcodec_receive_frame;
+import static org.bytedeco.ffmpeg.global.avcodec.avcodec_send_packet;
+import static org.bytedeco.ffmpeg.global.avutil.AVERROR_EAGAIN;
+import static org.bytedeco.ffmpeg.global.avutil.AVERROR_EOF;
+import static org.bytedeco.ffmpeg.global.avutil.av_frame_alloc;
+import static org.bytedeco.ffmpeg.global.avutil.av_frame_free;
+import static space.hajnal.sentinel.codec.H264Encoder.check;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bytedeco.ffmpeg.avcodec.AVCodec;
+import org.bytedeco.ffmpeg.avcodec.AVCodecContext;
+import org.bytedeco.ffmpeg.avcodec.AVPacket;
+import org.bytedeco.ffmpeg.avutil.AVDictionary;
+import org.bytedeco.ffmpeg.avutil.AVFrame;
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacv.Frame;
+
+/**
+ * A persistent H.264 decoder for the access units produced by {@link H264Encoder}.
+ * <p>
+ * P-frames reference earlier pictures, so access units must be fed in order to the same decoder
+ * instance. The returned frame is BGR24 and is reused by the next call to
+ * {@link #decode(byte[])}.
+ */
+@Slf4j
+public class H264Decoder implements AutoCloseable {
+
+  private static final byte[] PADDING = new byte[AV_INPUT_BUFFER_PADDING_SIZE];
+
+  private final FrameScaler scaler = new FrameScaler();
+  private AVCodecContext codecContext;
+  private AVPacket packet;
+  private AVFrame picture;
+  private BytePointer input;
+  private Frame output;
+
+  /**
+   * @param accessUnit An Annex B access unit
+   * @return The decoded picture, or null if the decoder has no picture for this input, e.g. a
+   * P-frame whose reference was lost
+   */
+  public synchronized Frame decode(byte[] accessUnit) {
+    try {
+      if (codecContext == null) {
+        open();
+      }
+
+      // The bitstream reader may overread, FFmpeg requires zeroed padding behind the data
+      int required = accessUnit.length + PADDING.length;
+      if (input == null || input.capacity() < required) {
+        input = new BytePointer(required);
+      }
+      input.position(0).put(accessUnit, 0, accessUnit.length);
+      input.position(accessUnit.length).put(PADDING, 0, PADDING.length);
+      packet.data(input.position(0));
+      packet.size(accessUnit.length);
+
+      int ret = avcodec_send_packet(codecContext, packet);
+      if (ret < 0) {
+        log.warn("Decoder rejected access unit of {} bytes: error {}", accessUnit.length, ret);
+        return null;
+      }
+
+      Frame decoded = null;
+      while (true) {
+        ret = avcodec_receive_frame(codecContext, picture);
+        if (ret == AVERROR_EAGAIN() || ret == AVERROR_EOF()) {
+          break;
+        }
+        check(ret, "avcodec_receive_frame");
+        decoded = toFrame(picture);
+      }
+      return decoded;
+    } catch (Exception e) {
+      log.error("Error while decoding frame", e);
+      return null;
+    }
+  }
+
+  private Frame toFrame(AVFrame source) {
+    if (output == null || output.imageWidth != source.width()
+        || output.imageHeight != source.height()) {
+      if (output != null) {
+        output.close();
+      }
+      output = new Frame(source.width(), source.height(), Frame.DEPTH_UBYTE, 3);
+    }
+    scaler.scale(source, output);
+    return output;
+  }
+
+  private void open() {
+    AVCodec codec = avcodec_find_decoder(AV_CODEC_ID_H264);
+    if (codec == null) {
+      throw new IllegalStateException("No H.264 decoder available");
+    }
+    codecContext = avcodec_alloc_context3(codec);
+    // Output every picture as soon as it is decoded instead of buffering for reordering
+    codecContext.flags(codecContext.flags() | AV_CODEC_FLAG_LOW_DELAY);
+    codecContext.thread_count(1);
+    check(avcodec_open2(codecContext, codec, (AVDictionary) null), "avcodec_open2");
+    packet = av_packet_alloc();
+    picture = av_frame_alloc();
+  }
+
+  @Override
+  public synchronized void close() {
+    if (packet != null) {
+      packet.data(null);
+      av_packet_free(packet);
+      packet = null;
+    }
+    if (picture != null) {
+      av_frame_free(picture);
+      picture = null;
+    }
+    if (codecContext != null) {
+      avcodec_free_context(codecContext);
+      codecContext = null;
+    }
+    if (output != null) {
+      output.close();
+      output = null;
+    }
+    scaler.close();
+  }
+}
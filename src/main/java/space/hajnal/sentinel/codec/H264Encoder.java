@@ -1,51 +1,240 @@
 package space.hajnal.sentinel.codec;
 
+import static org.bytedeco.ffmpeg.global.avcodec.AV_CODEC_ID_H264;
+import static org.bytedeco.ffmpeg.global.avcodec.AV_PKT_FLAG_KEY;
+import static org.bytedeco.ffmpeg.global.avcodec.AV_PROFILE_H264_CONSTRAINED_BASELINE;
+import static org.bytedeco.ffmpeg.global.avcodec.av_packet_alloc;
+import static org.bytedeco.ffmpeg.global.avcodec.av_packet_free;
+import static org.bytedeco.ffmpeg.global.avcodec.av_packet_unref;
+import static org.bytedeco.ffmpeg.global.avcodec.avcodec_alloc_context3;
+import static org.bytedeco.ffmpeg.global.avcodec.avcodec_find_encoder;
+import static org.bytedeco.ffmpeg.global.avcodec.avcodec_find_encoder_by_name;
+import static org.bytedeco.ffmpeg.global.avcodec.avcodec_free_context;
+import static org.bytedeco.ffmpeg.global.avcodec.avcodec_open2;
+import static org.bytedeco.ffmpeg.global.avcodec.avcodec_receive_packet;
+import static org.bytedeco.ffmpeg.global.avcodec.avcodec_send_frame;
+import static org.bytedeco.ffmpeg.global.avutil.AVERROR_EAGAIN;
+import static org.bytedeco.ffmpeg.global.avutil.AVERROR_EOF;
+import static org.bytedeco.ffmpeg.global.avutil.AV_PICTURE_TYPE_I;
+import static org.bytedeco.ffmpeg.global.avutil.AV_PICTURE_TYPE_NONE;
+import static org.bytedeco.ffmpeg.global.avutil.AV_PIX_FMT_YUV420P;
+import static org.bytedeco.ffmpeg.global.avutil.av_dict_free;
+import static org.bytedeco.ffmpeg.global.avutil.av_dict_set;
+import static org.bytedeco.ffmpeg.global.avutil.av_frame_alloc;
+import static org.bytedeco.ffmpeg.global.avutil.av_frame_free;
+import static org.bytedeco.ffmpeg.global.avutil.av_frame_get_buffer;
+import static org.bytedeco.ffmpeg.global.avutil.av_frame_make_writable;
+import static org.bytedeco.ffmpeg.global.avutil.av_make_q;
+
 import java.io.ByteArrayOutputStream;
 import lombok.extern.slf4j.Slf4j;
-import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.ffmpeg.avcodec.AVCodec;
+import org.bytedeco.ffmpeg.avcodec.AVCodecContext;
+import org.bytedeco.ffmpeg.avcodec.AVPacket;
+import org.bytedeco.ffmpeg.avutil.AVDictionary;
+import org.bytedeco.ffmpeg.avutil.AVFrame;
 import org.bytedeco.javacv.Frame;
 import space.hajnal.sentinel.camera.SentinelFrameGrabberOptions;
+import space.hajnal.sentinel.jfr.FrameEncodedEvent;
 
+/**
+ * A persistent H.264 encoder.
+ * <p>
+ * The codec context lives as long as the encoder, so consecutive frames form a real GOP: an IDR
+ * frame with SPS/PPS every {@value #KEYFRAME_INTERVAL} frames and P-frames in between. Frames
+ * must therefore be decoded in order by a persistent {@link H264Decoder}. Each call returns one
+ * Annex B access unit.
+ * <p>
+ * Receivers that lost a reference frame can ask for an early IDR frame with
+ * {@link #requestKeyframe()}, which is rate limited by a {@link KeyframeRequestLimiter}.
+ */
 @Slf4j
-public class H264Encoder {
+public class H264Encoder implements AutoCloseable {
+
+  public static final int KEYFRAME_INTERVAL = 30;
+  public static final long DEFAULT_BIT_RATE = 1200 * 1000;
 
-  private SentinelFrameGrabberOptions options;
+  private final SentinelFrameGrabberOptions options;
+  private final long bitRate;
+  private final FrameScaler scaler = new FrameScaler();
+  private final ByteArrayOutputStream accessUnit = new ByteArrayOutputStream();
+  private final KeyframeRequestLimiter keyframeRequestLimiter;
+  private AVCodecContext codecContext;
+  private AVFrame picture;
+  private AVPacket packet;
+  private long pts = 0;
+  private boolean lastKeyframe = false;
 
   public H264Encoder(SentinelFrameGrabberOptions options) {
+    this(options, DEFAULT_BIT_RATE);
+  }
+
+  /**
+   * @param options The output size and frame rate, input frames of any size are scaled to it
+   * @param bitRate The target bit rate in bits per second
+   */
+  public H264Encoder(SentinelFrameGrabberOptions options, long bitRate) {
+    this(options, bitRate, new KeyframeRequestLimiter());
+  }
+
+  public H264Encoder(SentinelFrameGrabberOptions options, long bitRate,
+      KeyframeRequestLimiter keyframeRequestLimiter) {
     this.options = options;
+    this.bitRate = bitRate;
+    this.keyframeRequestLimiter = keyframeRequestLimiter;
   }
 
-  public byte[] encode(Frame frame) {
-    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+  public synchronized byte[] encode(Frame frame) {
+    FrameEncodedEvent event = new FrameEncodedEvent();
+    event.begin();
+    try {
+      if (codecContext == null) {
+        open();
+      }
 
-    try (FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(outputStream,
-        options.getImageWidth(), options.getImageHeight())) {
-      setupH246Settings(recorder);
-      recorder.start();
-      recorder.record(frame);
-      recorder.stop();
+      check(av_frame_make_writable(picture), "av_frame_make_writable");
+      scaler.scale(frame, picture);
+      picture.pts(pts++);
+      // With forced-idr (x264) or ForceIntraFrame (OpenH264) an I picture type starts a new GOP
+      boolean forceKeyframe = keyframeRequestLimiter.shouldForceKeyframe();
+      picture.pict_type(forceKeyframe ? AV_PICTURE_TYPE_I : AV_PICTURE_TYPE_NONE);
+      check(avcodec_send_frame(codecContext, picture), "avcodec_send_frame");
+      byte[] data = drain();
+      if (lastKeyframe) {
+        keyframeRequestLimiter.onKeyframe();
+      }
+      event.end();
+      if (event.shouldCommit()) {
+        event.width = options.getImageWidth();
+        event.height = options.getImageHeight();
+        event.encodedSize = data.length;
+        event.keyframe = lastKeyframe;
+        event.forcedKeyframe = forceKeyframe;
+        event.commit();
+      }
+      return data;
     } catch (Exception e) {
       log.error("Error while encoding frame", e);
       return new byte[0];
     }
+  }
+
+  /**
+   * Asks for the next frame to be an IDR frame, e.g. after a receiver reported picture loss.
+   * <p>
+   * Safe to call from any thread. Requests shortly after a keyframe are deferred, not dropped.
+   */
+  public void requestKeyframe() {
+    keyframeRequestLimiter.request();
+  }
+
+  public KeyframeRequestLimiter getKeyframeRequestLimiter() {
+    return keyframeRequestLimiter;
+  }
+
+  /**
+   * @return true if the last access unit returned by {@link #encode(Frame)} was an IDR frame
+   */
+  public synchronized boolean isLastKeyframe() {
+    return lastKeyframe;
+  }
+
+  private byte[] drain() {
+    accessUnit.reset();
+    lastKeyframe = false;
+    while (true) {
+      int ret = avcodec_receive_packet(codecContext, packet);
+      if (ret == AVERROR_EAGAIN() || ret == AVERROR_EOF()) {
+        break;
+      }
+      check(ret, "avcodec_receive_packet");
+      byte[] data = new byte[packet.size()];
+      packet.data().get(data);
+      accessUnit.writeBytes(data);
+      lastKeyframe |= (packet.flags() & AV_PKT_FLAG_KEY) != 0;
+      av_packet_unref(packet);
+    }
+    return accessUnit.toByteArray();
+  }
+
+  private void open() {
+    // Prefer x264 when the FFmpeg build has it, otherwise the LGPL build's OpenH264
+    AVCodec codec = avcodec_find_encoder_by_name("libx264");
+    if (codec == null) {
+      codec = avcodec_find_encoder(AV_CODEC_ID_H264);
+    }
+    if (codec == null) {
+      throw new IllegalStateException("No H.264 encoder available");
+    }
 
-    return outputStream.toByteArray();
+    codecContext = avcodec_alloc_context3(codec);
+    codecContext.width(options.getImageWidth());
+    codecContext.height(options.getImageHeight());
+    codecContext.pix_fmt(AV_PIX_FMT_YUV420P);
+    codecContext.time_base(av_make_q(1, options.getFrameRate()));
+    codecContext.framerate(av_make_q(options.getFrameRate(), 1));
+    codecContext.gop_size(KEYFRAME_INTERVAL);
+    codecContext.max_b_frames(0);
+    codecContext.bit_rate(bitRate);
+    codecContext.profile(AV_PROFILE_H264_CONSTRAINED_BASELINE);
+
+    AVDictionary codecOptions = new AVDictionary(null);
+    setupH264Settings(codecOptions);
+    if (codec.name().getString().equals("libx264")) {
+      av_dict_set(codecOptions, "profile", "baseline", 0); // x264 ignores the context profile
+    }
+    try {
+      check(avcodec_open2(codecContext, codec, codecOptions), "avcodec_open2");
+
+      picture = av_frame_alloc();
+      picture.format(AV_PIX_FMT_YUV420P);
+      picture.width(options.getImageWidth());
+      picture.height(options.getImageHeight());
+      check(av_frame_get_buffer(picture, 32), "av_frame_get_buffer");
+      packet = av_packet_alloc();
+    } catch (RuntimeException e) {
+      // Leave no half-opened context behind, the next frame retries from scratch
+      close();
+      throw e;
+    } finally {
+      av_dict_free(codecOptions);
+    }
+    log.info("H.264 encoder {} opened for {}x{}@{}", codec.name().getString(),
+        options.getImageWidth(), options.getImageHeight(), options.getFrameRate());
   }
 
-  private void setupH246Settings(FFmpegFrameRecorder recorder) {
-    recorder.setVideoCodec(org.bytedeco.ffmpeg.global.avcodec.AV_CODEC_ID_H264); // H.264 codec
-    recorder.setFormat("h264"); // Output format
-    recorder.setFrameRate(options.getFrameRate());
-    recorder.setPixelFormat(org.bytedeco.ffmpeg.global.avutil.AV_PIX_FMT_YUV420P); // Pixel format
-    recorder.setVideoBitrate(1200 * 1000); // Bitrate
-    recorder.setOption("slices", "4");
-    recorder.setVideoOption("profile:v", "baseline");
-    recorder.setOption("b_enable_frame_skip", "1");
-    recorder.setOption("i_rc_mode", "VBR");
+  // Private options unknown to the selected encoder are ignored by avcodec_open2
+  private void setupH264Settings(AVDictionary codecOptions) {
+    av_dict_set(codecOptions, "slices", "4", 0);
+    av_dict_set(codecOptions, "allow_skip_frames", "1", 0); // OpenH264
+    av_dict_set(codecOptions, "preset", "ultrafast", 0);  // x264, SPS/PPS for low latency
+    av_dict_set(codecOptions, "tune", "zerolatency", 0); // Real-time optimization, no delay
+    av_dict_set(codecOptions, "forced-idr", "1", 0); // Forced keyframes are IDR frames
+    av_dict_set(codecOptions, "x264-params",
+        "keyint=" + KEYFRAME_INTERVAL + ":min-keyint=" + KEYFRAME_INTERVAL + ":scenecut=0", 0);
+  }
+
+  static void check(int ret, String operation) {
+    if (ret < 0) {
+      throw new IllegalStateException(operation + " failed with error " + ret);
+    }
+  }
 
-    recorder.setOption("preset", "ultrafast"); // SPS/PPS for low latency
-    recorder.setOption("tune", "zerolatency"); // Real-time optimization
-    recorder.setOption("x264opts", "keyint=30:min-keyint=30:scenecut=0"); // Keyframe interval
+  @Override
+  public synchronized void close() {
+    if (packet != null) {
+      av_packet_free(packet);
+      packet = null;
+    }
+    if (picture != null) {
+      av_frame_free(picture);
+      picture = null;
+    }
+    if (codecContext != null) {
+      avcodec_free_context(codecContext);
+      codecContext = null;
+    }
+    scaler.close();
   }
 
 }
@@ -0,0 +1,92 @@
+package space.hajnal.sentinel.codec;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Turns keyframe requests from receivers into at most one forced IDR frame per interval.
+ * <p>
+ * A request after a quiet period is granted on the very next frame. Requests arriving while a
+ * keyframe was sent recently are coalesced into one that is granted once the interval has passed,
+ * so a burst of PLIs from many receivers, or repeated PLIs from one, cannot turn the stream into
+ * keyframes only. A regular GOP keyframe satisfies any pending request.
+ */
+public class KeyframeRequestLimiter {
+
+  public static final long DEFAULT_MIN_INTERVAL_MILLIS = 250;
+
+  private final long minIntervalNanos;
+  private final LongSupplier nanoTime;
+  private final AtomicBoolean pending = new AtomicBoolean(false);
+  private final LongAdder requests = new LongAdder();
+  private final LongAdder forced = new LongAdder();
+  private volatile long lastKeyframeNanos;
+  private volatile boolean keyframeSent = false;
+
+  public KeyframeRequestLimiter() {
+    this(DEFAULT_MIN_INTERVAL_MILLIS, System::nanoTime);
+  }
+
+  /**
+   * @param minIntervalMillis The minimum time between two keyframes forced by requests
+   * @param nanoTime          The monotonic clock
+   */
+  public KeyframeRequestLimiter(long minIntervalMillis, LongSupplier nanoTime) {
+    if (minIntervalMillis < 0) {
+      throw new IllegalArgumentException("Minimum interval cannot be negative");
+    }
+    this.minIntervalNanos = TimeUnit.MILLISECONDS.toNanos(minIntervalMillis);
+    this.nanoTime = nanoTime;
+  }
+
+  /**
+   * Records a keyframe request, may be called from any thread.
+   */
+  public void request() {
+    requests.increment();
+    pending.set(true);
+  }
+
+  /**
+   * Called by the encoder before each frame.
+   *
+   * @return true if the frame should be forced to be an IDR frame
+   */
+  public boolean shouldForceKeyframe() {
+    if (!pending.get()) {
+      return false;
+    }
+    long now = nanoTime.getAsLong();
+    if (keyframeSent && now - lastKeyframeNanos < minIntervalNanos) {
+      return false;
+    }
+    if (!pending.compareAndSet(true, false)) {
+      return false;
+    }
+    forced.increment();
+    return true;
+  }
+
+  /**
+   * Called by the encoder after each keyframe, forced or not.
+   */
+  public void onKeyframe() {
+    lastKeyframeNanos = nanoTime.getAsLong();
+    keyframeSent = true;
+    pending.set(false);
+  }
+
+  public boolean isPending() {
+    return pending.get();
+  }
+
+  public long getRequests() {
+    return requests.sum();
+  }
+
+  public long getForcedKeyframes() {
+    return forced.sum();
+  }
+}
@@ -0,0 +1,82 @@
+package space.hajnal.sentinel.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Minimal inspection of H.264 Annex B access units, without decoding them.
+ */
+public final class NalUnits {
+
+  public static final int TYPE_NON_IDR = 1;
+  public static final int TYPE_IDR = 5;
+  public static final int TYPE_SPS = 7;
+  public static final int TYPE_PPS = 8;
+
+  private NalUnits() {
+  }
+
+  /**
+   * @param accessUnit An Annex B access unit
+   * @return true if the access unit contains an IDR slice and can be decoded on its own
+   */
+  public static boolean isKeyframe(byte[] accessUnit) {
+    return contains(accessUnit, TYPE_IDR);
+  }
+
+  /**
+   * @param accessUnit An Annex B access unit
+   * @return true if the access unit has slices and none of them is used for reference
+   * (nal_ref_idc 0), so the decoder can skip it without affecting later frames
+   */
+  public static boolean isDiscardable(byte[] accessUnit) {
+    boolean hasSlice = false;
+    for (int i = 0; i + 3 < accessUnit.length; i++) {
+      if (accessUnit[i] == 0 && accessUnit[i + 1] == 0 && accessUnit[i + 2] == 1) {
+        int header = accessUnit[i + 3];
+        int type = header & 0x1F;
+        if (type >= TYPE_NON_IDR && type <= TYPE_IDR) {
+          if ((header & 0x60) != 0) {
+            return false;
+          }
+          hasSlice = true;
+        }
+        i += 2;
+      }
+    }
+    return hasSlice;
+  }
+
+  /**
+   * @param accessUnit An Annex B access unit
+   * @param nalType    The NAL unit type to look for
+   * @return true if a NAL unit of that type follows any start code in the access unit
+   */
+  public static boolean contains(byte[] accessUnit, int nalType) {
+    // A 4-byte start code ends with the same 3 bytes, so matching 00 00 01 covers both
+    for (int i = 0; i + 3 < accessUnit.length; i++) {
+      if (accessUnit[i] == 0 && accessUnit[i + 1] == 0 && accessUnit[i + 2] == 1) {
+        if ((accessUnit[i + 3] & 0x1F) == nalType) {
+          return true;
+        }
+        i += 2;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Like {@link #contains(byte[], int)}, for the remaining bytes of a buffer without copying them.
+   */
+  public static boolean contains(ByteBuffer data, int nalType) {
+    int limit = data.limit();
+    for (int i = data.position(); i + 3 < limit; i++) {
+      if (data.get(i) == 0 && data.get(i + 1) == 0 && data.get(i + 2) == 1) {
+        if ((data.get(i + 3) & 0x1F) == nalType) {
+          return true;
+        }
+        i += 2;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,34 @@
+package space.hajnal.sentinel.codec;
+
+import space.hajnal.sentinel.network.model.FrameMarking;
+
+/**
+ * Assigns temporal layers to the access units of one stream, based on what the bitstream
+ * actually references.
+ * <p>
+ * Frames used for reference form the base layer 0. Non-reference frames are layer 1 and are marked
+ * discardable. The OpenH264 and x264 wrappers in FFmpeg cannot build hierarchical P-frame
+ * structures such as L1T3, and with baseline profile every frame is a reference frame, so
+ * {@link H264Encoder} streams are a single layer. Receivers therefore do not drop layers, the
+ * marking only tells frame boundaries and keyframes apart, e.g. for the relay.
+ * Not thread-safe, one marker per stream.
+ */
+public class TemporalLayerMarker {
+
+  private int tl0PicIndex = -1;
+
+  public FrameMarking mark(byte[] accessUnit) {
+    boolean discardable = NalUnits.isDiscardable(accessUnit);
+    int temporalId = discardable ? 1 : 0;
+    if (temporalId == 0) {
+      tl0PicIndex = (tl0PicIndex + 1) & 0xFF;
+    }
+    return FrameMarking.builder()
+        .independent(NalUnits.isKeyframe(accessUnit))
+        .discardable(discardable)
+        .baseLayerSync(temporalId > 0)
+        .temporalId(temporalId)
+        .tl0PicIndex(Math.max(0, tl0PicIndex))
+        .build();
+  }
+}
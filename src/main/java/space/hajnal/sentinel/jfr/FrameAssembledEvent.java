@@ -0,0 +1,39 @@
+package space.hajnal.sentinel.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Unsigned;
+
+/**
+ * A frame reassembled from its packets, the duration is the reassembly time.
+ */
+@Name("space.hajnal.sentinel.FrameAssembled")
+@Label("Frame Assembled")
+@Category({"Sentinel", "Receiver"})
+@StackTrace(false)
+public class FrameAssembledEvent extends Event {
+
+  @Label("RTP Timestamp")
+  @Unsigned
+  public long timestamp;
+
+  @Label("First Sequence Number")
+  public int firstSequenceNumber;
+
+  @Label("Last Sequence Number")
+  public int lastSequenceNumber;
+
+  @Label("Filled Packets")
+  public int filledPackets;
+
+  @Label("Size")
+  @DataAmount
+  public int size;
+
+  @Label("Keyframe")
+  public boolean keyframe;
+}
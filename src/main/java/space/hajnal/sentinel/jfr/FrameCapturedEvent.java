@@ -0,0 +1,33 @@
+package space.hajnal.sentinel.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Unsigned;
+
+/**
+ * A frame grabbed from the camera, the duration is the time blocked in the grab.
+ */
+@Name("space.hajnal.sentinel.FrameCaptured")
+@Label("Frame Captured")
+@Category({"Sentinel", "Capture"})
+@StackTrace(false)
+public class FrameCapturedEvent extends Event {
+
+  @Label("RTP Timestamp")
+  @Unsigned
+  public long timestamp;
+
+  @Label("Width")
+  public int width;
+
+  @Label("Height")
+  public int height;
+
+  @Label("Sequence")
+  @Description("Number of the frame since the capture started")
+  public long frameNumber;
+}
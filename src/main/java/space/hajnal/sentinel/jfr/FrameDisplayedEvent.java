@@ -0,0 +1,30 @@
+package space.hajnal.sentinel.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Unsigned;
+
+/**
+ * A frame decoded and shown, the duration covers decode and display.
+ */
+@Name("space.hajnal.sentinel.FrameDisplayed")
+@Label("Frame Displayed")
+@Category({"Sentinel", "Display"})
+@StackTrace(false)
+public class FrameDisplayedEvent extends Event {
+
+  @Label("RTP Timestamp")
+  @Unsigned
+  public long timestamp;
+
+  @Label("Size")
+  @DataAmount
+  public int size;
+
+  @Label("Decoded")
+  public boolean decoded;
+}
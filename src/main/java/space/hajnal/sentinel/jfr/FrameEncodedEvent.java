@@ -0,0 +1,34 @@
+package space.hajnal.sentinel.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A raw frame encoded into an H.264 access unit, the duration is the encode time.
+ */
+@Name("space.hajnal.sentinel.FrameEncoded")
+@Label("Frame Encoded")
+@Category({"Sentinel", "Codec"})
+@StackTrace(false)
+public class FrameEncodedEvent extends Event {
+
+  @Label("Width")
+  public int width;
+
+  @Label("Height")
+  public int height;
+
+  @Label("Encoded Size")
+  @DataAmount
+  public int encodedSize;
+
+  @Label("Keyframe")
+  public boolean keyframe;
+
+  @Label("Forced Keyframe")
+  public boolean forcedKeyframe;
+}
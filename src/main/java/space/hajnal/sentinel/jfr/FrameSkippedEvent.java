@@ -0,0 +1,34 @@
+package space.hajnal.sentinel.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Unsigned;
+
+/**
+ * A frame that could not be assembled because packets were missing.
+ */
+@Name("space.hajnal.sentinel.FrameSkipped")
+@Label("Frame Skipped")
+@Category({"Sentinel", "Receiver"})
+@StackTrace(false)
+public class FrameSkippedEvent extends Event {
+
+  @Label("RTP Timestamp")
+  @Unsigned
+  public long timestamp;
+
+  @Label("First Sequence Number")
+  public int firstSequenceNumber;
+
+  @Label("Last Sequence Number")
+  public int lastSequenceNumber;
+
+  @Label("Missing Sequence Number")
+  public int missingSequenceNumber;
+
+  @Label("Received Packets")
+  public int receivedPackets;
+}
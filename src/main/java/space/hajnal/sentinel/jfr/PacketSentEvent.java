@@ -0,0 +1,41 @@
+package space.hajnal.sentinel.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Unsigned;
+
+/**
+ * An RTP packet handed to the socket, the duration is the time spent in the send call.
+ * <p>
+ * Disabled by default, there is one per packet.
+ */
+@Name("space.hajnal.sentinel.PacketSent")
+@Label("Packet Sent")
+@Category({"Sentinel", "Network"})
+@Enabled(false)
+@StackTrace(false)
+public class PacketSentEvent extends Event {
+
+  @Label("SSRC")
+  @Unsigned
+  public long ssrc;
+
+  @Label("RTP Timestamp")
+  @Unsigned
+  public long timestamp;
+
+  @Label("Sequence Number")
+  public int sequenceNumber;
+
+  @Label("Size")
+  @DataAmount
+  public int size;
+
+  @Label("Marker")
+  public boolean marker;
+}
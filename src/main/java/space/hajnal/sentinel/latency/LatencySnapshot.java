@@ -0,0 +1,25 @@
+package space.hajnal.sentinel.latency;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Percentiles of one latency histogram at the time of the snapshot, in microseconds.
+ */
+@Builder
+@Data
+public class LatencySnapshot {
+
+  private final String name;
+  private final long count;
+  private final long p50Micros;
+  private final long p99Micros;
+  private final long p999Micros;
+  private final long maxMicros;
+
+  @Override
+  public String toString() {
+    return String.format("%s[count=%d, p50=%.2fms, p99=%.2fms, p99.9=%.2fms, max=%.2fms]", name,
+        count, p50Micros / 1000.0, p99Micros / 1000.0, p999Micros / 1000.0, maxMicros / 1000.0);
+  }
+}
@@ -0,0 +1,29 @@
+package space.hajnal.sentinel.latency;
+
+/**
+ * The points in a frame's life between the camera and the screen, in pipeline order.
+ */
+public enum LatencyStage {
+
+  CAPTURED("capture"),
+  ENCODED("encode"),
+  PACKETIZED("packetize"),
+  SENT("send"),
+  FIRST_PACKET_RECEIVED("network"),
+  FRAME_COMPLETE("reassembly"),
+  DECODED("decode"),
+  DISPLAYED("display");
+
+  /**
+   * What the time spent reaching this stage from the previous one is called.
+   */
+  private final String interval;
+
+  LatencyStage(String interval) {
+    this.interval = interval;
+  }
+
+  public String getInterval() {
+    return interval;
+  }
+}
@@ -0,0 +1,220 @@
+package space.hajnal.sentinel.latency;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+import lombok.Getter;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import space.hajnal.sentinel.network.model.CaptureTime;
+
+/**
+ * Glass-to-glass latency of one stream, broken down by {@link LatencyStage}.
+ * <p>
+ * Each stage marks the frames it handles by RTP timestamp. The time since the frame's previous
+ * marked stage goes into the stage's HDR histogram, and the time from capture to display into the
+ * glass-to-glass histogram. Recording is wait-free, so no stage ever blocks on another stage or on
+ * a snapshot.
+ * <p>
+ * Sender and receiver in one JVM share a tracker. A receiver in another process learns the capture
+ * time from the {@link CaptureTime} header extension, which assumes that the wall clocks of both
+ * hosts are synchronized, e.g. by NTP.
+ */
+public class LatencyTracker {
+
+  private static final LatencyStage[] STAGES = LatencyStage.values();
+  private static final long UNSET = Long.MIN_VALUE;
+  private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+  private static final int SIGNIFICANT_DIGITS = 3;
+  // Lost or filtered frames never reach the display, they are forgotten after a while
+  private static final int MAX_TRACKED_FRAMES = 256;
+  private static final long MAX_FRAME_AGE_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+  @Getter
+  private final String name;
+  private final LongSupplier nanoTime;
+  // Wall clock minus monotonic clock, converts capture times from and to the header extension
+  private final long epochOffsetNanos;
+  private final Map<Long, FrameTimings> frames = new ConcurrentHashMap<>();
+  private final LatencyHistogram[] stageHistograms = new LatencyHistogram[STAGES.length];
+  private final LatencyHistogram glassToGlass = new LatencyHistogram("glass-to-glass");
+
+  public LatencyTracker(String name) {
+    this(name, System::nanoTime, LatencyTracker::epochNanos);
+  }
+
+  /**
+   * @param nanoTime   The monotonic clock in nanoseconds
+   * @param epochNanos The wall clock in nanoseconds since the Unix epoch
+   */
+  public LatencyTracker(String name, LongSupplier nanoTime, LongSupplier epochNanos) {
+    this.name = name;
+    this.nanoTime = nanoTime;
+    this.epochOffsetNanos = epochNanos.getAsLong() - nanoTime.getAsLong();
+    for (LatencyStage stage : STAGES) {
+      stageHistograms[stage.ordinal()] = new LatencyHistogram(stage.getInterval());
+    }
+  }
+
+  /**
+   * Marks that a frame reached a stage now. Only the first mark of a stage counts, e.g. the first
+   * received packet of a frame.
+   *
+   * @param timestamp The RTP timestamp of the frame
+   */
+  public void mark(long timestamp, LatencyStage stage) {
+    mark(timestamp, stage, nanoTime.getAsLong());
+  }
+
+  /**
+   * Marks the capture of a frame that was captured in another process.
+   *
+   * @param epochNanos The capture time from the frame's {@link CaptureTime}
+   */
+  public void markCaptured(long timestamp, long epochNanos) {
+    mark(timestamp, LatencyStage.CAPTURED, epochNanos - epochOffsetNanos);
+  }
+
+  /**
+   * @return The wall clock time the frame was captured, or -1 if its capture was not marked
+   */
+  public long getCaptureEpochNanos(long timestamp) {
+    FrameTimings timings = frames.get(timestamp);
+    long captured = timings == null ? UNSET : timings.get(LatencyStage.CAPTURED);
+    return captured == UNSET ? -1 : captured + epochOffsetNanos;
+  }
+
+  private void mark(long timestamp, LatencyStage stage, long nanos) {
+    FrameTimings timings = frames.get(timestamp);
+    if (timings == null) {
+      timings = frames.computeIfAbsent(timestamp, _ -> new FrameTimings(nanoTime.getAsLong()));
+      if (frames.size() > MAX_TRACKED_FRAMES) {
+        evictStaleFrames();
+      }
+    }
+    if (!timings.set(stage, nanos)) {
+      return;
+    }
+
+    for (int previous = stage.ordinal() - 1; previous >= 0; previous--) {
+      long previousNanos = timings.get(STAGES[previous]);
+      if (previousNanos != UNSET) {
+        stageHistograms[stage.ordinal()].record(nanos - previousNanos);
+        break;
+      }
+    }
+    if (stage == LatencyStage.DISPLAYED) {
+      long captured = timings.get(LatencyStage.CAPTURED);
+      if (captured != UNSET) {
+        glassToGlass.record(nanos - captured);
+      }
+      frames.remove(timestamp);
+    }
+  }
+
+  private void evictStaleFrames() {
+    long now = nanoTime.getAsLong();
+    frames.values().removeIf(timings -> now - timings.createdNanos > MAX_FRAME_AGE_NANOS);
+  }
+
+  /**
+   * @return The time spent reaching the stage from the frame's previous marked stage
+   */
+  public LatencySnapshot snapshot(LatencyStage stage) {
+    return stageHistograms[stage.ordinal()].snapshot();
+  }
+
+  /**
+   * @return The time from capture to display
+   */
+  public LatencySnapshot glassToGlass() {
+    return glassToGlass.snapshot();
+  }
+
+  /**
+   * @return Every stage after capture in pipeline order, then glass-to-glass
+   */
+  public List<LatencySnapshot> snapshot() {
+    List<LatencySnapshot> snapshots = new ArrayList<>(STAGES.length);
+    for (int stage = 1; stage < STAGES.length; stage++) {
+      snapshots.add(stageHistograms[stage].snapshot());
+    }
+    snapshots.add(glassToGlass.snapshot());
+    return snapshots;
+  }
+
+  int getTrackedFrames() {
+    return frames.size();
+  }
+
+  @Override
+  public String toString() {
+    return name + snapshot();
+  }
+
+  private static long epochNanos() {
+    Instant now = Instant.now();
+    return TimeUnit.SECONDS.toNanos(now.getEpochSecond()) + now.getNano();
+  }
+
+  private static final class FrameTimings {
+
+    private final long createdNanos;
+    private final AtomicLongArray nanos = new AtomicLongArray(STAGES.length);
+
+    private FrameTimings(long createdNanos) {
+      this.createdNanos = createdNanos;
+      for (int i = 0; i < STAGES.length; i++) {
+        nanos.set(i, UNSET);
+      }
+    }
+
+    private long get(LatencyStage stage) {
+      return nanos.get(stage.ordinal());
+    }
+
+    private boolean set(LatencyStage stage, long value) {
+      return nanos.compareAndSet(stage.ordinal(), UNSET, value);
+    }
+  }
+
+  /**
+   * A wait-free {@link Recorder} for the writers and the accumulated total for snapshots.
+   */
+  private static final class LatencyHistogram {
+
+    private final String name;
+    private final Recorder recorder = new Recorder(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS);
+    private final Histogram total = new Histogram(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS);
+
+    private LatencyHistogram(String name) {
+      this.name = name;
+    }
+
+    private void record(long nanos) {
+      // Clock skew between hosts can make a delta negative
+      recorder.recordValue(Math.clamp(nanos, 0, HIGHEST_TRACKABLE_NANOS));
+    }
+
+    private synchronized LatencySnapshot snapshot() {
+      total.add(recorder.getIntervalHistogram());
+      return LatencySnapshot.builder()
+          .name(name)
+          .count(total.getTotalCount())
+          .p50Micros(toMicros(total.getValueAtPercentile(50)))
+          .p99Micros(toMicros(total.getValueAtPercentile(99)))
+          .p999Micros(toMicros(total.getValueAtPercentile(99.9)))
+          .maxMicros(toMicros(total.getMaxValue()))
+          .build();
+    }
+
+    private static long toMicros(long nanos) {
+      return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+  }
+}
@@ -0,0 +1,319 @@
+package space.hajnal.sentinel.load;
+
+import com.sun.management.OperatingSystemMXBean;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.slf4j.Slf4j;
+import space.hajnal.sentinel.camera.RTPClock;
+import space.hajnal.sentinel.codec.EncodedFrameCache;
+import space.hajnal.sentinel.latency.LatencySnapshot;
+import space.hajnal.sentinel.latency.LatencyStage;
+import space.hajnal.sentinel.latency.LatencyTracker;
+import space.hajnal.sentinel.metrics.StreamMetrics;
+import space.hajnal.sentinel.network.RTPStreamReader;
+import space.hajnal.sentinel.network.model.SerialNumbers;
+import space.hajnal.sentinel.network.model.ServerOptions;
+import space.hajnal.sentinel.network.receiver.RTPSocketReceiver;
+import space.hajnal.sentinel.network.sender.RTPSocketSender;
+import space.hajnal.sentinel.network.serialization.RTPPacketDeserializer;
+import space.hajnal.sentinel.network.serialization.RTPPacketSerializer;
+import space.hajnal.sentinel.network.video.FrameProcessor;
+import space.hajnal.sentinel.network.video.VideoStreamProcessor;
+
+/**
+ * Loads a machine with many synthetic cameras, to find out how many streams it receives before
+ * latency or loss degrades.
+ * <p>
+ * Each stream replays a generated GOP ({@link EncodedFrameCache#synthetic}) at the frame rate
+ * through its own {@link RTPSocketSender} and SSRC to its own port on loopback. There an
+ * {@link RTPStreamReader} and a {@link VideoStreamProcessor} assemble the frames as in production.
+ * A processor assembles a single stream, so every stream has a receive path of its own: the
+ * result is how many independent receivers one machine runs, not the capacity of one receiver.
+ * The streams are spread evenly over the frame interval, like independent cameras. Sender and
+ * receiver of a stream share a {@link LatencyTracker}, so latency is measured on one clock.
+ * <p>
+ * The senders run in the same process, their share of the CPU is reported separately.
+ */
+@Slf4j
+public class LoadGenerator {
+
+  // Frames still in flight when sending stops get this long to be assembled
+  private static final long DRAIN_MILLIS = 1000;
+  private static final long HEAP_SAMPLE_MILLIS = 250;
+
+  private final LoadGeneratorOptions options;
+  private final long frameIntervalNanos;
+  private final OperatingSystemMXBean os =
+      (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+  private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+  private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+  private final List<Thread> senderThreads = new CopyOnWriteArrayList<>();
+  private final AtomicLong heapUsedPeak = new AtomicLong();
+  private long startNanos;
+  private long cpuStartNanos;
+  private long gcCountStart;
+  private long gcMillisStart;
+
+  public LoadGenerator(LoadGeneratorOptions options) {
+    this.options = options;
+    this.frameIntervalNanos = TimeUnit.SECONDS.toNanos(1) / options.getFrameRate();
+  }
+
+  /**
+   * Sends for the configured duration, logging the results so far at every report interval.
+   *
+   * @return The results over the whole duration
+   */
+  public LoadReport run() throws IOException, InterruptedException {
+    EncodedFrameCache accessUnits = generateGop();
+    ScheduledExecutorService assembly = Executors.newScheduledThreadPool(
+        Runtime.getRuntime().availableProcessors());
+    ExecutorService readers = Executors.newVirtualThreadPerTaskExecutor();
+    ScheduledExecutorService pacer = Executors.newScheduledThreadPool(options.getSenderThreads(),
+        task -> {
+          Thread thread = new Thread(task, "load-sender-" + senderThreads.size());
+          senderThreads.add(thread);
+          return thread;
+        });
+    ScheduledExecutorService monitor = Executors.newSingleThreadScheduledExecutor();
+    List<SyntheticStream> streams = new ArrayList<>(options.getStreams());
+    SplittableRandom random = new SplittableRandom(options.getSeed());
+    try {
+      for (int i = 0; i < options.getStreams(); i++) {
+        streams.add(new SyntheticStream(i, accessUnits, random.nextLong(SerialNumbers.TIMESTAMP_MASK + 1), assembly,
+            readers));
+      }
+
+      startNanos = System.nanoTime();
+      cpuStartNanos = os.getProcessCpuTime();
+      gcCountStart = gcCount();
+      gcMillisStart = gcMillis();
+      for (int i = 0; i < streams.size(); i++) {
+        pacer.scheduleAtFixedRate(streams.get(i)::sendNextFrame,
+            i * frameIntervalNanos / streams.size(), frameIntervalNanos, TimeUnit.NANOSECONDS);
+      }
+      monitor.scheduleAtFixedRate(this::sampleHeap, 0, HEAP_SAMPLE_MILLIS,
+          TimeUnit.MILLISECONDS);
+      long reportMillis = options.getReportInterval().toMillis();
+      monitor.scheduleAtFixedRate(() -> log.info("Load so far: {}{}", System.lineSeparator(),
+              report(streams, System.nanoTime() - startNanos, os.getProcessCpuTime(),
+                  senderCpuNanos())),
+          reportMillis, reportMillis, TimeUnit.MILLISECONDS);
+
+      Thread.sleep(options.getDuration().toMillis());
+      // Rates are over the sending time, the sender threads must still be alive to be measured
+      long elapsedNanos = System.nanoTime() - startNanos;
+      long cpuNanos = os.getProcessCpuTime();
+      long senderCpuNanos = senderCpuNanos();
+      pacer.shutdownNow();
+      Thread.sleep(DRAIN_MILLIS);
+      return report(streams, elapsedNanos, cpuNanos, senderCpuNanos);
+    } finally {
+      monitor.shutdownNow();
+      pacer.shutdownNow();
+      streams.forEach(SyntheticStream::close);
+      // The readers leave their processing threads waiting for packets
+      readers.shutdownNow();
+      assembly.shutdownNow();
+    }
+  }
+
+  private EncodedFrameCache generateGop() {
+    int gopLength = options.getGopLength();
+    long gopBytes = (long) options.getBitRate() / 8 * gopLength / options.getFrameRate();
+    int deltaFrameBytes = (int) (gopBytes / (gopLength - 1 + options.getKeyframeRatio()));
+    return EncodedFrameCache.synthetic(gopLength, deltaFrameBytes * options.getKeyframeRatio(),
+        deltaFrameBytes, options.getSeed());
+  }
+
+  private LoadReport report(List<SyntheticStream> streams, long elapsedNanos, long cpuNanos,
+      long senderCpuNanos) {
+    long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+    List<StreamLoad> loads = streams.stream().map(stream -> stream.load(elapsedMillis)).toList();
+    StreamLoad total = StreamLoad.builder()
+        .stream("total")
+        .elapsedMillis(elapsedMillis)
+        .framesSent(loads.stream().mapToLong(StreamLoad::getFramesSent).sum())
+        .framesDelivered(loads.stream().mapToLong(StreamLoad::getFramesDelivered).sum())
+        .framesSkipped(loads.stream().mapToLong(StreamLoad::getFramesSkipped).sum())
+        .packetsReceived(loads.stream().mapToLong(StreamLoad::getPacketsReceived).sum())
+        .bytesReceived(loads.stream().mapToLong(StreamLoad::getBytesReceived).sum())
+        .latencyP50Micros(loads.stream().mapToLong(StreamLoad::getLatencyP50Micros).max()
+            .orElse(0))
+        .latencyP99Micros(loads.stream().mapToLong(StreamLoad::getLatencyP99Micros).max()
+            .orElse(0))
+        .latencyMaxMicros(loads.stream().mapToLong(StreamLoad::getLatencyMaxMicros).max()
+            .orElse(0))
+        .build();
+    return LoadReport.builder()
+        .elapsedMillis(elapsedMillis)
+        .streams(loads)
+        .total(total)
+        .cpuCores(elapsedNanos == 0 ? 0 : (double) (cpuNanos - cpuStartNanos) / elapsedNanos)
+        .senderCpuCores(elapsedNanos == 0 ? 0 : (double) senderCpuNanos / elapsedNanos)
+        .heapUsedPeakBytes(heapUsedPeak.get())
+        .gcCount(gcCount() - gcCountStart)
+        .gcMillis(gcMillis() - gcMillisStart)
+        .build();
+  }
+
+  private void sampleHeap() {
+    heapUsedPeak.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+  }
+
+  private long senderCpuNanos() {
+    long nanos = 0;
+    for (Thread thread : senderThreads) {
+      // -1 once a thread has terminated
+      nanos += Math.max(0, threads.getThreadCpuTime(thread.threadId()));
+    }
+    return nanos;
+  }
+
+  private static long gcCount() {
+    return ManagementFactory.getGarbageCollectorMXBeans().stream()
+        .mapToLong(GarbageCollectorMXBean::getCollectionCount).filter(count -> count > 0).sum();
+  }
+
+  private static long gcMillis() {
+    return ManagementFactory.getGarbageCollectorMXBeans().stream()
+        .mapToLong(GarbageCollectorMXBean::getCollectionTime).filter(millis -> millis > 0).sum();
+  }
+
+  /**
+   * Runs a load test against receivers in this process.
+   * <p>
+   * Usage: {@code LoadGenerator [<streams> [<seconds> [<kbit/s per stream>]]]}
+   */
+  public static void main(String[] args) throws Exception {
+    LoadGeneratorOptions.LoadGeneratorOptionsBuilder options = LoadGeneratorOptions.builder();
+    if (args.length > 0) {
+      options.streams(Integer.parseInt(args[0]));
+    }
+    if (args.length > 1) {
+      options.duration(Duration.ofSeconds(Long.parseLong(args[1])));
+    }
+    if (args.length > 2) {
+      options.bitRate(Integer.parseInt(args[2]) * 1000);
+    }
+    LoadReport report = new LoadGenerator(options.build()).run();
+    log.info("Load test finished: {}{}", System.lineSeparator(), report);
+  }
+
+  /**
+   * One synthetic camera and the receiver for it.
+   */
+  private final class SyntheticStream implements AutoCloseable {
+
+    private final String name;
+    private final long ssrc;
+    private final EncodedFrameCache accessUnits;
+    private final RTPClock clock;
+    private final LatencyTracker tracker;
+    private final StreamMetrics metrics;
+    private final VideoStreamProcessor processor;
+    private final RTPStreamReader reader;
+    private final RTPSocketSender sender;
+    private final LongAdder framesSent = new LongAdder();
+    private final LongAdder framesDelivered = new LongAdder();
+    private long frameIndex = 0;
+    private long lastSentNanos = System.nanoTime() - frameIntervalNanos;
+
+    /**
+     * @param timestampOffset Where the stream's RTP timestamps start, anywhere in 32 bits like a
+     *                        camera's
+     */
+    private SyntheticStream(int index, EncodedFrameCache accessUnits, long timestampOffset,
+        ScheduledExecutorService assembly, ExecutorService readers) throws IOException {
+      this.name = "camera-" + index;
+      this.ssrc = options.getFirstSsrc() + index;
+      this.accessUnits = accessUnits;
+      this.clock = new RTPClock(RTPClock.VIDEO_CLOCK_RATE, timestampOffset, System::nanoTime);
+      this.tracker = new LatencyTracker(name);
+      this.metrics = new StreamMetrics(name);
+
+      processor = new VideoStreamProcessor(new FrameProcessor(), options.getFrameRate(),
+          assembly);
+      processor.setLatencyTracker(tracker);
+      processor.setStreamMetrics(metrics);
+      processor.setAssemblyObserver(frame -> {
+        // Nothing decodes or displays the frames, assembly is the end of the line
+        tracker.mark(frame.getTimestamp(), LatencyStage.DISPLAYED);
+        framesDelivered.increment();
+      });
+      RTPSocketReceiver receiver = new RTPSocketReceiver(
+          ServerOptions.builder().mtu(options.getMtu()).build(), new RTPPacketDeserializer(), 0);
+      receiver.setStreamMetrics(metrics);
+      reader = new RTPStreamReader(processor, receiver, readers);
+      DatagramSocket receiverSocket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+      reader.start(receiverSocket);
+
+      sender = new RTPSocketSender(ServerOptions.builder()
+          .serverAddress(receiverSocket.getLocalAddress().getHostAddress())
+          .serverPort(receiverSocket.getLocalPort())
+          .mtu(options.getMtu())
+          .ssrc(ssrc)
+          .build(), null, new RTPPacketSerializer(), new FrameProcessor());
+      sender.setLatencyTracker(tracker);
+      sender.open(new DatagramSocket());
+    }
+
+    private void sendNextFrame() {
+      long now = System.nanoTime();
+      if (now - lastSentNanos < frameIntervalNanos / 2) {
+        // A late run is followed by runs catching up, but a camera does not burst frames
+        return;
+      }
+      lastSentNanos = now;
+      try {
+        long timestamp = clock.toTimestamp(now);
+        tracker.mark(timestamp, LatencyStage.CAPTURED);
+        sender.sendFrameData(accessUnits.get(frameIndex++), timestamp);
+        framesSent.increment();
+      } catch (RuntimeException e) {
+        // An exception would cancel the periodic task and silently end the stream
+        log.error("Failed to send a frame of {}", name, e);
+      }
+    }
+
+    private StreamLoad load(long elapsedMillis) {
+      LatencySnapshot latency = tracker.glassToGlass();
+      return StreamLoad.builder()
+          .stream(name)
+          .ssrc(ssrc)
+          .elapsedMillis(elapsedMillis)
+          .framesSent(framesSent.sum())
+          .framesDelivered(framesDelivered.sum())
+          .framesSkipped(metrics.getFramesSkipped())
+          .packetsReceived(metrics.getPacketsReceived())
+          .bytesReceived(metrics.getBytesReceived())
+          .latencyP50Micros(latency.getP50Micros())
+          .latencyP99Micros(latency.getP99Micros())
+          .latencyMaxMicros(latency.getMaxMicros())
+          .build();
+    }
+
+    @Override
+    public void close() {
+      sender.close();
+      reader.close();
+      processor.close();
+    }
+  }
+}
@@ -0,0 +1,55 @@
+package space.hajnal.sentinel.load;
+
+import java.time.Duration;
+import lombok.Builder;
+import lombok.Data;
+import space.hajnal.sentinel.codec.H264Encoder;
+
+@Builder(toBuilder = true)
+@Data
+public class LoadGeneratorOptions {
+
+  /**
+   * The number of simulated cameras, each with its own SSRC and receiver port.
+   */
+  @Builder.Default
+  private final int streams = 4;
+  @Builder.Default
+  private final int frameRate = 30;
+  /**
+   * The bit rate of each stream.
+   */
+  @Builder.Default
+  private final int bitRate = 2_000_000;
+  /**
+   * Frames from one keyframe to the next.
+   */
+  @Builder.Default
+  private final int gopLength = H264Encoder.KEYFRAME_INTERVAL;
+  /**
+   * How many times larger a keyframe is than a P-frame.
+   */
+  @Builder.Default
+  private final int keyframeRatio = 8;
+  @Builder.Default
+  private final int mtu = 1400;
+  @Builder.Default
+  private final Duration duration = Duration.ofMinutes(1);
+  /**
+   * How often the results so far are logged during the run.
+   */
+  @Builder.Default
+  private final Duration reportInterval = Duration.ofSeconds(10);
+  /**
+   * The SSRC of the first stream, the others count up from it.
+   */
+  @Builder.Default
+  private final long firstSsrc = 100_000;
+  /**
+   * Threads pacing and sending the streams, a few are enough for hundreds of streams.
+   */
+  @Builder.Default
+  private final int senderThreads = 2;
+  @Builder.Default
+  private final long seed = 42;
+}
@@ -0,0 +1,47 @@
+package space.hajnal.sentinel.load;
+
+import java.util.List;
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * The outcome of a {@link LoadGenerator} run so far, per stream and for all receivers together.
+ * Each stream has a receiver of its own, so the totals describe the machine, not one receiver.
+ */
+@Builder
+@Data
+public class LoadReport {
+
+  private final long elapsedMillis;
+  private final List<StreamLoad> streams;
+  /**
+   * The sums over all streams. Its latency percentiles are those of the worst stream, which is
+   * what limits capacity.
+   */
+  private final StreamLoad total;
+  /**
+   * CPU time of the whole process per second of the run, 1.0 is one core fully busy.
+   */
+  private final double cpuCores;
+  /**
+   * The part of {@link #cpuCores} spent generating and sending the load, not receiving it.
+   */
+  private final double senderCpuCores;
+  /**
+   * The highest heap usage seen, sampled several times a second.
+   */
+  private final long heapUsedPeakBytes;
+  private final long gcCount;
+  private final long gcMillis;
+
+  @Override
+  public String toString() {
+    StringBuilder report = new StringBuilder(String.format(
+        "%d streams for %.1f s, CPU %.2f cores (senders %.2f), heap peak %d MB, GC %d in %d ms",
+        streams.size(), elapsedMillis / 1000.0, cpuCores, senderCpuCores,
+        heapUsedPeakBytes >> 20, gcCount, gcMillis));
+    report.append(System.lineSeparator()).append(StreamLoad.header());
+    streams.forEach(stream -> report.append(System.lineSeparator()).append(stream));
+    return report.append(System.lineSeparator()).append(total).toString();
+  }
+}
@@ -0,0 +1,62 @@
+package space.hajnal.sentinel.load;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * What one stream of a {@link LoadGenerator} run sent and what the receiver made of it.
+ */
+@Builder
+@Data
+public class StreamLoad {
+
+  private final String stream;
+  private final long ssrc;
+  private final long elapsedMillis;
+  private final long framesSent;
+  /**
+   * Frames assembled by the receiver, in time for playout.
+   */
+  private final long framesDelivered;
+  /**
+   * Frames the receiver gave up on because packets were missing.
+   */
+  private final long framesSkipped;
+  private final long packetsReceived;
+  private final long bytesReceived;
+  /**
+   * Time from handing a frame to the sender until the receiver assembled it.
+   */
+  private final long latencyP50Micros;
+  private final long latencyP99Micros;
+  private final long latencyMaxMicros;
+
+  /**
+   * @return The share of sent frames that were delivered
+   */
+  public double getCompleteness() {
+    return framesSent == 0 ? 0 : Math.min(1, (double) framesDelivered / framesSent);
+  }
+
+  public double getMegabitsPerSecond() {
+    return elapsedMillis == 0 ? 0 : bytesReceived * 8.0 / elapsedMillis / 1000;
+  }
+
+  public double getFramesPerSecond() {
+    return elapsedMillis == 0 ? 0 : framesDelivered * 1000.0 / elapsedMillis;
+  }
+
+  public static String header() {
+    return String.format("%-12s %10s %8s %8s %8s %8s %8s %8s %8s %8s", "stream", "ssrc", "sent",
+        "complete", "skipped", "fps", "Mbit/s", "p50ms", "p99ms", "maxms");
+  }
+
+  @Override
+  public String toString() {
+    // The total of several streams has no SSRC
+    return String.format("%-12s %10s %8d %7.2f%% %8d %8.1f %8.2f %8.1f %8.1f %8.1f", stream,
+        ssrc == 0 ? "" : String.valueOf(ssrc), framesSent, getCompleteness() * 100, framesSkipped,
+        getFramesPerSecond(), getMegabitsPerSecond(), latencyP50Micros / 1000.0,
+        latencyP99Micros / 1000.0, latencyMaxMicros / 1000.0);
+  }
+}
@@ -0,0 +1,62 @@
+package space.hajnal.sentinel.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Serves {@link MetricsRegistry#scrape()} at {@code /metrics} from the JDK's built-in HTTP
+ * server.
+ */
+@Slf4j
+public class MetricsHttpServer implements AutoCloseable {
+
+  private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+  private final HttpServer server;
+
+  /**
+   * Starts serving right away.
+   *
+   * @param address The address to listen on, port 0 picks a free port
+   */
+  public MetricsHttpServer(MetricsRegistry registry, InetSocketAddress address)
+      throws IOException {
+    server = HttpServer.create(address, 0);
+    server.createContext("/metrics", exchange -> respond(exchange, registry.scrape()));
+    server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    server.start();
+    log.info("Serving metrics at http://{}:{}/metrics", address.getHostString(),
+        server.getAddress().getPort());
+  }
+
+  private static void respond(HttpExchange exchange, String body) throws IOException {
+    try (exchange) {
+      if (!"GET".equals(exchange.getRequestMethod())) {
+        exchange.sendResponseHeaders(405, -1);
+        return;
+      }
+      byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+      // A length of 0 would mean a chunked body, -1 means none
+      exchange.sendResponseHeaders(200, bytes.length == 0 ? -1 : bytes.length);
+      try (OutputStream output = exchange.getResponseBody()) {
+        output.write(bytes);
+      }
+    }
+  }
+
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+  }
+}
@@ -0,0 +1,95 @@
+package space.hajnal.sentinel.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Publishes {@link StreamMetrics} as JMX MBeans and renders them as plain text for scraping.
+ */
+@Slf4j
+public class MetricsRegistry {
+
+  public static final String DOMAIN = "space.hajnal.sentinel";
+  private static final String PREFIX = "sentinel_";
+
+  private final MBeanServer mBeanServer;
+  private final Map<String, StreamMetrics> streams = new ConcurrentHashMap<>();
+
+  public MetricsRegistry() {
+    this(ManagementFactory.getPlatformMBeanServer());
+  }
+
+  public MetricsRegistry(MBeanServer mBeanServer) {
+    this.mBeanServer = mBeanServer;
+  }
+
+  /**
+   * Registers the metrics of a stream, replacing an earlier stream of the same name.
+   */
+  public void register(StreamMetrics metrics) {
+    unregister(metrics.getStream());
+    try {
+      mBeanServer.registerMBean(metrics, objectName(metrics.getStream()));
+    } catch (JMException e) {
+      throw new IllegalStateException("Failed to register metrics of " + metrics.getStream(), e);
+    }
+    streams.put(metrics.getStream(), metrics);
+  }
+
+  public void unregister(String stream) {
+    if (streams.remove(stream) == null) {
+      return;
+    }
+    try {
+      mBeanServer.unregisterMBean(objectName(stream));
+    } catch (JMException e) {
+      log.warn("Failed to unregister metrics of {}", stream, e);
+    }
+  }
+
+  /**
+   * @return The registered streams ordered by name
+   */
+  public List<StreamMetrics> getStreams() {
+    return streams.values().stream()
+        .sorted(Comparator.comparing(StreamMetrics::getStream))
+        .toList();
+  }
+
+  public static ObjectName objectName(String stream) throws JMException {
+    return new ObjectName(DOMAIN + ":type=Stream,name=" + ObjectName.quote(stream));
+  }
+
+  /**
+   * Renders every stream in the Prometheus text exposition format.
+   */
+  public String scrape() {
+    StringBuilder out = new StringBuilder();
+    List<StreamMetrics> snapshot = getStreams();
+    if (snapshot.isEmpty()) {
+      return "";
+    }
+    List<Map<String, Number>> values = snapshot.stream().map(StreamMetrics::values).toList();
+    for (String name : values.getFirst().keySet()) {
+      out.append("# TYPE ").append(PREFIX).append(name)
+          .append(name.endsWith("_total") ? " counter" : " gauge").append('\n');
+      for (int i = 0; i < snapshot.size(); i++) {
+        out.append(PREFIX).append(name).append("{stream=\"")
+            .append(escape(snapshot.get(i).getStream())).append("\"} ")
+            .append(values.get(i).get(name)).append('\n');
+      }
+    }
+    return out.toString();
+  }
+
+  private static String escape(String label) {
+    return label.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+}
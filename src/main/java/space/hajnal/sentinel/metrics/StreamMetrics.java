@@ -0,0 +1,169 @@
+package space.hajnal.sentinel.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.IntSupplier;
+import lombok.Getter;
+
+/**
+ * Counters and gauges of one stream, cheap enough to update for every packet.
+ * <p>
+ * Counters are striped {@link LongAdder}s, so the receive, assembly and send threads never contend
+ * on a lock or a shared cache line. Gauges are read from their owner only when the metrics are
+ * read, e.g. by JMX or a scrape.
+ */
+public class StreamMetrics implements StreamMetricsMBean {
+
+  @Getter
+  private final String stream;
+  private final LongAdder packetsReceived = new LongAdder();
+  private final LongAdder bytesReceived = new LongAdder();
+  private final LongAdder packetsSent = new LongAdder();
+  private final LongAdder bytesSent = new LongAdder();
+  private final LongAdder sendErrors = new LongAdder();
+  private final LongAdder framesAssembled = new LongAdder();
+  private final LongAdder framesSkipped = new LongAdder();
+  private final LongAdder packetsFilled = new LongAdder();
+  private final LongAdder framesEncoded = new LongAdder();
+  private final LongAdder encodeNanos = new LongAdder();
+  private volatile DoubleSupplier jitterMillis = () -> 0;
+  private volatile IntSupplier receiveQueueDepth = () -> 0;
+
+  public StreamMetrics(String stream) {
+    this.stream = stream;
+  }
+
+  public void recordPacketReceived(int bytes) {
+    packetsReceived.increment();
+    bytesReceived.add(bytes);
+  }
+
+  public void recordPacketSent(int bytes) {
+    packetsSent.increment();
+    bytesSent.add(bytes);
+  }
+
+  public void recordSendError() {
+    sendErrors.increment();
+  }
+
+  public void recordFrameAssembled() {
+    framesAssembled.increment();
+  }
+
+  /**
+   * A frame could not be assembled because of lost packets.
+   */
+  public void recordFrameSkipped() {
+    framesSkipped.increment();
+  }
+
+  /**
+   * A missing packet was replaced by the previous one to complete a frame.
+   */
+  public void recordPacketFilled() {
+    packetsFilled.increment();
+  }
+
+  public void recordEncode(long nanos) {
+    framesEncoded.increment();
+    encodeNanos.add(nanos);
+  }
+
+  public void setJitterGauge(DoubleSupplier jitterMillis) {
+    this.jitterMillis = jitterMillis;
+  }
+
+  public void setReceiveQueueDepthGauge(IntSupplier receiveQueueDepth) {
+    this.receiveQueueDepth = receiveQueueDepth;
+  }
+
+  @Override
+  public long getPacketsReceived() {
+    return packetsReceived.sum();
+  }
+
+  @Override
+  public long getBytesReceived() {
+    return bytesReceived.sum();
+  }
+
+  @Override
+  public long getPacketsSent() {
+    return packetsSent.sum();
+  }
+
+  @Override
+  public long getBytesSent() {
+    return bytesSent.sum();
+  }
+
+  @Override
+  public long getSendErrors() {
+    return sendErrors.sum();
+  }
+
+  @Override
+  public long getFramesAssembled() {
+    return framesAssembled.sum();
+  }
+
+  @Override
+  public long getFramesSkipped() {
+    return framesSkipped.sum();
+  }
+
+  @Override
+  public long getPacketsFilled() {
+    return packetsFilled.sum();
+  }
+
+  @Override
+  public long getFramesEncoded() {
+    return framesEncoded.sum();
+  }
+
+  @Override
+  public double getAverageEncodeMillis() {
+    long count = framesEncoded.sum();
+    return count == 0 ? 0 : (double) encodeNanos.sum() / count / TimeUnit.MILLISECONDS.toNanos(1);
+  }
+
+  @Override
+  public double getJitterMillis() {
+    return jitterMillis.getAsDouble();
+  }
+
+  @Override
+  public int getReceiveQueueDepth() {
+    return receiveQueueDepth.getAsInt();
+  }
+
+  /**
+   * @return Every metric by its exposition name, counters end in {@code _total}
+   */
+  public Map<String, Number> values() {
+    Map<String, Number> values = new LinkedHashMap<>();
+    values.put("packets_received_total", getPacketsReceived());
+    values.put("bytes_received_total", getBytesReceived());
+    values.put("packets_sent_total", getPacketsSent());
+    values.put("bytes_sent_total", getBytesSent());
+    values.put("send_errors_total", getSendErrors());
+    values.put("frames_assembled_total", getFramesAssembled());
+    values.put("frames_skipped_total", getFramesSkipped());
+    values.put("packets_filled_total", getPacketsFilled());
+    values.put("frames_encoded_total", getFramesEncoded());
+    values.put("encode_seconds_total", (double) encodeNanos.sum() / TimeUnit.SECONDS.toNanos(1));
+    values.put("jitter_milliseconds", getJitterMillis());
+    values.put("receive_queue_depth", getReceiveQueueDepth());
+    return values;
+  }
+
+  @Override
+  public String toString() {
+    return stream + values();
+  }
+}
@@ -0,0 +1,33 @@
+package space.hajnal.sentinel.metrics;
+
+/**
+ * The JMX view of {@link StreamMetrics}.
+ */
+public interface StreamMetricsMBean {
+
+  String getStream();
+
+  long getPacketsReceived();
+
+  long getBytesReceived();
+
+  long getPacketsSent();
+
+  long getBytesSent();
+
+  long getSendErrors();
+
+  long getFramesAssembled();
+
+  long getFramesSkipped();
+
+  long getPacketsFilled();
+
+  long getFramesEncoded();
+
+  double getAverageEncodeMillis();
+
+  double getJitterMillis();
+
+  int getReceiveQueueDepth();
+}
@@ -1,25 +1,48 @@
 package space.hajnal.sentinel.network;
 
 import java.net.DatagramSocket;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.ThreadLocalRandom;
 import lombok.extern.slf4j.Slf4j;
+import space.hajnal.sentinel.network.model.RTCPFeedback;
 import space.hajnal.sentinel.network.model.RTPPacket;
-import space.hajnal.sentinel.network.receiver.RTPSocketReceiver;
+import space.hajnal.sentinel.network.receiver.PacketReceiver;
+import space.hajnal.sentinel.network.video.SubscriberOptions;
 import space.hajnal.sentinel.network.video.VideoStreamProcessor;
+import space.hajnal.sentinel.pipeline.FlowSubscription;
+import space.hajnal.sentinel.pipeline.OverflowPolicy;
+import space.hajnal.sentinel.pipeline.StageQueue;
 
+/**
+ * Receives RTP packets and feeds them to the {@link VideoStreamProcessor}.
+ * <p>
+ * The received packets are also published to {@link Flow.Subscriber}s. A subscriber without
+ * demand holds up packet processing, and with it frame reassembly, once its queue is full.
+ */
 @Slf4j
-public class RTPStreamReader implements AutoCloseable {
+public class RTPStreamReader implements Flow.Publisher<RTPPacket>, AutoCloseable {
 
   private final VideoStreamProcessor videoStreamProcessor;
-  private final RTPSocketReceiver RTPSocketReceiver;
+  private final PacketReceiver packetReceiver;
   private final ExecutorService threadPool;
+  private final List<FlowSubscription<RTPPacket>> flowSubscriptions = new CopyOnWriteArrayList<>();
+  private final AtomicLong subscriberCount = new AtomicLong(0);
+  // Identifies this receiver in its RTCP feedback (RFC 3550, section 8)
+  private final long receiverSsrc = ThreadLocalRandom.current().nextLong(0x1_0000_0000L);
 
   public RTPStreamReader(VideoStreamProcessor videoStreamProcessor,
-      RTPSocketReceiver rtpSocketReceiver,
+      PacketReceiver packetReceiver,
       ExecutorService threadPool) {
     this.videoStreamProcessor = videoStreamProcessor;
-    this.RTPSocketReceiver = rtpSocketReceiver;
+    this.packetReceiver = packetReceiver;
     this.threadPool = threadPool;
+    // A lost frame breaks decoding until the next keyframe, ask the sender for one right away
+    videoStreamProcessor.setKeyframeRequestListener(ssrc -> packetReceiver.sendFeedback(
+        RTCPFeedback.pli(receiverSsrc, ssrc).toBytes()));
   }
 
   public void start(DatagramSocket socket) {
@@ -32,9 +55,12 @@ public class RTPStreamReader implements AutoCloseable {
     threadPool.submit(() -> {
       while (!Thread.currentThread().isInterrupted()) {
         try {
-          RTPPacket rtpPacket = RTPSocketReceiver.retrievePacket(); // Block until a packet is available
+          RTPPacket rtpPacket = packetReceiver.retrievePacket(); // Block until a packet is available
           //log.debug("Processing packet with timestamp: {} Seq: {}", rtpPacket.getTimestamp(), rtpPacket.getSequenceNumber());
           videoStreamProcessor.processPacket(rtpPacket);
+          for (FlowSubscription<RTPPacket> subscription : flowSubscriptions) {
+            subscription.offer(rtpPacket);
+          }
         } catch (InterruptedException e) {
           log.info("Processing interrupted, shutting down");
           Thread.currentThread().interrupt();
@@ -51,16 +77,41 @@ public class RTPStreamReader implements AutoCloseable {
     log.info("Starting RTPStreamReader");
     threadPool.submit(() -> {
       try {
-        RTPSocketReceiver.startReceiving(socket);
+        packetReceiver.startReceiving(socket);
       } catch (Exception e) {
         log.error("Error while receiving packets", e);
       }
     });
   }
 
+  /**
+   * Subscribes with backpressure: once the subscriber's queue is full, packet processing waits
+   * until the subscriber requests more packets.
+   */
+  @Override
+  public void subscribe(Flow.Subscriber<? super RTPPacket> subscriber) {
+    subscribe(subscriber, SubscriberOptions.builder().queueCapacity(256)
+        .overflowPolicy(OverflowPolicy.BLOCK).build());
+  }
+
+  public void subscribe(Flow.Subscriber<? super RTPPacket> subscriber,
+      SubscriberOptions options) {
+    if (subscriber == null) {
+      throw new NullPointerException("Subscriber cannot be null");
+    }
+    StageQueue<RTPPacket> queue = new StageQueue<>(
+        "packet-subscriber-" + subscriberCount.incrementAndGet(), options.getQueueCapacity(),
+        options.getOverflowPolicy());
+    FlowSubscription<RTPPacket> subscription = new FlowSubscription<>(subscriber, queue,
+        FlowSubscription.VIRTUAL_THREAD_EXECUTOR, flowSubscriptions::remove);
+    flowSubscriptions.add(subscription);
+    subscription.start();
+  }
+
   @Override
   public void close() {
-    RTPSocketReceiver.close();
+    flowSubscriptions.forEach(FlowSubscription::complete);
+    packetReceiver.close();
     threadPool.shutdown();
   }
 }
@@ -1,28 +1,97 @@
 package space.hajnal.sentinel.network;
 
-import java.net.DatagramPacket;
 import java.net.DatagramSocket;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import lombok.extern.slf4j.Slf4j;
 import space.hajnal.sentinel.camera.SentinelFrameGrabber;
+import space.hajnal.sentinel.camera.SentinelFrameGrabberStatic;
+import space.hajnal.sentinel.camera.model.CapturedFrame;
+import space.hajnal.sentinel.camera.model.SentinelFrame;
+import space.hajnal.sentinel.camera.pool.FramePool;
+import space.hajnal.sentinel.camera.pool.PooledFrame;
+import space.hajnal.sentinel.latency.LatencyStage;
+import space.hajnal.sentinel.latency.LatencyTracker;
 import space.hajnal.sentinel.network.sender.RTPSocketSender;
+import space.hajnal.sentinel.pipeline.PipelineOptions;
+import space.hajnal.sentinel.pipeline.PipelineStage;
+import space.hajnal.sentinel.pipeline.StageMetrics;
+import space.hajnal.sentinel.pipeline.StageQueue;
 
+/**
+ * Runs the send side as three decoupled stages: capture, encode and packetize/send.
+ * <p>
+ * The grabber callback only copies the frame into a pooled buffer on a bounded queue, so a slow
+ * encoder never delays the next grab. Overload shows up as drops on the stage queues instead of
+ * growing latency.
+ * <p>
+ * With several layer senders every captured frame is encoded once per simulcast layer, each by the
+ * layer's own persistent encoder, and sent on the layer's SSRC.
+ */
 @Slf4j
 public class RTPStreamWriter implements AutoCloseable {
 
-  private final RTPSocketSender rtpSocketSender;
+  private final List<RTPSocketSender> layerSenders;
   private final SentinelFrameGrabber sentinelFrameGrabber;
   private final ExecutorService threadPool;
+  private final FramePool framePool;
+  private final StageQueue<CapturedFrame> captureQueue;
+  private final StageQueue<SentinelFrame> sendQueue;
+  private final StageMetrics captureMetrics;
+  private final PipelineStage<CapturedFrame, List<SentinelFrame>> encodeStage;
+  private final PipelineStage<SentinelFrame, Void> sendStage;
+  private volatile LatencyTracker latencyTracker;
 
   public RTPStreamWriter(RTPSocketSender rtpSocketSender, SentinelFrameGrabber sentinelFrameGrabber,
       ExecutorService threadPool) {
-    this.rtpSocketSender = rtpSocketSender;
+    this(rtpSocketSender, sentinelFrameGrabber, threadPool, PipelineOptions.builder().build());
+  }
+
+  public RTPStreamWriter(RTPSocketSender rtpSocketSender, SentinelFrameGrabber sentinelFrameGrabber,
+      ExecutorService threadPool, PipelineOptions pipelineOptions) {
+    this(List.of(rtpSocketSender), sentinelFrameGrabber, threadPool, pipelineOptions);
+  }
+
+  /**
+   * Creates a simulcast writer.
+   *
+   * @param layerSenders One sender per simulcast layer, each with its own encoder and SSRC
+   */
+  public RTPStreamWriter(List<RTPSocketSender> layerSenders,
+      SentinelFrameGrabber sentinelFrameGrabber, ExecutorService threadPool,
+      PipelineOptions pipelineOptions) {
+    if (layerSenders.isEmpty()) {
+      throw new IllegalArgumentException("At least one layer sender is required");
+    }
+    this.layerSenders = List.copyOf(layerSenders);
     this.sentinelFrameGrabber = sentinelFrameGrabber;
     this.threadPool = threadPool;
+    this.framePool = new FramePool(pipelineOptions.getFramePoolSize());
+    this.captureQueue = new StageQueue<>("capture", pipelineOptions.getCaptureQueueCapacity(),
+        pipelineOptions.getCaptureOverflowPolicy(), dropped -> dropped.getFrame().release());
+    this.sendQueue = new StageQueue<>("send", pipelineOptions.getSendQueueCapacity(),
+        pipelineOptions.getSendOverflowPolicy());
+    this.captureMetrics = new StageMetrics("capture", null);
+    this.encodeStage = new PipelineStage<>("encode", captureQueue, this::encode,
+        frames -> frames.forEach(sendQueue::offer));
+    this.sendStage = PipelineStage.sink("send", sendQueue, frame -> this.layerSenders.get(
+        frame.getLayer()).sendFrameData(frame.getData(), frame.getTimestamp()));
+  }
+
+  /**
+   * Sets the tracker that capture, encode and the senders' stages are marked on, or null for
+   * none.
+   */
+  public void setLatencyTracker(LatencyTracker latencyTracker) {
+    this.latencyTracker = latencyTracker;
+    layerSenders.forEach(sender -> sender.setLatencyTracker(latencyTracker));
   }
 
   public void start(DatagramSocket socket) {
-    rtpSocketSender.open(socket);
+    layerSenders.forEach(sender -> sender.open(socket));
+    sendStage.start();
+    encodeStage.start();
     threadPool.submit(() -> {
       try {
         log.info("Starting RTPStreamWriter");
@@ -35,8 +104,26 @@ public class RTPStreamWriter implements AutoCloseable {
 
   private void captureFrames() {
     try {
+      if (sentinelFrameGrabber instanceof SentinelFrameGrabberStatic cached
+          && cached.isPreEncoded()) {
+        // Cached sources skip the encode stage entirely
+        cached.replay((accessUnit, ts) -> {
+          mark(ts, LatencyStage.CAPTURED);
+          sendQueue.offer(SentinelFrame.builder().data(accessUnit).timestamp(ts).build());
+        });
+        return;
+      }
       sentinelFrameGrabber.capture((frame, ts) -> {
-        rtpSocketSender.send(frame, ts);
+        mark(ts, LatencyStage.CAPTURED);
+        long start = System.nanoTime();
+        // The grabber reuses its frame for the next grab, so the queue needs its own copy
+        PooledFrame pooledFrame = framePool.acquire(frame);
+        if (pooledFrame == null) {
+          captureMetrics.recordFailure();
+          return frame;
+        }
+        captureQueue.offer(CapturedFrame.builder().frame(pooledFrame).timestamp(ts).build());
+        captureMetrics.recordService(System.nanoTime() - start);
         return frame;
       });
     } catch (Exception e) {
@@ -44,6 +131,45 @@ public class RTPStreamWriter implements AutoCloseable {
     }
   }
 
+  private List<SentinelFrame> encode(CapturedFrame capturedFrame) {
+    List<SentinelFrame> encoded = new ArrayList<>(layerSenders.size());
+    try {
+      // Every layer's encoder scales the one captured frame down to its own size
+      for (int layer = 0; layer < layerSenders.size(); layer++) {
+        byte[] data = layerSenders.get(layer).encode(capturedFrame.getFrame().getFrame());
+        if (data != null && data.length > 0) {
+          encoded.add(SentinelFrame.builder().data(data).timestamp(capturedFrame.getTimestamp())
+              .layer(layer).build());
+        }
+      }
+    } finally {
+      capturedFrame.getFrame().release();
+    }
+    if (encoded.isEmpty()) {
+      return null;
+    }
+    mark(capturedFrame.getTimestamp(), LatencyStage.ENCODED);
+    return encoded;
+  }
+
+  private void mark(long timestamp, LatencyStage stage) {
+    LatencyTracker tracker = latencyTracker;
+    if (tracker != null) {
+      tracker.mark(timestamp, stage);
+    }
+  }
+
+  /**
+   * @return The metrics of the capture, encode and send stages, in pipeline order
+   */
+  public List<StageMetrics> getPipelineMetrics() {
+    return List.of(captureMetrics, encodeStage.getMetrics(), sendStage.getMetrics());
+  }
+
+  public FramePool getFramePool() {
+    return framePool;
+  }
+
   @Override
   public void close() throws Exception {
     try {
@@ -51,6 +177,10 @@ public class RTPStreamWriter implements AutoCloseable {
     } catch (Exception e) {
       log.error("Error while closing SentinelFrameGrabber", e);
     }
+    encodeStage.close();
+    sendStage.close();
+    framePool.close();
+    log.info("Pipeline metrics: {} {}", getPipelineMetrics(), framePool);
     threadPool.shutdown();
   }
 
@@ -0,0 +1,97 @@
+package space.hajnal.sentinel.network.inprocess;
+
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.slf4j.Slf4j;
+import space.hajnal.sentinel.network.model.RTPPacket;
+import space.hajnal.sentinel.network.sender.RTCPFeedbackListener;
+
+/**
+ * Connects {@link InProcessTransmitter}s to one {@link InProcessReceiver} in the same JVM, in
+ * place of a socket pair on loopback.
+ * <p>
+ * Packets travel by reference through a lock-free ring, so they are neither serialized, copied
+ * through socket buffers nor deserialized. Like a full socket buffer, a full ring drops packets.
+ * RTCP feedback from the receiver goes straight to the {@link RTCPFeedbackListener}.
+ */
+@Slf4j
+public class InProcessChannel implements AutoCloseable {
+
+  /**
+   * About 5.5 MB of packets at the default MTU, several keyframes.
+   */
+  public static final int DEFAULT_CAPACITY = 4096;
+
+  private final PacketRing ring;
+  private final LongAdder dropped = new LongAdder();
+  private volatile RTCPFeedbackListener feedbackListener;
+
+  public InProcessChannel() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * @param capacity The most packets in flight, a power of two
+   */
+  public InProcessChannel(int capacity) {
+    this.ring = new PacketRing(capacity);
+  }
+
+  /**
+   * Sets who handles the receiver's RTCP feedback, typically the listener of the senders on this
+   * channel, or null to drop it.
+   */
+  public void setFeedbackListener(RTCPFeedbackListener feedbackListener) {
+    this.feedbackListener = feedbackListener;
+  }
+
+  void send(RTPPacket packet) {
+    if (!ring.offer(packet)) {
+      dropped.increment();
+    }
+  }
+
+  RTPPacket receive() throws InterruptedException {
+    return ring.take();
+  }
+
+  boolean sendFeedback(byte[] data) {
+    RTCPFeedbackListener listener = feedbackListener;
+    if (listener == null) {
+      return false;
+    }
+    try {
+      listener.onPacket(data, data.length);
+      return true;
+    } catch (IllegalArgumentException e) {
+      log.warn("Ignoring malformed RTCP packet: {}", e.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * @return The packets waiting for the receiver
+   */
+  public int size() {
+    return ring.size();
+  }
+
+  public int capacity() {
+    return ring.capacity();
+  }
+
+  /**
+   * @return The packets dropped because the ring was full or closed
+   */
+  public long getDropped() {
+    return dropped.sum();
+  }
+
+  /**
+   * Stops accepting packets. The receiver gets the packets already sent, then stops waiting.
+   */
+  @Override
+  public void close() {
+    ring.close();
+    log.info("In-process channel closed, {} packets dropped", getDropped());
+  }
+}
@@ -0,0 +1,82 @@
+package space.hajnal.sentinel.network.inprocess;
+
+import java.net.DatagramSocket;
+import space.hajnal.sentinel.jfr.PacketReceivedEvent;
+import space.hajnal.sentinel.metrics.StreamMetrics;
+import space.hajnal.sentinel.network.model.RTPPacket;
+import space.hajnal.sentinel.network.receiver.PacketReceiver;
+
+/**
+ * Takes the packets of {@link InProcessTransmitter}s from an {@link InProcessChannel}, for an
+ * {@link space.hajnal.sentinel.network.RTPStreamReader} in the same JVM as the senders.
+ * <p>
+ * There is no receiving thread: {@link #retrievePacket()} takes the packets off the channel
+ * directly, as the senders left them.
+ */
+public class InProcessReceiver implements PacketReceiver {
+
+  private final InProcessChannel channel;
+  private volatile StreamMetrics streamMetrics;
+
+  public InProcessReceiver(InProcessChannel channel) {
+    this.channel = channel;
+  }
+
+  /**
+   * Returns right away, the packets are taken from the channel by {@link #retrievePacket()}.
+   *
+   * @param socket Not used, may be null
+   */
+  @Override
+  public void startReceiving(DatagramSocket socket) {
+  }
+
+  /**
+   * @throws InterruptedException If interrupted, or the channel was closed and is empty
+   */
+  @Override
+  public RTPPacket retrievePacket() throws InterruptedException {
+    RTPPacket rtpPacket = channel.receive();
+    int size = rtpPacket.getHeader().length + rtpPacket.getPayload().length;
+    StreamMetrics metrics = streamMetrics;
+    if (metrics != null) {
+      metrics.recordPacketReceived(size);
+    }
+    PacketReceivedEvent event = new PacketReceivedEvent();
+    if (event.shouldCommit()) {
+      event.ssrc = rtpPacket.getSsrc();
+      event.timestamp = rtpPacket.getTimestamp();
+      event.sequenceNumber = rtpPacket.getSequenceNumber();
+      event.size = size;
+      event.queueDepth = channel.size();
+      event.commit();
+    }
+    return rtpPacket;
+  }
+
+  /**
+   * Hands the feedback to the channel's feedback listener.
+   *
+   * @return false if the channel has no feedback listener
+   */
+  @Override
+  public boolean sendFeedback(byte[] data) {
+    return channel.sendFeedback(data);
+  }
+
+  @Override
+  public void setStreamMetrics(StreamMetrics streamMetrics) {
+    this.streamMetrics = streamMetrics;
+    if (streamMetrics != null) {
+      streamMetrics.setReceiveQueueDepthGauge(channel::size);
+    }
+  }
+
+  /**
+   * Closes the channel, the reader stops once it took the packets already sent.
+   */
+  @Override
+  public void close() {
+    channel.close();
+  }
+}
@@ -0,0 +1,46 @@
+package space.hajnal.sentinel.network.inprocess;
+
+import java.net.DatagramSocket;
+import lombok.extern.slf4j.Slf4j;
+import space.hajnal.sentinel.network.model.RTPPacket;
+import space.hajnal.sentinel.network.sender.PacketTransmitter;
+
+/**
+ * Hands the packets of an {@link space.hajnal.sentinel.network.sender.RTPSocketSender} to an
+ * {@link InProcessChannel} instead of a socket.
+ */
+@Slf4j
+public class InProcessTransmitter implements PacketTransmitter {
+
+  private final InProcessChannel channel;
+  private volatile boolean open = false;
+
+  public InProcessTransmitter(InProcessChannel channel) {
+    this.channel = channel;
+  }
+
+  /**
+   * @param socket Not used, may be null
+   */
+  @Override
+  public void open(DatagramSocket socket) {
+    open = true;
+    log.info("In-process transmitter opened");
+  }
+
+  @Override
+  public boolean isOpen() {
+    return open;
+  }
+
+  @Override
+  public int transmit(RTPPacket rtpPacket) {
+    channel.send(rtpPacket);
+    return rtpPacket.getHeader().length + rtpPacket.getPayload().length;
+  }
+
+  @Override
+  public void close() {
+    open = false;
+  }
+}
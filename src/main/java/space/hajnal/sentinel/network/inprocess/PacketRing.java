@@ -0,0 +1,136 @@
+package space.hajnal.sentinel.network.inprocess;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import space.hajnal.sentinel.network.model.RTPPacket;
+
+/**
+ * A bounded ring of packets for many producers and one consumer, without locks.
+ * <p>
+ * Every slot has a sequence number that tells whether it is free for the producer of a position or
+ * holds a packet for the consumer, as in Dmitry Vyukov's bounded queue. Producers claim a position
+ * with a CAS on the tail and never wait for each other; the consumer owns the head. Only an empty
+ * ring parks the consumer.
+ */
+final class PacketRing {
+
+  private final int mask;
+  private final AtomicReferenceArray<RTPPacket> packets;
+  private final AtomicLongArray sequences;
+  private final AtomicLong tail = new AtomicLong();
+  private volatile long head = 0;  // Only written by the consumer
+  private volatile Thread waitingConsumer;
+  private volatile boolean closed = false;
+
+  /**
+   * @param capacity The most packets the ring holds, a power of two
+   */
+  PacketRing(int capacity) {
+    if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+      throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+    }
+    this.mask = capacity - 1;
+    this.packets = new AtomicReferenceArray<>(capacity);
+    this.sequences = new AtomicLongArray(capacity);
+    for (int i = 0; i < capacity; i++) {
+      sequences.set(i, i);
+    }
+  }
+
+  /**
+   * @return false if the ring is full or closed, the packet is not added then
+   */
+  boolean offer(RTPPacket packet) {
+    if (closed) {
+      return false;
+    }
+    while (true) {
+      long position = tail.get();
+      int index = (int) (position & mask);
+      long sequence = sequences.get(index);
+      if (sequence == position) {
+        if (tail.compareAndSet(position, position + 1)) {
+          packets.lazySet(index, packet);
+          sequences.set(index, position + 1);  // Publishes the packet to the consumer
+          Thread consumer = waitingConsumer;
+          if (consumer != null) {
+            LockSupport.unpark(consumer);
+          }
+          return true;
+        }
+      } else if (sequence < position) {
+        return false;  // The consumer has not freed the slot of the previous lap yet
+      }
+      // Another producer claimed the position first
+    }
+  }
+
+  /**
+   * Takes the next packet without waiting. Only the consumer thread may call this.
+   *
+   * @return The packet, or null if the ring is empty
+   */
+  RTPPacket poll() {
+    long position = head;
+    int index = (int) (position & mask);
+    if (sequences.get(index) != position + 1) {
+      return null;
+    }
+    RTPPacket packet = packets.get(index);
+    packets.lazySet(index, null);
+    sequences.set(index, position + mask + 1);  // Frees the slot for the next lap
+    head = position + 1;
+    return packet;
+  }
+
+  /**
+   * Takes the next packet, waiting until there is one. Only the consumer thread may call this.
+   *
+   * @throws InterruptedException If interrupted, or closed while the ring is empty
+   */
+  RTPPacket take() throws InterruptedException {
+    while (true) {
+      RTPPacket packet = poll();
+      if (packet != null) {
+        return packet;
+      }
+      if (closed) {
+        throw new InterruptedException("Packet ring closed");
+      }
+      waitingConsumer = Thread.currentThread();
+      // A producer that published before seeing the waiting consumer does not unpark it
+      packet = poll();
+      if (packet == null && !closed) {
+        LockSupport.park(this);
+      }
+      waitingConsumer = null;
+      if (packet != null) {
+        return packet;
+      }
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+    }
+  }
+
+  /**
+   * Refuses further packets and wakes the consumer once the ring is drained.
+   */
+  void close() {
+    closed = true;
+    Thread consumer = waitingConsumer;
+    if (consumer != null) {
+      LockSupport.unpark(consumer);
+    }
+  }
+
+  int size() {
+    return Math.clamp(tail.get() - head, 0, mask + 1);
+  }
+
+  int capacity() {
+    return mask + 1;
+  }
+}
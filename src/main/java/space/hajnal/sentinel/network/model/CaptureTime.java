@@ -0,0 +1,51 @@
+package space.hajnal.sentinel.network.model;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import lombok.Data;
+
+/**
+ * The wall clock time a frame was captured, carried in the first packet of the frame in the
+ * 64-bit NTP timestamp format of the abs-capture-time header extension, so a receiver in another
+ * process can measure glass-to-glass latency.
+ */
+@Data
+public class CaptureTime {
+
+  /**
+   * The header extension element ID used by this project.
+   */
+  public static final int EXTENSION_ID = 2;
+  // Seconds from the NTP epoch, 1900, to the Unix epoch
+  private static final long NTP_EPOCH_OFFSET_SECONDS = 2_208_988_800L;
+  private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  /**
+   * Nanoseconds since the Unix epoch.
+   */
+  private final long epochNanos;
+
+  public byte[] toBytes() {
+    long seconds = Math.floorDiv(epochNanos, NANOS_PER_SECOND) + NTP_EPOCH_OFFSET_SECONDS;
+    long fraction = (Math.floorMod(epochNanos, NANOS_PER_SECOND) << 32) / NANOS_PER_SECOND;
+    return ByteBuffer.allocate(8).putInt((int) seconds).putInt((int) fraction).array();
+  }
+
+  public static CaptureTime fromBytes(byte[] data) {
+    ByteBuffer buffer = ByteBuffer.wrap(data);
+    long seconds = Integer.toUnsignedLong(buffer.getInt()) - NTP_EPOCH_OFFSET_SECONDS;
+    long fraction = Integer.toUnsignedLong(buffer.getInt());
+    // Round to the nearest nanosecond, the fraction has a resolution of about 0.23 ns
+    long nanos = (fraction * NANOS_PER_SECOND + (1L << 31)) >>> 32;
+    return new CaptureTime(seconds * NANOS_PER_SECOND + nanos);
+  }
+
+  /**
+   * @return the capture time of the packet, or null if it carries none
+   */
+  public static CaptureTime of(RTPPacket packet) {
+    RTPHeaderExtension extension = packet.getHeaderExtension();
+    byte[] data = extension == null ? null : extension.get(EXTENSION_ID);
+    return data == null || data.length < 8 ? null : fromBytes(data);
+  }
+}
@@ -0,0 +1,74 @@
+package space.hajnal.sentinel.network.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Per-packet frame information in the layout of the RTP frame marking header extension
+ * (draft-ietf-avtext-framemarking), so a receiver or relay can drop temporal layers without
+ * parsing the video payload.
+ */
+@Builder(toBuilder = true)
+@Data
+public class FrameMarking {
+
+  /**
+   * The header extension element ID used by this project.
+   */
+  public static final int EXTENSION_ID = 1;
+  public static final int MAX_TEMPORAL_ID = 7;
+
+  private final boolean startOfFrame;
+  private final boolean endOfFrame;
+  /**
+   * The frame can be decoded without any previous frame.
+   */
+  private final boolean independent;
+  /**
+   * No other frame references this one, dropping it cannot cause decode errors.
+   */
+  private final boolean discardable;
+  /**
+   * The frame references the base temporal layer only.
+   */
+  private final boolean baseLayerSync;
+  private final int temporalId;
+  private final int layerId;
+  /**
+   * Running index of base layer frames, for detecting base layer loss.
+   */
+  private final int tl0PicIndex;
+
+  public byte[] toBytes() {
+    int flags = (startOfFrame ? 0x80 : 0) | (endOfFrame ? 0x40 : 0) | (independent ? 0x20 : 0)
+                | (discardable ? 0x10 : 0) | (baseLayerSync ? 0x08 : 0) | (temporalId & 0x07);
+    return new byte[]{(byte) flags, (byte) layerId, (byte) tl0PicIndex};
+  }
+
+  /**
+   * Parses the 3-byte scalable form or the 1-byte non-scalable form.
+   */
+  public static FrameMarking fromBytes(byte[] data) {
+    int flags = Byte.toUnsignedInt(data[0]);
+    boolean scalable = data.length >= 3;
+    return FrameMarking.builder()
+        .startOfFrame((flags & 0x80) != 0)
+        .endOfFrame((flags & 0x40) != 0)
+        .independent((flags & 0x20) != 0)
+        .discardable((flags & 0x10) != 0)
+        .baseLayerSync(scalable && (flags & 0x08) != 0)
+        .temporalId(scalable ? flags & 0x07 : 0)
+        .layerId(scalable ? Byte.toUnsignedInt(data[1]) : 0)
+        .tl0PicIndex(scalable ? Byte.toUnsignedInt(data[2]) : 0)
+        .build();
+  }
+
+  /**
+   * @return the frame marking of the packet, or null if it carries none
+   */
+  public static FrameMarking of(RTPPacket packet) {
+    RTPHeaderExtension extension = packet.getHeaderExtension();
+    byte[] data = extension == null ? null : extension.get(EXTENSION_ID);
+    return data == null ? null : fromBytes(data);
+  }
+}
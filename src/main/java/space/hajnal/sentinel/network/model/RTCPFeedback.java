@@ -0,0 +1,98 @@
+package space.hajnal.sentinel.network.model;
+
+import java.nio.ByteBuffer;
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * An RTCP payload-specific feedback message asking the media sender for a keyframe (RFC 4585 and
+ * RFC 5104).
+ * <p>
+ * A Picture Loss Indication names the lost stream in the media source field. A Full Intra Request
+ * names it in its FCI entry and carries a sequence number, so a repeated request can be told apart
+ * from a retransmission of the same one.
+ */
+@Builder
+@Data
+public class RTCPFeedback {
+
+  public static final int PAYLOAD_TYPE_PSFB = 206;
+  public static final int FMT_PLI = 1;
+  public static final int FMT_FIR = 4;
+  static final int HEADER_SIZE = 12;
+  static final int FIR_ENTRY_SIZE = 8;
+
+  public enum Type {
+    PLI,
+    FIR
+  }
+
+  private final Type type;
+  /**
+   * The SSRC of the receiver sending the feedback.
+   */
+  private final long senderSsrc;
+  /**
+   * The SSRC of the stream that needs a keyframe.
+   */
+  private final long mediaSsrc;
+  /**
+   * The FIR command sequence number, unused for PLI.
+   */
+  private final int sequenceNumber;
+
+  public static RTCPFeedback pli(long senderSsrc, long mediaSsrc) {
+    return RTCPFeedback.builder().type(Type.PLI).senderSsrc(senderSsrc).mediaSsrc(mediaSsrc)
+        .build();
+  }
+
+  public static RTCPFeedback fir(long senderSsrc, long mediaSsrc, int sequenceNumber) {
+    return RTCPFeedback.builder().type(Type.FIR).senderSsrc(senderSsrc).mediaSsrc(mediaSsrc)
+        .sequenceNumber(sequenceNumber & 0xFF).build();
+  }
+
+  public byte[] toBytes() {
+    boolean fir = type == Type.FIR;
+    ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + (fir ? FIR_ENTRY_SIZE : 0));
+    buffer.put((byte) (0x80 | (fir ? FMT_FIR : FMT_PLI))); // V=2, no padding
+    buffer.put((byte) PAYLOAD_TYPE_PSFB);
+    buffer.putShort((short) (buffer.capacity() / 4 - 1)); // Length in words minus one
+    buffer.putInt((int) senderSsrc);
+    if (fir) {
+      buffer.putInt(0); // FIR addresses the stream in its FCI entry instead
+      buffer.putInt((int) mediaSsrc);
+      buffer.put((byte) sequenceNumber);
+      buffer.put(new byte[3]);
+    } else {
+      buffer.putInt((int) mediaSsrc);
+    }
+    return buffer.array();
+  }
+
+  /**
+   * Tells RTCP apart from RTP on a socket carrying both (RFC 5761, section 4).
+   *
+   * @return true if the packet type byte falls into the RTCP range
+   */
+  public static boolean isRTCP(byte[] data, int length) {
+    if (length < 2) {
+      return false;
+    }
+    return isRTCPPacketType(Byte.toUnsignedInt(data[1]));
+  }
+
+  /**
+   * @param packet The datagram from its position on
+   * @see #isRTCP(byte[], int)
+   */
+  public static boolean isRTCP(ByteBuffer packet) {
+    if (packet.remaining() < 2) {
+      return false;
+    }
+    return isRTCPPacketType(Byte.toUnsignedInt(packet.get(packet.position() + 1)));
+  }
+
+  private static boolean isRTCPPacketType(int packetType) {
+    return packetType >= 192 && packetType <= 223;
+  }
+}
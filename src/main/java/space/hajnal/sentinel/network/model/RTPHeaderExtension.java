@@ -0,0 +1,177 @@
+package space.hajnal.sentinel.network.model;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An RTP header extension in the one-byte header format of RFC 8285.
+ * <p>
+ * Carries up to 14 elements of 1 to 16 bytes each, keyed by their negotiated ID.
+ */
+public class RTPHeaderExtension {
+
+  public static final int ONE_BYTE_PROFILE = 0xBEDE;
+  private static final int MAX_ID = 14;
+  private static final int MAX_ELEMENT_SIZE = 16;
+  private static final int TERMINATOR_ID = 15;
+
+  private final Map<Integer, byte[]> elements = new TreeMap<>();
+
+  /**
+   * Adds or replaces an element.
+   *
+   * @return this extension
+   */
+  public RTPHeaderExtension put(int id, byte[] data) {
+    if (id < 1 || id > MAX_ID) {
+      throw new IllegalArgumentException("Element ID must be between 1 and " + MAX_ID);
+    }
+    if (data.length < 1 || data.length > MAX_ELEMENT_SIZE) {
+      throw new IllegalArgumentException("Element must be 1 to " + MAX_ELEMENT_SIZE + " bytes");
+    }
+    elements.put(id, data.clone());
+    return this;
+  }
+
+  /**
+   * @return the element data, or null if the element is absent
+   */
+  public byte[] get(int id) {
+    byte[] data = elements.get(id);
+    return data == null ? null : data.clone();
+  }
+
+  public boolean isEmpty() {
+    return elements.isEmpty();
+  }
+
+  /**
+   * @return the size on the wire, including the 4-byte extension header and padding
+   */
+  public int size() {
+    int dataSize = 0;
+    for (byte[] data : elements.values()) {
+      dataSize += 1 + data.length;
+    }
+    return 4 + (dataSize + 3) / 4 * 4;
+  }
+
+  public void writeTo(ByteBuffer buffer) {
+    int start = buffer.position();
+    int length = size();
+    buffer.putShort((short) ONE_BYTE_PROFILE);
+    buffer.putShort((short) ((length - 4) / 4));
+    elements.forEach((id, data) -> {
+      buffer.put((byte) ((id << 4) | (data.length - 1)));
+      buffer.put(data);
+    });
+    while (buffer.position() - start < length) {
+      buffer.put((byte) 0);
+    }
+  }
+
+  /**
+   * Reads an extension at the buffer's position and advances past it.
+   *
+   * @return the extension, or null if it does not use the one-byte format
+   */
+  public static RTPHeaderExtension read(ByteBuffer buffer) {
+    int profile = Short.toUnsignedInt(buffer.getShort());
+    int length = Short.toUnsignedInt(buffer.getShort()) * 4;
+    if (length > buffer.remaining()) {
+      throw new IllegalArgumentException("Invalid RTP packet: truncated header extension.");
+    }
+    int end = buffer.position() + length;
+    if (profile != ONE_BYTE_PROFILE) {
+      buffer.position(end);
+      return null;
+    }
+
+    RTPHeaderExtension extension = new RTPHeaderExtension();
+    while (buffer.position() < end) {
+      int elementHeader = Byte.toUnsignedInt(buffer.get());
+      if (elementHeader == 0) {
+        continue; // padding
+      }
+      int id = elementHeader >> 4;
+      if (id == TERMINATOR_ID) {
+        break;
+      }
+      int size = (elementHeader & 0x0F) + 1;
+      if (buffer.position() + size > end) {
+        throw new IllegalArgumentException("Invalid RTP packet: truncated extension element.");
+      }
+      byte[] data = new byte[size];
+      buffer.get(data);
+      extension.elements.put(id, data);
+    }
+    buffer.position(end);
+    return extension;
+  }
+
+  /**
+   * Finds an element in a serialized RTP packet without parsing the packet, for hot paths that
+   * must not allocate.
+   *
+   * @param packet A whole RTP packet starting at index 0
+   * @param id     The element ID
+   * @return the absolute index of the element data, or -1 if the packet has no such element
+   */
+  public static int indexOf(ByteBuffer packet, int id) {
+    int limit = packet.limit();
+    if (limit < RTPPacket.BASE_HEADER_SIZE || (packet.get(0) & 0x10) == 0) {
+      return -1;
+    }
+    int start = RTPPacket.BASE_HEADER_SIZE + (packet.get(0) & 0x0F) * 4;
+    if (start + 4 > limit
+        || Short.toUnsignedInt(packet.getShort(start)) != ONE_BYTE_PROFILE) {
+      return -1;
+    }
+    int end = Math.min(limit, start + 4 + Short.toUnsignedInt(packet.getShort(start + 2)) * 4);
+    int i = start + 4;
+    while (i < end) {
+      int elementHeader = Byte.toUnsignedInt(packet.get(i));
+      if (elementHeader == 0) {
+        i++;
+        continue;
+      }
+      int elementId = elementHeader >> 4;
+      if (elementId == TERMINATOR_ID) {
+        return -1;
+      }
+      if (elementId == id) {
+        return i + 1 < end ? i + 1 : -1;
+      }
+      i += 2 + (elementHeader & 0x0F);
+    }
+    return -1;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof RTPHeaderExtension other) || !elements.keySet()
+        .equals(other.elements.keySet())) {
+      return false;
+    }
+    return elements.entrySet().stream()
+        .allMatch(e -> Arrays.equals(e.getValue(), other.elements.get(e.getKey())));
+  }
+
+  @Override
+  public int hashCode() {
+    int hash = 1;
+    for (Map.Entry<Integer, byte[]> e : elements.entrySet()) {
+      hash = 31 * hash + e.getKey() * 17 + Arrays.hashCode(e.getValue());
+    }
+    return hash;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("RTPHeaderExtension{");
+    elements.forEach((id, data) -> sb.append(id).append('=').append(Arrays.toString(data)));
+    return sb.append('}').toString();
+  }
+}
@@ -25,10 +25,19 @@ public class RTPPacket {
   private long ssrc;
   private byte[] payload;
   private byte[] header;  // Store the RTP header separately
+  private RTPHeaderExtension headerExtension;
 
   // Constructor for sending
   public RTPPacket(int payloadType, int sequenceNumber, long timestamp, long ssrc, byte[] payload,
       boolean marker) {
+    this(payloadType, sequenceNumber, timestamp, ssrc, payload, marker, null);
+  }
+
+  // Constructor for sending with a header extension
+  public RTPPacket(int payloadType, int sequenceNumber, long timestamp, long ssrc, byte[] payload,
+      boolean marker, RTPHeaderExtension headerExtension) {
+    this.headerExtension = headerExtension;
+    this.extension = headerExtension != null;
     this.payloadType = payloadType;
     this.sequenceNumber = sequenceNumber;
     this.timestamp = timestamp;
@@ -72,7 +81,7 @@ public class RTPPacket {
 
   // Build header during construction
   private byte[] constructHeader() {
-    ByteBuffer buffer = ByteBuffer.allocate(BASE_HEADER_SIZE);
+    ByteBuffer buffer = ByteBuffer.allocate(headerSize(headerExtension));
     int firstByte = (version << 6) | (padding ? 0x20 : 0) | (extension ? 0x10 : 0) | csrcCount;
     int secondByte = (marker ? 0x80 : 0) | (payloadType & 0x7F);
 
@@ -81,12 +90,22 @@ public class RTPPacket {
     buffer.putShort((short) sequenceNumber);
     buffer.putInt((int) timestamp);
     buffer.putInt((int) ssrc);
+    if (headerExtension != null) {
+      headerExtension.writeTo(buffer);
+    }
     return buffer.array();
   }
 
+  /**
+   * @return the size of a header carrying the given extension, which may be null
+   */
+  public static int headerSize(RTPHeaderExtension headerExtension) {
+    return BASE_HEADER_SIZE + (headerExtension == null ? 0 : headerExtension.size());
+  }
+
   // Serialize to byte array (header + payload)
   public byte[] toBytes() {
-    ByteBuffer buffer = ByteBuffer.allocate(BASE_HEADER_SIZE + payload.length);
+    ByteBuffer buffer = ByteBuffer.allocate(header.length + payload.length);
     buffer.put(header);
     buffer.put(payload);
     return buffer.array();
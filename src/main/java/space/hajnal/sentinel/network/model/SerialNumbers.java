@@ -0,0 +1,43 @@
+package space.hajnal.sentinel.network.model;
+
+/**
+ * Orders RTP timestamps and sequence numbers across their wrap-around with serial number arithmetic (RFC 1982): a
+ * value is after another if it is less than half the number space ahead.
+ */
+public final class SerialNumbers {
+
+  public static final long TIMESTAMP_MASK = 0xFFFFFFFFL;
+
+  private SerialNumbers() {
+  }
+
+  /**
+   * @return A negative number, zero or a positive number as the 32-bit timestamp {@code a} is
+   * before, equal to or after {@code b}
+   */
+  public static int compareTimestamps(long a, long b) {
+    return (int) (a - b);
+  }
+
+  /**
+   * @return true if the 32-bit timestamp {@code a} is {@code b} or after it
+   */
+  public static boolean isTimestampAtOrAfter(long a, long b) {
+    return compareTimestamps(a, b) >= 0;
+  }
+
+  /**
+   * @return The timestamp following the given one, wrapping from 0xFFFFFFFF to 0
+   */
+  public static long nextTimestamp(long timestamp) {
+    return (timestamp + 1) & TIMESTAMP_MASK;
+  }
+
+  /**
+   * @return How far the 16-bit sequence number {@code a} is after {@code b}, negative if it is
+   * before
+   */
+  public static int compareSequenceNumbers(int a, int b) {
+    return (short) (a - b);
+  }
+}
@@ -3,11 +3,22 @@ package space.hajnal.sentinel.network.model;
 import lombok.Builder;
 import lombok.Data;
 
-@Builder
+@Builder(toBuilder = true)
 @Data
 public class ServerOptions {
 
   private final String serverAddress;
   private final int serverPort;
   private final int mtu;
+  /**
+   * The RTP synchronization source of the stream, unique per camera.
+   */
+  @Builder.Default
+  private final long ssrc = 123456;
+  /**
+   * Send the capture time of each frame in a header extension, for receivers in other processes
+   * measuring glass-to-glass latency. Takes effect when the sender has a latency tracker.
+   */
+  @Builder.Default
+  private final boolean sendCaptureTime = false;
 }
@@ -0,0 +1,51 @@
+package space.hajnal.sentinel.network.model;
+
+import lombok.Builder;
+import lombok.Data;
+import space.hajnal.sentinel.camera.SentinelFrameGrabberOptions;
+
+/**
+ * One resolution of a simulcast stream, sent as its own RTP stream.
+ * <p>
+ * Every layer goes to a port of its own. The layers of a frame share its RTP timestamp, and a
+ * {@link space.hajnal.sentinel.network.video.VideoStreamProcessor} assembles frames by timestamp,
+ * so it must only ever receive one layer.
+ */
+@Builder
+@Data
+public class SimulcastLayer {
+
+  private final int imageWidth;
+  private final int imageHeight;
+  private final long bitRate;
+  private final long ssrc;
+  /**
+   * The port this layer is sent to, 0 for the destination's port plus the layer's index.
+   */
+  private final int serverPort;
+
+  /**
+   * @param capture The options of the camera feeding the layer
+   * @return The encoder options of this layer, at the camera's frame rate
+   */
+  public SentinelFrameGrabberOptions encoderOptions(SentinelFrameGrabberOptions capture) {
+    return SentinelFrameGrabberOptions.builder()
+        .imageWidth(imageWidth)
+        .imageHeight(imageHeight)
+        .frameRate(capture.getFrameRate())
+        .cameraIndex(capture.getCameraIndex())
+        .build();
+  }
+
+  /**
+   * @param destination The host and base port of all layers
+   * @param index       The position of this layer in its {@link SimulcastOptions}
+   * @return The destination with this layer's SSRC and port
+   */
+  public ServerOptions serverOptions(ServerOptions destination, int index) {
+    return destination.toBuilder()
+        .ssrc(ssrc)
+        .serverPort(serverPort > 0 ? serverPort : destination.getServerPort() + index)
+        .build();
+  }
+}
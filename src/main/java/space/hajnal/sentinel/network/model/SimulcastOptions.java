@@ -0,0 +1,17 @@
+package space.hajnal.sentinel.network.model;
+
+import java.util.List;
+import lombok.Builder;
+import lombok.Data;
+import lombok.Singular;
+
+/**
+ * The layers encoded from every captured frame, highest resolution first by convention.
+ */
+@Builder
+@Data
+public class SimulcastOptions {
+
+  @Singular
+  private final List<SimulcastLayer> layers;
+}
@@ -0,0 +1,88 @@
+package space.hajnal.sentinel.network.receiver;
+
+import java.util.concurrent.TimeUnit;
+import space.hajnal.sentinel.network.model.RTPPacket;
+
+/**
+ * Holds received packets for a fixed delay before handing them out, in arrival order.
+ * <p>
+ * Every packet is held equally long, so the order they arrive in is the order they are due in,
+ * and a ring of preallocated slots replaces a priority queue. Neither adding nor taking a packet
+ * allocates. Like a full socket buffer, a full queue drops packets.
+ */
+final class PacketDelayQueue {
+
+  private final RTPPacket[] packets;
+  private final long[] dueTimes;
+  private final int mask;
+  private final long delayNanos;
+  private int head = 0;  // Guarded by this, as is the tail
+  private int tail = 0;
+
+  /**
+   * @param capacity    The most packets the queue holds, a power of two
+   * @param delayMillis How long a packet is held
+   */
+  PacketDelayQueue(int capacity, long delayMillis) {
+    if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+      throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+    }
+    this.packets = new RTPPacket[capacity];
+    this.dueTimes = new long[capacity];
+    this.mask = capacity - 1;
+    this.delayNanos = TimeUnit.MILLISECONDS.toNanos(delayMillis);
+  }
+
+  /**
+   * @return false if the queue is full, the packet is not added then
+   */
+  synchronized boolean offer(RTPPacket packet) {
+    if (tail - head == packets.length) {
+      return false;
+    }
+    int index = tail & mask;
+    packets[index] = packet;
+    dueTimes[index] = System.nanoTime() + delayNanos;
+    tail++;
+    if (tail - head == 1) {
+      // Only a consumer of an empty queue waits without a timeout
+      notifyAll();
+    }
+    return true;
+  }
+
+  /**
+   * Takes the oldest packet, waiting until it is due.
+   *
+   * @throws InterruptedException If interrupted while waiting
+   */
+  synchronized RTPPacket take() throws InterruptedException {
+    while (true) {
+      if (head == tail) {
+        wait();
+        continue;
+      }
+      int index = head & mask;
+      long remaining = dueTimes[index] - System.nanoTime();
+      if (remaining > 0) {
+        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        continue;
+      }
+      RTPPacket packet = packets[index];
+      packets[index] = null;
+      head++;
+      return packet;
+    }
+  }
+
+  /**
+   * @return The packets held, due or not
+   */
+  synchronized int size() {
+    return tail - head;
+  }
+
+  int capacity() {
+    return packets.length;
+  }
+}
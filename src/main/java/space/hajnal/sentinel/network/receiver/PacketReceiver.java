@@ -0,0 +1,42 @@
+package space.hajnal.sentinel.network.receiver;
+
+import java.net.DatagramSocket;
+import space.hajnal.sentinel.metrics.StreamMetrics;
+import space.hajnal.sentinel.network.model.RTPPacket;
+
+/**
+ * The source of the packets an {@link space.hajnal.sentinel.network.RTPStreamReader} reads: a
+ * UDP socket, or one of the same-host transports.
+ */
+public interface PacketReceiver extends AutoCloseable {
+
+  /**
+   * Receives packets until closed. Transports without a receiving thread return right away.
+   *
+   * @param socket The socket to receive from, transports without one ignore it
+   */
+  void startReceiving(DatagramSocket socket);
+
+  /**
+   * Takes the next packet, waiting until there is one.
+   *
+   * @throws InterruptedException If interrupted, or the transport was closed
+   */
+  RTPPacket retrievePacket() throws InterruptedException;
+
+  /**
+   * Sends an RTCP packet back to the sender.
+   *
+   * @param data The serialized RTCP packet
+   * @return false if the transport has no way back to the sender at the moment
+   */
+  boolean sendFeedback(byte[] data);
+
+  /**
+   * Sets the metrics that received packets are counted in, or null for none.
+   */
+  void setStreamMetrics(StreamMetrics streamMetrics);
+
+  @Override
+  void close();
+}
@@ -3,62 +3,206 @@ package space.hajnal.sentinel.network.receiver;
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
-import java.util.concurrent.DelayQueue;
+import java.net.InetAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
 import lombok.extern.slf4j.Slf4j;
-import space.hajnal.sentinel.network.model.DelayedRTPPacket;
+import space.hajnal.sentinel.jfr.PacketReceivedEvent;
+import space.hajnal.sentinel.metrics.StreamMetrics;
 import space.hajnal.sentinel.network.model.RTPPacket;
 import space.hajnal.sentinel.network.model.ServerOptions;
 import space.hajnal.sentinel.network.serialization.RTPPacketDeserializer;
 
 @Slf4j
-public class RTPSocketReceiver implements AutoCloseable {
+public class RTPSocketReceiver implements PacketReceiver {
 
-  private final DelayQueue<DelayedRTPPacket> packetQueue;
+  /**
+   * About 5.5 MB of packets at the default MTU, half a second at 80 Mbit/s.
+   */
+  public static final int DEFAULT_QUEUE_CAPACITY = 4096;
+
+  private final PacketDelayQueue packetQueue;
   private final ServerOptions serverOptions;
   private final RTPPacketDeserializer rtpPacketDeserializer;
-  private final long packetTtlMillis;
   private DatagramSocket socket;
+  private DatagramChannel channel;
+  private volatile SocketAddress mediaSource;
+  // Only used by the receiving thread, to build the media source only when it changes
+  private InetAddress sourceAddress;
+  private int sourcePort;
+  private volatile long dropped = 0;  // Only written by the receiving thread
+  private volatile StreamMetrics streamMetrics;
   private volatile boolean running = true;
 
   public RTPSocketReceiver(ServerOptions serverOptions, RTPPacketDeserializer rtpPacketDeserializer,
       long packetTtlMillis) {
-    this.packetQueue = new DelayQueue<>();
+    this(serverOptions, rtpPacketDeserializer, packetTtlMillis, DEFAULT_QUEUE_CAPACITY);
+  }
+
+  /**
+   * @param packetTtlMillis How long a packet is held before {@link #retrievePacket()} returns it
+   * @param queueCapacity   The most packets held, a power of two. Packets arriving at a full
+   *                        queue are dropped.
+   */
+  public RTPSocketReceiver(ServerOptions serverOptions, RTPPacketDeserializer rtpPacketDeserializer,
+      long packetTtlMillis, int queueCapacity) {
+    this.packetQueue = new PacketDelayQueue(queueCapacity, packetTtlMillis);
     this.serverOptions = serverOptions;
     this.rtpPacketDeserializer = rtpPacketDeserializer;
-    this.packetTtlMillis = packetTtlMillis;
   }
 
 
+  @Override
   public void startReceiving(DatagramSocket socket) {
     this.socket = socket;
+    // Reused for every datagram, the deserializer copies the packet out
+    byte[] buffer = new byte[serverOptions.getMtu()];
+    DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
     while (running) {
       try {
-        byte[] buffer = new byte[serverOptions.getMtu()];
-        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        packet.setLength(buffer.length);
         socket.receive(packet);
-        RTPPacket rtpPacket = rtpPacketDeserializer.deserialize(buffer);
-        log.debug("Received packet with timestamp: {}", rtpPacket.getTimestamp());
+        PacketReceivedEvent event = new PacketReceivedEvent();
+        event.begin();
+        updateMediaSource(packet);
+        recordReceived(packet.getLength());
+        RTPPacket rtpPacket = rtpPacketDeserializer.deserialize(buffer, packet.getLength());
+        if (log.isDebugEnabled()) {
+          log.debug("Received packet with timestamp: {}", rtpPacket.getTimestamp());
+        }
         putPacket(rtpPacket);
+        event.end();
+        if (event.shouldCommit()) {
+          event.ssrc = rtpPacket.getSsrc();
+          event.timestamp = rtpPacket.getTimestamp();
+          event.sequenceNumber = rtpPacket.getSequenceNumber();
+          event.size = packet.getLength();
+          event.queueDepth = packetQueue.size();
+          event.commit();
+        }
+
+      } catch (IOException e) {
+        if (running) {
+          log.error("Error while receiving packets", e);
+        }
+      }
+    }
+  }
 
+  /**
+   * Hands every datagram to the handler as it arrives, without deserializing or queueing it.
+   * <p>
+   * A single direct buffer is reused for all datagrams, so the loop does not allocate.
+   *
+   * @param channel The channel to receive from
+   * @param handler Called on the receiving thread for each datagram
+   */
+  public void startForwarding(DatagramChannel channel, RawPacketHandler handler) {
+    this.channel = channel;
+    ByteBuffer buffer = ByteBuffer.allocateDirect(serverOptions.getMtu());
+    ByteBuffer view = buffer.asReadOnlyBuffer();
+    while (running) {
+      try {
+        buffer.clear();
+        SocketAddress source = channel.receive(buffer);
+        recordReceived(buffer.position());
+        view.limit(buffer.position()).position(0);
+        handler.onPacket(view, source);
+      } catch (ClosedChannelException e) {
+        break;
       } catch (IOException e) {
         if (running) {
           log.error("Error while receiving packets", e);
         }
+      } catch (RuntimeException e) {
+        log.error("Error while handling packet", e);
       }
     }
   }
 
+  /**
+   * Sets the metrics that received packets are counted in, or null for none. The metrics also
+   * report the depth of the receive queue.
+   */
+  @Override
+  public void setStreamMetrics(StreamMetrics streamMetrics) {
+    this.streamMetrics = streamMetrics;
+    if (streamMetrics != null) {
+      streamMetrics.setReceiveQueueDepthGauge(packetQueue::size);
+    }
+  }
+
+  private void recordReceived(int bytes) {
+    StreamMetrics metrics = streamMetrics;
+    if (metrics != null) {
+      metrics.recordPacketReceived(bytes);
+    }
+  }
+
+  /**
+   * Sends an RTCP packet back to where the media came from, over the receiving socket.
+   *
+   * @param data The serialized RTCP packet
+   * @return false if nothing has been received yet, so there is nobody to send to
+   */
+  @Override
+  public boolean sendFeedback(byte[] data) {
+    SocketAddress destination = mediaSource;
+    if (socket == null || socket.isClosed() || destination == null) {
+      return false;
+    }
+    try {
+      socket.send(new DatagramPacket(data, data.length, destination));
+      return true;
+    } catch (IOException e) {
+      log.error("Failed to send RTCP feedback", e);
+      return false;
+    }
+  }
+
+  private void updateMediaSource(DatagramPacket packet) {
+    InetAddress address = packet.getAddress();
+    // getSocketAddress() allocates, the source rarely changes
+    if (address != null && (packet.getPort() != sourcePort || !address.equals(sourceAddress))) {
+      sourceAddress = address;
+      sourcePort = packet.getPort();
+      mediaSource = packet.getSocketAddress();
+    }
+  }
+
   void putPacket(RTPPacket rtpPacket) {
-    DelayedRTPPacket delayedPacket = new DelayedRTPPacket(rtpPacket, packetTtlMillis);
-    packetQueue.put(delayedPacket);
-    log.debug("Packet added to queue. Timestamp: {} Seq: {} / {}", rtpPacket.getTimestamp(),
-        rtpPacket.getSequenceNumber(), packetQueue.size());
+    if (!packetQueue.offer(rtpPacket)) {
+      dropped++;
+      if (log.isDebugEnabled()) {
+        log.debug("Receive queue full, dropped packet. Seq: {}", rtpPacket.getSequenceNumber());
+      }
+      return;
+    }
+    if (log.isDebugEnabled()) {
+      log.debug("Packet added to queue. Timestamp: {} Seq: {} / {}", rtpPacket.getTimestamp(),
+          rtpPacket.getSequenceNumber(), packetQueue.size());
+    }
   }
 
+  /**
+   * Takes the oldest packet, waiting until it was held for the packet TTL.
+   */
+  @Override
   public RTPPacket retrievePacket() throws InterruptedException {
-    DelayedRTPPacket delayedPacket = packetQueue.take(); // Blocks until an unexpired packet is available
-    log.debug("Retrive packet with timestamp: {}", delayedPacket.getPacket().getTimestamp());
-    return delayedPacket.getPacket();
+    RTPPacket rtpPacket = packetQueue.take();
+    if (log.isDebugEnabled()) {
+      log.debug("Retrive packet with timestamp: {}", rtpPacket.getTimestamp());
+    }
+    return rtpPacket;
+  }
+
+  /**
+   * @return The packets dropped because the receive queue was full
+   */
+  public long getDropped() {
+    return dropped;
   }
 
   @Override
@@ -67,6 +211,13 @@ public class RTPSocketReceiver implements AutoCloseable {
     if (socket != null && !socket.isClosed()) {
       socket.close();
     }
-    log.info("PacketReceiver closed");
+    if (channel != null && channel.isOpen()) {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        log.error("Error while closing channel", e);
+      }
+    }
+    log.info("PacketReceiver closed, {} packets dropped", dropped);
   }
 }
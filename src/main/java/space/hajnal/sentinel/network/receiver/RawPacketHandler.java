@@ -0,0 +1,17 @@
+package space.hajnal.sentinel.network.receiver;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * Receives datagrams without deserializing them.
+ */
+public interface RawPacketHandler {
+
+  /**
+   * @param packet A read-only view of the datagram, positioned at 0. The buffer is reused for the
+   *               next datagram, so it must not be kept after returning.
+   * @param source The address the datagram came from
+   */
+  void onPacket(ByteBuffer packet, SocketAddress source);
+}
@@ -0,0 +1,32 @@
+package space.hajnal.sentinel.network.sender;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import space.hajnal.sentinel.network.model.RTPPacket;
+
+/**
+ * Moves the packets of an {@link RTPSocketSender} to the receiver: over UDP, or over one of the
+ * same-host transports. Encoding, packetization, metrics and latency marks stay in the sender.
+ */
+public interface PacketTransmitter extends AutoCloseable {
+
+  /**
+   * @param socket The socket to send from, transports without one ignore it
+   */
+  void open(DatagramSocket socket);
+
+  /**
+   * @return true once opened and until closed
+   */
+  boolean isOpen();
+
+  /**
+   * Sends one packet, called only while {@link #isOpen()}.
+   *
+   * @return The size of the packet as sent, in bytes
+   */
+  int transmit(RTPPacket rtpPacket) throws IOException;
+
+  @Override
+  void close();
+}
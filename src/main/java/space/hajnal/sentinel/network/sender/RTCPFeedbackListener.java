@@ -0,0 +1,93 @@
+package space.hajnal.sentinel.network.sender;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.slf4j.Slf4j;
+import space.hajnal.sentinel.network.model.RTCPFeedback;
+import space.hajnal.sentinel.network.serialization.RTCPFeedbackDeserializer;
+
+/**
+ * Listens on the sending socket for PLI and FIR feedback and forwards each request to the sender
+ * of the named stream.
+ * <p>
+ * Receivers send their feedback back to the address the media came from, so RTP and RTCP share
+ * the sender's socket (RFC 5761). Rate limiting is left to each encoder, which knows when it last
+ * produced a keyframe.
+ */
+@Slf4j
+public class RTCPFeedbackListener implements AutoCloseable {
+
+  private static final int MAX_RTCP_SIZE = 1500;
+
+  private final List<RTPSocketSender> senders;
+  private final RTCPFeedbackDeserializer deserializer;
+  private final LongAdder keyframeRequests = new LongAdder();
+  private volatile boolean running = true;
+
+  public RTCPFeedbackListener(List<RTPSocketSender> senders,
+      RTCPFeedbackDeserializer deserializer) {
+    this.senders = List.copyOf(senders);
+    this.deserializer = deserializer;
+  }
+
+  /**
+   * Receives feedback until closed, blocking the calling thread.
+   *
+   * @param socket The socket the senders send from
+   */
+  public void startListening(DatagramSocket socket) {
+    byte[] buffer = new byte[MAX_RTCP_SIZE];
+    DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+    while (running && !socket.isClosed()) {
+      try {
+        packet.setLength(buffer.length);
+        socket.receive(packet);
+        onPacket(buffer, packet.getLength());
+      } catch (IOException e) {
+        if (running && !socket.isClosed()) {
+          log.error("Error while receiving RTCP feedback", e);
+        }
+      } catch (IllegalArgumentException e) {
+        log.warn("Ignoring malformed RTCP packet: {}", e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Requests a keyframe from the senders named by the feedback in an RTCP packet, for feedback
+   * that does not come from the socket.
+   *
+   * @throws IllegalArgumentException If the packet is malformed
+   */
+  public void onPacket(byte[] data, int length) {
+    if (!RTCPFeedback.isRTCP(data, length)) {
+      return;
+    }
+    for (RTCPFeedback feedback : deserializer.deserialize(data, length)) {
+      for (RTPSocketSender sender : senders) {
+        if (sender.getSsrc() == feedback.getMediaSsrc()) {
+          log.debug("{} from {} for SSRC {}", feedback.getType(), feedback.getSenderSsrc(),
+              feedback.getMediaSsrc());
+          keyframeRequests.increment();
+          sender.requestKeyframe();
+        }
+      }
+    }
+  }
+
+  /**
+   * @return The number of PLI and FIR requests that named one of the senders
+   */
+  public long getKeyframeRequests() {
+    return keyframeRequests.sum();
+  }
+
+  @Override
+  public void close() {
+    running = false;
+    log.info("RTCPFeedbackListener closed after {} keyframe requests", getKeyframeRequests());
+  }
+}
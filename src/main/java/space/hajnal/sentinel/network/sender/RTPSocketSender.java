@@ -1,13 +1,18 @@
 package space.hajnal.sentinel.network.sender;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
 import java.net.DatagramSocket;
-import java.net.InetAddress;
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 import lombok.extern.slf4j.Slf4j;
 import org.bytedeco.javacv.Frame;
 import space.hajnal.sentinel.codec.H264Encoder;
+import space.hajnal.sentinel.codec.TemporalLayerMarker;
+import space.hajnal.sentinel.jfr.PacketSentEvent;
+import space.hajnal.sentinel.latency.LatencyStage;
+import space.hajnal.sentinel.latency.LatencyTracker;
+import space.hajnal.sentinel.metrics.StreamMetrics;
+import space.hajnal.sentinel.network.model.CaptureTime;
 import space.hajnal.sentinel.network.model.RTPPacket;
 import space.hajnal.sentinel.network.model.ServerOptions;
 import space.hajnal.sentinel.network.serialization.RTPPacketSerializer;
@@ -20,62 +25,162 @@ public class RTPSocketSender implements AutoCloseable {
   private final ServerOptions serverOptions;
   private final H264Encoder h264Encoder;
   private final RTPPacketSerializer rtpPacketSerializer;
-  private DatagramSocket socket;
+  private final PacketTransmitter transmitter;
   private final FrameProcessor frameProcessor;
+  private final TemporalLayerMarker temporalLayerMarker = new TemporalLayerMarker();
+  // The next packet's, numbered on across frames from a random start (RFC 3550, section 5.1).
+  // Frames of one sender are sent one at a time.
+  private int sequenceNumber = ThreadLocalRandom.current().nextInt(1 << 16);
+  private volatile LatencyTracker latencyTracker;
+  private volatile StreamMetrics streamMetrics;
 
   public RTPSocketSender(ServerOptions serverOptions, H264Encoder h264Encoder,
       RTPPacketSerializer rtpPacketSerializer, FrameProcessor frameProcessor) {
+    this(new UdpTransmitter(serverOptions), serverOptions, h264Encoder, rtpPacketSerializer,
+        frameProcessor);
+  }
+
+  /**
+   * @param transmitter Where the packets go. Only UDP uses the server address and port of the
+   *                    options.
+   */
+  public RTPSocketSender(PacketTransmitter transmitter, ServerOptions serverOptions,
+      H264Encoder h264Encoder, RTPPacketSerializer rtpPacketSerializer,
+      FrameProcessor frameProcessor) {
     this.serverOptions = serverOptions;
     this.h264Encoder = h264Encoder;
     this.rtpPacketSerializer = rtpPacketSerializer;
+    this.transmitter = transmitter;
     this.frameProcessor = frameProcessor;
   }
 
+  /**
+   * @param socket The socket to send from, transports without one ignore it
+   */
   public void open(DatagramSocket socket) {
-    try {
-      if (socket == null) {
-        throw new IllegalArgumentException("Socket cannot be null");
-      }
+    transmitter.open(socket);
+  }
 
-      if (this.socket != null && !this.socket.isClosed()) {
-        throw new IllegalArgumentException("Socket is must be closed");
-      }
-      this.socket = socket;
-      socket.setSendBufferSize(65536);
-      log.info("RTPStream socket opened");
+  public void send(Frame frame, long timestamp) {
+    if (!transmitter.isOpen()) {
+      throw new IllegalStateException("Socket is not open. Call open() before sending frames.");
+    }
+
+    try {
+      sendFrameData(encode(frame), timestamp);
     } catch (Exception e) {
-      log.error("Failed to open DatagramSocket", e);
-      throw new IllegalStateException(e);
+      log.error("Failed to send frame", e);
     }
   }
 
-  public void send(Frame frame, long timestamp) {
-    if (socket == null || socket.isClosed()) {
+  /**
+   * Encodes a frame without sending it, so encoding can run on a separate pipeline stage.
+   *
+   * @param frame The raw frame
+   * @return The encoded access unit
+   */
+  public byte[] encode(Frame frame) {
+    StreamMetrics metrics = streamMetrics;
+    if (metrics == null) {
+      return h264Encoder.encode(frame);
+    }
+    long start = System.nanoTime();
+    byte[] encoded = h264Encoder.encode(frame);
+    metrics.recordEncode(System.nanoTime() - start);
+    return encoded;
+  }
+
+  /**
+   * Asks this sender's encoder for an early keyframe, see {@link H264Encoder#requestKeyframe()}.
+   */
+  public void requestKeyframe() {
+    h264Encoder.requestKeyframe();
+  }
+
+  /**
+   * @return The SSRC this sender's stream is sent with
+   */
+  public long getSsrc() {
+    return serverOptions.getSsrc();
+  }
+
+  /**
+   * Sets the tracker that the packetize and send stages are marked on, or null for none.
+   */
+  public void setLatencyTracker(LatencyTracker latencyTracker) {
+    this.latencyTracker = latencyTracker;
+  }
+
+  /**
+   * Sets the metrics that encoding and sending are counted in, or null for none.
+   */
+  public void setStreamMetrics(StreamMetrics streamMetrics) {
+    this.streamMetrics = streamMetrics;
+  }
+
+  /**
+   * Packetizes and sends an already encoded frame.
+   *
+   * @param frameData The encoded access unit
+   * @param timestamp The RTP timestamp of the frame
+   */
+  public void sendFrameData(byte[] frameData, long timestamp) {
+    if (!transmitter.isOpen()) {
       throw new IllegalStateException("Socket is not open. Call open() before sending frames.");
     }
 
-    try {
-      int ssrc = 123456;
-      byte[] frameData = h264Encoder.encode(frame);
-      int mtu = serverOptions.getMtu();
-      List<RTPPacket> rtpPackets = rtpPacketSerializer.serialize(frameData, mtu, timestamp, ssrc);
+    LatencyTracker tracker = latencyTracker;
+    int mtu = serverOptions.getMtu();
+    List<RTPPacket> rtpPackets = rtpPacketSerializer.serialize(frameData, mtu, timestamp,
+        (int) serverOptions.getSsrc(), temporalLayerMarker.mark(frameData),
+        captureTime(tracker, timestamp), sequenceNumber);
+    sequenceNumber = (sequenceNumber + rtpPackets.size()) & 0xFFFF;
+    if (tracker == null) {
       //log.debug("Sending frame with timestamp: {}, size: {}", timestamp, rtpPackets.size());
       rtpPackets.forEach(this::send);
+      return;
+    }
+    tracker.mark(timestamp, LatencyStage.PACKETIZED);
+    // The receiver starts on the first packet, so that is what counts as sent. Marked before the
+    // transmit, which an in-process receiver may already have handled when it returns.
+    tracker.mark(timestamp, LatencyStage.SENT);
+    rtpPackets.forEach(this::send);
+  }
 
-    } catch (Exception e) {
-      log.error("Failed to send frame", e);
+  private CaptureTime captureTime(LatencyTracker tracker, long timestamp) {
+    if (tracker == null || !serverOptions.isSendCaptureTime()) {
+      return null;
     }
+    long epochNanos = tracker.getCaptureEpochNanos(timestamp);
+    return epochNanos < 0 ? null : new CaptureTime(epochNanos);
   }
 
   private void send(RTPPacket rtpPacket) {
-    if (socket != null && !socket.isClosed()) {
+    if (transmitter.isOpen()) {
       try {
         frameProcessor.addSentPacket(rtpPacket);
         //log.debug("Sending RTP packet with timestamp: {}", rtpPacket.getTimestamp());
-        socket.send(new DatagramPacket(rtpPacket.toBytes(), rtpPacket.toBytes().length,
-            InetAddress.getByName(serverOptions.getServerAddress()),
-            serverOptions.getServerPort()));
+        PacketSentEvent event = new PacketSentEvent();
+        event.begin();
+        int size = transmitter.transmit(rtpPacket);
+        event.end();
+        if (event.shouldCommit()) {
+          event.ssrc = rtpPacket.getSsrc();
+          event.timestamp = rtpPacket.getTimestamp();
+          event.sequenceNumber = rtpPacket.getSequenceNumber();
+          event.size = size;
+          event.marker = rtpPacket.isMarker();
+          event.commit();
+        }
+        StreamMetrics metrics = streamMetrics;
+        if (metrics != null) {
+          metrics.recordPacketSent(size);
+        }
       } catch (IOException e) {
+        StreamMetrics metrics = streamMetrics;
+        if (metrics != null) {
+          metrics.recordSendError();
+        }
         log.error("Failed to send RTP packet", e);
       }
     }
@@ -83,9 +188,6 @@ public class RTPSocketSender implements AutoCloseable {
 
   @Override
   public void close() {
-    if (socket != null && !socket.isClosed()) {
-      socket.close();
-      log.info("RTPStream socket closed");
-    }
+    transmitter.close();
   }
 }
@@ -0,0 +1,55 @@
+package space.hajnal.sentinel.network.sender;
+
+import java.util.ArrayList;
+import java.util.List;
+import space.hajnal.sentinel.camera.SentinelFrameGrabberOptions;
+import space.hajnal.sentinel.codec.H264Encoder;
+import space.hajnal.sentinel.network.model.ServerOptions;
+import space.hajnal.sentinel.network.model.SimulcastLayer;
+import space.hajnal.sentinel.network.model.SimulcastOptions;
+import space.hajnal.sentinel.network.serialization.RTPPacketSerializer;
+import space.hajnal.sentinel.network.video.FrameProcessor;
+
+/**
+ * Creates the layer senders of a simulcast {@link space.hajnal.sentinel.network.RTPStreamWriter},
+ * each with its own encoder, SSRC and port.
+ * <p>
+ * The factory owns the encoders it created, close it once the writer is closed.
+ */
+public class SimulcastSenderFactory implements AutoCloseable {
+
+  private final List<H264Encoder> encoders = new ArrayList<>();
+
+  /**
+   * @param options     The layers, in the order the writer numbers them
+   * @param destination The host and base port, see {@link SimulcastLayer#serverOptions}
+   * @param capture     The options of the camera feeding all layers
+   * @return One UDP sender per layer
+   */
+  public synchronized List<RTPSocketSender> create(SimulcastOptions options,
+      ServerOptions destination, SentinelFrameGrabberOptions capture,
+      RTPPacketSerializer rtpPacketSerializer, FrameProcessor frameProcessor) {
+    List<SimulcastLayer> layers = options.getLayers();
+    if (layers.isEmpty()) {
+      throw new IllegalArgumentException("At least one simulcast layer is required");
+    }
+    List<RTPSocketSender> senders = new ArrayList<>(layers.size());
+    for (int i = 0; i < layers.size(); i++) {
+      SimulcastLayer layer = layers.get(i);
+      H264Encoder encoder = new H264Encoder(layer.encoderOptions(capture), layer.getBitRate());
+      encoders.add(encoder);
+      senders.add(new RTPSocketSender(layer.serverOptions(destination, i), encoder,
+          rtpPacketSerializer, frameProcessor));
+    }
+    return senders;
+  }
+
+  /**
+   * Closes the encoders of all senders created.
+   */
+  @Override
+  public synchronized void close() {
+    encoders.forEach(H264Encoder::close);
+    encoders.clear();
+  }
+}
@@ -0,0 +1,63 @@
+package space.hajnal.sentinel.network.sender;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import lombok.extern.slf4j.Slf4j;
+import space.hajnal.sentinel.network.model.RTPPacket;
+import space.hajnal.sentinel.network.model.ServerOptions;
+
+/**
+ * Sends packets as datagrams to the server address and port of the options.
+ */
+@Slf4j
+class UdpTransmitter implements PacketTransmitter {
+
+  private final ServerOptions serverOptions;
+  private DatagramSocket socket;
+
+  UdpTransmitter(ServerOptions serverOptions) {
+    this.serverOptions = serverOptions;
+  }
+
+  @Override
+  public void open(DatagramSocket socket) {
+    try {
+      if (socket == null) {
+        throw new IllegalArgumentException("Socket cannot be null");
+      }
+
+      if (this.socket != null && !this.socket.isClosed()) {
+        throw new IllegalArgumentException("Socket is must be closed");
+      }
+      this.socket = socket;
+      socket.setSendBufferSize(65536);
+      log.info("RTPStream socket opened");
+    } catch (Exception e) {
+      log.error("Failed to open DatagramSocket", e);
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Override
+  public boolean isOpen() {
+    return socket != null && !socket.isClosed();
+  }
+
+  @Override
+  public int transmit(RTPPacket rtpPacket) throws IOException {
+    byte[] datagram = rtpPacket.toBytes();
+    socket.send(new DatagramPacket(datagram, datagram.length,
+        InetAddress.getByName(serverOptions.getServerAddress()), serverOptions.getServerPort()));
+    return datagram.length;
+  }
+
+  @Override
+  public void close() {
+    if (socket != null && !socket.isClosed()) {
+      socket.close();
+      log.info("RTPStream socket closed");
+    }
+  }
+}
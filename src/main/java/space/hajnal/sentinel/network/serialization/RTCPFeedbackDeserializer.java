@@ -0,0 +1,60 @@
+package space.hajnal.sentinel.network.serialization;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import space.hajnal.sentinel.network.model.RTCPFeedback;
+
+public class RTCPFeedbackDeserializer {
+
+  /**
+   * Extracts the keyframe requests from an RTCP packet.
+   * <p>
+   * Compound packets are walked one packet at a time, every other RTCP packet type is skipped.
+   *
+   * @param rawData The datagram
+   * @param length  The number of valid bytes in the datagram
+   * @return One entry per PLI and per FIR entry, empty if there are none
+   */
+  public List<RTCPFeedback> deserialize(byte[] rawData, int length) {
+    return deserialize(ByteBuffer.wrap(rawData, 0, length));
+  }
+
+  /**
+   * @param packet The datagram from its position to its limit, the position is not changed
+   * @see #deserialize(byte[], int)
+   */
+  public List<RTCPFeedback> deserialize(ByteBuffer packet) {
+    List<RTCPFeedback> feedback = new ArrayList<>(1);
+    ByteBuffer buffer = packet.duplicate();
+    int end = buffer.limit();
+    while (buffer.remaining() >= 4) {
+      int start = buffer.position();
+      int firstByte = Byte.toUnsignedInt(buffer.get());
+      int packetType = Byte.toUnsignedInt(buffer.get());
+      int packetLength = (Short.toUnsignedInt(buffer.getShort()) + 1) * 4;
+      if ((firstByte >> 6) != 2 || start + packetLength > end) {
+        throw new IllegalArgumentException("Invalid RTCP packet: bad version or length.");
+      }
+
+      int fmt = firstByte & 0x1F;
+      if (packetType == RTCPFeedback.PAYLOAD_TYPE_PSFB && packetLength >= 12) {
+        long senderSsrc = Integer.toUnsignedLong(buffer.getInt());
+        long mediaSsrc = Integer.toUnsignedLong(buffer.getInt());
+        if (fmt == RTCPFeedback.FMT_PLI) {
+          feedback.add(RTCPFeedback.pli(senderSsrc, mediaSsrc));
+        } else if (fmt == RTCPFeedback.FMT_FIR) {
+          // One FCI entry per stream, each with its own target SSRC
+          while (buffer.position() + 8 <= start + packetLength) {
+            long targetSsrc = Integer.toUnsignedLong(buffer.getInt());
+            int sequenceNumber = Byte.toUnsignedInt(buffer.get());
+            buffer.position(buffer.position() + 3);
+            feedback.add(RTCPFeedback.fir(senderSsrc, targetSsrc, sequenceNumber));
+          }
+        }
+      }
+      buffer.position(start + packetLength);
+    }
+    return feedback;
+  }
+}
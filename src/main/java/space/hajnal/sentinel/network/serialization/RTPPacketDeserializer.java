@@ -4,6 +4,8 @@ import static space.hajnal.sentinel.network.model.RTPPacket.BASE_HEADER_SIZE;
 
 import java.net.DatagramPacket;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
+import space.hajnal.sentinel.network.model.RTPHeaderExtension;
 import space.hajnal.sentinel.network.model.RTPPacket;
 
 public class RTPPacketDeserializer {
@@ -26,50 +28,66 @@ public class RTPPacketDeserializer {
    * @return The deserialized RTP packet
    */
   public RTPPacket deserialize(byte[] rawData) {
-    if (rawData.length < BASE_HEADER_SIZE) {
+    return deserialize(rawData, rawData.length);
+  }
+
+  /**
+   * Deserializes an RTP packet from the start of a reused receive buffer.
+   * <p>
+   * Only the packet's own header and payload are allocated, the fields are read in place.
+   *
+   * @param rawData The buffer holding the packet
+   * @param length  The length of the packet in the buffer
+   * @return The deserialized RTP packet
+   */
+  public RTPPacket deserialize(byte[] rawData, int length) {
+    if (length < BASE_HEADER_SIZE) {
       throw new IllegalArgumentException("Invalid RTP packet: insufficient data for header.");
     }
-    ByteBuffer buffer = ByteBuffer.wrap(rawData);
 
-    int version;
-    boolean padding;
-    boolean extension;
-    int csrcCount = 0;
-    boolean marker;
-    int payloadType;
-    int sequenceNumber;
-    long timestamp;
-    long ssrc;
-    byte[] payload;
-    byte[] header;  // Store the RTP header separately
+    int firstByte = Byte.toUnsignedInt(rawData[0]);
+    int version = (firstByte >> 6) & 0x03;
+    boolean padding = (firstByte & 0x20) != 0;
+    boolean extension = (firstByte & 0x10) != 0;
+    int csrcCount = firstByte & 0x0F;
 
-    // Extract header bytes
-    header = new byte[BASE_HEADER_SIZE];
-    buffer.get(header);  // Read the first 12 bytes (header)
+    int secondByte = Byte.toUnsignedInt(rawData[1]);
+    boolean marker = (secondByte & 0x80) != 0;
+    int payloadType = secondByte & 0x7F;
 
-    int firstByte = Byte.toUnsignedInt(header[0]);
-    version = (firstByte >> 6) & 0x03;
-    padding = (firstByte & 0x20) != 0;
-    extension = (firstByte & 0x10) != 0;
-    csrcCount = firstByte & 0x0F;
+    int sequenceNumber = (int) readUnsigned(rawData, 2, 2);
+    long timestamp = readUnsigned(rawData, 4, 4);
+    long ssrc = readUnsigned(rawData, 8, 4);
 
-    int secondByte = Byte.toUnsignedInt(header[1]);
-    marker = (secondByte & 0x80) != 0;
-    payloadType = secondByte & 0x7F;
-
-    sequenceNumber = Short.toUnsignedInt(ByteBuffer.wrap(header, 2, 2).getShort());
-    timestamp = Integer.toUnsignedLong(ByteBuffer.wrap(header, 4, 4).getInt());
-    ssrc = Integer.toUnsignedLong(ByteBuffer.wrap(header, 8, 4).getInt());
+    int headerLength = BASE_HEADER_SIZE;
+    RTPHeaderExtension headerExtension = null;
+    if (extension) {
+      // The extension follows the contributing sources
+      ByteBuffer buffer = ByteBuffer.wrap(rawData, 0, length);
+      buffer.position(BASE_HEADER_SIZE + csrcCount * 4);
+      if (buffer.remaining() < 4) {
+        throw new IllegalArgumentException("Invalid RTP packet: truncated header extension.");
+      }
+      headerExtension = RTPHeaderExtension.read(buffer);
+      headerLength = buffer.position();
+    }
 
-    // Extract payload
-    int payloadLength = rawData.length - BASE_HEADER_SIZE;
-    payload = new byte[payloadLength];
-    buffer.get(payload);
+    // The header is kept separately
+    byte[] header = Arrays.copyOf(rawData, headerLength);
+    byte[] payload = Arrays.copyOfRange(rawData, headerLength, length);
 
     return new RTPPacket(version, padding, extension, csrcCount, marker, payloadType,
         sequenceNumber,
-        timestamp, ssrc, payload, header);
+        timestamp, ssrc, payload, header, headerExtension);
   }
 
-}
+  // Big-endian, without wrapping the array in a ByteBuffer
+  private static long readUnsigned(byte[] data, int offset, int length) {
+    long value = 0;
+    for (int i = offset; i < offset + length; i++) {
+      value = (value << 8) | Byte.toUnsignedInt(data[i]);
+    }
+    return value;
+  }
 
+}
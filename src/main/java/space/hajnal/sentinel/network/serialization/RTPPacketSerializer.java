@@ -4,6 +4,9 @@ import static space.hajnal.sentinel.network.model.RTPPacket.BASE_HEADER_SIZE;
 
 import java.util.ArrayList;
 import java.util.List;
+import space.hajnal.sentinel.network.model.CaptureTime;
+import space.hajnal.sentinel.network.model.FrameMarking;
+import space.hajnal.sentinel.network.model.RTPHeaderExtension;
 import space.hajnal.sentinel.network.model.RTPPacket;
 
 public class RTPPacketSerializer {
@@ -39,20 +42,78 @@ public class RTPPacketSerializer {
   }
 
   public List<RTPPacket> serialize(byte[] frameData, int mtu, long timestamp, int ssrc) {
+    return serialize(frameData, mtu, timestamp, ssrc, null);
+  }
+
+  /**
+   * Serialize a frame into RTP packets that carry a frame marking header extension.
+   *
+   * @param frameMarking The marking of the frame, start and end of frame are set per packet.
+   *                     Null for packets without a header extension.
+   */
+  public List<RTPPacket> serialize(byte[] frameData, int mtu, long timestamp, int ssrc,
+      FrameMarking frameMarking) {
+    return serialize(frameData, mtu, timestamp, ssrc, frameMarking, null);
+  }
+
+  /**
+   * Serialize a frame into RTP packets, the first of which also carries the capture time.
+   *
+   * @param captureTime The capture time of the frame, or null to send none
+   */
+  public List<RTPPacket> serialize(byte[] frameData, int mtu, long timestamp, int ssrc,
+      FrameMarking frameMarking, CaptureTime captureTime) {
+    return serialize(frameData, mtu, timestamp, ssrc, frameMarking, captureTime, 0);
+  }
+
+  /**
+   * Serialize a frame into RTP packets numbered on from the previous frame of the stream, as
+   * receivers expect one sequence number space per SSRC (RFC 3550, section 5.1).
+   *
+   * @param firstSequenceNumber The sequence number of the frame's first packet, the following
+   *                            ones wrap around from 65535 to 0
+   */
+  public List<RTPPacket> serialize(byte[] frameData, int mtu, long timestamp, int ssrc,
+      FrameMarking frameMarking, CaptureTime captureTime, int firstSequenceNumber) {
     List<RTPPacket> data = new ArrayList<>();
-    int sequenceNumber = 0;
+    int sequenceNumber = firstSequenceNumber;
+    int payloadSize;
 
-    for (int offset = 0; offset < frameData.length; offset += (mtu - RTPPacket.BASE_HEADER_SIZE)) {
-      int payloadSize = Math.min(mtu - RTPPacket.BASE_HEADER_SIZE, frameData.length - offset);
+    for (int offset = 0; offset < frameData.length; offset += payloadSize) {
+      CaptureTime packetCaptureTime = offset == 0 ? captureTime : null;
+      // Every element has a fixed size, so the end of frame flag does not change the budget
+      int maxPayload = mtu - RTPPacket.headerSize(
+          extension(frameMarking, packetCaptureTime, offset == 0, true));
+      payloadSize = Math.min(maxPayload, frameData.length - offset);
       byte[] payload = new byte[payloadSize];
       System.arraycopy(frameData, offset, payload, 0, payloadSize);
 
       boolean marker = (offset + payloadSize == frameData.length);
-      RTPPacket rtpPacket = new RTPPacket(96, sequenceNumber++, timestamp, ssrc, payload, marker);
+      RTPPacket rtpPacket = new RTPPacket(96, sequenceNumber++ & 0xFFFF, timestamp, ssrc, payload,
+          marker, extension(frameMarking, packetCaptureTime, offset == 0, marker));
 
       data.add(rtpPacket);
     }
 
     return data;
   }
+
+  private static RTPHeaderExtension extension(FrameMarking frameMarking, CaptureTime captureTime,
+      boolean start, boolean end) {
+    if (frameMarking == null && captureTime == null) {
+      return null;
+    }
+    RTPHeaderExtension extension = new RTPHeaderExtension();
+    if (frameMarking != null) {
+      extension.put(FrameMarking.EXTENSION_ID, frameMarking.toBuilder()
+          .startOfFrame(start)
+          .endOfFrame(end)
+          .build()
+          .toBytes());
+    }
+    if (captureTime != null) {
+      extension.put(CaptureTime.EXTENSION_ID, captureTime.toBytes());
+    }
+    return extension;
+  }
 }
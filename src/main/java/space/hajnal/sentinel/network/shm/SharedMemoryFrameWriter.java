@@ -0,0 +1,52 @@
+package space.hajnal.sentinel.network.shm;
+
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.slf4j.Slf4j;
+import space.hajnal.sentinel.camera.EncodedFrameCallback;
+import space.hajnal.sentinel.camera.model.SentinelFrame;
+import space.hajnal.sentinel.network.video.VideoStreamProcessor.FrameListener;
+
+/**
+ * Writes whole access units to a {@link SharedMemoryRing}, with their RTP timestamps, for readers
+ * in other processes that {@link SharedMemoryReader#takeFrame take} frames rather than packets.
+ * <p>
+ * Subscribe it to a
+ * {@link space.hajnal.sentinel.network.video.VideoStreamProcessor} for the assembled frames of a
+ * received stream, or pass it to
+ * {@link space.hajnal.sentinel.camera.SentinelFrameGrabberStatic#replay} for cached frames.
+ */
+@Slf4j
+public class SharedMemoryFrameWriter implements FrameListener, EncodedFrameCallback {
+
+  private final SharedMemoryRing ring;
+  private final LongAdder oversized = new LongAdder();
+
+  /**
+   * @param ring A ring {@link SharedMemoryRing#create created} by this process, with slots for
+   *             the largest keyframe
+   */
+  public SharedMemoryFrameWriter(SharedMemoryRing ring) {
+    this.ring = ring;
+  }
+
+  @Override
+  public void onFrameAvailable(SentinelFrame frame) {
+    onFrameEncoded(frame.getData(), frame.getTimestamp());
+  }
+
+  @Override
+  public void onFrameEncoded(byte[] accessUnit, long timestamp) {
+    if (!ring.write(timestamp, accessUnit, null)) {
+      oversized.increment();
+      log.warn("Dropped frame {} of {} bytes, the shared memory ring holds {}", timestamp,
+          accessUnit.length, ring.getSlotSize());
+    }
+  }
+
+  /**
+   * @return The frames dropped because they were larger than a slot
+   */
+  public long getOversized() {
+    return oversized.sum();
+  }
+}
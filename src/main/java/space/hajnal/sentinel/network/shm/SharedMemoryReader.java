@@ -0,0 +1,184 @@
+package space.hajnal.sentinel.network.shm;
+
+import static space.hajnal.sentinel.network.shm.SharedMemoryRing.CURSOR_OFFSET;
+import static space.hajnal.sentinel.network.shm.SharedMemoryRing.DATA_OFFSET;
+import static space.hajnal.sentinel.network.shm.SharedMemoryRing.INT;
+import static space.hajnal.sentinel.network.shm.SharedMemoryRing.LENGTH_OFFSET;
+import static space.hajnal.sentinel.network.shm.SharedMemoryRing.LONG;
+import static space.hajnal.sentinel.network.shm.SharedMemoryRing.SEQUENCE_OFFSET;
+import static space.hajnal.sentinel.network.shm.SharedMemoryRing.TIMESTAMP_OFFSET;
+
+import java.lang.invoke.VarHandle;
+import java.nio.MappedByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import lombok.extern.slf4j.Slf4j;
+import space.hajnal.sentinel.camera.model.SentinelFrame;
+
+/**
+ * Reads the records of a {@link SharedMemoryRing} in order, independently of other readers. Use
+ * it from one thread.
+ * <p>
+ * A record is copied out and then checked against its slot's sequence number, so a record the
+ * writer overwrote during the copy is never returned. A reader that falls more than a ring behind
+ * skips to the newest record and counts what it missed, like a receiver losing packets.
+ */
+@Slf4j
+public class SharedMemoryReader {
+
+  // Below a tenth of a frame interval, and few enough wake-ups for an idle stream
+  private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+  private static final int SPINS_BEFORE_PARKING = 100;
+
+  private final SharedMemoryRing ring;
+  private final MappedByteBuffer buffer;
+  private long position;
+  private long timestamp;
+  private long laps = 0;
+  private long lost = 0;
+  private volatile boolean closed = false;
+
+  SharedMemoryReader(SharedMemoryRing ring, long position) {
+    this.ring = ring;
+    this.buffer = ring.buffer();
+    this.position = position;
+  }
+
+  /**
+   * Copies the next record without waiting.
+   *
+   * @param target Receives the record, at least the ring's slot size
+   * @return The length of the record, or -1 if there is none yet
+   */
+  public int poll(byte[] target) {
+    if (target.length < ring.getSlotSize()) {
+      throw new IllegalArgumentException("Target of " + target.length
+          + " bytes is smaller than the slots, " + ring.getSlotSize());
+    }
+    while (true) {
+      long cursor = (long) LONG.getAcquire(buffer, CURSOR_OFFSET);
+      if (position >= cursor) {
+        return -1;
+      }
+      if (cursor - position > ring.getSlotCount()) {
+        skipTo(cursor);
+        continue;
+      }
+      int slot = ring.slotOffset(position);
+      if ((long) LONG.getAcquire(buffer, slot + SEQUENCE_OFFSET) != position) {
+        skipTo(cursor);
+        continue;
+      }
+      long recordTimestamp = (long) LONG.get(buffer, slot + TIMESTAMP_OFFSET);
+      int length = (int) INT.get(buffer, slot + LENGTH_OFFSET);
+      if (length < 0 || length > ring.getSlotSize()) {
+        // Torn by the writer, who lapped this reader
+        skipTo(cursor);
+        continue;
+      }
+      buffer.get(slot + DATA_OFFSET, target, 0, length);
+      VarHandle.loadLoadFence();
+      if ((long) LONG.getOpaque(buffer, slot + SEQUENCE_OFFSET) != position) {
+        // Overwritten while copying, everything up to the writer is stale as well
+        skipTo((long) LONG.getAcquire(buffer, CURSOR_OFFSET));
+        continue;
+      }
+      timestamp = recordTimestamp;
+      position++;
+      return length;
+    }
+  }
+
+  /**
+   * Copies the next record, waiting until there is one. Waiting spins briefly, then polls every
+   * 200 µs, as the writer cannot wake a reader in another process.
+   *
+   * @param target Receives the record, at least the ring's slot size
+   * @return The length of the record
+   * @throws InterruptedException If interrupted or closed, or the writer closed the ring and all
+   *                              records were read
+   */
+  public int take(byte[] target) throws InterruptedException {
+    int idle = 0;
+    while (true) {
+      int length = poll(target);
+      if (length >= 0) {
+        return length;
+      }
+      if (ring.isClosed()) {
+        // Records written just before closing
+        length = poll(target);
+        if (length >= 0) {
+          return length;
+        }
+        throw new InterruptedException("Shared memory ring closed");
+      }
+      if (closed) {
+        throw new InterruptedException("Shared memory reader closed");
+      }
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      if (idle++ < SPINS_BEFORE_PARKING) {
+        Thread.onSpinWait();
+      } else {
+        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+      }
+    }
+  }
+
+  /**
+   * Takes the next record as a frame, for rings that carry access units.
+   *
+   * @throws InterruptedException As for {@link #take(byte[])}
+   */
+  public SentinelFrame takeFrame(byte[] target) throws InterruptedException {
+    int length = take(target);
+    byte[] data = new byte[length];
+    System.arraycopy(target, 0, data, 0, length);
+    return SentinelFrame.builder().data(data).timestamp(timestamp).build();
+  }
+
+  /**
+   * Stops a {@link #take} waiting in another thread.
+   */
+  public void close() {
+    closed = true;
+  }
+
+  private void skipTo(long cursor) {
+    laps++;
+    lost += cursor - position;
+    log.warn("Reader fell behind the shared memory ring, skipping {} records", cursor - position);
+    position = cursor;
+  }
+
+  /**
+   * @return The timestamp of the record read last
+   */
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  /**
+   * @return The records written but not read yet, at most a ring
+   */
+  public int available() {
+    long cursor = (long) LONG.getAcquire(buffer, CURSOR_OFFSET);
+    return Math.clamp(cursor - position, 0, ring.getSlotCount());
+  }
+
+  /**
+   * @return How often this reader fell behind and skipped ahead
+   */
+  public long getLaps() {
+    return laps;
+  }
+
+  /**
+   * @return The records this reader skipped because it fell behind
+   */
+  public long getLost() {
+    return lost;
+  }
+}
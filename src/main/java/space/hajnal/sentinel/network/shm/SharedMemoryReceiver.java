@@ -0,0 +1,110 @@
+package space.hajnal.sentinel.network.shm;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.DatagramSocket;
+import space.hajnal.sentinel.jfr.PacketReceivedEvent;
+import space.hajnal.sentinel.metrics.StreamMetrics;
+import space.hajnal.sentinel.network.model.RTPPacket;
+import space.hajnal.sentinel.network.receiver.PacketReceiver;
+import space.hajnal.sentinel.network.serialization.RTPPacketDeserializer;
+
+/**
+ * Reads the packets of a {@link SharedMemoryTransmitter} in another process from a
+ * {@link SharedMemoryRing}, for an {@link space.hajnal.sentinel.network.RTPStreamReader}.
+ * <p>
+ * There is no receiving thread: {@link #retrievePacket()} reads the ring directly. Packets the
+ * reader missed because it fell behind the ring are lost, as on a network, and the
+ * {@link space.hajnal.sentinel.network.video.VideoStreamProcessor} skips their frames.
+ */
+public class SharedMemoryReceiver implements PacketReceiver {
+
+  private final SharedMemoryRing ring;
+  private final SharedMemoryReader reader;
+  private final RTPPacketDeserializer rtpPacketDeserializer;
+  // Only used by the thread retrieving packets
+  private final byte[] buffer;
+  private volatile StreamMetrics streamMetrics;
+
+  /**
+   * @param ring A ring {@link SharedMemoryRing#open opened} for reading, it is closed with the
+   *             receiver
+   */
+  public SharedMemoryReceiver(SharedMemoryRing ring, RTPPacketDeserializer rtpPacketDeserializer) {
+    this.ring = ring;
+    this.reader = ring.newReader();
+    this.rtpPacketDeserializer = rtpPacketDeserializer;
+    this.buffer = new byte[ring.getSlotSize()];
+  }
+
+  /**
+   * Returns right away, the packets are read from the ring by {@link #retrievePacket()}.
+   *
+   * @param socket Not used, may be null
+   */
+  @Override
+  public void startReceiving(DatagramSocket socket) {
+  }
+
+  /**
+   * @throws InterruptedException If interrupted, or the writer closed the ring and all packets
+   *                              were read
+   */
+  @Override
+  public RTPPacket retrievePacket() throws InterruptedException {
+    int length = reader.take(buffer);
+    PacketReceivedEvent event = new PacketReceivedEvent();
+    event.begin();
+    StreamMetrics metrics = streamMetrics;
+    if (metrics != null) {
+      metrics.recordPacketReceived(length);
+    }
+    RTPPacket rtpPacket = rtpPacketDeserializer.deserialize(buffer, length);
+    event.end();
+    if (event.shouldCommit()) {
+      event.ssrc = rtpPacket.getSsrc();
+      event.timestamp = rtpPacket.getTimestamp();
+      event.sequenceNumber = rtpPacket.getSequenceNumber();
+      event.size = length;
+      event.queueDepth = reader.available();
+      event.commit();
+    }
+    return rtpPacket;
+  }
+
+  /**
+   * @return false, there is no back channel to the writer
+   */
+  @Override
+  public boolean sendFeedback(byte[] data) {
+    return false;
+  }
+
+  @Override
+  public void setStreamMetrics(StreamMetrics streamMetrics) {
+    this.streamMetrics = streamMetrics;
+    if (streamMetrics != null) {
+      streamMetrics.setReceiveQueueDepthGauge(reader::available);
+    }
+  }
+
+  /**
+   * @return The reader, for how often it fell behind the writer
+   */
+  public SharedMemoryReader getReader() {
+    return reader;
+  }
+
+  /**
+   * Stops the reader, {@link #retrievePacket()} then throws {@link InterruptedException}.
+   */
+  @Override
+  public void close() {
+    reader.close();
+    try {
+      ring.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,228 @@
+package space.hajnal.sentinel.network.shm;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A ring of fixed-size slots in a memory-mapped file, for passing RTP packets or access units
+ * between processes on one host. Put the file on tmpfs, e.g. under {@code /dev/shm}, so it never
+ * touches a disk.
+ * <p>
+ * The process that {@link #create}s the ring is its only writer, any number of processes can
+ * {@link #open} it and read with their own {@link SharedMemoryReader}. The writer never waits for
+ * readers: it overwrites the oldest slot, and a reader that falls more than a ring behind notices
+ * from the slot's sequence number and skips ahead. Neither side makes a system call per record.
+ * <p>
+ * Layout, in native byte order: a 128-byte header with the geometry, a closed flag and the write
+ * cursor on a cache line of its own, then the slots. A slot holds its sequence number, the
+ * record's timestamp and length, then the record.
+ */
+@Slf4j
+public class SharedMemoryRing implements AutoCloseable {
+
+  static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class,
+      ByteOrder.nativeOrder());
+  static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class,
+      ByteOrder.nativeOrder());
+
+  private static final int MAGIC = 0x53484d52;  // "SHMR"
+  private static final int VERSION = 1;
+  private static final int MAGIC_OFFSET = 0;
+  private static final int VERSION_OFFSET = 4;
+  private static final int SLOT_COUNT_OFFSET = 8;
+  private static final int SLOT_SIZE_OFFSET = 12;
+  private static final int CLOSED_OFFSET = 16;
+  static final int CURSOR_OFFSET = 64;
+  private static final int HEADER_SIZE = 128;
+
+  static final int SEQUENCE_OFFSET = 0;
+  static final int TIMESTAMP_OFFSET = 8;
+  static final int LENGTH_OFFSET = 16;
+  static final int DATA_OFFSET = 24;
+  /**
+   * The sequence number of a slot that is being written.
+   */
+  static final long WRITING = -1;
+
+  private final FileChannel channel;
+  private final MappedByteBuffer buffer;
+  private final boolean writable;
+  private final int slotCount;
+  private final int slotSize;
+  private final int stride;
+  private long writePosition = 0;  // Only used by the writer
+
+  private SharedMemoryRing(FileChannel channel, MappedByteBuffer buffer, boolean writable,
+      int slotCount, int slotSize) {
+    this.channel = channel;
+    this.buffer = buffer;
+    this.writable = writable;
+    this.slotCount = slotCount;
+    this.slotSize = slotSize;
+    this.stride = stride(slotSize);
+  }
+
+  /**
+   * Creates the ring for writing. An existing file is replaced, not truncated, so readers still
+   * mapping it are not hurt.
+   *
+   * @param slotCount The records the ring holds, a power of two
+   * @param slotSize  The largest record, in bytes
+   */
+  public static SharedMemoryRing create(Path path, int slotCount, int slotSize)
+      throws IOException {
+    if (slotCount < 2 || Integer.bitCount(slotCount) != 1) {
+      throw new IllegalArgumentException("Slot count must be a power of two: " + slotCount);
+    }
+    if (slotSize <= 0) {
+      throw new IllegalArgumentException("Slot size must be positive: " + slotSize);
+    }
+    long size = HEADER_SIZE + (long) slotCount * stride(slotSize);
+    if (size > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Ring of " + size + " bytes is too large to map");
+    }
+    Files.deleteIfExists(path);
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+    MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0, size);
+    INT.set(buffer, SLOT_COUNT_OFFSET, slotCount);
+    INT.set(buffer, SLOT_SIZE_OFFSET, slotSize);
+    INT.set(buffer, VERSION_OFFSET, VERSION);
+    int stride = stride(slotSize);
+    for (int i = 0; i < slotCount; i++) {
+      LONG.set(buffer, HEADER_SIZE + i * stride + SEQUENCE_OFFSET, WRITING);
+    }
+    // Readers check the magic number last, so they never see a half-initialized header
+    INT.setRelease(buffer, MAGIC_OFFSET, MAGIC);
+    log.info("Created shared memory ring {} with {} slots of {} bytes", path, slotCount, slotSize);
+    return new SharedMemoryRing(channel, buffer, true, slotCount, slotSize);
+  }
+
+  /**
+   * Opens a ring created by another process, for reading.
+   *
+   * @throws IOException If the file is not a ring, or not completely created yet
+   */
+  public static SharedMemoryRing open(Path path) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      if (channel.size() < HEADER_SIZE) {
+        throw new IOException("Not a shared memory ring: " + path);
+      }
+      MappedByteBuffer header = channel.map(MapMode.READ_ONLY, 0, HEADER_SIZE);
+      if ((int) INT.getAcquire(header, MAGIC_OFFSET) != MAGIC) {
+        throw new IOException("Not a shared memory ring: " + path);
+      }
+      if ((int) INT.get(header, VERSION_OFFSET) != VERSION) {
+        throw new IOException("Unsupported shared memory ring version: " + path);
+      }
+      int slotCount = (int) INT.get(header, SLOT_COUNT_OFFSET);
+      int slotSize = (int) INT.get(header, SLOT_SIZE_OFFSET);
+      MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0,
+          HEADER_SIZE + (long) slotCount * stride(slotSize));
+      return new SharedMemoryRing(channel, buffer, false, slotCount, slotSize);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  private static int stride(int slotSize) {
+    // Whole cache lines, so neighbouring slots do not share one
+    return (DATA_OFFSET + slotSize + 63) & ~63;
+  }
+
+  /**
+   * Appends a record made of two parts, e.g. the header and payload of an RTP packet. Overwrites
+   * the oldest record once the ring is full.
+   *
+   * @param timestamp Passed along with the record, e.g. the RTP timestamp of an access unit
+   * @param first     The start of the record
+   * @param second    The rest of the record, or null
+   * @return false if the record is larger than a slot, it is not written then
+   */
+  public synchronized boolean write(long timestamp, byte[] first, byte[] second) {
+    if (!writable) {
+      throw new IllegalStateException("Shared memory ring is opened for reading");
+    }
+    int length = first.length + (second == null ? 0 : second.length);
+    if (length > slotSize) {
+      return false;
+    }
+    long position = writePosition;
+    int slot = slotOffset(position);
+    // Readers copying the slot's previous record see that it changed underneath them
+    LONG.setOpaque(buffer, slot + SEQUENCE_OFFSET, WRITING);
+    VarHandle.storeStoreFence();
+    LONG.set(buffer, slot + TIMESTAMP_OFFSET, timestamp);
+    INT.set(buffer, slot + LENGTH_OFFSET, length);
+    buffer.put(slot + DATA_OFFSET, first, 0, first.length);
+    if (second != null) {
+      buffer.put(slot + DATA_OFFSET + first.length, second, 0, second.length);
+    }
+    LONG.setRelease(buffer, slot + SEQUENCE_OFFSET, position);
+    writePosition = position + 1;
+    LONG.setRelease(buffer, CURSOR_OFFSET, position + 1);
+    return true;
+  }
+
+  /**
+   * @return A reader starting at the next record written
+   */
+  public SharedMemoryReader newReader() {
+    return new SharedMemoryReader(this, getWritePosition());
+  }
+
+  /**
+   * @return The records written since the ring was created
+   */
+  public long getWritePosition() {
+    return (long) LONG.getAcquire(buffer, CURSOR_OFFSET);
+  }
+
+  public int getSlotCount() {
+    return slotCount;
+  }
+
+  public int getSlotSize() {
+    return slotSize;
+  }
+
+  /**
+   * @return true once the writer closed the ring
+   */
+  public boolean isClosed() {
+    return (int) INT.getAcquire(buffer, CLOSED_OFFSET) != 0;
+  }
+
+  MappedByteBuffer buffer() {
+    return buffer;
+  }
+
+  int slotOffset(long position) {
+    return HEADER_SIZE + (int) (position & (slotCount - 1)) * stride;
+  }
+
+  /**
+   * Closes the file, the mapping itself lives until it is garbage collected. Closed by the writer,
+   * the ring is marked closed, so readers stop once they read the remaining records. The file is
+   * left for them, the next {@link #create} replaces it.
+   */
+  @Override
+  public void close() throws IOException {
+    if (writable) {
+      INT.setRelease(buffer, CLOSED_OFFSET, 1);
+      log.info("Shared memory ring closed after {} records", writePosition);
+    }
+    channel.close();
+  }
+}
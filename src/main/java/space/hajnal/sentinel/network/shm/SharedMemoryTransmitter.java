@@ -0,0 +1,66 @@
+package space.hajnal.sentinel.network.shm;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import lombok.extern.slf4j.Slf4j;
+import space.hajnal.sentinel.network.model.RTPPacket;
+import space.hajnal.sentinel.network.sender.PacketTransmitter;
+
+/**
+ * Writes the packets of an {@link space.hajnal.sentinel.network.sender.RTPSocketSender} to a
+ * {@link SharedMemoryRing}, for receivers in other processes on the same host. The packets are
+ * written as they would be sent, so the ring's slots must hold the MTU.
+ * <p>
+ * There is no back channel, RTCP feedback from the readers does not reach the sender.
+ */
+@Slf4j
+public class SharedMemoryTransmitter implements PacketTransmitter {
+
+  private final SharedMemoryRing ring;
+  private volatile boolean open = false;
+
+  /**
+   * @param ring A ring {@link SharedMemoryRing#create created} by this process
+   * @param mtu  The largest packet the sender makes
+   */
+  public SharedMemoryTransmitter(SharedMemoryRing ring, int mtu) {
+    if (ring.getSlotSize() < mtu) {
+      throw new IllegalArgumentException("Slots of " + ring.getSlotSize()
+          + " bytes cannot hold packets of the MTU, " + mtu);
+    }
+    this.ring = ring;
+  }
+
+  /**
+   * @param socket Not used, may be null
+   */
+  @Override
+  public void open(DatagramSocket socket) {
+    open = true;
+    log.info("Shared memory transmitter opened");
+  }
+
+  @Override
+  public boolean isOpen() {
+    return open;
+  }
+
+  @Override
+  public int transmit(RTPPacket rtpPacket) throws IOException {
+    byte[] header = rtpPacket.getHeader();
+    byte[] payload = rtpPacket.getPayload();
+    if (!ring.write(rtpPacket.getTimestamp(), header, payload)) {
+      throw new IOException("Packet of " + (header.length + payload.length)
+          + " bytes does not fit a slot of the shared memory ring");
+    }
+    return header.length + payload.length;
+  }
+
+  /**
+   * Stops sending, the ring stays open for other writers of this process.
+   */
+  @Override
+  public void close() {
+    open = false;
+  }
+}
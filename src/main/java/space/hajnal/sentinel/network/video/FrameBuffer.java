@@ -0,0 +1,127 @@
+package space.hajnal.sentinel.network.video;
+
+import java.util.SortedMap;
+import java.util.TreeMap;
+import lombok.Getter;
+import lombok.Setter;
+import space.hajnal.sentinel.network.model.RTPPacket;
+import space.hajnal.sentinel.network.model.SerialNumbers;
+
+/**
+ * The packets of one frame in the jitter buffer, indexed by sequence number.
+ * <p>
+ * {@link VideoStreamProcessor} reuses its buffers from frame to frame, so buffering a packet does
+ * not allocate once every buffer has been used. Not thread-safe.
+ * <p>
+ * Sequence numbers are unwrapped relative to the frame's first packet, so a frame that straddles
+ * 65535 to 0 keeps its order. The first and last sequence numbers and the keys of
+ * {@link #toSortedMap()} are unwrapped, they may lie outside 0 to 65535.
+ */
+class FrameBuffer {
+
+  /**
+   * The most packets a frame can span, about 1.4 MB at the default MTU.
+   */
+  static final int MAX_PACKETS = 1024;
+  static final long FREE = -1;
+
+  private final RTPPacket[] packets = new RTPPacket[MAX_PACKETS];
+  /**
+   * The RTP timestamp of the frame, or {@link #FREE} while the buffer is unused.
+   */
+  @Getter
+  private long timestamp = FREE;
+  @Getter
+  private int firstSequenceNumber;
+  @Getter
+  private int lastSequenceNumber;
+  @Getter
+  private int size;
+  @Getter
+  @Setter
+  private long lastArrivalMillis;
+
+  void acquire(long timestamp) {
+    this.timestamp = timestamp;
+    this.size = 0;
+  }
+
+  /**
+   * Clears the packets and frees the buffer for another frame.
+   */
+  void release() {
+    for (int seq = firstSequenceNumber; size > 0 && seq <= lastSequenceNumber; seq++) {
+      packets[seq & (MAX_PACKETS - 1)] = null;
+    }
+    size = 0;
+    timestamp = FREE;
+  }
+
+  boolean isFree() {
+    return timestamp == FREE;
+  }
+
+  /**
+   * Adds a packet, replacing a duplicate of it.
+   *
+   * @return false if the frame would span more than {@link #MAX_PACKETS} sequence numbers
+   */
+  boolean add(RTPPacket packet) {
+    int seq;
+    if (size == 0) {
+      seq = packet.getSequenceNumber();
+      firstSequenceNumber = seq;
+      lastSequenceNumber = seq;
+    } else {
+      seq = unwrap(packet.getSequenceNumber());
+      int first = Math.min(firstSequenceNumber, seq);
+      int last = Math.max(lastSequenceNumber, seq);
+      if (last - first >= MAX_PACKETS) {
+        return false;
+      }
+      firstSequenceNumber = first;
+      lastSequenceNumber = last;
+    }
+    int index = seq & (MAX_PACKETS - 1);
+    if (packets[index] == null) {
+      size++;
+    }
+    packets[index] = packet;
+    return true;
+  }
+
+  /**
+   * @param sequenceNumber The 16-bit sequence number of the packet
+   * @return The packet, or null if it has not been received
+   */
+  RTPPacket get(int sequenceNumber) {
+    if (size == 0) {
+      return null;
+    }
+    int seq = unwrap(sequenceNumber);
+    if (seq < firstSequenceNumber || seq > lastSequenceNumber) {
+      return null;
+    }
+    return packets[seq & (MAX_PACKETS - 1)];
+  }
+
+  // The sequence number nearest to the first one, e.g. 65536 for 0 after 65535
+  private int unwrap(int sequenceNumber) {
+    return firstSequenceNumber
+           + SerialNumbers.compareSequenceNumbers(sequenceNumber, firstSequenceNumber);
+  }
+
+  /**
+   * @return A copy of the packets by sequence number, for assembly
+   */
+  SortedMap<Integer, RTPPacket> toSortedMap() {
+    SortedMap<Integer, RTPPacket> map = new TreeMap<>();
+    for (int seq = firstSequenceNumber; size > 0 && seq <= lastSequenceNumber; seq++) {
+      RTPPacket packet = packets[seq & (MAX_PACKETS - 1)];
+      if (packet != null) {
+        map.put(seq, packet);
+      }
+    }
+    return map;
+  }
+}
@@ -0,0 +1,59 @@
+package space.hajnal.sentinel.network.video;
+
+import java.util.ArrayList;
+import java.util.List;
+import space.hajnal.sentinel.camera.model.SentinelFrame;
+import space.hajnal.sentinel.codec.NalUnits;
+
+/**
+ * Keeps the access units from the most recent IDR frame onwards, so a new viewer can decode
+ * immediately instead of waiting up to a whole GOP for the next keyframe.
+ * <p>
+ * If a GOP grows beyond the capacity the cache is emptied until the next keyframe, because a
+ * partial GOP is not decodable.
+ */
+public class KeyframeCache {
+
+  private final int capacity;
+  private final List<SentinelFrame> frames = new ArrayList<>();
+  private boolean complete = false;
+
+  /**
+   * @param capacity The maximum number of access units, at least the encoder's GOP length
+   */
+  public KeyframeCache(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Capacity must be positive");
+    }
+    this.capacity = capacity;
+  }
+
+  public synchronized void add(SentinelFrame frame) {
+    if (NalUnits.isKeyframe(frame.getData())) {
+      frames.clear();
+      complete = true;
+    }
+    if (!complete) {
+      return;
+    }
+    if (frames.size() == capacity) {
+      frames.clear();
+      complete = false;
+      return;
+    }
+    frames.add(frame);
+  }
+
+  /**
+   * @return The keyframe and the frames after it in decode order, or nothing before the first
+   * keyframe
+   */
+  public synchronized List<SentinelFrame> getFrames() {
+    return List.copyOf(frames);
+  }
+
+  public synchronized void clear() {
+    frames.clear();
+    complete = false;
+  }
+}
@@ -0,0 +1,127 @@
+package space.hajnal.sentinel.network.video;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import lombok.extern.slf4j.Slf4j;
+import space.hajnal.sentinel.camera.model.SentinelFrame;
+import space.hajnal.sentinel.codec.NalUnits;
+
+/**
+ * A latency-bounded queue between frame assembly and display.
+ * <p>
+ * Frames are played in order while the backlog stays at or below the threshold. When it grows
+ * beyond the threshold, e.g. after a GC pause or while the window is dragged, the buffer catches up
+ * instead of playing the backlog at normal speed: it skips to the newest queued keyframe and drops
+ * everything before it. Until a keyframe is queued only non-reference frames are dropped, because
+ * the decoder still needs every reference frame.
+ */
+@Slf4j
+public class PlayoutBuffer {
+
+  private final int maxBacklogFrames;
+  private final double frameIntervalMillis;
+  private final ArrayDeque<SentinelFrame> frames = new ArrayDeque<>();
+  private long catchUps = 0;
+  private long droppedFrames = 0;
+  private long shedLatencyMillis = 0;
+
+  /**
+   * @param maxBacklogFrames The number of queued frames above which the buffer catches up
+   * @param fps              The rate frames are taken out for display
+   */
+  public PlayoutBuffer(int maxBacklogFrames, int fps) {
+    if (maxBacklogFrames <= 0 || fps <= 0) {
+      throw new IllegalArgumentException("Maximum backlog and frame rate must be positive");
+    }
+    this.maxBacklogFrames = maxBacklogFrames;
+    this.frameIntervalMillis = 1000.0 / fps;
+  }
+
+  public synchronized void offer(SentinelFrame frame) {
+    frames.addLast(frame);
+    if (frames.size() > maxBacklogFrames) {
+      catchUp();
+    }
+  }
+
+  /**
+   * @return The next frame to display, or null if the buffer is empty
+   */
+  public synchronized SentinelFrame poll() {
+    return frames.pollFirst();
+  }
+
+  private void catchUp() {
+    int dropped = skipToNewestKeyframe();
+    if (dropped == 0) {
+      dropped = dropNonReferenceFrames();
+    }
+    if (dropped == 0) {
+      return;
+    }
+
+    // Display takes one frame per interval, so every dropped frame is one interval less delay
+    long shedMillis = Math.round(dropped * frameIntervalMillis);
+    catchUps++;
+    droppedFrames += dropped;
+    shedLatencyMillis += shedMillis;
+    log.info("Playout catch-up: dropped {} frames, shed {} ms of latency", dropped, shedMillis);
+  }
+
+  private int skipToNewestKeyframe() {
+    int keyframeIndex = -1;
+    int index = 0;
+    for (SentinelFrame frame : frames) {
+      if (NalUnits.isKeyframe(frame.getData())) {
+        keyframeIndex = index;
+      }
+      index++;
+    }
+    for (int i = 0; i < keyframeIndex; i++) {
+      frames.pollFirst();
+    }
+    return Math.max(0, keyframeIndex);
+  }
+
+  private int dropNonReferenceFrames() {
+    int dropped = 0;
+    // Keep the head, it is next on screen and dropping it sheds no latency
+    Iterator<SentinelFrame> iterator = frames.iterator();
+    iterator.next();
+    while (iterator.hasNext()) {
+      if (NalUnits.isDiscardable(iterator.next().getData())) {
+        iterator.remove();
+        dropped++;
+      }
+    }
+    return dropped;
+  }
+
+  public synchronized int size() {
+    return frames.size();
+  }
+
+  /**
+   * @return How many times the buffer skipped ahead because of a backlog
+   */
+  public synchronized long getCatchUps() {
+    return catchUps;
+  }
+
+  public synchronized long getDroppedFrames() {
+    return droppedFrames;
+  }
+
+  /**
+   * @return The total playout delay removed by all catch-ups, in milliseconds
+   */
+  public synchronized long getShedLatencyMillis() {
+    return shedLatencyMillis;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "PlayoutBuffer{size=" + frames.size() + ", catchUps=" + catchUps + ", dropped="
+           + droppedFrames + ", shedLatencyMillis=" + shedLatencyMillis + "}";
+  }
+}
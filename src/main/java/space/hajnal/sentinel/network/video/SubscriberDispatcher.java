@@ -0,0 +1,147 @@
+package space.hajnal.sentinel.network.video;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.Getter;
+import space.hajnal.sentinel.camera.RTPClock;
+import space.hajnal.sentinel.camera.model.SentinelFrame;
+import space.hajnal.sentinel.codec.NalUnits;
+import space.hajnal.sentinel.network.video.VideoStreamProcessor.FrameListener;
+import space.hajnal.sentinel.pipeline.PipelineStage;
+import space.hajnal.sentinel.pipeline.StageMetrics;
+import space.hajnal.sentinel.pipeline.StageQueue;
+
+/**
+ * Delivers frames to one subscriber from its own bounded queue on its own virtual thread, so a
+ * slow subscriber only delays itself and never frame assembly or the other subscribers.
+ * <p>
+ * Dropping a frame that later frames reference leaves the subscriber unable to decode until the
+ * next keyframe. The dispatcher then skips everything up to that keyframe instead of delivering
+ * broken pictures, and asks for the keyframe so the subscriber need not wait a whole GOP.
+ */
+public class SubscriberDispatcher implements AutoCloseable {
+
+  private static final long TIMESTAMP_MASK = 0xFFFFFFFFL;
+
+  @Getter
+  private final FrameListener listener;
+  private final StageQueue<SentinelFrame> queue;
+  private final PipelineStage<SentinelFrame, Void> stage;
+  private final Runnable keyframeRequest;
+  private final LongAdder skipped = new LongAdder();
+  // Only accessed by the thread offering frames, which also runs the queue's drop callback
+  private boolean awaitingKeyframe = false;
+  private volatile boolean closed = false;
+  private volatile long lastOfferedTimestamp = -1;
+  private volatile long lastDeliveredTimestamp = -1;
+
+  /**
+   * @param replay          Frames queued before any other, with room beyond the queue capacity so
+   *                        they are never dropped or block
+   * @param keyframeRequest Called when a dropped frame leaves the subscriber waiting for a
+   *                        keyframe
+   */
+  SubscriberDispatcher(String name, FrameListener listener, SubscriberOptions options,
+      List<SentinelFrame> replay, Runnable keyframeRequest) {
+    this.listener = listener;
+    this.keyframeRequest = keyframeRequest;
+    this.queue = new StageQueue<>(name, options.getQueueCapacity() + replay.size(),
+        options.getOverflowPolicy(), this::onDrop);
+    this.stage = PipelineStage.sink(name, queue, this::deliver);
+    replay.forEach(this::offer);
+  }
+
+  void start() {
+    stage.start(Thread.ofVirtual());
+  }
+
+  void offer(SentinelFrame frame) {
+    lastOfferedTimestamp = frame.getTimestamp();
+    boolean keyframe = NalUnits.isKeyframe(frame.getData());
+    if (awaitingKeyframe && !keyframe) {
+      skipped.increment();
+      return;
+    }
+    awaitingKeyframe = false;
+    queue.offer(frame);
+    if (awaitingKeyframe) {
+      // The offer dropped a frame that the queued ones reference, only a keyframe repairs them
+      queue.clear();
+      if (keyframe) {
+        awaitingKeyframe = false;
+        skipped.decrement();  // Cleared as well, but it is the repair
+        queue.offer(frame);
+      } else {
+        keyframeRequest.run();
+      }
+    }
+  }
+
+  private void onDrop(SentinelFrame frame) {
+    if (closed) {
+      return;
+    }
+    if (awaitingKeyframe) {
+      skipped.increment();
+      return;
+    }
+    awaitingKeyframe = !NalUnits.isDiscardable(frame.getData());
+  }
+
+  private void deliver(SentinelFrame frame) {
+    // Taken counts as delivered, the frame in the listener is no longer waiting
+    lastDeliveredTimestamp = frame.getTimestamp();
+    listener.onFrameAvailable(frame);
+  }
+
+  /**
+   * @return The number of frames waiting for the subscriber
+   */
+  public int getLagFrames() {
+    return queue.size();
+  }
+
+  /**
+   * @return How far the subscriber is behind the newest assembled frame, in media time
+   */
+  public long getLagMillis() {
+    long offered = lastOfferedTimestamp;
+    long delivered = lastDeliveredTimestamp;
+    if (offered < 0 || delivered < 0 || queue.size() == 0) {
+      return 0;
+    }
+    long ticks = (offered - delivered) & TIMESTAMP_MASK;
+    return ticks * 1000 / RTPClock.VIDEO_CLOCK_RATE;
+  }
+
+  /**
+   * @return The frames dropped because the subscriber's queue was full
+   */
+  public long getDropped() {
+    return queue.getDropped();
+  }
+
+  /**
+   * @return The frames not delivered because they depend on a dropped frame
+   */
+  public long getSkipped() {
+    return skipped.sum();
+  }
+
+  public long getDelivered() {
+    return stage.getMetrics().getProcessed();
+  }
+
+  /**
+   * @return The subscriber's service time and queue statistics
+   */
+  public StageMetrics getMetrics() {
+    return stage.getMetrics();
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    stage.close();
+  }
+}
@@ -0,0 +1,26 @@
+package space.hajnal.sentinel.network.video;
+
+import lombok.Builder;
+import lombok.Data;
+import space.hajnal.sentinel.pipeline.OverflowPolicy;
+
+/**
+ * Queue sizing of a single {@link VideoStreamProcessor} subscriber.
+ */
+@Builder
+@Data
+public class SubscriberOptions {
+
+  /**
+   * Assembled frames waiting for the subscriber.
+   */
+  @Builder.Default
+  private final int queueCapacity = 8;
+  /**
+   * A full queue must never stall frame assembly for the other subscribers, so drop by default.
+   * After dropping a reference frame the subscriber skips to the next keyframe, which is requested
+   * right away.
+   */
+  @Builder.Default
+  private final OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+}
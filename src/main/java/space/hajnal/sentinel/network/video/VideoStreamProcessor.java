@@ -1,38 +1,76 @@
 package space.hajnal.sentinel.network.video;
 
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.SortedMap;
-import java.util.TreeMap;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
 import lombok.extern.slf4j.Slf4j;
 import space.hajnal.sentinel.camera.model.SentinelFrame;
+import space.hajnal.sentinel.codec.H264Encoder;
+import space.hajnal.sentinel.codec.NalUnits;
+import space.hajnal.sentinel.jfr.FrameAssembledEvent;
+import space.hajnal.sentinel.jfr.FrameSkippedEvent;
+import space.hajnal.sentinel.latency.LatencyStage;
+import space.hajnal.sentinel.latency.LatencyTracker;
+import space.hajnal.sentinel.metrics.StreamMetrics;
+import space.hajnal.sentinel.network.model.CaptureTime;
 import space.hajnal.sentinel.network.model.RTPPacket;
+import space.hajnal.sentinel.network.model.SerialNumbers;
+import space.hajnal.sentinel.pipeline.FlowSubscription;
+import space.hajnal.sentinel.pipeline.OverflowPolicy;
+import space.hajnal.sentinel.pipeline.StageQueue;
 
 @Slf4j
-public class VideoStreamProcessor {
+public class VideoStreamProcessor implements Flow.Publisher<SentinelFrame>, AutoCloseable {
 
   private static final double JITTER_ALPHA = 0.125;  // Jitter smoothing factor
-  private final Map<Long, SortedMap<Integer, RTPPacket>> frameBufferByTimestamp = new ConcurrentHashMap<>();
-  private final Map<Long, Long> lastArrivalTimeByTimestamp = new ConcurrentHashMap<>();
-  private final List<FrameListener> subscribers = new CopyOnWriteArrayList<>();
+  // Repeat a keyframe request at most this often in case it or the keyframe got lost
+  private static final long KEYFRAME_REQUEST_RETRY_MILLIS = 100;
+  // Frames buffered at once, beyond this the oldest frame is dropped
+  private static final int MAX_BUFFERED_FRAMES = 64;
+  // Reused from frame to frame so packet processing does not allocate, guarded by itself
+  private final FrameBuffer[] frameBuffers = new FrameBuffer[MAX_BUFFERED_FRAMES];
+  private final List<SubscriberDispatcher> subscribers = new CopyOnWriteArrayList<>();
+  private final List<FlowSubscription<SentinelFrame>> flowSubscriptions =
+      new CopyOnWriteArrayList<>();
   private final FrameProcessor frameProcessor;
   private final ScheduledExecutorService scheduler;
+  private final LongSupplier clockMillis;
+  private final KeyframeCache keyframeCache = new KeyframeCache(
+      2 * H264Encoder.KEYFRAME_INTERVAL);
   private final double frameIntervalMillis;  // Interval for frame assembly (e.g., 33.3ms for 30 fps)
-  private final AtomicReference<Double> jitter = new AtomicReference<>(0.0);
+  private volatile double jitter = 0;  // Only updated while holding frameBuffers
+  private long lastFrameArrivalMillis = -1;  // Guarded by frameBuffers
   private final AtomicLong lastAssembledTimestamp = new AtomicLong(
       -1); // Track last assembled timestamp
+  private final AtomicLong subscriberCount = new AtomicLong(0);
+  private volatile KeyframeRequestListener keyframeRequestListener;
+  private volatile FrameListener assemblyObserver;
+  private volatile LatencyTracker latencyTracker;
+  private volatile StreamMetrics streamMetrics;
+  private volatile long lastKeyframeRequestMillis = 0;
+  private volatile long ssrc = -1;  // Of the last assembled frame, for subscribers' requests
 
   public VideoStreamProcessor(FrameProcessor frameProcessor, int fps,
       ScheduledExecutorService scheduler) {
+    this(frameProcessor, fps, scheduler, System::currentTimeMillis);
+  }
+
+  /**
+   * @param clockMillis The wall clock in milliseconds, a virtual clock together with a virtual
+   *                    scheduler makes the processor deterministic for simulations
+   */
+  public VideoStreamProcessor(FrameProcessor frameProcessor, int fps,
+      ScheduledExecutorService scheduler, LongSupplier clockMillis) {
     this.frameProcessor = frameProcessor;
     this.frameIntervalMillis = 1000.0 / fps;
     this.scheduler = scheduler;
+    this.clockMillis = clockMillis;
 
     initializeFrameAssembly();
 
@@ -42,17 +80,22 @@ public class VideoStreamProcessor {
 
   // Dynamic scheduling for better jitter handling
   private void assembleNextFrame() {
-    if (frameBufferByTimestamp.isEmpty()) {
+    long lastAssembled = lastAssembledTimestamp.get();
+    // Before the first frame there is nothing to force forward from
+    if (lastAssembled != FrameBuffer.FREE
+        && oldestBufferedTimestamp(FrameBuffer.FREE) == FrameBuffer.FREE) {
       log.debug("No frames available. Forcing frame forward.");
-      assembleFrame(lastAssembledTimestamp.get());
+      assembleFrame(lastAssembled);
     }
 
-    long nextTimestamp = frameBufferByTimestamp.keySet().stream()
-        .filter(ts -> ts >= lastAssembledTimestamp.get())
-        .findFirst()
-        .orElse(lastAssembledTimestamp.get());
+    long nextTimestamp = oldestBufferedTimestamp(lastAssembledTimestamp.get());
+    if (nextTimestamp == FrameBuffer.FREE) {
+      nextTimestamp = lastAssembledTimestamp.get();
+    }
 
-    long jitterCompensation = Math.round(jitter.get());
+    // With a later frame already waiting there is no point in waiting for stragglers, and the
+    // compensation would make assembly fall behind the frame rate for good
+    long jitterCompensation = countBufferedFrames(nextTimestamp) > 1 ? 0 : Math.round(jitter);
     long adjustedDelay = (long) Math.max(frameIntervalMillis,
         frameIntervalMillis + jitterCompensation);
 
@@ -60,41 +103,62 @@ public class VideoStreamProcessor {
         nextTimestamp, adjustedDelay);
 
     // Dynamically reschedule after frame assembly
+    long timestamp = nextTimestamp;
     scheduler.schedule(() -> {
-      assembleFrame(nextTimestamp);
+      if (timestamp != FrameBuffer.FREE) {
+        assembleFrame(timestamp);
+      }
       assembleNextFrame();  // Recurse for the next frame
     }, adjustedDelay, TimeUnit.MILLISECONDS);
   }
 
   // Enforce timeout to avoid buffer starvation
   private void assembleFrame(long timestamp) {
-    SortedMap<Integer, RTPPacket> packets = frameBufferByTimestamp.remove(timestamp);
+    SortedMap<Integer, RTPPacket> packets = null;
+    long lastArrivalMillis = 0;
+    synchronized (frameBuffers) {
+      FrameBuffer buffer = findBuffer(timestamp);
+      if (buffer != null) {
+        packets = buffer.toSortedMap();
+        lastArrivalMillis = buffer.getLastArrivalMillis();
+        buffer.release();
+      }
+    }
     if (packets == null || packets.isEmpty()) {
       log.warn("Frame timeout or no packets for timestamp: {}. Skipping.", timestamp);
-      long next = frameBufferByTimestamp.keySet().stream()
-          .findFirst()
-          .orElse(timestamp + 1);  // Increment to avoid reassembling the same frame
-      lastAssembledTimestamp.set(next);
+      long next = oldestBufferedTimestamp(timestamp);
+      // Increment to avoid reassembling the same frame
+      lastAssembledTimestamp.set(
+          next == FrameBuffer.FREE ? SerialNumbers.nextTimestamp(timestamp) : next);
       return;
     }
 
+    FrameAssembledEvent event = new FrameAssembledEvent();
+    event.begin();
     int firstSeq = packets.firstKey();
     int lastSeq = packets.lastKey();
+    int receivedPackets = packets.size();
+    int filledPackets = 0;
     RTPPacket lastGoodPacket = null;
     boolean frameComplete = true;
 
     for (int seq = firstSeq; seq <= lastSeq; seq++) {
       if (!packets.containsKey(seq)) {
-        long missingThreshold = Math.round(jitter.get() * 1.5);
-        long timeSinceLastPacket = System.currentTimeMillis() -
-                                   lastArrivalTimeByTimestamp.getOrDefault(timestamp, 0L);
+        long missingThreshold = Math.round(jitter * 1.5);
+        long timeSinceLastPacket = clockMillis.getAsLong() - lastArrivalMillis;
 
         if (timeSinceLastPacket <= missingThreshold && lastGoodPacket != null) {
           log.warn("Packet Seq={} missing. Filling with last good packet.", seq);
           packets.put(seq, lastGoodPacket);
+          filledPackets++;
+          StreamMetrics metrics = streamMetrics;
+          if (metrics != null) {
+            metrics.recordPacketFilled();
+          }
         } else {
           log.warn("Packet Seq={} missing beyond threshold. Skipping frame.", seq);
           frameComplete = false;
+          commitSkipped(timestamp, firstSeq, lastSeq, seq, receivedPackets);
           break;
         }
       }
@@ -105,22 +169,76 @@ public class VideoStreamProcessor {
       byte[] frame = frameProcessor.reassembleFrame(packets);
       if (frame != null) {
         lastAssembledTimestamp.set(timestamp);
+        ssrc = packets.get(firstSeq).getSsrc();
+        StreamMetrics metrics = streamMetrics;
+        if (metrics != null) {
+          metrics.recordFrameAssembled();
+        }
+        boolean keyframe = NalUnits.isKeyframe(frame);
+        if (keyframe) {
+          lastKeyframeRequestMillis = 0; // Recovered, the next loss is requested right away
+        }
+        event.end();
+        if (event.shouldCommit()) {
+          event.timestamp = timestamp;
+          event.firstSequenceNumber = firstSeq;
+          event.lastSequenceNumber = lastSeq;
+          event.filledPackets = filledPackets;
+          event.size = frame.length;
+          event.keyframe = keyframe;
+          event.commit();
+        }
         notifySubscribers(SentinelFrame.builder().data(frame).timestamp(timestamp).build());
       } else {
         log.error("Failed to assemble frame for timestamp: {}", timestamp);
       }
     } else {
       log.warn("Frame skipped for timestamp: {} due to packet loss.", timestamp);
+      StreamMetrics metrics = streamMetrics;
+      if (metrics != null) {
+        metrics.recordFrameSkipped();
+      }
+      // Every following P-frame references the lost one, only a keyframe repairs the picture
+      requestKeyframe(packets.get(firstSeq).getSsrc());
+    }
+  }
+
+  private static void commitSkipped(long timestamp, int firstSeq, int lastSeq, int missingSeq,
+      int receivedPackets) {
+    FrameSkippedEvent event = new FrameSkippedEvent();
+    if (event.shouldCommit()) {
+      event.timestamp = timestamp;
+      event.firstSequenceNumber = firstSeq;
+      event.lastSequenceNumber = lastSeq;
+      event.missingSequenceNumber = missingSeq;
+      event.receivedPackets = receivedPackets;
+      event.commit();
+    }
+  }
+
+  private void requestKeyframe(long ssrc) {
+    KeyframeRequestListener listener = keyframeRequestListener;
+    long now = clockMillis.getAsLong();
+    if (listener == null || now - lastKeyframeRequestMillis < KEYFRAME_REQUEST_RETRY_MILLIS) {
+      return;
+    }
+    lastKeyframeRequestMillis = now;
+    log.info("Requesting keyframe for SSRC {}", ssrc);
+    listener.onKeyframeNeeded(ssrc);
+  }
+
+  // A subscriber dropped a reference frame and waits for the next keyframe
+  private void requestKeyframeForSubscriber() {
+    long lastSsrc = ssrc;
+    if (lastSsrc >= 0) {
+      requestKeyframe(lastSsrc);
     }
   }
 
   private void initializeFrameAssembly() {
-    if (!frameBufferByTimestamp.isEmpty()) {
+    long ts = oldestBufferedTimestamp(FrameBuffer.FREE);
+    if (ts != FrameBuffer.FREE) {
       // Set to the earliest frame in the buffer, but don't trigger immediate assembly
-      long ts = frameBufferByTimestamp.keySet().stream()
-          .min(Long::compare)
-          .orElse(-1L);
-
       lastAssembledTimestamp.set(ts);
 
       log.info("Starting frame assembly from timestamp: {}", lastAssembledTimestamp);
@@ -131,47 +249,280 @@ public class VideoStreamProcessor {
     }
   }
 
+  /**
+   * Buffers a packet until its frame is assembled.
+   * <p>
+   * Does not allocate in steady state, so it can keep up with the receiving socket.
+   */
   public void processPacket(RTPPacket rtpPacket) {
     long timestamp = rtpPacket.getTimestamp();
-    int sequenceNumber = rtpPacket.getSequenceNumber();
-    long arrivalTime = System.currentTimeMillis();
+    long arrivalTime = clockMillis.getAsLong();
+
+    if (log.isDebugEnabled()) {
+      log.debug("Received packet: Timestamp={} Seq={}", timestamp,
+          rtpPacket.getSequenceNumber());
+    }
+
+    boolean firstPacket;
+    synchronized (frameBuffers) {
+      FrameBuffer buffer = findBuffer(timestamp);
+      firstPacket = buffer == null;
+      if (firstPacket) {
+        buffer = acquireBuffer(timestamp);
+        if (lastFrameArrivalMillis != -1) {
+          updateJitter(arrivalTime - lastFrameArrivalMillis);
+        }
+        lastFrameArrivalMillis = arrivalTime;
+      }
+      buffer.setLastArrivalMillis(arrivalTime);
+      if (!buffer.add(rtpPacket)) {
+        log.warn("Packet Seq={} is too far from the rest of frame {}. Dropping.",
+            rtpPacket.getSequenceNumber(), timestamp);
+      }
+    }
+
+    LatencyTracker tracker = latencyTracker;
+    if (tracker != null && firstPacket) {
+      markFirstPacket(tracker, rtpPacket);
+    }
+  }
+
+  // Callers hold frameBuffers
+  private FrameBuffer findBuffer(long timestamp) {
+    for (FrameBuffer buffer : frameBuffers) {
+      if (buffer != null && buffer.getTimestamp() == timestamp) {
+        return buffer;
+      }
+    }
+    return null;
+  }
+
+  // Callers hold frameBuffers
+  private FrameBuffer acquireBuffer(long timestamp) {
+    int oldest = -1;
+    for (int i = 0; i < frameBuffers.length; i++) {
+      if (frameBuffers[i] == null) {
+        frameBuffers[i] = new FrameBuffer();
+      }
+      if (frameBuffers[i].isFree()) {
+        frameBuffers[i].acquire(timestamp);
+        return frameBuffers[i];
+      }
+      if (oldest == -1 || SerialNumbers.compareTimestamps(frameBuffers[i].getTimestamp(),
+          frameBuffers[oldest].getTimestamp()) < 0) {
+        oldest = i;
+      }
+    }
+    log.warn("Jitter buffer full. Dropping frame {}.", frameBuffers[oldest].getTimestamp());
+    frameBuffers[oldest].release();
+    frameBuffers[oldest].acquire(timestamp);
+    return frameBuffers[oldest];
+  }
+
+  private int countBufferedFrames(long from) {
+    int count = 0;
+    synchronized (frameBuffers) {
+      for (FrameBuffer buffer : frameBuffers) {
+        if (buffer != null && !buffer.isFree() && isAtOrAfter(buffer.getTimestamp(), from)) {
+          count++;
+        }
+      }
+    }
+    return count;
+  }
 
-    log.debug("Received packet: Timestamp={} Seq={}", timestamp, sequenceNumber);
+  /**
+   * @param from The earliest timestamp of interest, or {@link FrameBuffer#FREE} for any
+   * @return The oldest buffered timestamp not before the given one, or {@link FrameBuffer#FREE}
+   */
+  private long oldestBufferedTimestamp(long from) {
+    long oldest = FrameBuffer.FREE;
+    synchronized (frameBuffers) {
+      for (FrameBuffer buffer : frameBuffers) {
+        if (buffer != null && !buffer.isFree() && isAtOrAfter(buffer.getTimestamp(), from)
+            && (oldest == FrameBuffer.FREE
+                || SerialNumbers.compareTimestamps(buffer.getTimestamp(), oldest) < 0)) {
+          oldest = buffer.getTimestamp();
+        }
+      }
+    }
+    return oldest;
+  }
 
-    scheduler.schedule(() -> calculateJitter(timestamp, arrivalTime), 0, TimeUnit.MILLISECONDS);
+  // RTP timestamps wrap around at 32 bits, a plain comparison stalls assembly after the wrap
+  private static boolean isAtOrAfter(long timestamp, long from) {
+    return from == FrameBuffer.FREE || SerialNumbers.isTimestampAtOrAfter(timestamp, from);
+  }
 
-    frameBufferByTimestamp
-        .computeIfAbsent(timestamp, k -> new TreeMap<>())
-        .put(sequenceNumber, rtpPacket);
+  private static void markFirstPacket(LatencyTracker tracker, RTPPacket rtpPacket) {
+    // A sender in another process tells the capture time, in this process it is already marked
+    CaptureTime captureTime = CaptureTime.of(rtpPacket);
+    if (captureTime != null) {
+      tracker.markCaptured(rtpPacket.getTimestamp(), captureTime.getEpochNanos());
+    }
+    tracker.mark(rtpPacket.getTimestamp(), LatencyStage.FIRST_PACKET_RECEIVED);
   }
 
-  private void calculateJitter(long timestamp, long arrivalTime) {
-    Long previousArrivalTime = lastArrivalTimeByTimestamp.put(timestamp, arrivalTime);
+  // Callers hold frameBuffers
+  private void updateJitter(long interarrivalDifference) {
+    if (lastAssembledTimestamp.get() != -1) {
+      double jitterSample = Math.abs(Math.abs(interarrivalDifference) - frameIntervalMillis);
+      jitter = jitter + JITTER_ALPHA * (jitterSample - jitter);
+    }
+  }
 
-    if (previousArrivalTime != null && lastAssembledTimestamp.get() != -1) {
-      long interarrivalDifference = Math.abs(arrivalTime - previousArrivalTime);
+  /**
+   * Sets a listener that is called synchronously on the assembly thread for every assembled frame,
+   * before any subscriber. Meant for measurements, it must return quickly.
+   */
+  public void setAssemblyObserver(FrameListener assemblyObserver) {
+    this.assemblyObserver = assemblyObserver;
+  }
 
-      jitter.updateAndGet(j -> {
-        double jitterSample = Math.abs(interarrivalDifference - frameIntervalMillis);
-        return j + JITTER_ALPHA * (jitterSample - j);
-      });
+  /**
+   * Sets the tracker that the receive and reassembly stages are marked on, or null for none.
+   */
+  public void setLatencyTracker(LatencyTracker latencyTracker) {
+    this.latencyTracker = latencyTracker;
+  }
 
-      //log.debug("Updated jitter: {} ms", jitter.get());
+  /**
+   * Sets the metrics that assembled, skipped and filled frames are counted in, or null for none.
+   * The metrics also report the jitter estimate.
+   */
+  public void setStreamMetrics(StreamMetrics streamMetrics) {
+    this.streamMetrics = streamMetrics;
+    if (streamMetrics != null) {
+      streamMetrics.setJitterGauge(() -> jitter);
     }
   }
 
-  public void addSubscriber(FrameListener listener) {
-    subscribers.add(listener);
+  /**
+   * Sets who is told when a frame was lost and the stream cannot be decoded until the next
+   * keyframe, typically by sending a PLI to the sender.
+   */
+  public void setKeyframeRequestListener(KeyframeRequestListener keyframeRequestListener) {
+    this.keyframeRequestListener = keyframeRequestListener;
+  }
+
+  public SubscriberDispatcher addSubscriber(FrameListener listener) {
+    return addSubscriber(listener, SubscriberOptions.builder().build());
+  }
+
+  /**
+   * Adds a subscriber that first receives the cached frames since the last keyframe, so it can
+   * start decoding without waiting for the next one. All frames, the cached ones included, are
+   * delivered from the subscriber's own queue and thread. If its queue drops a reference frame,
+   * the subscriber skips to the next keyframe, which is requested from the sender.
+   *
+   * @param options {@link OverflowPolicy#BLOCK} is not supported, a listener cannot signal demand
+   *                and would stall frame assembly. Use {@link #subscribe} for backpressure.
+   * @return The dispatcher, for the subscriber's lag and drop counters
+   */
+  public SubscriberDispatcher addSubscriber(FrameListener listener, SubscriberOptions options) {
+    if (options.getOverflowPolicy() == OverflowPolicy.BLOCK) {
+      throw new IllegalArgumentException(
+          "Listeners cannot block frame assembly, subscribe a Flow.Subscriber for backpressure");
+    }
+    SubscriberDispatcher dispatcher;
+    // Under the cache lock no frame can slip between the replay and the registration
+    synchronized (keyframeCache) {
+      dispatcher = new SubscriberDispatcher("subscriber-" + subscriberCount.incrementAndGet(),
+          listener, options, keyframeCache.getFrames(), this::requestKeyframeForSubscriber);
+      subscribers.add(dispatcher);
+    }
+    dispatcher.start();
+    return dispatcher;
+  }
+
+  public void removeSubscriber(FrameListener listener) {
+    for (SubscriberDispatcher dispatcher : subscribers) {
+      if (dispatcher.getListener() == listener) {
+        subscribers.remove(dispatcher);
+        dispatcher.close();
+      }
+    }
+  }
+
+  /**
+   * Subscribes with backpressure: once the subscriber's queue is full, frame assembly waits until
+   * the subscriber requests more frames.
+   */
+  @Override
+  public void subscribe(Flow.Subscriber<? super SentinelFrame> subscriber) {
+    subscribe(subscriber, SubscriberOptions.builder().overflowPolicy(OverflowPolicy.BLOCK).build());
+  }
+
+  /**
+   * Subscribes with the given queue size and overflow policy. Like {@link #addSubscriber} the
+   * subscriber first receives the cached frames since the last keyframe, as far as its queue
+   * holds them.
+   */
+  public void subscribe(Flow.Subscriber<? super SentinelFrame> subscriber,
+      SubscriberOptions options) {
+    if (subscriber == null) {
+      throw new NullPointerException("Subscriber cannot be null");
+    }
+    synchronized (keyframeCache) {
+      List<SentinelFrame> cached = keyframeCache.getFrames();
+      // Room for the whole replay, so subscribing never blocks or drops the keyframe
+      StageQueue<SentinelFrame> queue = new StageQueue<>(
+          "flow-subscriber-" + subscriberCount.incrementAndGet(),
+          options.getQueueCapacity() + cached.size(), options.getOverflowPolicy());
+      FlowSubscription<SentinelFrame> subscription = new FlowSubscription<>(subscriber, queue,
+          FlowSubscription.VIRTUAL_THREAD_EXECUTOR, flowSubscriptions::remove);
+      subscription.start();
+      cached.forEach(subscription::offer);
+      flowSubscriptions.add(subscription);
+    }
+  }
+
+  public List<SubscriberDispatcher> getSubscribers() {
+    return List.copyOf(subscribers);
   }
 
   void notifySubscribers(SentinelFrame frame) {
-    for (FrameListener listener : subscribers) {
-      listener.onFrameAvailable(frame);
+    LatencyTracker tracker = latencyTracker;
+    if (tracker != null) {
+      tracker.mark(frame.getTimestamp(), LatencyStage.FRAME_COMPLETE);
+    }
+    FrameListener observer = assemblyObserver;
+    if (observer != null) {
+      observer.onFrameAvailable(frame);
     }
+    Iterator<SubscriberDispatcher> dispatchers;
+    Iterator<FlowSubscription<SentinelFrame>> flows;
+    // Snapshots of the subscribers, consistent with the cache that new subscribers replay
+    synchronized (keyframeCache) {
+      keyframeCache.add(frame);
+      dispatchers = subscribers.iterator();
+      flows = flowSubscriptions.iterator();
+    }
+    // Outside the lock, so a Flow subscriber without demand may block assembly but not subscribing.
+    // Listener dispatchers never block, they drop instead.
+    while (dispatchers.hasNext()) {
+      dispatchers.next().offer(frame);
+    }
+    while (flows.hasNext()) {
+      flows.next().offer(frame);
+    }
+  }
+
+  /**
+   * Stops delivery: Flow subscribers are completed after their queued frames, listeners stop.
+   */
+  @Override
+  public void close() {
+    flowSubscriptions.forEach(FlowSubscription::complete);
+    subscribers.forEach(SubscriberDispatcher::close);
+    subscribers.clear();
   }
 
   SortedMap<Integer, RTPPacket> getFramesByTimestamp(long timestamp) {
-    return frameBufferByTimestamp.get(timestamp);
+    synchronized (frameBuffers) {
+      FrameBuffer buffer = findBuffer(timestamp);
+      return buffer == null ? null : buffer.toSortedMap();
+    }
   }
 
   public interface FrameListener {
@@ -179,4 +530,13 @@ public class VideoStreamProcessor {
     void onFrameAvailable(SentinelFrame frame);
 
   }
+
+  public interface KeyframeRequestListener {
+
+    /**
+     * @param ssrc The SSRC of the stream that lost a frame
+     */
+    void onKeyframeNeeded(long ssrc);
+
+  }
 }
@@ -0,0 +1,293 @@
+package space.hajnal.sentinel.network.video.simulation;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A UDP relay on loopback that impairs the datagrams passing through it like a
+ * {@link NetworkImpairment}, to test and benchmark the real sockets under loss, delay and
+ * congestion.
+ * <p>
+ * Senders send to {@link #getLocalAddress()} instead of the receiver. Datagrams coming back from
+ * the receiver, such as RTCP feedback, are returned to the last sender unimpaired. Which packets
+ * are lost, reordered or duplicated depends only on the seed and the order the packets arrive
+ * in; the timing follows the wall clock.
+ */
+@Slf4j
+public class ImpairmentProxy implements AutoCloseable {
+
+  // A reordered packet waits for its overtakers at most this long, in case the stream stops
+  private static final long MAX_REORDER_HOLD_MILLIS = 100;
+  private static final int MAX_DATAGRAM_SIZE = 65_507;
+
+  private final NetworkImpairment.Sampler sampler;
+  private final int reorderDepth;
+  private final InetSocketAddress target;
+  private final DatagramChannel channel;
+  private final DelayQueue<Delivery> deliveries = new DelayQueue<>();
+  // Reordered packets waiting to be overtaken, guarded by itself
+  private final List<Delivery> held = new ArrayList<>();
+  private final LongAdder received = new LongAdder();
+  private final LongAdder forwarded = new LongAdder();
+  private final LongAdder lost = new LongAdder();
+  private final LongAdder queueDropped = new LongAdder();
+  private final LongAdder reordered = new LongAdder();
+  private final LongAdder duplicated = new LongAdder();
+  private final long startNanos = System.nanoTime();
+  private volatile SocketAddress lastSender;
+  private volatile boolean running = true;
+  private long order = 0;  // Guarded by held
+  private Thread receiver;
+  private Thread sender;
+
+  /**
+   * Binds to an ephemeral port on loopback.
+   *
+   * @param impairment What to do to the datagrams
+   * @param target     Where the datagrams go, typically a receiver on loopback
+   */
+  public ImpairmentProxy(NetworkImpairment impairment, InetSocketAddress target)
+      throws IOException {
+    this.sampler = impairment.sampler();
+    this.reorderDepth = impairment.getReorderDepth();
+    this.target = target;
+    this.channel = DatagramChannel.open();
+    this.channel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+  }
+
+  /**
+   * Starts relaying on two daemon threads, one receiving and one sending when packets are due.
+   *
+   * @return this proxy
+   */
+  public synchronized ImpairmentProxy start() {
+    if (receiver != null) {
+      throw new IllegalStateException("Proxy is already running");
+    }
+    receiver = Thread.ofPlatform().name("impairment-proxy-receiver").daemon()
+        .start(this::receiveLoop);
+    sender = Thread.ofPlatform().name("impairment-proxy-sender").daemon()
+        .start(this::sendLoop);
+    log.info("Impairing datagrams from {} to {}", getLocalAddress(), target);
+    return this;
+  }
+
+  /**
+   * @return The address senders should send to instead of the target
+   */
+  public InetSocketAddress getLocalAddress() {
+    try {
+      return (InetSocketAddress) channel.getLocalAddress();
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private void receiveLoop() {
+    ByteBuffer buffer = ByteBuffer.allocate(MAX_DATAGRAM_SIZE);
+    while (running) {
+      try {
+        buffer.clear();
+        SocketAddress source = channel.receive(buffer);
+        buffer.flip();
+        if (target.equals(source)) {
+          SocketAddress destination = lastSender;
+          if (destination != null) {
+            channel.send(buffer, destination);
+          }
+          continue;
+        }
+        lastSender = source;
+        byte[] datagram = new byte[buffer.remaining()];
+        buffer.get(datagram);
+        impair(datagram);
+      } catch (ClosedChannelException e) {
+        break;
+      } catch (IOException e) {
+        if (running) {
+          log.error("Error while receiving datagrams", e);
+        }
+      }
+    }
+  }
+
+  private void impair(byte[] datagram) {
+    received.increment();
+    double nowMillis = nowMillis();
+    if (sampler.lost()) {
+      lost.increment();
+      return;
+    }
+    double leftLink = sampler.transmit(nowMillis, datagram.length);
+    if (leftLink < 0) {
+      queueDropped.increment();
+      return;
+    }
+
+    double dueMillis = leftLink + sampler.delay();
+    boolean reorder = sampler.reordered();
+    boolean duplicate = sampler.duplicated();
+    synchronized (held) {
+      Delivery delivery = new Delivery(datagram, dueMillis, order++);
+      if (reorder) {
+        reordered.increment();
+        delivery.overtakersLeft = reorderDepth;
+        delivery.heldSinceMillis = nowMillis;
+        held.add(delivery);
+      } else {
+        schedule(delivery);
+      }
+      if (duplicate) {
+        duplicated.increment();
+        schedule(new Delivery(datagram, dueMillis + sampler.jitter(), order++));
+      }
+    }
+  }
+
+  // Held packets go out right after the packet that overtook them, callers hold held
+  private void schedule(Delivery delivery) {
+    deliveries.put(delivery);
+    Iterator<Delivery> iterator = held.iterator();
+    while (iterator.hasNext()) {
+      Delivery waiting = iterator.next();
+      if (--waiting.overtakersLeft <= 0) {
+        iterator.remove();
+        deliveries.put(new Delivery(waiting.datagram,
+            Math.max(waiting.dueMillis, delivery.dueMillis), order++));
+      }
+    }
+  }
+
+  private void releaseOverdue() {
+    double nowMillis = nowMillis();
+    synchronized (held) {
+      Iterator<Delivery> iterator = held.iterator();
+      while (iterator.hasNext()) {
+        Delivery waiting = iterator.next();
+        if (nowMillis - waiting.heldSinceMillis > MAX_REORDER_HOLD_MILLIS) {
+          iterator.remove();
+          deliveries.put(waiting);
+        }
+      }
+    }
+  }
+
+  private void sendLoop() {
+    while (running) {
+      try {
+        Delivery delivery = deliveries.poll(MAX_REORDER_HOLD_MILLIS / 10, TimeUnit.MILLISECONDS);
+        releaseOverdue();
+        if (delivery == null) {
+          continue;
+        }
+        channel.send(ByteBuffer.wrap(delivery.datagram), target);
+        forwarded.increment();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      } catch (ClosedChannelException e) {
+        break;
+      } catch (IOException e) {
+        if (running) {
+          log.error("Error while forwarding datagram", e);
+        }
+      }
+    }
+  }
+
+  private double nowMillis() {
+    return (System.nanoTime() - startNanos) / 1_000_000.0;
+  }
+
+  /**
+   * @return Datagrams received from senders
+   */
+  public long getReceived() {
+    return received.sum();
+  }
+
+  /**
+   * @return Datagrams sent to the target, duplicates included
+   */
+  public long getForwarded() {
+    return forwarded.sum();
+  }
+
+  /**
+   * @return Datagrams lost at random or in bursts
+   */
+  public long getLost() {
+    return lost.sum();
+  }
+
+  /**
+   * @return Datagrams dropped because the capped link's queue was full
+   */
+  public long getQueueDropped() {
+    return queueDropped.sum();
+  }
+
+  public long getReordered() {
+    return reordered.sum();
+  }
+
+  public long getDuplicated() {
+    return duplicated.sum();
+  }
+
+  @Override
+  public synchronized void close() {
+    running = false;
+    try {
+      channel.close();
+    } catch (IOException e) {
+      log.error("Error while closing channel", e);
+    }
+    if (sender != null) {
+      sender.interrupt();
+    }
+    log.info("Impairment proxy closed: {} received, {} forwarded, {} lost, {} dropped by the "
+             + "link, {} reordered, {} duplicated", getReceived(), getForwarded(), getLost(),
+        getQueueDropped(), getReordered(), getDuplicated());
+  }
+
+  private final class Delivery implements Delayed {
+
+    private final byte[] datagram;
+    private final double dueMillis;
+    private final long order;
+    private int overtakersLeft;
+    private double heldSinceMillis;
+
+    private Delivery(byte[] datagram, double dueMillis, long order) {
+      this.datagram = datagram;
+      this.dueMillis = dueMillis;
+      this.order = order;
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+      return unit.convert((long) ((dueMillis - nowMillis()) * 1_000_000), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+      Delivery delivery = (Delivery) other;
+      int byTime = Double.compare(dueMillis, delivery.dueMillis);
+      return byTime != 0 ? byTime : Long.compare(order, delivery.order);
+    }
+  }
+}
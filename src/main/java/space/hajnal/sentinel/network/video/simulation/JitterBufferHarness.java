@@ -0,0 +1,164 @@
+package space.hajnal.sentinel.network.video.simulation;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.LongSupplier;
+import lombok.extern.slf4j.Slf4j;
+import space.hajnal.sentinel.network.video.FrameProcessor;
+import space.hajnal.sentinel.network.video.VideoStreamProcessor;
+
+/**
+ * Replays a {@link PacketTrace} through a jitter buffer under a {@link NetworkImpairment}, on a
+ * {@link VirtualScheduler}, and reports what came out.
+ * <p>
+ * Packets are fed at their virtual arrival times and frame assembly runs on virtual time, so a
+ * run takes milliseconds, does not depend on the machine's load and yields the same frames for
+ * the same trace, impairment and seed. Only the CPU cost per packet is measured for real.
+ */
+@Slf4j
+public class JitterBufferHarness {
+
+  /**
+   * How long to keep assembling after the last arrival, so that buffered frames come out.
+   */
+  private static final long DRAIN_MILLIS = 1000;
+
+  private final int fps;
+  private final ProcessorFactory processorFactory;
+
+  /**
+   * Creates the jitter buffer under test.
+   */
+  public interface ProcessorFactory {
+
+    VideoStreamProcessor create(int fps, ScheduledExecutorService scheduler,
+        LongSupplier clockMillis);
+
+  }
+
+  /**
+   * A harness for the default {@link VideoStreamProcessor}.
+   */
+  public JitterBufferHarness(int fps) {
+    this(fps, (frameRate, scheduler, clockMillis) ->
+        new VideoStreamProcessor(new FrameProcessor(), frameRate, scheduler, clockMillis));
+  }
+
+  /**
+   * @param processorFactory Creates the processor to compare, e.g. with a different strategy
+   */
+  public JitterBufferHarness(int fps, ProcessorFactory processorFactory) {
+    this.fps = fps;
+    this.processorFactory = processorFactory;
+  }
+
+  public JitterBufferReport run(String scenario, PacketTrace trace,
+      NetworkImpairment impairment) {
+    List<NetworkImpairment.Arrival> arrivals = impairment.apply(trace);
+
+    // RTP timestamp -> send time of the frame's first packet
+    Map<Long, Long> sendTimes = new HashMap<>();
+    trace.getPackets().forEach(entry -> sendTimes.putIfAbsent(entry.getPacket().getTimestamp(),
+        entry.getSendTimeMillis()));
+
+    VirtualScheduler scheduler = new VirtualScheduler(0);
+    VideoStreamProcessor processor = processorFactory.create(fps, scheduler,
+        scheduler::nowMillis);
+    // RTP timestamp -> time of first delivery, a forced-forward frame may repeat a timestamp
+    Map<Long, Long> deliveries = new HashMap<>();
+    processor.setAssemblyObserver(frame ->
+        deliveries.putIfAbsent(frame.getTimestamp(), scheduler.nowMillis()));
+
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    long cpuStart = threads.getCurrentThreadCpuTime();
+    long lastArrival = 0;
+    for (NetworkImpairment.Arrival arrival : arrivals) {
+      scheduler.advanceTo(arrival.getArrivalTimeMillis());
+      processor.processPacket(arrival.getPacket());
+      lastArrival = arrival.getArrivalTimeMillis();
+    }
+    scheduler.advanceTo(lastArrival + DRAIN_MILLIS);
+    long cpuNanos = threads.getCurrentThreadCpuTime() - cpuStart;
+
+    scheduler.shutdownNow();
+    processor.close();
+
+    long[] latencies = deliveries.entrySet().stream()
+        .filter(delivery -> sendTimes.containsKey(delivery.getKey()))
+        .mapToLong(delivery -> delivery.getValue() - sendTimes.get(delivery.getKey()))
+        .sorted()
+        .toArray();
+
+    return JitterBufferReport.builder()
+        .scenario(scenario)
+        .packetsSent(trace.size())
+        .packetsReceived(arrivals.size())
+        .framesSent(sendTimes.size())
+        .framesDelivered(latencies.length)
+        .framesDropped(sendTimes.size() - latencies.length)
+        .latencyP50Millis(percentile(latencies, 50))
+        .latencyP95Millis(percentile(latencies, 95))
+        .latencyP99Millis(percentile(latencies, 99))
+        .latencyMaxMillis(latencies.length == 0 ? 0 : latencies[latencies.length - 1])
+        .cpuNanosPerPacket(arrivals.isEmpty() ? 0 : cpuNanos / arrivals.size())
+        .build();
+  }
+
+  /**
+   * Nearest-rank percentile of sorted values.
+   */
+  static long percentile(long[] sorted, int percentile) {
+    if (sorted.length == 0) {
+      return 0;
+    }
+    int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+    return sorted[Math.max(0, rank - 1)];
+  }
+
+  /**
+   * Runs the standard scenarios on a generated trace, or on a recorded one given as argument.
+   */
+  public static void main(String[] args) throws IOException {
+    int fps = 30;
+    PacketTrace trace;
+    if (args.length > 0) {
+      try (InputStream input = new FileInputStream(args[0])) {
+        trace = PacketTrace.read(input);
+      }
+    } else {
+      trace = PacketTrace.generate(900, fps, 30, 60_000, 8_000, 1400, 42);
+    }
+
+    NetworkImpairment perfect = NetworkImpairment.builder().build();
+    Map<String, NetworkImpairment> scenarios = new LinkedHashMap<>();
+    scenarios.put("perfect", perfect);
+    scenarios.put("loss 1%", perfect.toBuilder().lossRate(0.01).build());
+    scenarios.put("burst loss", perfect.toBuilder().burstStartRate(0.005).meanBurstLength(5)
+        .build());
+    scenarios.put("reorder 5% depth 3", perfect.toBuilder().reorderRate(0.05).reorderDepth(3)
+        .build());
+    scenarios.put("duplication 2%", perfect.toBuilder().duplicationRate(0.02).build());
+    scenarios.put("jitter 20ms", perfect.toBuilder().jitterMillis(20).build());
+    scenarios.put("combined", perfect.toBuilder().lossRate(0.01).burstStartRate(0.002)
+        .meanBurstLength(3).reorderRate(0.02).reorderDepth(3).duplicationRate(0.01)
+        .jitterMillis(20).build());
+
+    JitterBufferHarness harness = new JitterBufferHarness(fps);
+    // Warm up so the first scenario's CPU figure is not dominated by class loading and JIT
+    harness.run("warmup", trace, perfect);
+
+    StringBuilder report = new StringBuilder(JitterBufferReport.header());
+    scenarios.forEach((name, impairment) ->
+        report.append(System.lineSeparator()).append(harness.run(name, trace, impairment)));
+    log.info("Jitter buffer replay of {} packets:{}{}", trace.size(), System.lineSeparator(),
+        report);
+  }
+}
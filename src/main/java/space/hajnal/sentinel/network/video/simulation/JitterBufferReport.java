@@ -0,0 +1,45 @@
+package space.hajnal.sentinel.network.video.simulation;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * The outcome of one {@link JitterBufferHarness} run.
+ */
+@Builder
+@Data
+public class JitterBufferReport {
+
+  private final String scenario;
+  private final int packetsSent;
+  private final int packetsReceived;
+  private final int framesSent;
+  private final int framesDelivered;
+  /**
+   * Frames that were sent but never delivered, for any reason.
+   */
+  private final int framesDropped;
+  /**
+   * Time from sending a frame's first packet to its delivery, which includes the network delay.
+   */
+  private final long latencyP50Millis;
+  private final long latencyP95Millis;
+  private final long latencyP99Millis;
+  private final long latencyMaxMillis;
+  /**
+   * CPU time of packet processing and frame assembly, per received packet.
+   */
+  private final long cpuNanosPerPacket;
+
+  public static String header() {
+    return String.format("%-24s %8s %8s %8s %8s %6s %6s %6s %6s %8s", "scenario", "packets",
+        "received", "frames", "dropped", "p50ms", "p95ms", "p99ms", "maxms", "ns/pkt");
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%-24s %8d %8d %8d %8d %6d %6d %6d %6d %8d", scenario, packetsSent,
+        packetsReceived, framesSent, framesDropped, latencyP50Millis, latencyP95Millis,
+        latencyP99Millis, latencyMaxMillis, cpuNanosPerPacket);
+  }
+}
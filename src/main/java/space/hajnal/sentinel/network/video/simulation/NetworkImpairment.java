@@ -0,0 +1,202 @@
+package space.hajnal.sentinel.network.video.simulation;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import lombok.Builder;
+import lombok.Data;
+import space.hajnal.sentinel.network.model.RTPPacket;
+
+/**
+ * A seeded model of a bad network, turning a {@link PacketTrace} into the packets a receiver sees
+ * and when, or impairing live traffic through an {@link ImpairmentProxy}.
+ * <p>
+ * Random loss and burst loss follow a Gilbert-Elliott model: in the good state each packet is
+ * lost with {@link #lossRate}, a burst starts with {@link #burstStartRate} and then loses every
+ * packet until it ends after {@link #meanBurstLength} packets on average. Packets that survive
+ * pass a link capped at {@link #bandwidthBitsPerSecond} and are then delayed.
+ */
+@Builder(toBuilder = true)
+@Data
+public class NetworkImpairment {
+
+  /**
+   * Loss probability of a single packet outside bursts.
+   */
+  @Builder.Default
+  private final double lossRate = 0;
+  /**
+   * Probability that a burst of consecutive losses starts at a packet.
+   */
+  @Builder.Default
+  private final double burstStartRate = 0;
+  @Builder.Default
+  private final double meanBurstLength = 1;
+  /**
+   * Probability that a packet is overtaken by the packets sent after it.
+   */
+  @Builder.Default
+  private final double reorderRate = 0;
+  /**
+   * How many later packets overtake a reordered packet.
+   */
+  @Builder.Default
+  private final int reorderDepth = 0;
+  /**
+   * Probability that a packet arrives twice.
+   */
+  @Builder.Default
+  private final double duplicationRate = 0;
+  /**
+   * Fixed one-way delay of every packet.
+   */
+  @Builder.Default
+  private final long delayMillis = 0;
+  /**
+   * Extra one-way delay of each packet, uniformly distributed between zero and this value.
+   */
+  @Builder.Default
+  private final long jitterMillis = 0;
+  /**
+   * Capacity of the link, 0 for unlimited. Packets queue up behind each other at this rate.
+   */
+  @Builder.Default
+  private final long bandwidthBitsPerSecond = 0;
+  /**
+   * The longest a packet waits for the capped link, a fuller queue drops it.
+   */
+  @Builder.Default
+  private final long queueLimitMillis = 200;
+  @Builder.Default
+  private final long seed = 1;
+
+  /**
+   * A packet as seen by the receiver.
+   */
+  @Data
+  public static class Arrival {
+
+    private final long arrivalTimeMillis;
+    private final long sendTimeMillis;
+    private final RTPPacket packet;
+    // Orders arrivals within the same millisecond
+    private final long order;
+  }
+
+  /**
+   * @return The arrivals ordered by arrival time
+   */
+  public List<Arrival> apply(PacketTrace trace) {
+    Sampler sampler = sampler();
+    List<PacketTrace.Entry> packets = trace.getPackets();
+    List<Arrival> arrivals = new ArrayList<>(packets.size());
+
+    for (int i = 0; i < packets.size(); i++) {
+      PacketTrace.Entry entry = packets.get(i);
+      if (sampler.lost()) {
+        continue;
+      }
+      double leftLink = sampler.transmit(entry.getSendTimeMillis(), size(entry.getPacket()));
+      if (leftLink < 0) {
+        continue;
+      }
+
+      long arrival = (long) Math.ceil(leftLink) + sampler.delay();
+      long order = 2L * i;
+      if (sampler.reordered()) {
+        // Arrive just after the packet sent reorderDepth packets later
+        int overtaker = Math.min(packets.size() - 1, i + reorderDepth);
+        arrival = Math.max(arrival, packets.get(overtaker).getSendTimeMillis());
+        order = 2L * overtaker + 1;
+      }
+      arrivals.add(new Arrival(arrival, entry.getSendTimeMillis(), entry.getPacket(), order));
+      if (sampler.duplicated()) {
+        arrivals.add(new Arrival(arrival + sampler.jitter(), entry.getSendTimeMillis(),
+            entry.getPacket(), order + 1));
+      }
+    }
+
+    arrivals.sort(Comparator.comparingLong(Arrival::getArrivalTimeMillis)
+        .thenComparingLong(Arrival::getOrder));
+    return arrivals;
+  }
+
+  private int size(RTPPacket packet) {
+    return bandwidthBitsPerSecond == 0 ? 0 : packet.toBytes().length;
+  }
+
+  /**
+   * @return A fresh sequence of impairments from the seed
+   */
+  public Sampler sampler() {
+    return new Sampler();
+  }
+
+  /**
+   * Draws the impairments of packets one by one in send order. The same seed and packets give the
+   * same decisions. Not thread-safe.
+   */
+  public class Sampler {
+
+    private final SplittableRandom random = new SplittableRandom(seed);
+    private boolean inBurst = false;
+    private double linkFreeMillis = 0;
+
+    private Sampler() {
+    }
+
+    /**
+     * @return true if the next packet is lost, either at random or in a burst
+     */
+    public boolean lost() {
+      inBurst = inBurst ? random.nextDouble() >= 1 / meanBurstLength
+          : random.nextDouble() < burstStartRate;
+      return inBurst || random.nextDouble() < lossRate;
+    }
+
+    /**
+     * Queues a packet on the capped link.
+     *
+     * @param nowMillis When the packet was sent
+     * @param bytes     The size of the packet
+     * @return When the packet has left the link, or -1 if it was dropped from a full queue
+     */
+    public double transmit(double nowMillis, int bytes) {
+      if (bandwidthBitsPerSecond == 0) {
+        return nowMillis;
+      }
+      double start = Math.max(nowMillis, linkFreeMillis);
+      if (start - nowMillis > queueLimitMillis) {
+        return -1;
+      }
+      linkFreeMillis = start + bytes * 8000.0 / bandwidthBitsPerSecond;
+      return linkFreeMillis;
+    }
+
+    /**
+     * @return The one-way delay of the next packet, the fixed delay plus jitter
+     */
+    public long delay() {
+      return delayMillis + jitter();
+    }
+
+    long jitter() {
+      return jitterMillis == 0 ? 0 : random.nextLong(jitterMillis + 1);
+    }
+
+    /**
+     * @return true if the next packet is overtaken by the {@link #reorderDepth} packets after it
+     */
+    public boolean reordered() {
+      return reorderDepth > 0 && random.nextDouble() < reorderRate;
+    }
+
+    /**
+     * @return true if the next packet arrives twice
+     */
+    public boolean duplicated() {
+      return random.nextDouble() < duplicationRate;
+    }
+  }
+}
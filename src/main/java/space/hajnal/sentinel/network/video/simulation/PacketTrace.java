@@ -0,0 +1,114 @@
+package space.hajnal.sentinel.network.video.simulation;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import lombok.Data;
+import lombok.Getter;
+import space.hajnal.sentinel.camera.RTPClock;
+import space.hajnal.sentinel.network.model.RTPPacket;
+import space.hajnal.sentinel.network.serialization.RTPPacketDeserializer;
+import space.hajnal.sentinel.network.serialization.RTPPacketSerializer;
+
+/**
+ * RTP packets with the time each one was sent, in send order.
+ * <p>
+ * Traces are either generated from a synthetic GOP structure or read from a recording made with
+ * {@link #write(OutputStream)}: per packet the send time in milliseconds, the datagram length and
+ * the datagram.
+ */
+public class PacketTrace {
+
+  @Data
+  public static class Entry {
+
+    /**
+     * When the packet left the sender.
+     */
+    private final long sendTimeMillis;
+    private final RTPPacket packet;
+  }
+
+  /**
+   * The packets in send order.
+   */
+  @Getter
+  private final List<Entry> packets;
+
+  public PacketTrace(List<Entry> packets) {
+    this.packets = List.copyOf(packets);
+  }
+
+  /**
+   * Generates a stream of IDR and P-frames packetized like {@link RTPPacketSerializer} does.
+   *
+   * @param frames     The number of frames
+   * @param fps        The frame rate, frames are sent at a constant rate
+   * @param gop        An IDR frame every this many frames
+   * @param idrSize    The size of an IDR frame in bytes
+   * @param pFrameSize The size of a P-frame in bytes
+   * @param mtu        The maximum packet size
+   * @param seed       The seed of the payload bytes
+   */
+  public static PacketTrace generate(int frames, int fps, int gop, int idrSize, int pFrameSize,
+      int mtu, long seed) {
+    SplittableRandom random = new SplittableRandom(seed);
+    RTPPacketSerializer serializer = new RTPPacketSerializer();
+    List<Entry> packets = new ArrayList<>();
+    long ticksPerFrame = RTPClock.VIDEO_CLOCK_RATE / fps;
+    for (int frame = 0; frame < frames; frame++) {
+      boolean idr = frame % gop == 0;
+      byte[] data = new byte[idr ? idrSize : pFrameSize];
+      random.nextBytes(data);
+      // Annex B start code and NAL header, so keyframe detection works on the payload
+      data[0] = 0;
+      data[1] = 0;
+      data[2] = 1;
+      data[3] = (byte) (idr ? 0x65 : 0x41);
+      long sendTimeMillis = frame * 1000L / fps;
+      for (RTPPacket packet : serializer.serialize(data, mtu, frame * ticksPerFrame, 123456)) {
+        packets.add(new Entry(sendTimeMillis, packet));
+      }
+    }
+    return new PacketTrace(packets);
+  }
+
+  public static PacketTrace read(InputStream inputStream) throws IOException {
+    DataInputStream input = new DataInputStream(inputStream);
+    RTPPacketDeserializer deserializer = new RTPPacketDeserializer();
+    List<Entry> packets = new ArrayList<>();
+    while (true) {
+      long sendTimeMillis;
+      try {
+        sendTimeMillis = input.readLong();
+      } catch (EOFException e) {
+        break;
+      }
+      byte[] datagram = new byte[input.readInt()];
+      input.readFully(datagram);
+      packets.add(new Entry(sendTimeMillis, deserializer.deserialize(datagram)));
+    }
+    return new PacketTrace(packets);
+  }
+
+  public void write(OutputStream outputStream) throws IOException {
+    DataOutputStream output = new DataOutputStream(outputStream);
+    for (Entry entry : packets) {
+      byte[] datagram = entry.getPacket().toBytes();
+      output.writeLong(entry.getSendTimeMillis());
+      output.writeInt(datagram.length);
+      output.write(datagram);
+    }
+    output.flush();
+  }
+
+  public int size() {
+    return packets.size();
+  }
+}
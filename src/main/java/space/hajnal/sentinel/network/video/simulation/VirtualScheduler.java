@@ -0,0 +1,200 @@
+package space.hajnal.sentinel.network.video.simulation;
+
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single-threaded {@link ScheduledExecutorService} driven by a virtual millisecond clock.
+ * <p>
+ * Nothing runs on its own: {@link #advanceTo(long)} moves the clock forward and runs every task
+ * that falls due on the calling thread, in time order and first-scheduled-first for equal times.
+ * The same inputs therefore always produce the same schedule, independent of the machine's speed.
+ */
+public class VirtualScheduler extends AbstractExecutorService implements
+    ScheduledExecutorService {
+
+  private final PriorityQueue<Task<?>> tasks = new PriorityQueue<>();
+  private long nowMillis;
+  private long sequence = 0;
+  private boolean shutdown = false;
+
+  public VirtualScheduler(long startMillis) {
+    this.nowMillis = startMillis;
+  }
+
+  /**
+   * @return The virtual time in milliseconds
+   */
+  public long nowMillis() {
+    return nowMillis;
+  }
+
+  /**
+   * Runs every task due up to the given time, then leaves the clock at that time.
+   *
+   * @return The number of tasks run
+   */
+  public int advanceTo(long timeMillis) {
+    int run = 0;
+    while (!tasks.isEmpty() && tasks.peek().timeMillis <= timeMillis) {
+      Task<?> task = tasks.poll();
+      nowMillis = Math.max(nowMillis, task.timeMillis);
+      task.run();
+      run++;
+    }
+    nowMillis = Math.max(nowMillis, timeMillis);
+    return run;
+  }
+
+  public int getPendingTasks() {
+    return tasks.size();
+  }
+
+  @Override
+  public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+    return enqueue(new Task<>(() -> {
+      command.run();
+      return null;
+    }, nowMillis + unit.toMillis(delay), 0));
+  }
+
+  @Override
+  public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+    return enqueue(new Task<>(callable, nowMillis + unit.toMillis(delay), 0));
+  }
+
+  @Override
+  public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period,
+      TimeUnit unit) {
+    return enqueue(new Task<>(() -> {
+      command.run();
+      return null;
+    }, nowMillis + unit.toMillis(initialDelay), Math.max(1, unit.toMillis(period))));
+  }
+
+  @Override
+  public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay,
+      long delay, TimeUnit unit) {
+    // Tasks take no virtual time, so a fixed delay is a fixed rate
+    return scheduleAtFixedRate(command, initialDelay, delay, unit);
+  }
+
+  @Override
+  public void execute(Runnable command) {
+    schedule(command, 0, TimeUnit.MILLISECONDS);
+  }
+
+  private <V> Task<V> enqueue(Task<V> task) {
+    if (!shutdown) {
+      tasks.add(task);
+    }
+    return task;
+  }
+
+  @Override
+  public void shutdown() {
+    shutdown = true;
+  }
+
+  @Override
+  public List<Runnable> shutdownNow() {
+    shutdown = true;
+    List<Runnable> pending = List.copyOf(tasks);
+    tasks.clear();
+    return pending;
+  }
+
+  @Override
+  public boolean isShutdown() {
+    return shutdown;
+  }
+
+  @Override
+  public boolean isTerminated() {
+    return shutdown && tasks.isEmpty();
+  }
+
+  @Override
+  public boolean awaitTermination(long timeout, TimeUnit unit) {
+    return isTerminated();
+  }
+
+  private final class Task<V> implements ScheduledFuture<V>, Runnable {
+
+    private final Callable<V> callable;
+    private final long periodMillis;
+    private final long order = sequence++;
+    private long timeMillis;
+    private boolean cancelled = false;
+    private boolean done = false;
+    private V result;
+
+    private Task(Callable<V> callable, long timeMillis, long periodMillis) {
+      this.callable = callable;
+      this.timeMillis = timeMillis;
+      this.periodMillis = periodMillis;
+    }
+
+    @Override
+    public void run() {
+      if (cancelled) {
+        return;
+      }
+      try {
+        result = callable.call();
+      } catch (Exception e) {
+        throw new IllegalStateException("Scheduled task failed", e);
+      }
+      if (periodMillis > 0) {
+        timeMillis += periodMillis;
+        enqueue(this);
+      } else {
+        done = true;
+      }
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+      return unit.convert(timeMillis - nowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+      Task<?> task = (Task<?>) other;
+      int byTime = Long.compare(timeMillis, task.timeMillis);
+      return byTime != 0 ? byTime : Long.compare(order, task.order);
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      cancelled = true;
+      return tasks.remove(this);
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return cancelled;
+    }
+
+    @Override
+    public boolean isDone() {
+      return done || cancelled;
+    }
+
+    @Override
+    public V get() {
+      return result;
+    }
+
+    @Override
+    public V get(long timeout, TimeUnit unit) {
+      return result;
+    }
+  }
+}
@@ -0,0 +1,180 @@
+package space.hajnal.sentinel.pipeline;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A {@link Flow.Subscription} that hands items from a bounded {@link StageQueue} to its subscriber
+ * only as far as the subscriber has requested them.
+ * <p>
+ * Signals are delivered serially on the executor, never on the producer's thread, and a
+ * {@code request} from inside {@code onNext} does not recurse. With {@link OverflowPolicy#BLOCK} a
+ * producer offering into a full queue waits until the subscriber requests more, so demand
+ * throttles the producer. With the dropping policies the producer never waits and the overflow is
+ * counted instead.
+ *
+ * @param <T> The type of the published items
+ */
+@Slf4j
+public class FlowSubscription<T> implements Flow.Subscription {
+
+  /**
+   * Runs every drain on a fresh virtual thread, so a slow subscriber never occupies a pool thread.
+   */
+  public static final Executor VIRTUAL_THREAD_EXECUTOR = task -> Thread.ofVirtual()
+      .name("sentinel-flow").start(task);
+
+  private final Flow.Subscriber<? super T> subscriber;
+  private final StageQueue<T> queue;
+  private final Executor executor;
+  private final Consumer<FlowSubscription<T>> onCancel;
+  private final AtomicLong demand = new AtomicLong(0);
+  private final AtomicInteger pendingSignals = new AtomicInteger(0);
+  private final AtomicBoolean cancelled = new AtomicBoolean(false);
+  private boolean subscribed = false;
+  private volatile boolean done = false;
+  private volatile Throwable error;
+
+  /**
+   * @param subscriber The subscriber
+   * @param queue      The items published but not yet requested
+   * @param executor   Runs the signals to the subscriber
+   * @param onCancel   Called once when the subscription ends, to unregister it from the publisher
+   */
+  public FlowSubscription(Flow.Subscriber<? super T> subscriber, StageQueue<T> queue,
+      Executor executor, Consumer<FlowSubscription<T>> onCancel) {
+    this.subscriber = subscriber;
+    this.queue = queue;
+    this.executor = executor;
+    this.onCancel = onCancel;
+  }
+
+  /**
+   * Signals {@code onSubscribe}, must be called once before any item is offered.
+   */
+  public void start() {
+    signal();
+  }
+
+  /**
+   * Publishes an item, blocking the caller if the policy says so and the queue is full.
+   */
+  public void offer(T item) {
+    if (cancelled.get() || done) {
+      return;
+    }
+    queue.offer(item);
+    signal();
+  }
+
+  /**
+   * Completes the subscription once the already published items have been delivered.
+   */
+  public void complete() {
+    done = true;
+    signal();
+  }
+
+  /**
+   * Fails the subscription immediately, dropping undelivered items.
+   */
+  public void fail(Throwable throwable) {
+    error = throwable;
+    done = true;
+    signal();
+  }
+
+  @Override
+  public void request(long n) {
+    if (n <= 0) {
+      // Reactive Streams rule 3.9
+      fail(new IllegalArgumentException("Requested " + n + " items, must be positive"));
+      return;
+    }
+    // Demand beyond Long.MAX_VALUE is unbounded (rule 3.17)
+    demand.getAndAccumulate(n, (current, added) -> current + added < 0
+        ? Long.MAX_VALUE : current + added);
+    signal();
+  }
+
+  @Override
+  public void cancel() {
+    if (cancelled.compareAndSet(false, true)) {
+      // Frees a producer blocked on the full queue
+      queue.clear();
+      onCancel.accept(this);
+    }
+  }
+
+  public boolean isCancelled() {
+    return cancelled.get();
+  }
+
+  /**
+   * @return The number of items requested but not yet delivered
+   */
+  public long getDemand() {
+    return demand.get();
+  }
+
+  public int getQueued() {
+    return queue.size();
+  }
+
+  public long getDropped() {
+    return queue.getDropped();
+  }
+
+  private void signal() {
+    if (pendingSignals.getAndIncrement() == 0) {
+      executor.execute(this::drain);
+    }
+  }
+
+  // Only ever runs on one thread at a time, the pending counter hands over between runs
+  private void drain() {
+    int missed = 1;
+    do {
+      try {
+        if (!subscribed) {
+          subscribed = true;
+          subscriber.onSubscribe(this);
+        }
+        deliver();
+      } catch (RuntimeException e) {
+        // A subscriber that throws is considered cancelled (rule 2.13)
+        log.error("Subscriber failed, cancelling its subscription", e);
+        cancel();
+      }
+      missed = pendingSignals.addAndGet(-missed);
+    } while (missed != 0);
+  }
+
+  private void deliver() {
+    while (!cancelled.get()) {
+      if (error != null) {
+        cancel();
+        subscriber.onError(error);
+        return;
+      }
+      long requested = demand.get();
+      T item = requested > 0 ? queue.poll() : null;
+      if (item == null) {
+        if (done && queue.size() == 0) {
+          cancel();
+          subscriber.onComplete();
+        }
+        return;
+      }
+      if (requested != Long.MAX_VALUE) {
+        demand.decrementAndGet();
+      }
+      subscriber.onNext(item);
+    }
+  }
+}
@@ -0,0 +1,22 @@
+package space.hajnal.sentinel.pipeline;
+
+/**
+ * What a {@link StageQueue} does when a producer offers an item while the queue is full.
+ */
+public enum OverflowPolicy {
+
+  /**
+   * Evict the oldest queued item to make room for the new one.
+   */
+  DROP_OLDEST,
+
+  /**
+   * Discard everything queued so far, only the newest item survives.
+   */
+  LATEST_WINS,
+
+  /**
+   * Block the producer until the consumer frees a slot.
+   */
+  BLOCK
+}
@@ -0,0 +1,36 @@
+package space.hajnal.sentinel.pipeline;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Queue sizing and overflow policies of the capture, encode and send pipeline.
+ */
+@Builder
+@Data
+public class PipelineOptions {
+
+  /**
+   * Raw frames waiting for the encoder. Stale raw frames are worthless, so drop them.
+   */
+  @Builder.Default
+  private final int captureQueueCapacity = 2;
+  @Builder.Default
+  private final OverflowPolicy captureOverflowPolicy = OverflowPolicy.DROP_OLDEST;
+
+  /**
+   * Encoded frames waiting for the network. Dropping an encoded frame breaks the decoder's
+   * reference chain, so block by default.
+   */
+  @Builder.Default
+  private final int sendQueueCapacity = 8;
+  @Builder.Default
+  private final OverflowPolicy sendOverflowPolicy = OverflowPolicy.BLOCK;
+
+  /**
+   * Raw frame buffers shared by all stages. Must cover the capture queue plus the frame in the
+   * encoder, otherwise grabs are dropped for lack of a buffer.
+   */
+  @Builder.Default
+  private final int framePoolSize = 4;
+}
@@ -0,0 +1,108 @@
+package space.hajnal.sentinel.pipeline;
+
+import java.util.function.Consumer;
+import java.util.function.Function;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A pipeline stage that takes items from its input queue on a dedicated thread, transforms them
+ * and hands the result to the next stage.
+ *
+ * @param <I> The input type
+ * @param <O> The output type
+ */
+@Slf4j
+public class PipelineStage<I, O> implements AutoCloseable {
+
+  private final StageQueue<I> input;
+  private final Function<I, O> work;
+  private final Consumer<O> output;
+  @Getter
+  private final StageMetrics metrics;
+  private volatile boolean running = false;
+  private Thread worker;
+
+  /**
+   * @param name   The stage name, used for the worker thread and metrics
+   * @param input  The queue to consume from
+   * @param work   The transformation, a null result is not forwarded
+   * @param output The consumer of the results, typically the next stage's {@link StageQueue}
+   */
+  public PipelineStage(String name, StageQueue<I> input, Function<I, O> work,
+      Consumer<O> output) {
+    this.input = input;
+    this.work = work;
+    this.output = output;
+    this.metrics = new StageMetrics(name, input);
+  }
+
+  /**
+   * Creates a terminal stage that does not produce output.
+   */
+  public static <I> PipelineStage<I, Void> sink(String name, StageQueue<I> input,
+      Consumer<I> work) {
+    return new PipelineStage<>(name, input, item -> {
+      work.accept(item);
+      return null;
+    }, _ -> {
+    });
+  }
+
+  public synchronized void start() {
+    start(Thread.ofPlatform().daemon());
+  }
+
+  /**
+   * Starts the stage on a thread from the given builder, e.g. {@link Thread#ofVirtual()} for
+   * stages that mostly wait.
+   */
+  public synchronized void start(Thread.Builder threadBuilder) {
+    if (running) {
+      throw new IllegalStateException("Stage " + metrics.getName() + " is already running");
+    }
+    running = true;
+    worker = threadBuilder
+        .name("sentinel-" + metrics.getName())
+        .start(this::run);
+  }
+
+  private void run() {
+    log.info("Stage {} started", metrics.getName());
+    while (running) {
+      I item;
+      try {
+        item = input.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+
+      long start = System.nanoTime();
+      try {
+        O result = work.apply(item);
+        metrics.recordService(System.nanoTime() - start);
+        if (result != null) {
+          output.accept(result);
+        }
+      } catch (Exception e) {
+        metrics.recordFailure();
+        log.error("Error in stage {}", metrics.getName(), e);
+      }
+    }
+    log.info("Stage {} stopped: {}", metrics.getName(), metrics);
+  }
+
+  public boolean isRunning() {
+    return running;
+  }
+
+  @Override
+  public synchronized void close() {
+    running = false;
+    if (worker != null) {
+      worker.interrupt();
+    }
+    input.clear();
+  }
+}
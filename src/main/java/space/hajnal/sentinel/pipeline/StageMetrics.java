@@ -0,0 +1,71 @@
+package space.hajnal.sentinel.pipeline;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.Getter;
+
+/**
+ * Service-time and queue statistics of a single pipeline stage.
+ */
+public class StageMetrics {
+
+  @Getter
+  private final String name;
+  private final StageQueue<?> input;
+  private final LongAdder processed = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+  private final LongAdder serviceNanos = new LongAdder();
+  private final LongAccumulator maxServiceNanos = new LongAccumulator(Long::max, 0);
+
+  /**
+   * @param name  The stage name
+   * @param input The queue the stage consumes from, or null for a source stage
+   */
+  public StageMetrics(String name, StageQueue<?> input) {
+    this.name = name;
+    this.input = input;
+  }
+
+  public void recordService(long nanos) {
+    processed.increment();
+    serviceNanos.add(nanos);
+    maxServiceNanos.accumulate(nanos);
+  }
+
+  public void recordFailure() {
+    failed.increment();
+  }
+
+  public long getProcessed() {
+    return processed.sum();
+  }
+
+  public long getFailed() {
+    return failed.sum();
+  }
+
+  public double getAverageServiceMillis() {
+    long count = processed.sum();
+    return count == 0 ? 0 : (double) serviceNanos.sum() / count / TimeUnit.MILLISECONDS.toNanos(1);
+  }
+
+  public double getMaxServiceMillis() {
+    return (double) maxServiceNanos.get() / TimeUnit.MILLISECONDS.toNanos(1);
+  }
+
+  public int getQueueDepth() {
+    return input == null ? 0 : input.size();
+  }
+
+  public long getDropped() {
+    return input == null ? 0 : input.getDropped();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s[processed=%d, failed=%d, avg=%.2fms, max=%.2fms, depth=%d, dropped=%d]",
+        name, getProcessed(), getFailed(), getAverageServiceMillis(), getMaxServiceMillis(),
+        getQueueDepth(), getDropped());
+  }
+}
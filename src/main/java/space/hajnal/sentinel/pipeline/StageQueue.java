@@ -0,0 +1,137 @@
+package space.hajnal.sentinel.pipeline;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import lombok.Getter;
+
+/**
+ * A bounded hand-off queue between two pipeline stages.
+ * <p>
+ * Overload never grows the queue: depending on the {@link OverflowPolicy} the producer either
+ * blocks or items are dropped and counted.
+ *
+ * @param <T> The type of the queued items
+ */
+public class StageQueue<T> {
+
+  @Getter
+  private final String name;
+  @Getter
+  private final int capacity;
+  @Getter
+  private final OverflowPolicy policy;
+  private final BlockingQueue<T> queue;
+  private final LongAdder offered = new LongAdder();
+  private final LongAdder dropped = new LongAdder();
+  private final Consumer<T> onDrop;
+
+  public StageQueue(String name, int capacity, OverflowPolicy policy) {
+    this(name, capacity, policy, item -> {
+    });
+  }
+
+  /**
+   * @param name     The name used in metrics and logs
+   * @param capacity The maximum number of queued items
+   * @param policy   The overflow policy
+   * @param onDrop   Called for every item that is dropped, e.g. to release its resources
+   */
+  public StageQueue(String name, int capacity, OverflowPolicy policy, Consumer<T> onDrop) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Capacity must be positive");
+    }
+    this.name = name;
+    this.capacity = capacity;
+    this.policy = policy;
+    this.queue = new ArrayBlockingQueue<>(capacity);
+    this.onDrop = onDrop;
+  }
+
+  /**
+   * Offers an item according to the overflow policy.
+   *
+   * @param item The item to enqueue
+   * @return false if the item itself was dropped (only when a blocking offer is interrupted)
+   */
+  public boolean offer(T item) {
+    offered.increment();
+    switch (policy) {
+      case BLOCK -> {
+        try {
+          queue.put(item);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          drop(item);
+          return false;
+        }
+      }
+      case LATEST_WINS -> {
+        T stale;
+        while ((stale = queue.poll()) != null) {
+          drop(stale);
+        }
+        enqueueEvictingOldest(item);
+      }
+      case DROP_OLDEST -> enqueueEvictingOldest(item);
+    }
+    return true;
+  }
+
+  // Another producer may refill the slot between poll and offer, so retry until it fits
+  private void enqueueEvictingOldest(T item) {
+    while (!queue.offer(item)) {
+      T oldest = queue.poll();
+      if (oldest != null) {
+        drop(oldest);
+      }
+    }
+  }
+
+  private void drop(T item) {
+    dropped.increment();
+    onDrop.accept(item);
+  }
+
+  /**
+   * Blocks until an item is available.
+   */
+  public T take() throws InterruptedException {
+    return queue.take();
+  }
+
+  /**
+   * @return the oldest item, or null if the queue is empty
+   */
+  public T poll() {
+    return queue.poll();
+  }
+
+  public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+    return queue.poll(timeout, unit);
+  }
+
+  /**
+   * Drops every queued item, e.g. on shutdown.
+   */
+  public void clear() {
+    T item;
+    while ((item = queue.poll()) != null) {
+      onDrop.accept(item);
+    }
+  }
+
+  public int size() {
+    return queue.size();
+  }
+
+  public long getOffered() {
+    return offered.sum();
+  }
+
+  public long getDropped() {
+    return dropped.sum();
+  }
+}
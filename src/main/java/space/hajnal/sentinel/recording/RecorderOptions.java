@@ -0,0 +1,57 @@
+package space.hajnal.sentinel.recording;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Where and how a {@link StreamRecorder} writes its segments.
+ */
+@Builder(toBuilder = true)
+@Data
+public class RecorderOptions {
+
+  /**
+   * Created if missing.
+   */
+  private final Path directory;
+  /**
+   * Names the segment files, unique per recorder sharing a directory.
+   */
+  @Builder.Default
+  private final String stream = "stream";
+  /**
+   * A segment is closed at the next keyframe once it holds this much. Without keyframes it is
+   * closed at twice the size, at a frame boundary.
+   */
+  @Builder.Default
+  private final long maxSegmentBytes = 256L * 1024 * 1024;
+  /**
+   * Like {@link #maxSegmentBytes}, for the time since the segment was opened.
+   */
+  @Builder.Default
+  private final Duration maxSegmentDuration = Duration.ofMinutes(10);
+  /**
+   * The direct buffer packets are collected in, each write to the file is this large. A packet
+   * that does not fit an empty buffer is written on its own.
+   */
+  @Builder.Default
+  private final int writeBufferBytes = 1024 * 1024;
+  /**
+   * At most this long between writes while packets arrive, bounding what a crash loses.
+   */
+  @Builder.Default
+  private final Duration flushInterval = Duration.ofSeconds(1);
+  /**
+   * Frames per segment index, about 18 minutes at 30 fps. A full index closes the segment.
+   */
+  @Builder.Default
+  private final int indexCapacity = 32 * 1024;
+  /**
+   * Packets waiting for the recorder when it is subscribed to a reader. A slow disk drops the
+   * oldest of them instead of holding up the receiver.
+   */
+  @Builder.Default
+  private final int queueCapacity = 4096;
+}
@@ -0,0 +1,179 @@
+package space.hajnal.sentinel.recording;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import space.hajnal.sentinel.network.model.RTPPacket;
+import space.hajnal.sentinel.network.model.SerialNumbers;
+
+/**
+ * One segment being recorded: a data file of packets and a memory-mapped index of its frames.
+ * <p>
+ * The data file starts with a 16-byte header (magic, version, start time in epoch millis),
+ * followed by one record per packet: its length and the milliseconds since the start, 4 bytes
+ * each, then the packet as received. The index file has a 16-byte header (magic, version, entry
+ * count) and an entry of 16 bytes per frame: RTP timestamp, flags and the offset of the frame's
+ * first record. All numbers are big-endian.
+ * <p>
+ * Only a timestamp after the last indexed one starts a frame. A reordered packet of an earlier
+ * frame is written where it arrives, among the records of the frame indexed last.
+ * <p>
+ * Packets are collected in a direct buffer and written in large sequential writes. Until the next
+ * write, the newest index entries point past the end of the data file.
+ */
+final class Segment implements AutoCloseable {
+
+  static final int DATA_MAGIC = 0x53525450;  // "SRTP"
+  static final int INDEX_MAGIC = 0x53494458;  // "SIDX"
+  static final int VERSION = 1;
+  static final int DATA_HEADER_SIZE = 16;
+  static final int RECORD_HEADER_SIZE = 8;
+  static final int INDEX_HEADER_SIZE = 16;
+  static final int INDEX_COUNT_OFFSET = 8;
+  static final int ENTRY_SIZE = 16;
+  static final int KEYFRAME = 1;
+  static final String DATA_SUFFIX = ".rtp";
+  static final String INDEX_SUFFIX = ".idx";
+
+  private final Path dataPath;
+  private final FileChannel data;
+  private final FileChannel indexChannel;
+  private final MappedByteBuffer index;
+  private final ByteBuffer buffer;
+  private final int indexCapacity;
+  private final long startMillis;
+  private long size;
+  private int frames = 0;
+  private long frameTimestamp = -1;
+
+  /**
+   * @param buffer The direct buffer to collect packets in, empty
+   */
+  Segment(Path dataPath, ByteBuffer buffer, int indexCapacity, long startMillis)
+      throws IOException {
+    this.dataPath = dataPath;
+    this.buffer = buffer;
+    this.indexCapacity = indexCapacity;
+    this.startMillis = startMillis;
+    this.data = FileChannel.open(dataPath, StandardOpenOption.CREATE_NEW,
+        StandardOpenOption.WRITE);
+    try {
+      this.indexChannel = FileChannel.open(indexPath(dataPath), StandardOpenOption.CREATE_NEW,
+          StandardOpenOption.READ, StandardOpenOption.WRITE);
+    } catch (IOException e) {
+      data.close();
+      throw e;
+    }
+    this.index = indexChannel.map(MapMode.READ_WRITE, 0,
+        INDEX_HEADER_SIZE + (long) indexCapacity * ENTRY_SIZE);
+    index.putInt(0, INDEX_MAGIC).putInt(4, VERSION).putInt(INDEX_COUNT_OFFSET, 0);
+    buffer.putInt(DATA_MAGIC).putInt(VERSION).putLong(startMillis);
+    this.size = DATA_HEADER_SIZE;
+  }
+
+  static Path indexPath(Path dataPath) {
+    String name = dataPath.getFileName().toString();
+    return dataPath.resolveSibling(
+        name.substring(0, name.length() - DATA_SUFFIX.length()) + INDEX_SUFFIX);
+  }
+
+  /**
+   * @return true if the packet starts a frame, so the segment could end before it
+   */
+  boolean isFrameStart(RTPPacket rtpPacket) {
+    return frames == 0
+           || SerialNumbers.compareTimestamps(rtpPacket.getTimestamp(), frameTimestamp) > 0;
+  }
+
+  boolean isIndexFull() {
+    return frames == indexCapacity;
+  }
+
+  /**
+   * @param keyframe The packet belongs to a keyframe
+   */
+  void append(RTPPacket rtpPacket, boolean keyframe, long nowMillis) throws IOException {
+    byte[] header = rtpPacket.getHeader();
+    byte[] payload = rtpPacket.getPayload();
+    int length = header.length + payload.length;
+    if (buffer.remaining() < RECORD_HEADER_SIZE + length) {
+      flush();
+    }
+    long offset = size;
+    if (isFrameStart(rtpPacket)) {
+      int entry = INDEX_HEADER_SIZE + frames * ENTRY_SIZE;
+      index.putInt(entry, (int) rtpPacket.getTimestamp())
+          .putInt(entry + 4, keyframe ? KEYFRAME : 0)
+          .putLong(entry + 8, offset);
+      frames++;
+      index.putInt(INDEX_COUNT_OFFSET, frames);
+      frameTimestamp = rtpPacket.getTimestamp();
+    } else if (keyframe && rtpPacket.getTimestamp() == frameTimestamp) {
+      // The IDR slice may only show in a later packet of the frame
+      int flags = INDEX_HEADER_SIZE + (frames - 1) * ENTRY_SIZE + 4;
+      index.putInt(flags, index.getInt(flags) | KEYFRAME);
+    }
+    size += RECORD_HEADER_SIZE + length;
+    if (buffer.remaining() < RECORD_HEADER_SIZE + length) {
+      // Larger than the whole buffer, written on its own after what was collected
+      ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_SIZE)
+          .putInt(length).putInt((int) (nowMillis - startMillis)).flip();
+      ByteBuffer[] record = {recordHeader, ByteBuffer.wrap(header), ByteBuffer.wrap(payload)};
+      while (record[2].hasRemaining()) {
+        data.write(record);
+      }
+      return;
+    }
+    buffer.putInt(length).putInt((int) (nowMillis - startMillis)).put(header).put(payload);
+  }
+
+  /**
+   * Writes the collected packets to the file.
+   */
+  void flush() throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      data.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  /**
+   * @return The bytes recorded, including those not written yet
+   */
+  long size() {
+    return size;
+  }
+
+  long getStartMillis() {
+    return startMillis;
+  }
+
+  int getFrames() {
+    return frames;
+  }
+
+  Path getDataPath() {
+    return dataPath;
+  }
+
+  /**
+   * Writes the remaining packets and syncs both files to the disk.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      flush();
+      data.force(false);
+      index.force();
+    } finally {
+      buffer.clear();
+      data.close();
+      indexChannel.close();
+    }
+  }
+}
@@ -0,0 +1,137 @@
+package space.hajnal.sentinel.recording;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import space.hajnal.sentinel.network.model.RTPPacket;
+import space.hajnal.sentinel.network.serialization.RTPPacketDeserializer;
+
+/**
+ * Reads a segment written by a {@link StreamRecorder}, frame by frame through its index. A
+ * segment still being recorded can be read too, up to what has been written so far.
+ */
+public class SegmentReader implements AutoCloseable {
+
+  private final FileChannel data;
+  private final FileChannel indexChannel;
+  private final MappedByteBuffer index;
+  private final RTPPacketDeserializer deserializer = new RTPPacketDeserializer();
+  private final long startMillis;
+
+  /**
+   * @param dataPath The {@code .rtp} file of the segment, its index is next to it
+   */
+  public SegmentReader(Path dataPath) throws IOException {
+    FileChannel dataChannel = FileChannel.open(dataPath, StandardOpenOption.READ);
+    FileChannel indexFile = null;
+    try {
+      indexFile = FileChannel.open(Segment.indexPath(dataPath), StandardOpenOption.READ);
+      MappedByteBuffer indexBuffer = indexFile.map(MapMode.READ_ONLY, 0, indexFile.size());
+      ByteBuffer header = ByteBuffer.allocate(Segment.DATA_HEADER_SIZE);
+      dataChannel.read(header, 0);
+      if (header.getInt(0) != Segment.DATA_MAGIC
+          || indexBuffer.getInt(0) != Segment.INDEX_MAGIC) {
+        throw new IOException("Not a recorded segment: " + dataPath);
+      }
+      if (header.getInt(4) != Segment.VERSION || indexBuffer.getInt(4) != Segment.VERSION) {
+        throw new IOException("Unsupported segment version: " + dataPath);
+      }
+      this.data = dataChannel;
+      this.indexChannel = indexFile;
+      this.index = indexBuffer;
+      this.startMillis = header.getLong(8);
+    } catch (IOException | RuntimeException e) {
+      dataChannel.close();
+      if (indexFile != null) {
+        indexFile.close();
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * @return When the segment was opened, in epoch millis
+   */
+  public long getStartMillis() {
+    return startMillis;
+  }
+
+  public int getFrameCount() {
+    return index.getInt(Segment.INDEX_COUNT_OFFSET);
+  }
+
+  public long getTimestamp(int frame) {
+    return Integer.toUnsignedLong(index.getInt(entry(frame)));
+  }
+
+  public boolean isKeyframe(int frame) {
+    return (index.getInt(entry(frame) + 4) & Segment.KEYFRAME) != 0;
+  }
+
+  /**
+   * @return The offset of the frame's first packet in the data file
+   */
+  public long getOffset(int frame) {
+    return index.getLong(entry(frame) + 8);
+  }
+
+  /**
+   * @return The first frame with the timestamp, or -1 if there is none
+   */
+  public int findFrame(long timestamp) {
+    for (int frame = 0; frame < getFrameCount(); frame++) {
+      if (getTimestamp(frame) == timestamp) {
+        return frame;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return The packets of the frame in the order they were received, with any late packets of
+   * earlier frames that arrived meanwhile
+   */
+  public List<RTPPacket> readFrame(int frame) throws IOException {
+    long end = frame + 1 < getFrameCount() ? getOffset(frame + 1) : data.size();
+    long position = getOffset(frame);
+    List<RTPPacket> packets = new ArrayList<>();
+    ByteBuffer recordHeader = ByteBuffer.allocate(Segment.RECORD_HEADER_SIZE);
+    while (position + Segment.RECORD_HEADER_SIZE <= end) {
+      recordHeader.clear();
+      readFully(recordHeader, position);
+      int length = recordHeader.getInt(0);
+      ByteBuffer packet = ByteBuffer.allocate(length);
+      readFully(packet, position + Segment.RECORD_HEADER_SIZE);
+      packets.add(deserializer.deserialize(packet.array(), length));
+      position += Segment.RECORD_HEADER_SIZE + length;
+    }
+    return packets;
+  }
+
+  private void readFully(ByteBuffer target, long position) throws IOException {
+    while (target.hasRemaining()) {
+      if (data.read(target, position + target.position()) < 0) {
+        throw new IOException("Segment ends within a packet at " + position);
+      }
+    }
+  }
+
+  private int entry(int frame) {
+    if (frame < 0 || frame >= getFrameCount()) {
+      throw new IndexOutOfBoundsException("Frame " + frame + " of " + getFrameCount());
+    }
+    return Segment.INDEX_HEADER_SIZE + frame * Segment.ENTRY_SIZE;
+  }
+
+  @Override
+  public void close() throws IOException {
+    data.close();
+    indexChannel.close();
+  }
+}
@@ -0,0 +1,209 @@
+package space.hajnal.sentinel.recording;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.slf4j.Slf4j;
+import space.hajnal.sentinel.codec.NalUnits;
+import space.hajnal.sentinel.network.RTPStreamReader;
+import space.hajnal.sentinel.network.model.FrameMarking;
+import space.hajnal.sentinel.network.model.RTPPacket;
+import space.hajnal.sentinel.network.video.SubscriberOptions;
+import space.hajnal.sentinel.pipeline.FlowSubscription;
+import space.hajnal.sentinel.pipeline.OverflowPolicy;
+
+/**
+ * Records the packets of a received stream to disk as they arrived, as evidence that can be
+ * replayed and decoded later. {@link #subscribeTo Subscribe} it to an {@link RTPStreamReader}.
+ * <p>
+ * Packets go to segment files through a direct buffer, in writes of
+ * {@link RecorderOptions#getWriteBufferBytes()}. Each segment has an index of its frames with
+ * their RTP timestamps, file offsets and keyframe flags, see {@link SegmentReader}. Segments are
+ * rotated at a keyframe once they reach the size or age limit, so each one decodes on its own.
+ * <p>
+ * The writes happen on the subscription's thread. Its queue drops the oldest packets when the disk
+ * falls behind, so recording never holds up reception.
+ */
+@Slf4j
+public class StreamRecorder implements Flow.Subscriber<RTPPacket>, AutoCloseable {
+
+  private final RecorderOptions options;
+  private final ByteBuffer buffer;
+  private final LongAdder packetsRecorded = new LongAdder();
+  private final LongAdder bytesRecorded = new LongAdder();
+  private final LongAdder segments = new LongAdder();
+  private final LongAdder writeErrors = new LongAdder();
+  private volatile Flow.Subscription subscription;
+  private Segment segment;
+  private long lastFlushMillis;
+  private boolean closed = false;
+
+  public StreamRecorder(RecorderOptions options) {
+    this.options = options;
+    this.buffer = ByteBuffer.allocateDirect(options.getWriteBufferBytes());
+  }
+
+  /**
+   * Subscribes to the packets of the reader, with a queue of
+   * {@link RecorderOptions#getQueueCapacity()} that drops the oldest packets when full.
+   */
+  public void subscribeTo(RTPStreamReader reader) {
+    reader.subscribe(this, SubscriberOptions.builder()
+        .queueCapacity(options.getQueueCapacity())
+        .overflowPolicy(OverflowPolicy.DROP_OLDEST)
+        .build());
+  }
+
+  @Override
+  public void onSubscribe(Flow.Subscription subscription) {
+    this.subscription = subscription;
+    subscription.request(Long.MAX_VALUE);
+  }
+
+  @Override
+  public void onNext(RTPPacket rtpPacket) {
+    record(rtpPacket);
+  }
+
+  @Override
+  public void onError(Throwable throwable) {
+    log.error("Recording of {} failed", options.getStream(), throwable);
+    close();
+  }
+
+  @Override
+  public void onComplete() {
+    close();
+  }
+
+  /**
+   * Appends a packet to the current segment, opening or rotating it as needed. A failed write is
+   * counted and closes the segment, the next packet opens a new one.
+   */
+  public synchronized void record(RTPPacket rtpPacket) {
+    if (closed) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    try {
+      boolean keyframe = isKeyframe(rtpPacket);
+      if (segment == null || shouldRotate(rtpPacket, keyframe, now)) {
+        rotate(now);
+      }
+      segment.append(rtpPacket, keyframe, now);
+      if (now - lastFlushMillis >= options.getFlushInterval().toMillis()) {
+        segment.flush();
+        lastFlushMillis = now;
+      }
+      packetsRecorded.increment();
+      bytesRecorded.add(rtpPacket.getHeader().length + rtpPacket.getPayload().length);
+    } catch (IOException e) {
+      writeErrors.increment();
+      log.error("Failed to record {}", options.getStream(), e);
+      closeSegment();
+    }
+  }
+
+  private boolean shouldRotate(RTPPacket rtpPacket, boolean keyframe, long now) {
+    // Frames are never split between segments
+    if (!segment.isFrameStart(rtpPacket)) {
+      return false;
+    }
+    if (segment.isIndexFull()) {
+      return true;
+    }
+    long size = segment.size();
+    long age = now - segment.getStartMillis();
+    long maxAge = options.getMaxSegmentDuration().toMillis();
+    if (size < options.getMaxSegmentBytes() && age < maxAge) {
+      return false;
+    }
+    return keyframe || size >= 2 * options.getMaxSegmentBytes() || age >= 2 * maxAge;
+  }
+
+  private void rotate(long now) throws IOException {
+    closeSegment();
+    Files.createDirectories(options.getDirectory());
+    Path path = options.getDirectory().resolve(
+        String.format("%s-%d-%d%s", options.getStream(), now, segments.sum(),
+            Segment.DATA_SUFFIX));
+    segment = new Segment(path, buffer, options.getIndexCapacity(), now);
+    segments.increment();
+    lastFlushMillis = now;
+    log.info("Recording {} to {}", options.getStream(), path);
+  }
+
+  private void closeSegment() {
+    if (segment == null) {
+      return;
+    }
+    try {
+      segment.close();
+    } catch (IOException e) {
+      writeErrors.increment();
+      log.error("Failed to close segment {}", segment.getDataPath(), e);
+    }
+    segment = null;
+  }
+
+  /**
+   * Tells from the frame marking, or else from the payload, whether the packet belongs to a
+   * keyframe. Without frame marking only the packet carrying the IDR slice header is found.
+   */
+  static boolean isKeyframe(RTPPacket rtpPacket) {
+    FrameMarking frameMarking = FrameMarking.of(rtpPacket);
+    if (frameMarking != null) {
+      return frameMarking.isIndependent();
+    }
+    return NalUnits.contains(ByteBuffer.wrap(rtpPacket.getPayload()), NalUnits.TYPE_IDR);
+  }
+
+  public long getPacketsRecorded() {
+    return packetsRecorded.sum();
+  }
+
+  public long getBytesRecorded() {
+    return bytesRecorded.sum();
+  }
+
+  /**
+   * @return The segments opened so far
+   */
+  public long getSegments() {
+    return segments.sum();
+  }
+
+  public long getWriteErrors() {
+    return writeErrors.sum();
+  }
+
+  /**
+   * @return The packets dropped from the subscription's queue because the disk fell behind
+   */
+  public long getDropped() {
+    return subscription instanceof FlowSubscription<?> flowSubscription
+        ? flowSubscription.getDropped() : 0;
+  }
+
+  /**
+   * Stops recording and closes the current segment, syncing it to disk.
+   */
+  @Override
+  public synchronized void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    Flow.Subscription current = subscription;
+    if (current != null) {
+      current.cancel();
+    }
+    closeSegment();
+    log.info("Recorder {} closed: {} packets, {} bytes in {} segments, {} dropped",
+        options.getStream(), getPacketsRecorded(), getBytesRecorded(), getSegments(),
+        getDropped());
+  }
+}
@@ -0,0 +1,84 @@
+package space.hajnal.sentinel.relay;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The packets of a relayed stream from its most recent keyframe onwards, replayed to new
+ * subscribers so they can start decoding at once.
+ * <p>
+ * Packets are copied into fixed slots of one direct buffer that is allocated on the first
+ * keyframe, so caching does not allocate per packet. Like the rest of the forward path it is
+ * only used from the relay's receiving thread. A GOP with more packets than slots disables the
+ * cache until the next keyframe.
+ */
+class KeyframePacketCache {
+
+  private final int slotCount;
+  private final int slotSize;
+  private ByteBuffer[] slots;
+  private ByteBuffer[] views;
+  private boolean[] frameStarts;
+  private int count = 0;
+  private boolean complete = false;
+
+  KeyframePacketCache(int slotCount, int slotSize) {
+    this.slotCount = slotCount;
+    this.slotSize = slotSize;
+  }
+
+  /**
+   * @param packet The received packet, its position is not changed
+   */
+  void add(ByteBuffer packet, boolean frameStart, boolean keyframe) {
+    if (slotCount == 0) {
+      return;
+    }
+    if (frameStart && keyframe) {
+      allocate();
+      count = 0;
+      complete = true;
+    }
+    if (!complete) {
+      return;
+    }
+    int length = packet.limit();
+    if (count == slotCount || length > slotSize) {
+      count = 0;
+      complete = false;
+      return;
+    }
+
+    slots[count].clear().put(0, packet, 0, length).limit(length);
+    frameStarts[count] = frameStart;
+    count++;
+  }
+
+  /**
+   * Forwards the cached packets to one subscriber, starting with the keyframe.
+   */
+  void replay(RelaySubscriber subscriber) {
+    for (int i = 0; i < count; i++) {
+      ByteBuffer view = views[i];
+      view.limit(slots[i].limit()).position(0);
+      subscriber.forward(view, frameStarts[i], i == 0);
+    }
+  }
+
+  private void allocate() {
+    if (slots != null) {
+      return;
+    }
+    ByteBuffer storage = ByteBuffer.allocateDirect(slotCount * slotSize);
+    slots = new ByteBuffer[slotCount];
+    views = new ByteBuffer[slotCount];
+    frameStarts = new boolean[slotCount];
+    for (int i = 0; i < slotCount; i++) {
+      slots[i] = storage.slice(i * slotSize, slotSize);
+      views[i] = slots[i].asReadOnlyBuffer();
+    }
+  }
+
+  int size() {
+    return count;
+  }
+}
@@ -0,0 +1,245 @@
+package space.hajnal.sentinel.relay;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import space.hajnal.sentinel.network.model.RTCPFeedback;
+import space.hajnal.sentinel.network.model.RTPPacket;
+import space.hajnal.sentinel.network.model.ServerOptions;
+import space.hajnal.sentinel.network.receiver.RTPSocketReceiver;
+import space.hajnal.sentinel.network.receiver.RawPacketHandler;
+import space.hajnal.sentinel.network.serialization.RTCPFeedbackDeserializer;
+import space.hajnal.sentinel.network.serialization.RTPPacketDeserializer;
+
+/**
+ * Forwards incoming RTP streams to any number of subscribers without decoding them.
+ * <p>
+ * Streams are told apart by SSRC and created on their first packet. Subscribers can attach and
+ * detach at any time, also before their stream has started. The receive and forward path runs on
+ * one thread, reuses the receiver's buffer for every packet and does not allocate.
+ * <p>
+ * Keyframe requests (PLI and FIR) of the viewers are sent on to the camera of their stream, from
+ * the relay's own SSRC. They are accepted on the subscriber's socket, where viewers send their
+ * feedback to, and on the relay's port, addressed to the SSRC the viewer was sent.
+ */
+@Slf4j
+public class RTPRelay implements RawPacketHandler, AutoCloseable {
+
+  private static final RelayStream[] NO_STREAMS = new RelayStream[0];
+
+  private final RelayOptions options;
+  private final RTPSocketReceiver receiver;
+  private final RTCPFeedbackDeserializer feedbackDeserializer = new RTCPFeedbackDeserializer();
+  /**
+   * The SSRC the relay's keyframe requests to the cameras are sent with.
+   */
+  @Getter
+  private final long ssrc = ThreadLocalRandom.current().nextLong(1L << 32);
+  private final LongAdder rejected = new LongAdder();
+  private final LongAdder keyframeRequests = new LongAdder();
+  private volatile RelayStream[] streams = NO_STREAMS;
+  private volatile DatagramChannel channel;
+  private Thread worker;
+
+  public RTPRelay(RelayOptions options) {
+    this.options = options;
+    this.receiver = new RTPSocketReceiver(ServerOptions.builder().mtu(options.getMtu()).build(),
+        new RTPPacketDeserializer(), 0);
+  }
+
+  /**
+   * Starts receiving and forwarding on a dedicated thread.
+   *
+   * @param channel The bound channel the cameras send to
+   */
+  public synchronized void start(DatagramChannel channel) {
+    if (worker != null) {
+      throw new IllegalStateException("Relay is already running");
+    }
+    this.channel = channel;
+    worker = Thread.ofPlatform()
+        .name("sentinel-relay")
+        .start(() -> receiver.startForwarding(channel, this));
+    log.info("Relay started");
+  }
+
+  @Override
+  public void onPacket(ByteBuffer packet, SocketAddress source) {
+    // RTCP shares the version bits with RTP, it must not be taken for a stream of its own
+    if (RTCPFeedback.isRTCP(packet)) {
+      onFeedback(packet);
+      return;
+    }
+    if (packet.remaining() < RTPPacket.BASE_HEADER_SIZE || (packet.get(0) & 0xC0) != 0x80) {
+      rejected.increment();
+      return;
+    }
+    RelayStream stream = find(Integer.toUnsignedLong(packet.getInt(8)));
+    if (stream == null) {
+      stream = register(Integer.toUnsignedLong(packet.getInt(8)));
+      if (stream == null) {
+        rejected.increment();
+        return;
+      }
+    }
+    stream.forward(packet, source);
+    if (stream.isKeyframeRequested()) {
+      sendKeyframeRequest(stream);
+    }
+  }
+
+  // Viewers name the SSRC they were sent, the subscriber's, which leads back to its stream
+  private void onFeedback(ByteBuffer packet) {
+    List<RTCPFeedback> requests;
+    try {
+      requests = feedbackDeserializer.deserialize(packet);
+    } catch (IllegalArgumentException e) {
+      rejected.increment();
+      return;
+    }
+    for (RTCPFeedback request : requests) {
+      RelayStream stream = findBySubscriber(request.getMediaSsrc());
+      if (stream != null) {
+        stream.requestKeyframe();
+        sendKeyframeRequest(stream);
+      }
+    }
+  }
+
+  private void sendKeyframeRequest(RelayStream stream) {
+    DatagramChannel upstream = channel;
+    SocketAddress camera = stream.getSource();
+    if (upstream == null || camera == null || !stream.takeKeyframeRequest(System.nanoTime())) {
+      return;
+    }
+    try {
+      upstream.send(ByteBuffer.wrap(RTCPFeedback.pli(ssrc, stream.getSsrc()).toBytes()), camera);
+      keyframeRequests.increment();
+      log.debug("Requested keyframe for stream {} from {}", stream.getSsrc(), camera);
+    } catch (IOException e) {
+      log.warn("Failed to request keyframe for stream {}", stream.getSsrc(), e);
+    }
+  }
+
+  // A linear scan beats hashing for a few dozen streams and needs no boxed key
+  private RelayStream find(long ssrc) {
+    RelayStream[] current = streams;
+    for (int i = 0; i < current.length; i++) {
+      if (current[i].getSsrc() == ssrc) {
+        return current[i];
+      }
+    }
+    return null;
+  }
+
+  private RelayStream findBySubscriber(long subscriberSsrc) {
+    RelayStream[] current = streams;
+    for (int i = 0; i < current.length; i++) {
+      if (current[i].hasSubscriber(subscriberSsrc)) {
+        return current[i];
+      }
+    }
+    return null;
+  }
+
+  private synchronized RelayStream register(long ssrc) {
+    RelayStream stream = find(ssrc);
+    if (stream != null) {
+      return stream;
+    }
+    if (streams.length >= options.getMaxStreams()) {
+      return null;
+    }
+    stream = new RelayStream(ssrc, options);
+    RelayStream[] copy = Arrays.copyOf(streams, streams.length + 1);
+    copy[copy.length - 1] = stream;
+    streams = copy;
+    log.info("New stream {}", ssrc);
+    return stream;
+  }
+
+  /**
+   * Attaches a subscriber with a random SSRC.
+   */
+  public RelaySubscriber attach(long streamSsrc, InetSocketAddress destination)
+      throws IOException {
+    return attach(streamSsrc, destination, ThreadLocalRandom.current().nextLong(1L << 32));
+  }
+
+  /**
+   * Attaches a subscriber whose sequence numbers start at a random value.
+   *
+   * @param streamSsrc    The SSRC of the camera stream
+   * @param destination   Where to send the stream
+   * @param subscriberSsrc The SSRC the subscriber sees
+   * @return The subscriber, to detach it later
+   */
+  public RelaySubscriber attach(long streamSsrc, InetSocketAddress destination,
+      long subscriberSsrc) throws IOException {
+    return attach(streamSsrc, destination, subscriberSsrc,
+        ThreadLocalRandom.current().nextInt(1 << 16));
+  }
+
+  /**
+   * @param initialSequenceNumber The sequence number of the first packet the subscriber receives
+   */
+  public RelaySubscriber attach(long streamSsrc, InetSocketAddress destination,
+      long subscriberSsrc, int initialSequenceNumber) throws IOException {
+    RelayStream stream = register(streamSsrc);
+    if (stream == null) {
+      throw new IllegalStateException("Relay already has " + options.getMaxStreams() + " streams");
+    }
+    RelaySubscriber subscriber = new RelaySubscriber(streamSsrc, destination, subscriberSsrc,
+        initialSequenceNumber, options.isWaitForKeyframe());
+    stream.add(subscriber);
+    log.info("Subscriber {} attached to stream {}", destination, streamSsrc);
+    return subscriber;
+  }
+
+  public void detach(RelaySubscriber subscriber) {
+    RelayStream stream = find(subscriber.getStreamSsrc());
+    if (stream != null && stream.remove(subscriber)) {
+      log.info("Subscriber {} detached from stream {}", subscriber.getDestination(),
+          subscriber.getStreamSsrc());
+    }
+    subscriber.close();
+  }
+
+  public List<RelayStream> getStreams() {
+    return List.of(streams);
+  }
+
+  /**
+   * @return Datagrams that were neither RTP nor RTCP, or exceeded the stream limit
+   */
+  public long getRejected() {
+    return rejected.sum();
+  }
+
+  /**
+   * @return The keyframe requests sent to cameras, after coalescing those of the viewers
+   */
+  public long getKeyframeRequests() {
+    return keyframeRequests.sum();
+  }
+
+  @Override
+  public synchronized void close() {
+    receiver.close();
+    if (worker != null) {
+      worker.interrupt();
+    }
+    for (RelayStream stream : streams) {
+      stream.close();
+    }
+    log.info("Relay closed, {} streams, {} rejected datagrams", streams.length, getRejected());
+  }
+}
@@ -0,0 +1,34 @@
+package space.hajnal.sentinel.relay;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Builder
+@Data
+public class RelayOptions {
+
+  /**
+   * The largest datagram the relay accepts.
+   */
+  @Builder.Default
+  private final int mtu = 1500;
+
+  /**
+   * Streams beyond this many SSRCs are dropped, so stray traffic cannot grow the stream table.
+   */
+  @Builder.Default
+  private final int maxStreams = 256;
+
+  /**
+   * New subscribers receive nothing until the next keyframe, instead of undecodable P-frames.
+   */
+  @Builder.Default
+  private final boolean waitForKeyframe = true;
+
+  /**
+   * Packets per stream kept from the last keyframe on, for replay to new subscribers. Each
+   * stream reserves this many MTU-sized slots on its first keyframe, 0 disables the cache.
+   */
+  @Builder.Default
+  private final int keyframeCachePackets = 512;
+}
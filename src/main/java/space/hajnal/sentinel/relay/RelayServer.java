@@ -0,0 +1,37 @@
+package space.hajnal.sentinel.relay;
+
+import java.net.InetSocketAddress;
+import java.nio.channels.DatagramChannel;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs a standalone relay.
+ * <p>
+ * Usage: {@code RelayServer <listen port> [<stream ssrc>@<host>:<port> ...]}
+ */
+@Slf4j
+public class RelayServer {
+
+  @SneakyThrows
+  public static void main(String[] args) {
+    if (args.length < 1) {
+      System.err.println("Usage: RelayServer <listen port> [<stream ssrc>@<host>:<port> ...]");
+      System.exit(1);
+    }
+
+    RTPRelay relay = new RTPRelay(RelayOptions.builder().build());
+    for (int i = 1; i < args.length; i++) {
+      String[] subscription = args[i].split("@");
+      String[] address = subscription[1].split(":");
+      relay.attach(Long.parseLong(subscription[0]),
+          new InetSocketAddress(address[0], Integer.parseInt(address[1])));
+    }
+
+    DatagramChannel channel = DatagramChannel.open();
+    channel.bind(new InetSocketAddress(Integer.parseInt(args[0])));
+    Runtime.getRuntime().addShutdownHook(new Thread(relay::close));
+    relay.start(channel);
+    log.info("Relaying on port {}", args[0]);
+  }
+}
@@ -0,0 +1,256 @@
+package space.hajnal.sentinel.relay;
+
+import static space.hajnal.sentinel.network.model.RTPPacket.BASE_HEADER_SIZE;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.Getter;
+import space.hajnal.sentinel.codec.KeyframeRequestLimiter;
+import space.hajnal.sentinel.codec.NalUnits;
+import space.hajnal.sentinel.network.model.FrameMarking;
+import space.hajnal.sentinel.network.model.RTCPFeedback;
+import space.hajnal.sentinel.network.model.RTPHeaderExtension;
+import space.hajnal.sentinel.network.serialization.RTCPFeedbackDeserializer;
+
+/**
+ * The relay state of one incoming camera stream and its subscribers.
+ * <p>
+ * Packets are forwarded on the relay's receiving thread only, so the per-stream fields need no
+ * locking. The subscriber list is a copy-on-write array that the forwarding loop walks by index.
+ * New subscribers are queued and joined by the forwarding thread, which first replays the cached
+ * keyframe to them, so no packet is missed or sent twice.
+ * <p>
+ * Keyframe requests of the subscribers are coalesced into at most one request to the camera per
+ * {@link KeyframeRequestLimiter#DEFAULT_MIN_INTERVAL_MILLIS}, and a keyframe passing through
+ * answers any pending one.
+ */
+public class RelayStream {
+
+  private static final RelaySubscriber[] NO_SUBSCRIBERS = new RelaySubscriber[0];
+  private static final int MAX_FEEDBACK_SIZE = 1500;
+  private static final long KEYFRAME_REQUEST_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(
+      KeyframeRequestLimiter.DEFAULT_MIN_INTERVAL_MILLIS);
+
+  @Getter
+  private final long ssrc;
+  private volatile RelaySubscriber[] subscribers = NO_SUBSCRIBERS;
+  private final Queue<RelaySubscriber> joining = new ConcurrentLinkedQueue<>();
+  private final KeyframePacketCache keyframeCache;
+  private final LongAdder packets = new LongAdder();
+  private final LongAdder bytes = new LongAdder();
+  private final LongAdder keyframes = new LongAdder();
+  private volatile long lastTimestamp = -1;
+  private volatile long lastKeyframeTimestamp = -1;
+  // Only used by the relay's receiving thread
+  private final ByteBuffer feedback = ByteBuffer.allocateDirect(MAX_FEEDBACK_SIZE);
+  private final RTCPFeedbackDeserializer feedbackDeserializer = new RTCPFeedbackDeserializer();
+  private SocketAddress source;
+  private boolean keyframeRequested = false;
+  private long lastKeyframeRequestNanos;
+
+  RelayStream(long ssrc, RelayOptions options) {
+    this.ssrc = ssrc;
+    this.keyframeCache = new KeyframePacketCache(options.getKeyframeCachePackets(),
+        options.getMtu());
+    this.lastKeyframeRequestNanos = System.nanoTime() - KEYFRAME_REQUEST_INTERVAL_NANOS;
+  }
+
+  /**
+   * @param source The camera's address, where keyframe requests are sent
+   */
+  void forward(ByteBuffer packet, SocketAddress source) {
+    this.source = source;
+    long timestamp = Integer.toUnsignedLong(packet.getInt(4));
+    boolean frameStart;
+    boolean keyframe;
+    int marking = RTPHeaderExtension.indexOf(packet, FrameMarking.EXTENSION_ID);
+    if (marking >= 0) {
+      int flags = packet.get(marking);
+      frameStart = (flags & 0x80) != 0;
+      keyframe = (flags & 0x20) != 0;
+    } else {
+      // Without frame marking, look for an IDR in the first packet of each frame
+      frameStart = timestamp != lastTimestamp;
+      keyframe = frameStart && containsIdr(packet);
+    }
+
+    packets.increment();
+    bytes.add(packet.remaining());
+    if (frameStart && keyframe) {
+      keyframes.increment();
+      lastKeyframeTimestamp = timestamp;
+      keyframeRequested = false;
+    }
+    lastTimestamp = timestamp;
+
+    join();
+    keyframeCache.add(packet, frameStart, keyframe);
+
+    RelaySubscriber[] current = subscribers;
+    for (int i = 0; i < current.length; i++) {
+      current[i].forward(packet, frameStart, keyframe);
+    }
+    if (frameStart) {
+      receiveFeedback(current);
+    }
+  }
+
+  // Once per frame is often enough for feedback and keeps the system calls per packet at one
+  private void receiveFeedback(RelaySubscriber[] current) {
+    for (int i = 0; i < current.length; i++) {
+      if (current[i].receiveFeedback(feedback) && isKeyframeRequest(feedback)) {
+        current[i].recordKeyframeRequest();
+        keyframeRequested = true;
+      }
+    }
+  }
+
+  private boolean isKeyframeRequest(ByteBuffer datagram) {
+    if (!RTCPFeedback.isRTCP(datagram)) {
+      return false;
+    }
+    try {
+      return !feedbackDeserializer.deserialize(datagram).isEmpty();
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Records a keyframe request of a subscriber, to be sent to the camera.
+   */
+  void requestKeyframe() {
+    keyframeRequested = true;
+  }
+
+  boolean isKeyframeRequested() {
+    return keyframeRequested;
+  }
+
+  /**
+   * @return true if a pending keyframe request should be sent to the camera now, it is then no
+   * longer pending
+   */
+  boolean takeKeyframeRequest(long nowNanos) {
+    if (!keyframeRequested
+        || nowNanos - lastKeyframeRequestNanos < KEYFRAME_REQUEST_INTERVAL_NANOS) {
+      return false;
+    }
+    keyframeRequested = false;
+    lastKeyframeRequestNanos = nowNanos;
+    return true;
+  }
+
+  /**
+   * @return The address the camera sends from, or null before its first packet
+   */
+  SocketAddress getSource() {
+    return source;
+  }
+
+  boolean hasSubscriber(long subscriberSsrc) {
+    RelaySubscriber[] current = subscribers;
+    for (int i = 0; i < current.length; i++) {
+      if (current[i].getSsrc() == subscriberSsrc) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean containsIdr(ByteBuffer packet) {
+    int first = packet.get(0);
+    int payload = BASE_HEADER_SIZE + (first & 0x0F) * 4;
+    if ((first & 0x10) != 0 && payload + 4 <= packet.limit()) {
+      payload += 4 + Short.toUnsignedInt(packet.getShort(payload + 2)) * 4;
+    }
+    if (payload >= packet.limit()) {
+      return false;
+    }
+    packet.position(payload);
+    boolean idr = NalUnits.contains(packet, NalUnits.TYPE_IDR);
+    packet.position(0);
+    return idr;
+  }
+
+  void add(RelaySubscriber subscriber) {
+    joining.add(subscriber);
+  }
+
+  private void join() {
+    RelaySubscriber subscriber;
+    while ((subscriber = joining.poll()) != null) {
+      keyframeCache.replay(subscriber);
+      append(subscriber);
+    }
+  }
+
+  private synchronized void append(RelaySubscriber subscriber) {
+    RelaySubscriber[] copy = Arrays.copyOf(subscribers, subscribers.length + 1);
+    copy[copy.length - 1] = subscriber;
+    subscribers = copy;
+  }
+
+  synchronized boolean remove(RelaySubscriber subscriber) {
+    if (joining.remove(subscriber)) {
+      return true;
+    }
+    List<RelaySubscriber> remaining = Arrays.stream(subscribers)
+        .filter(s -> s != subscriber)
+        .toList();
+    boolean removed = remaining.size() < subscribers.length;
+    subscribers = remaining.toArray(NO_SUBSCRIBERS);
+    return removed;
+  }
+
+  /**
+   * @return The active subscribers, without those that have not received a packet yet
+   */
+  public List<RelaySubscriber> getSubscribers() {
+    return List.of(subscribers);
+  }
+
+  /**
+   * @return The number of packets a new subscriber is sent on joining
+   */
+  public int getCachedPackets() {
+    return keyframeCache.size();
+  }
+
+  public long getPackets() {
+    return packets.sum();
+  }
+
+  public long getBytes() {
+    return bytes.sum();
+  }
+
+  public long getKeyframes() {
+    return keyframes.sum();
+  }
+
+  public long getLastTimestamp() {
+    return lastTimestamp;
+  }
+
+  synchronized void close() {
+    joining.forEach(RelaySubscriber::close);
+    joining.clear();
+    for (RelaySubscriber subscriber : subscribers) {
+      subscriber.close();
+    }
+  }
+
+  /**
+   * @return The RTP timestamp of the last keyframe, or -1 before the first one
+   */
+  public long getLastKeyframeTimestamp() {
+    return lastKeyframeTimestamp;
+  }
+}
@@ -0,0 +1,171 @@
+package space.hajnal.sentinel.relay;
+
+import static space.hajnal.sentinel.network.model.RTPPacket.BASE_HEADER_SIZE;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * One viewer of a relayed stream.
+ * <p>
+ * The viewer gets its own SSRC and sequence numbers. Numbering starts at the subscriber's initial
+ * sequence number with the first packet it is sent, the cached keyframe or the next one, and then
+ * follows the camera's: a gap stays a gap, so the viewer still notices loss. When the camera's
+ * numbering jumps, e.g. after a restart, the subscriber's continues without a gap. Only the
+ * 12-byte fixed header is rewritten, into a buffer owned by the subscriber, and sent together with
+ * the shared, read-only remainder of the received packet in a single gathering write. Forwarding
+ * therefore neither copies the payload nor allocates.
+ * <p>
+ * The viewer sends its RTCP feedback back to the address the packets came from, the subscriber's
+ * own socket, which the relay reads once per frame.
+ */
+@Slf4j
+public class RelaySubscriber implements AutoCloseable {
+
+  // As in RFC 3550, appendix A.1: larger steps mean the camera started a new numbering
+  private static final int MAX_DROPOUT = 3000;
+  private static final int MAX_MISORDER = 100;
+
+  @Getter
+  private final long streamSsrc;
+  @Getter
+  private final InetSocketAddress destination;
+  @Getter
+  private final long ssrc;
+  private final int initialSequenceNumber;
+  private final DatagramChannel channel;
+  private final ByteBuffer header = ByteBuffer.allocateDirect(BASE_HEADER_SIZE);
+  private final ByteBuffer[] datagram = new ByteBuffer[2];
+  private final LongAdder forwarded = new LongAdder();
+  private final LongAdder dropped = new LongAdder();
+  private final LongAdder keyframeRequests = new LongAdder();
+  private volatile boolean waitingForKeyframe;
+  // Only used by the relay's receiving thread
+  private boolean numbering = false;
+  private int sequenceOffset;
+  private int highestUpstream;
+
+  /**
+   * @param initialSequenceNumber The sequence number of the first packet sent to the viewer
+   */
+  RelaySubscriber(long streamSsrc, InetSocketAddress destination, long ssrc,
+      int initialSequenceNumber, boolean waitForKeyframe) throws IOException {
+    this.streamSsrc = streamSsrc;
+    this.destination = destination;
+    this.ssrc = ssrc;
+    this.initialSequenceNumber = initialSequenceNumber & 0xFFFF;
+    this.waitingForKeyframe = waitForKeyframe;
+    // Non-blocking, a viewer with a full socket buffer loses packets instead of stalling the relay
+    this.channel = DatagramChannel.open();
+    this.channel.configureBlocking(false);
+    this.channel.connect(destination);
+  }
+
+  /**
+   * @param packet     The received packet, positioned at 0. Its position is changed.
+   * @param frameStart The packet is the first of a frame
+   * @param keyframe   The packet belongs to a keyframe
+   */
+  void forward(ByteBuffer packet, boolean frameStart, boolean keyframe) {
+    if (waitingForKeyframe) {
+      if (!frameStart || !keyframe) {
+        return;
+      }
+      waitingForKeyframe = false;
+    }
+
+    int sequenceNumber = translate(Short.toUnsignedInt(packet.getShort(2)));
+    header.putShort(0, packet.getShort(0));
+    header.putShort(2, (short) sequenceNumber);
+    header.putInt(4, packet.getInt(4));
+    header.putInt(8, (int) ssrc);
+    header.clear();
+    packet.position(BASE_HEADER_SIZE);
+    datagram[0] = header;
+    datagram[1] = packet;
+    try {
+      if (channel.write(datagram) > 0) {
+        forwarded.increment();
+      } else {
+        dropped.increment();
+      }
+    } catch (IOException e) {
+      // Typically ICMP port unreachable from a viewer that went away
+      dropped.increment();
+    }
+  }
+
+  /**
+   * Reads a datagram the viewer sent back, typically RTCP feedback, without waiting for one.
+   *
+   * @param buffer Receives the datagram, flipped for reading
+   * @return true if there was one
+   */
+  boolean receiveFeedback(ByteBuffer buffer) {
+    buffer.clear();
+    try {
+      channel.read(buffer);
+    } catch (IOException e) {
+      // Typically ICMP port unreachable from a viewer that went away
+      buffer.clear();
+    }
+    buffer.flip();
+    return buffer.hasRemaining();
+  }
+
+  private int translate(int upstream) {
+    if (!numbering) {
+      numbering = true;
+      sequenceOffset = initialSequenceNumber - upstream;
+      highestUpstream = upstream;
+    } else {
+      int delta = (short) (upstream - highestUpstream);
+      if (delta > 0 && delta < MAX_DROPOUT) {
+        highestUpstream = upstream;
+      } else if (delta <= 0 && delta > -MAX_MISORDER) {
+        // Late or duplicate, keeps the number the camera gave it
+      } else {
+        sequenceOffset = highestUpstream + sequenceOffset + 1 - upstream;
+        highestUpstream = upstream;
+      }
+    }
+    return (upstream + sequenceOffset) & 0xFFFF;
+  }
+
+  public boolean isWaitingForKeyframe() {
+    return waitingForKeyframe;
+  }
+
+  public long getForwarded() {
+    return forwarded.sum();
+  }
+
+  public long getDropped() {
+    return dropped.sum();
+  }
+
+  /**
+   * @return The PLI and FIR messages the viewer sent
+   */
+  public long getKeyframeRequests() {
+    return keyframeRequests.sum();
+  }
+
+  void recordKeyframeRequest() {
+    keyframeRequests.increment();
+  }
+
+  @Override
+  public void close() {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      log.error("Error while closing subscriber channel", e);
+    }
+  }
+}
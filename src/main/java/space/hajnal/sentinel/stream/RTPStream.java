@@ -7,8 +7,11 @@ import static org.bytedeco.ffmpeg.global.avutil.av_log_set_level;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.net.DatagramSocket;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -27,16 +30,38 @@ import space.hajnal.sentinel.camera.SentinelFrameGrabber;
 import space.hajnal.sentinel.camera.SentinelFrameGrabberOptions;
 import space.hajnal.sentinel.camera.SentinelFrameGrabberStatic;
 import space.hajnal.sentinel.camera.model.SentinelFrame;
+import space.hajnal.sentinel.codec.H264Decoder;
 import space.hajnal.sentinel.codec.H264Encoder;
+import space.hajnal.sentinel.jfr.FrameDisplayedEvent;
+import space.hajnal.sentinel.latency.LatencyStage;
+import space.hajnal.sentinel.latency.LatencyTracker;
+import space.hajnal.sentinel.metrics.MetricsHttpServer;
+import space.hajnal.sentinel.metrics.MetricsRegistry;
+import space.hajnal.sentinel.metrics.StreamMetrics;
 import space.hajnal.sentinel.network.video.FrameProcessor;
+import space.hajnal.sentinel.network.video.PlayoutBuffer;
 import space.hajnal.sentinel.network.video.VideoStreamProcessor;
 import space.hajnal.sentinel.network.RTPStreamReader;
 import space.hajnal.sentinel.network.RTPStreamWriter;
+import space.hajnal.sentinel.network.inprocess.InProcessChannel;
+import space.hajnal.sentinel.network.inprocess.InProcessReceiver;
+import space.hajnal.sentinel.network.inprocess.InProcessTransmitter;
 import space.hajnal.sentinel.network.model.ServerOptions;
+import space.hajnal.sentinel.network.model.SimulcastLayer;
+import space.hajnal.sentinel.network.model.SimulcastOptions;
+import space.hajnal.sentinel.network.receiver.PacketReceiver;
 import space.hajnal.sentinel.network.receiver.RTPSocketReceiver;
+import space.hajnal.sentinel.network.sender.RTCPFeedbackListener;
 import space.hajnal.sentinel.network.sender.RTPSocketSender;
+import space.hajnal.sentinel.network.sender.SimulcastSenderFactory;
+import space.hajnal.sentinel.network.serialization.RTCPFeedbackDeserializer;
 import space.hajnal.sentinel.network.serialization.RTPPacketDeserializer;
 import space.hajnal.sentinel.network.serialization.RTPPacketSerializer;
+import space.hajnal.sentinel.network.shm.SharedMemoryFrameWriter;
+import space.hajnal.sentinel.network.shm.SharedMemoryRing;
+import space.hajnal.sentinel.pipeline.PipelineOptions;
+import space.hajnal.sentinel.recording.RecorderOptions;
+import space.hajnal.sentinel.recording.StreamRecorder;
 
 @Slf4j
 public class RTPStream {
@@ -47,6 +72,25 @@ public class RTPStream {
       .imageWidth(640)
       .imageHeight(480)
       .build();
+  // About 170 ms at 30 fps, beyond that the display skips ahead instead of playing the backlog
+  private static final int MAX_PLAYOUT_BACKLOG_FRAMES = 5;
+  private static final String METRICS_PORT_PROPERTY = "sentinel.metrics.port";
+  // Sender and receiver run in this JVM, so they can skip the sockets
+  private static final String IN_PROCESS_PROPERTY = "sentinel.inprocess";
+  // Where to share the received frames with other processes, e.g. /dev/shm/sentinel-camera-0
+  private static final String SHARED_MEMORY_PATH_PROPERTY = "sentinel.shm.path";
+  private static final int SHARED_MEMORY_FRAMES = 64;
+  private static final int SHARED_MEMORY_FRAME_SIZE = 512 * 1024;
+  // Where to record the received packets as evidence
+  private static final String RECORDING_DIRECTORY_PROPERTY = "sentinel.recording.dir";
+  // Sends the layers below, to port 5004 and 5005, instead of a single stream
+  private static final String SIMULCAST_PROPERTY = "sentinel.simulcast";
+  private static final SimulcastOptions SIMULCAST_OPTIONS = SimulcastOptions.builder()
+      .layer(SimulcastLayer.builder().imageWidth(640).imageHeight(480)
+          .bitRate(1_200_000).ssrc(123456).build())
+      .layer(SimulcastLayer.builder().imageWidth(320).imageHeight(240)
+          .bitRate(300_000).ssrc(123457).build())
+      .build();
 
   public static void main(String[] args) {
     Loader.load(opencv_core.class);
@@ -78,19 +122,53 @@ public class RTPStream {
       SentinelFrameGrabber grabber = new SentinelFrameGrabber(GRABBER_OPTIONS,
           frameGrabberFactory);
 //      SentinelFrameGrabber grabber = new SentinelFrameGrabberStatic(GRABBER_OPTIONS);
-      RTPSocketSender rtpSocketSender = new RTPSocketSender(serverOptions,
-          encoder,
-          rtpPacketSerializer, frameProcessor);
+      InProcessChannel inProcessChannel = Boolean.getBoolean(IN_PROCESS_PROPERTY)
+          ? new InProcessChannel() : null;
+      SimulcastSenderFactory simulcastSenderFactory = new SimulcastSenderFactory();
+      List<RTPSocketSender> layerSenders;
+      if (inProcessChannel != null) {
+        layerSenders = List.of(new RTPSocketSender(new InProcessTransmitter(inProcessChannel),
+            serverOptions, encoder, rtpPacketSerializer, frameProcessor));
+      } else if (Boolean.getBoolean(SIMULCAST_PROPERTY)) {
+        layerSenders = simulcastSenderFactory.create(SIMULCAST_OPTIONS, serverOptions,
+            GRABBER_OPTIONS, rtpPacketSerializer, frameProcessor);
+      } else {
+        layerSenders = List.of(
+            new RTPSocketSender(serverOptions, encoder, rtpPacketSerializer, frameProcessor));
+      }
+      // The receiver below gets the first layer only, the others go to the following ports
+      RTPSocketSender rtpSocketSender = layerSenders.getFirst();
       DatagramSocket sender = new DatagramSocket();
       DatagramSocket receiver = new DatagramSocket(5004);
-      RTPStreamWriter rtpStreamWriter = new RTPStreamWriter(rtpSocketSender, grabber,
-          executorService);
-      RTPSocketReceiver RTPSocketReceiver = new RTPSocketReceiver(
-          serverOptions,
-          rtpPacketDeserializer, 500);
-      RTPStreamReader rtpStreamReader = new RTPStreamReader(videoStreamProcessor, RTPSocketReceiver,
+      RTPStreamWriter rtpStreamWriter = new RTPStreamWriter(layerSenders, grabber,
+          executorService, PipelineOptions.builder().build());
+      // Sender and receiver share the tracker, so every stage is timed on the same clock
+      LatencyTracker latencyTracker = new LatencyTracker("camera-0");
+      rtpStreamWriter.setLatencyTracker(latencyTracker);
+      videoStreamProcessor.setLatencyTracker(latencyTracker);
+      // Keyframe requests from the receiver arrive on the sending socket
+      RTCPFeedbackListener feedbackListener = new RTCPFeedbackListener(layerSenders,
+          new RTCPFeedbackDeserializer());
+      PacketReceiver packetReceiver = inProcessChannel == null
+          ? new RTPSocketReceiver(serverOptions, rtpPacketDeserializer, 500)
+          : new InProcessReceiver(inProcessChannel);
+      if (inProcessChannel != null) {
+        inProcessChannel.setFeedbackListener(feedbackListener);
+      }
+      RTPStreamReader rtpStreamReader = new RTPStreamReader(videoStreamProcessor, packetReceiver,
           executorService);
 
+      StreamMetrics streamMetrics = new StreamMetrics("camera-0");
+      rtpSocketSender.setStreamMetrics(streamMetrics);
+      packetReceiver.setStreamMetrics(streamMetrics);
+      videoStreamProcessor.setStreamMetrics(streamMetrics);
+      MetricsRegistry metricsRegistry = new MetricsRegistry();
+      metricsRegistry.register(streamMetrics);
+      MetricsHttpServer metricsServer = startMetricsServer(metricsRegistry);
+      SharedMemoryRing frameRing = shareFrames(videoStreamProcessor);
+      StreamRecorder recorder = startRecording(rtpStreamReader);
+
+      H264Decoder decoder = new H264Decoder();
       CanvasFrame canvas = createCanvas("Receiver");
       ScheduledExecutorService frameDisplayScheduler = Executors.newSingleThreadScheduledExecutor();
 
@@ -102,9 +180,23 @@ public class RTPStream {
             grabber.close();
             rtpStreamWriter.close();
             rtpStreamReader.close();
+            videoStreamProcessor.close();
+            feedbackListener.close();
+            if (metricsServer != null) {
+              metricsServer.close();
+            }
+            if (frameRing != null) {
+              frameRing.close();
+            }
+            if (recorder != null) {
+              recorder.close();
+            }
             scheduler.shutdown();
             frameDisplayScheduler.shutdown();
             Thread.sleep(100);
+            encoder.close();
+            simulcastSenderFactory.close();
+            decoder.close();
             latch.countDown();
           } catch (Exception ex) {
             throw new RuntimeException(ex);
@@ -112,17 +204,19 @@ public class RTPStream {
         }
       });
 
-      ConcurrentLinkedQueue<SentinelFrame> frameQueue = new ConcurrentLinkedQueue<>();
+      PlayoutBuffer frameQueue = new PlayoutBuffer(MAX_PLAYOUT_BACKLOG_FRAMES,
+          GRABBER_OPTIONS.getFrameRate());
       try {
         executorService.submit(() -> {
           rtpStreamReader.start(receiver);
           rtpStreamWriter.start(sender);
         });
+        executorService.submit(() -> feedbackListener.startListening(sender));
 
         log.info("Waiting for window to close");
 
         videoStreamProcessor.addSubscriber(f -> {
-          frameQueue.add(f);
+          frameQueue.offer(f);
         });
 
         frameDisplayScheduler.scheduleAtFixedRate(() -> {
@@ -131,10 +225,13 @@ public class RTPStream {
             //log.info("No frame to display");
             return;
           }
-          display(frameData, canvas, GRABBER_OPTIONS);
+          display(frameData, canvas, decoder, latencyTracker);
         }, 50, (long) (1000.0 / GRABBER_OPTIONS.getFrameRate()), TimeUnit.MILLISECONDS);
 
         latch.await();
+        log.info("Playout: {}", frameQueue);
+        log.info("Latency: {}", latencyTracker);
+        log.info("Metrics: {}", streamMetrics);
 
       } catch (Exception e) {
         log.error("Error while capturing frames", e);
@@ -143,6 +240,59 @@ public class RTPStream {
 
   }
 
+  /**
+   * Serves the metrics for scraping if the {@value #METRICS_PORT_PROPERTY} system property is set.
+   */
+  private static MetricsHttpServer startMetricsServer(MetricsRegistry metricsRegistry) {
+    Integer port = Integer.getInteger(METRICS_PORT_PROPERTY);
+    if (port == null) {
+      return null;
+    }
+    try {
+      return new MetricsHttpServer(metricsRegistry, new InetSocketAddress(port));
+    } catch (IOException e) {
+      log.error("Failed to start the metrics endpoint on port {}", port, e);
+      return null;
+    }
+  }
+
+  /**
+   * Writes the received frames to a shared memory ring if the
+   * {@value #SHARED_MEMORY_PATH_PROPERTY} system property is set.
+   */
+  private static SharedMemoryRing shareFrames(VideoStreamProcessor videoStreamProcessor) {
+    String path = System.getProperty(SHARED_MEMORY_PATH_PROPERTY);
+    if (path == null) {
+      return null;
+    }
+    try {
+      SharedMemoryRing ring = SharedMemoryRing.create(Path.of(path), SHARED_MEMORY_FRAMES,
+          SHARED_MEMORY_FRAME_SIZE);
+      videoStreamProcessor.addSubscriber(new SharedMemoryFrameWriter(ring));
+      return ring;
+    } catch (IOException e) {
+      log.error("Failed to create the shared memory ring {}", path, e);
+      return null;
+    }
+  }
+
+  /**
+   * Records the received packets if the {@value #RECORDING_DIRECTORY_PROPERTY} system property is
+   * set.
+   */
+  private static StreamRecorder startRecording(RTPStreamReader rtpStreamReader) {
+    String directory = System.getProperty(RECORDING_DIRECTORY_PROPERTY);
+    if (directory == null) {
+      return null;
+    }
+    StreamRecorder recorder = new StreamRecorder(RecorderOptions.builder()
+        .directory(Path.of(directory))
+        .stream("camera-0")
+        .build());
+    recorder.subscribeTo(rtpStreamReader);
+    return recorder;
+  }
+
   public static CanvasFrame createCanvas(String name) {
     CanvasFrame canvas = new CanvasFrame(name);
     canvas.setSize(RTPStream.GRABBER_OPTIONS.getImageWidth(),
@@ -167,24 +317,26 @@ public class RTPStream {
     }
   }
 
-  private static void display(SentinelFrame frame, CanvasFrame canvas,
-      SentinelFrameGrabberOptions options) {
+  private static void display(SentinelFrame frame, CanvasFrame canvas, H264Decoder decoder,
+      LatencyTracker latencyTracker) {
     log.debug("Displaying frame {}", frame.getTimestamp());
-    try (FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(
-        new ByteArrayInputStream(frame.getData()))) {
-      grabber.setImageWidth(options.getImageWidth());
-      grabber.setImageHeight(options.getImageHeight());
-      grabber.setPixelFormat(org.bytedeco.ffmpeg.global.avutil.AV_PIX_FMT_BGR24); // Pixel format
-      grabber.start();
-      Frame frameCV = grabber.grabImage();
-      if (frameCV != null) {
-        canvas.showImage(frameCV);
-      } else {
-        log.info("Frame is null");
-      }
-      grabber.stop();
-    } catch (Exception e) {
-      log.error("Error while displaying frame", e);
+    FrameDisplayedEvent event = new FrameDisplayedEvent();
+    event.begin();
+    // Frames must reach the decoder in order, P-frames reference the previous picture
+    Frame frameCV = decoder.decode(frame.getData());
+    if (frameCV != null) {
+      latencyTracker.mark(frame.getTimestamp(), LatencyStage.DECODED);
+      canvas.showImage(frameCV);
+      latencyTracker.mark(frame.getTimestamp(), LatencyStage.DISPLAYED);
+    } else {
+      log.info("Frame is null");
+    }
+    event.end();
+    if (event.shouldCommit()) {
+      event.timestamp = frame.getTimestamp();
+      event.size = frame.getData().length;
+      event.decoded = frameCV != null;
+      event.commit();
     }
   }
 }
@@ -0,0 +1,60 @@
+package space.hajnal.sentinel.camera;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+class RTPClockTest {
+
+  @Test
+  void testTimestampStartsAtInitialOffset() {
+    AtomicLong nanos = new AtomicLong(5_000_000L);
+    RTPClock clock = new RTPClock(90_000, 1234L, nanos::get);
+
+    assertEquals(1234L, clock.timestamp(), "First timestamp should equal the initial offset");
+  }
+
+  @Test
+  void testTimestampAdvancesAt90kHz() {
+    AtomicLong nanos = new AtomicLong(0);
+    RTPClock clock = new RTPClock(90_000, 0, nanos::get);
+
+    // 33.333 ms at 30 fps must not be truncated to 33 ms
+    nanos.set(TimeUnit.SECONDS.toNanos(1) / 30);
+    assertEquals(2999L, clock.timestamp(), "One frame at 30 fps should be ~3000 ticks");
+
+    nanos.set(TimeUnit.SECONDS.toNanos(1));
+    assertEquals(90_000L, clock.timestamp(), "One second should be 90000 ticks");
+  }
+
+  @Test
+  void testTimestampWrapsAt32Bits() {
+    AtomicLong nanos = new AtomicLong(0);
+    RTPClock clock = new RTPClock(90_000, 0xFFFFFFFFL, nanos::get);
+
+    nanos.set(TimeUnit.SECONDS.toNanos(1));
+    assertEquals(89_999L, clock.timestamp(), "Timestamp should wrap around at 2^32");
+  }
+
+  @Test
+  void testTimestampDoesNotOverflowOnLongRuns() {
+    AtomicLong nanos = new AtomicLong(0);
+    RTPClock clock = new RTPClock(90_000, 0, nanos::get);
+
+    // 30 days of uptime would overflow a naive nanos * 90000 multiplication
+    nanos.set(TimeUnit.DAYS.toNanos(30));
+    long expected = (TimeUnit.DAYS.toSeconds(30) * 90_000L) & 0xFFFFFFFFL;
+    assertEquals(expected, clock.timestamp());
+  }
+
+  @Test
+  void testRandomInitialOffsetIsWithin32Bits() {
+    for (int i = 0; i < 100; i++) {
+      long ts = new RTPClock().timestamp();
+      assertTrue(ts >= 0 && ts <= 0xFFFFFFFFL, "Timestamp out of 32-bit range: " + ts);
+    }
+  }
+}
@@ -0,0 +1,93 @@
+package space.hajnal.sentinel.camera;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.bytedeco.javacv.Frame;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import space.hajnal.sentinel.network.model.SerialNumbers;
+
+class SentinelFrameGrabberSyntheticTest {
+
+  private static final SentinelFrameGrabberOptions OPTIONS = SentinelFrameGrabberOptions.builder()
+      .imageWidth(64)
+      .imageHeight(48)
+      .frameRate(100)
+      .build();
+
+  private ScheduledExecutorService scheduler;
+
+  @BeforeEach
+  void setUp() {
+    scheduler = Executors.newSingleThreadScheduledExecutor();
+  }
+
+  @AfterEach
+  void tearDown() {
+    scheduler.shutdownNow();
+  }
+
+  @Test
+  void testConsecutiveFramesDiffer() {
+    for (SentinelFrameGrabberSynthetic.Pattern pattern : SentinelFrameGrabberSynthetic.Pattern
+        .values()) {
+      SentinelFrameGrabberSynthetic grabber = new SentinelFrameGrabberSynthetic(scheduler, OPTIONS,
+          pattern);
+      Frame frame = new Frame(64, 48, Frame.DEPTH_UBYTE, 3);
+
+      grabber.render(frame, 0);
+      ByteBuffer first = copy((ByteBuffer) frame.image[0]);
+      grabber.render(frame, 1);
+
+      assertNotEquals(first, frame.image[0], "Pattern " + pattern + " should move between frames");
+      frame.close();
+    }
+  }
+
+  @Test
+  void testCaptureDeliversReusedFrameWithIncreasingTimestamps() throws Exception {
+    SentinelFrameGrabberSynthetic grabber = new SentinelFrameGrabberSynthetic(scheduler, OPTIONS,
+        SentinelFrameGrabberSynthetic.Pattern.MIXED);
+    CountDownLatch latch = new CountDownLatch(3);
+    // Filled on the scheduler thread
+    List<Frame> frames = new CopyOnWriteArrayList<>();
+    List<Long> timestamps = new CopyOnWriteArrayList<>();
+
+    grabber.capture((frame, ts) -> {
+      frames.add(frame);
+      timestamps.add(ts);
+      latch.countDown();
+      return frame;
+    });
+
+    assertTrue(latch.await(1, TimeUnit.SECONDS), "Synthetic frames were not delivered");
+    grabber.close();
+    assertFalse(grabber.isRunning());
+    assertEquals(64, frames.getFirst().imageWidth);
+    assertEquals(48, frames.getFirst().imageHeight);
+    assertSame(frames.get(0), frames.get(1), "The frame buffer should be reused");
+    // The clock starts at a random offset and may wrap around between frames
+    assertTrue(SerialNumbers.compareTimestamps(timestamps.get(1), timestamps.get(0)) > 0,
+        "Timestamps should advance");
+    assertTrue(SerialNumbers.compareTimestamps(timestamps.get(2), timestamps.get(1)) > 0,
+        "Timestamps should advance");
+  }
+
+  private static ByteBuffer copy(ByteBuffer source) {
+    ByteBuffer copy = ByteBuffer.allocate(source.capacity());
+    copy.put(source.duplicate().clear());
+    return copy.flip();
+  }
+}
@@ -1,5 +1,6 @@
 package space.hajnal.sentinel.camera;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.anyLong;
@@ -15,6 +16,8 @@ import static org.mockito.Mockito.when;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import lombok.SneakyThrows;
 import org.bytedeco.javacv.Frame;
 import org.bytedeco.javacv.FrameGrabber;
@@ -92,6 +95,32 @@ class SentinelFrameGrabberTest {
     verify(frameGrabber).start();
   }
 
+  @Test
+  void testTimestampIsTakenFromClockAtCapture() throws Exception {
+    // Arrange
+    AtomicLong nanos = new AtomicLong(0);
+    RTPClock clock = new RTPClock(90_000, 1000L, nanos::get);
+    when(frameGrabber.grab()).thenAnswer(invocation -> {
+      nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(100)); // Camera blocks for 100 ms
+      return new Frame();
+    }).thenReturn(null);
+    SentinelFrameGrabber clockedGrabber = new SentinelFrameGrabber(scheduler, options,
+        frameGrabberFactory, clock);
+    CountDownLatch latch = new CountDownLatch(1);
+    AtomicLong timestamp = new AtomicLong(-1);
+
+    // Act
+    clockedGrabber.capture((frame, ts) -> {
+      timestamp.set(ts);
+      latch.countDown();
+      return frame;
+    });
+
+    // Assert
+    assertTrue(latch.await(1, TimeUnit.SECONDS), "Frame was not captured");
+    assertEquals(1000L + 9000L, timestamp.get(), "Timestamp should reflect the real grab time");
+  }
+
   @Test
   void testCloseStopsRunningAndScheduler() throws Exception {
     // Act
@@ -0,0 +1,145 @@
+package space.hajnal.sentinel.camera.pool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.bytedeco.javacv.Frame;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class FramePoolTest {
+
+  private FramePool pool;
+  private Frame source;
+
+  @BeforeEach
+  void setUp() {
+    pool = new FramePool(2, true);
+    source = new Frame(4, 2, Frame.DEPTH_UBYTE, 3);
+    ByteBuffer pixels = (ByteBuffer) source.image[0];
+    for (int i = 0; i < pixels.capacity(); i++) {
+      pixels.put(i, (byte) i);
+    }
+  }
+
+  @AfterEach
+  void tearDown() {
+    assertTrue(pool.getLeaks().isEmpty(), () -> "Leaked frames: " + pool.getLeaks());
+    pool.close();
+    source.close();
+  }
+
+  @Test
+  void testAcquireCopiesPixels() {
+    PooledFrame pooledFrame = pool.acquire(source);
+
+    assertNotNull(pooledFrame);
+    assertNotSame(source, pooledFrame.getFrame());
+    ByteBuffer copy = (ByteBuffer) pooledFrame.getFrame().image[0];
+    assertEquals(0, copy.compareTo((ByteBuffer) source.image[0]), "Pixels should be copied");
+    pooledFrame.release();
+  }
+
+  @Test
+  void testReleasedBufferIsReused() {
+    PooledFrame first = pool.acquire(source);
+    first.release();
+    PooledFrame second = pool.acquire(source);
+    PooledFrame third = pool.acquire(source);
+
+    assertTrue(second == first || third == first, "Released buffer should be handed out again");
+    assertEquals(2, pool.getPeakInUse());
+    second.release();
+    third.release();
+    assertEquals(0, pool.getInUse());
+  }
+
+  @Test
+  void testExhaustedPoolReturnsNull() {
+    PooledFrame first = pool.acquire(source);
+    PooledFrame second = pool.acquire(source);
+
+    assertNull(pool.acquire(source), "Pool of two should be exhausted");
+    assertEquals(1, pool.getExhausted());
+    assertEquals(1.0, pool.getUtilisation());
+
+    first.release();
+    second.release();
+  }
+
+  @Test
+  void testFrameReturnsOnlyAfterLastRelease() {
+    PooledFrame pooledFrame = pool.acquire(source);
+    assertSame(pooledFrame, pooledFrame.retain());
+
+    pooledFrame.release();
+    assertEquals(1, pool.getInUse(), "Frame is still referenced by the second holder");
+    pooledFrame.release();
+    assertEquals(0, pool.getInUse());
+  }
+
+  @Test
+  void testDoubleReleaseIsRejected() {
+    PooledFrame pooledFrame = pool.acquire(source);
+    pooledFrame.release();
+
+    assertThrows(IllegalStateException.class, pooledFrame::release);
+    assertThrows(IllegalStateException.class, pooledFrame::retain);
+  }
+
+  @Test
+  void testLeakIsReportedWithAcquireSite() {
+    PooledFrame pooledFrame = pool.acquire(source);
+
+    assertEquals(1, pool.getLeaks().size());
+    assertTrue(Arrays.stream(pool.getLeaks().getFirst().getStackTrace())
+            .anyMatch(e -> e.getMethodName().equals("testLeakIsReportedWithAcquireSite")),
+        "Leak report should point at the acquiring test");
+
+    pooledFrame.release();
+  }
+
+  @Test
+  void testFrameReleasedAfterCloseIsFreed() {
+    PooledFrame pooledFrame = pool.acquire(source);
+    pool.close();
+    assertNotNull(pooledFrame.getFrame().opaque, "A frame on loan must stay usable");
+
+    pooledFrame.release();
+
+    // A closed frame drops its native buffers
+    assertNull(pooledFrame.getFrame().opaque);
+  }
+
+  @Test
+  void testFrameReleasedWhileClosingIsFreed() throws InterruptedException {
+    for (int i = 0; i < 1000; i++) {
+      FramePool racingPool = new FramePool(1);
+      PooledFrame pooledFrame = racingPool.acquire(source);
+      Thread releaser = new Thread(pooledFrame::release);
+      releaser.start();
+      racingPool.close();
+      releaser.join();
+
+      assertNull(pooledFrame.getFrame().opaque, "Round " + i);
+    }
+  }
+
+  @Test
+  void testGeometryMismatchIsRejected() {
+    pool.acquire(source).release();
+    Frame other = new Frame(8, 8, Frame.DEPTH_UBYTE, 3);
+
+    assertThrows(IllegalArgumentException.class, () -> pool.acquire(other));
+    assertEquals(0, pool.getInUse(), "Failed copy should return the buffer");
+    other.close();
+  }
+}
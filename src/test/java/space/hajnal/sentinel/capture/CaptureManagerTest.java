@@ -0,0 +1,152 @@
+package space.hajnal.sentinel.capture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.net.DatagramSocket;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.bytedeco.javacv.Frame;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import space.hajnal.sentinel.camera.FrameGrabberCallback;
+import space.hajnal.sentinel.camera.SentinelFrameGrabber;
+import space.hajnal.sentinel.network.sender.RTPSocketSender;
+
+class CaptureManagerTest {
+
+  private static final CaptureManagerOptions OPTIONS = CaptureManagerOptions.builder()
+      .encodeWorkers(1)
+      .cameraQueueCapacity(4)
+      .framePoolSize(6)
+      .build();
+
+  private final List<String> sent = new CopyOnWriteArrayList<>();
+  private Frame frame;
+  private CaptureManager captureManager;
+
+  @BeforeEach
+  void setUp() {
+    frame = new Frame(16, 16, Frame.DEPTH_UBYTE, 3);
+  }
+
+  @AfterEach
+  void tearDown() {
+    if (captureManager != null) {
+      captureManager.close();
+    }
+    frame.close();
+  }
+
+  @Test
+  void testBusyCameraDoesNotStarveOthers() throws Exception {
+    CountDownLatch encoding = new CountDownLatch(1);
+    CountDownLatch gate = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(5);
+
+    // Camera a holds the only worker on its first frame while both cameras queue up more
+    SentinelFrameGrabber grabberA = grabber(fn -> {
+      fn.onFrameGrabbed(frame, 0);
+      encoding.await(1, TimeUnit.SECONDS);
+      fn.onFrameGrabbed(frame, 1);
+      fn.onFrameGrabbed(frame, 2);
+    });
+    SentinelFrameGrabber grabberB = grabber(fn -> {
+      fn.onFrameGrabbed(frame, 0);
+      fn.onFrameGrabbed(frame, 1);
+    });
+    RTPSocketSender senderA = sender("a", done);
+    when(senderA.encode(any())).then(_ -> {
+      encoding.countDown();
+      gate.await(1, TimeUnit.SECONDS);
+      return new byte[]{1};
+    });
+
+    captureManager = new CaptureManager(List.of(
+        pipeline("a", grabberA, senderA),
+        pipeline("b", grabberB, sender("b", done))), OPTIONS);
+    captureManager.start(mock(DatagramSocket.class));
+    gate.countDown();
+
+    assertTrue(done.await(1, TimeUnit.SECONDS), "Not all frames were sent");
+    assertEquals(List.of("a0", "b0", "a1", "b1", "a2"), sent,
+        "Cameras should be served round-robin");
+  }
+
+  @Test
+  void testMetricsArePerCameraAndAggregated() throws Exception {
+    CountDownLatch done = new CountDownLatch(3);
+    SentinelFrameGrabber grabberA = grabber(fn -> {
+      fn.onFrameGrabbed(frame, 0);
+      fn.onFrameGrabbed(frame, 1);
+    });
+    SentinelFrameGrabber grabberB = grabber(fn -> fn.onFrameGrabbed(frame, 0));
+    RTPSocketSender senderA = sender("a", done);
+    AutoCloseable encoderA = mock(AutoCloseable.class);
+    DatagramSocket socket = mock(DatagramSocket.class);
+
+    captureManager = new CaptureManager(List.of(
+        new CameraPipeline("a", grabberA, senderA, encoderA, OPTIONS),
+        pipeline("b", grabberB, sender("b", done))), OPTIONS);
+    captureManager.start(socket);
+    assertTrue(done.await(1, TimeUnit.SECONDS), "Not all frames were sent");
+    // The service time is recorded once the send returns
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+    while (captureManager.getEncodeMetrics().getProcessed() < 3 && System.nanoTime() < deadline) {
+      Thread.onSpinWait();
+    }
+
+    assertEquals(2, captureManager.getCameras().get(0).getEncodedFrames());
+    assertEquals(1, captureManager.getCameras().get(1).getEncodedFrames());
+    assertEquals(3, captureManager.getEncodeMetrics().getProcessed());
+    assertEquals(List.of("a", "b"), List.copyOf(captureManager.getCameraMetrics().keySet()));
+    assertTrue(captureManager.getFramesPerSecond() > 0);
+
+    captureManager.close();
+    verify(grabberA).close();
+    verify(encoderA).close();
+    // The cameras share the socket, so it is closed once by the manager and not by a sender
+    verify(senderA, never()).close();
+    verify(socket).close();
+  }
+
+  private CameraPipeline pipeline(String name, SentinelFrameGrabber grabber,
+      RTPSocketSender sender) {
+    return new CameraPipeline(name, grabber, sender, mock(AutoCloseable.class), OPTIONS);
+  }
+
+  private interface Capture {
+
+    void run(FrameGrabberCallback fn) throws Exception;
+  }
+
+  private static SentinelFrameGrabber grabber(Capture capture) throws Exception {
+    SentinelFrameGrabber grabber = mock(SentinelFrameGrabber.class);
+    doAnswer(invocation -> {
+      capture.run(invocation.getArgument(0));
+      return null;
+    }).when(grabber).capture(any());
+    return grabber;
+  }
+
+  private RTPSocketSender sender(String name, CountDownLatch done) {
+    RTPSocketSender sender = mock(RTPSocketSender.class);
+    when(sender.encode(any())).thenReturn(new byte[]{1});
+    doAnswer(invocation -> {
+      sent.add(name + invocation.getArgument(1));
+      done.countDown();
+      return null;
+    }).when(sender).sendFrameData(any(), anyLong());
+    return sender;
+  }
+}
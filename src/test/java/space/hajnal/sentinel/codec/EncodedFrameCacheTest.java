@@ -0,0 +1,63 @@
+package space.hajnal.sentinel.codec;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import org.bytedeco.javacv.Frame;
+import org.junit.jupiter.api.Test;
+
+class EncodedFrameCacheTest {
+
+  private static final byte[] IDR = {0, 0, 1, 0x65, 1, 2, 3};
+  private static final byte[] SKIP = {0, 0, 1, 0x41, 4};
+
+  @Test
+  void testEncodeStopsAtSecondKeyframe() {
+    H264Encoder encoder = mock(H264Encoder.class);
+    when(encoder.encode(any())).thenReturn(IDR, SKIP, SKIP, IDR);
+
+    EncodedFrameCache cache = EncodedFrameCache.encode(new Frame(), encoder);
+
+    assertEquals(3, cache.size());
+    assertEquals(IDR.length + 2L * SKIP.length, cache.getTotalBytes());
+  }
+
+  @Test
+  void testReplayLoopsOverGop() {
+    EncodedFrameCache cache = new EncodedFrameCache(List.of(IDR, SKIP, SKIP));
+
+    assertSame(IDR, cache.get(0));
+    assertSame(SKIP, cache.get(2));
+    assertSame(IDR, cache.get(3), "The replay must restart at the IDR frame");
+    assertSame(IDR, cache.get(3_000_000_000L));
+  }
+
+  @Test
+  void testSyntheticGopStartsWithTheOnlyKeyframe() {
+    EncodedFrameCache cache = EncodedFrameCache.synthetic(30, 20_000, 2_000, 1);
+
+    assertEquals(30, cache.size());
+    assertEquals(20_000 + 29 * 2_000L, cache.getTotalBytes());
+    assertTrue(NalUnits.isKeyframe(cache.get(0)));
+    for (int i = 1; i < cache.size(); i++) {
+      assertFalse(NalUnits.isKeyframe(cache.get(i)), "Access unit " + i);
+      assertFalse(NalUnits.isDiscardable(cache.get(i)), "P-frames are used for reference");
+    }
+  }
+
+  @Test
+  void testEncoderMustStartWithKeyframe() {
+    H264Encoder encoder = mock(H264Encoder.class);
+    when(encoder.encode(any())).thenReturn(SKIP);
+
+    assertThrows(IllegalStateException.class,
+        () -> EncodedFrameCache.encode(new Frame(), encoder));
+  }
+}
@@ -0,0 +1,70 @@
+package space.hajnal.sentinel.codec;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+class KeyframeRequestLimiterTest {
+
+  private final AtomicLong nanos = new AtomicLong(0);
+  private final KeyframeRequestLimiter limiter = new KeyframeRequestLimiter(250, nanos::get);
+
+  @Test
+  void testFirstRequestIsGrantedOnNextFrame() {
+    assertFalse(limiter.shouldForceKeyframe(), "No request, no keyframe");
+
+    limiter.request();
+
+    assertTrue(limiter.shouldForceKeyframe());
+    assertFalse(limiter.shouldForceKeyframe(), "A request must be granted only once");
+  }
+
+  @Test
+  void testRequestStormIsCoalescedIntoOneKeyframePerInterval() {
+    limiter.request();
+    assertTrue(limiter.shouldForceKeyframe());
+    limiter.onKeyframe();
+
+    // 30 fps with a PLI before every frame for one second
+    int forced = 0;
+    for (int frame = 1; frame <= 30; frame++) {
+      nanos.addAndGet(TimeUnit.SECONDS.toNanos(1) / 30);
+      limiter.request();
+      if (limiter.shouldForceKeyframe()) {
+        limiter.onKeyframe();
+        forced++;
+      }
+    }
+
+    assertEquals(3, forced, "At most one forced keyframe per 250 ms");
+    assertEquals(31, limiter.getRequests());
+    assertEquals(4, limiter.getForcedKeyframes());
+  }
+
+  @Test
+  void testRequestDuringIntervalIsDeferredNotDropped() {
+    limiter.onKeyframe();
+    nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+    limiter.request();
+
+    assertFalse(limiter.shouldForceKeyframe());
+    assertTrue(limiter.isPending());
+
+    nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(150));
+    assertTrue(limiter.shouldForceKeyframe());
+  }
+
+  @Test
+  void testRegularKeyframeSatisfiesPendingRequest() {
+    limiter.onKeyframe();
+    limiter.request();
+    limiter.onKeyframe();
+
+    nanos.addAndGet(TimeUnit.SECONDS.toNanos(1));
+    assertFalse(limiter.shouldForceKeyframe());
+  }
+}
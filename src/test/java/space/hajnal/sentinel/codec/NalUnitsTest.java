@@ -0,0 +1,63 @@
+package space.hajnal.sentinel.codec;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class NalUnitsTest {
+
+  private static final byte[] SPS = {0, 0, 0, 1, 0x67, 0x42, 0x00, 0x1F};
+  private static final byte[] PPS = {0, 0, 0, 1, 0x68, (byte) 0xCE, 0x3C, (byte) 0x80};
+  private static final byte[] IDR_SLICE = {0, 0, 1, 0x65, (byte) 0x88, (byte) 0x84};
+  private static final byte[] P_SLICE = {0, 0, 0, 1, 0x41, (byte) 0x9A, 0x02};
+
+  @Test
+  void testIdrAccessUnitIsKeyframe() {
+    byte[] accessUnit = concat(SPS, PPS, IDR_SLICE);
+
+    assertTrue(NalUnits.isKeyframe(accessUnit));
+    assertTrue(NalUnits.contains(accessUnit, NalUnits.TYPE_SPS));
+    assertTrue(NalUnits.contains(accessUnit, NalUnits.TYPE_PPS));
+  }
+
+  @Test
+  void testPFrameIsNotKeyframe() {
+    assertFalse(NalUnits.isKeyframe(P_SLICE));
+    assertTrue(NalUnits.contains(P_SLICE, NalUnits.TYPE_NON_IDR));
+  }
+
+  @Test
+  void testPayloadBytesAreNotMistakenForNalHeaders() {
+    // 0x65 appears in the payload but not after a start code
+    byte[] accessUnit = {0, 0, 1, 0x41, 0x65, 0x65, 0, 0x65};
+
+    assertFalse(NalUnits.isKeyframe(accessUnit));
+    assertFalse(NalUnits.isKeyframe(new byte[0]));
+  }
+
+  @Test
+  void testOnlyNonReferenceSlicesAreDiscardable() {
+    // nal_ref_idc 0 on a non-IDR slice: 0x01 instead of 0x41
+    byte[] nonReference = {0, 0, 0, 1, 0x01, (byte) 0x9A, 0x02};
+
+    assertTrue(NalUnits.isDiscardable(nonReference));
+    assertFalse(NalUnits.isDiscardable(P_SLICE));
+    assertFalse(NalUnits.isDiscardable(concat(SPS, PPS, IDR_SLICE)));
+    assertFalse(NalUnits.isDiscardable(SPS), "Parameter sets alone are not a frame");
+  }
+
+  private static byte[] concat(byte[]... parts) {
+    int length = 0;
+    for (byte[] part : parts) {
+      length += part.length;
+    }
+    byte[] result = new byte[length];
+    int offset = 0;
+    for (byte[] part : parts) {
+      System.arraycopy(part, 0, result, offset, part.length);
+      offset += part.length;
+    }
+    return result;
+  }
+}
@@ -0,0 +1,89 @@
+package space.hajnal.sentinel.jfr;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import space.hajnal.sentinel.network.model.RTPPacket;
+import space.hajnal.sentinel.network.serialization.RTPPacketSerializer;
+import space.hajnal.sentinel.network.video.FrameProcessor;
+import space.hajnal.sentinel.network.video.VideoStreamProcessor;
+import space.hajnal.sentinel.network.video.simulation.VirtualScheduler;
+
+class PipelineEventsTest {
+
+  private static final byte[] IDR = frame(0x65, 3000);
+  private static final byte[] P_FRAME = frame(0x41, 3000);
+
+  @Test
+  void testAssemblyEmitsAssembledAndSkippedEvents() throws Exception {
+    List<RecordedEvent> events;
+    try (Recording recording = new Recording()) {
+      recording.enable(FrameAssembledEvent.class).withThreshold(Duration.ZERO);
+      recording.enable(FrameSkippedEvent.class);
+      recording.start();
+
+      VirtualScheduler scheduler = new VirtualScheduler(0);
+      VideoStreamProcessor processor = new VideoStreamProcessor(new FrameProcessor(), 30,
+          scheduler, scheduler::nowMillis);
+      RTPPacketSerializer serializer = new RTPPacketSerializer();
+      serializer.serialize(IDR, 1400, 0, 123456).forEach(processor::processPacket);
+      scheduler.advanceTo(40);
+      List<RTPPacket> lossy = serializer.serialize(P_FRAME, 1400, 3000, 123456);
+      processor.processPacket(lossy.get(0));
+      processor.processPacket(lossy.get(2));
+      scheduler.advanceTo(200);
+      processor.close();
+
+      recording.stop();
+      Path file = Files.createTempFile("sentinel", ".jfr");
+      try {
+        recording.dump(file);
+        events = RecordingFile.readAllEvents(file);
+      } finally {
+        Files.delete(file);
+      }
+    }
+
+    RecordedEvent assembled = only(events, "space.hajnal.sentinel.FrameAssembled");
+    assertEquals(0, assembled.getLong("timestamp"));
+    assertEquals(IDR.length, assembled.getInt("size"));
+    assertEquals(2, assembled.getInt("lastSequenceNumber"));
+    assertTrue(assembled.getBoolean("keyframe"));
+
+    RecordedEvent skipped = only(events, "space.hajnal.sentinel.FrameSkipped");
+    assertEquals(3000, skipped.getLong("timestamp"));
+    assertEquals(1, skipped.getInt("missingSequenceNumber"));
+    assertEquals(2, skipped.getInt("receivedPackets"));
+  }
+
+  @Test
+  void testPerPacketEventsAreDisabledByDefault() {
+    // Without a recording that enables them, the events cost an allocation the JIT removes
+    assertFalse(new PacketSentEvent().isEnabled());
+    assertFalse(new PacketReceivedEvent().isEnabled());
+  }
+
+  private static RecordedEvent only(List<RecordedEvent> events, String name) {
+    List<RecordedEvent> matching = events.stream()
+        .filter(event -> event.getEventType().getName().equals(name))
+        .toList();
+    assertEquals(1, matching.size(), name + " in " + matching);
+    return matching.getFirst();
+  }
+
+  private static byte[] frame(int nalHeader, int size) {
+    byte[] data = new byte[size];
+    data[2] = 1;
+    data[3] = (byte) nalHeader;
+    return data;
+  }
+}
@@ -0,0 +1,109 @@
+package space.hajnal.sentinel.latency;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+class LatencyTrackerTest {
+
+  private static final long EPOCH_NANOS = 1_760_000_000_000_000_000L;
+
+  private final AtomicLong nanoTime = new AtomicLong(1_000_000);
+  private final LatencyTracker tracker = new LatencyTracker("test", nanoTime::get,
+      () -> EPOCH_NANOS + nanoTime.get());
+
+  @Test
+  void testRecordsTimeBetweenConsecutiveStages() {
+    for (long frame = 0; frame < 100; frame++) {
+      long timestamp = frame * 3000;
+      tracker.mark(timestamp, LatencyStage.CAPTURED);
+      advanceMillis(10);
+      tracker.mark(timestamp, LatencyStage.ENCODED);
+      advanceMillis(1);
+      tracker.mark(timestamp, LatencyStage.FIRST_PACKET_RECEIVED);
+      advanceMillis(frame == 99 ? 50 : 5);
+      tracker.mark(timestamp, LatencyStage.DISPLAYED);
+    }
+
+    LatencySnapshot encode = tracker.snapshot(LatencyStage.ENCODED);
+    assertEquals(100, encode.getCount());
+    assertEquals(10_000, encode.getP50Micros(), 10);
+    // Without packetize and send marks the network interval starts at the encode
+    assertEquals(1_000, tracker.snapshot(LatencyStage.FIRST_PACKET_RECEIVED).getP50Micros(), 1);
+    assertEquals(0, tracker.snapshot(LatencyStage.SENT).getCount());
+
+    LatencySnapshot display = tracker.snapshot(LatencyStage.DISPLAYED);
+    assertEquals(5_000, display.getP50Micros(), 5);
+    assertEquals(5_000, display.getP99Micros(), 5);
+    assertEquals(50_000, display.getP999Micros(), 50);
+
+    LatencySnapshot glassToGlass = tracker.glassToGlass();
+    assertEquals(100, glassToGlass.getCount());
+    assertEquals(16_000, glassToGlass.getP50Micros(), 16);
+    assertEquals(61_000, glassToGlass.getMaxMicros(), 61);
+    assertEquals(0, tracker.getTrackedFrames(), "Displayed frames are no longer tracked");
+  }
+
+  @Test
+  void testOnlyFirstMarkOfStageCounts() {
+    tracker.mark(0, LatencyStage.CAPTURED);
+    advanceMillis(2);
+    tracker.mark(0, LatencyStage.FIRST_PACKET_RECEIVED);
+    advanceMillis(2);
+    tracker.mark(0, LatencyStage.FIRST_PACKET_RECEIVED);
+
+    LatencySnapshot network = tracker.snapshot(LatencyStage.FIRST_PACKET_RECEIVED);
+    assertEquals(1, network.getCount());
+    assertEquals(2_000, network.getMaxMicros(), 2);
+  }
+
+  @Test
+  void testCaptureTimeFromAnotherProcess() {
+    long captureEpochNanos = EPOCH_NANOS + nanoTime.get();
+    advanceMillis(40);
+
+    tracker.markCaptured(0, captureEpochNanos);
+    tracker.mark(0, LatencyStage.FIRST_PACKET_RECEIVED);
+    advanceMillis(10);
+    tracker.mark(0, LatencyStage.DISPLAYED);
+
+    assertEquals(40_000, tracker.snapshot(LatencyStage.FIRST_PACKET_RECEIVED).getP50Micros(), 40);
+    assertEquals(50_000, tracker.glassToGlass().getP50Micros(), 50);
+  }
+
+  @Test
+  void testCaptureEpochNanos() {
+    assertEquals(-1, tracker.getCaptureEpochNanos(0));
+
+    tracker.mark(0, LatencyStage.CAPTURED);
+
+    assertEquals(EPOCH_NANOS + nanoTime.get(), tracker.getCaptureEpochNanos(0));
+  }
+
+  @Test
+  void testForgetsFramesThatAreNeverDisplayed() {
+    for (long frame = 0; frame < 300; frame++) {
+      tracker.mark(frame, LatencyStage.CAPTURED);
+      advanceMillis(33);
+    }
+
+    // Eviction starts above 256 frames and keeps the last 5 s, about 152 frames
+    assertTrue(tracker.getTrackedFrames() < 200, "Frames older than 5 s should be evicted");
+  }
+
+  @Test
+  void testSnapshotListsStagesInPipelineOrder() {
+    List<String> names = tracker.snapshot().stream().map(LatencySnapshot::getName).toList();
+
+    assertEquals(List.of("encode", "packetize", "send", "network", "reassembly", "decode",
+        "display", "glass-to-glass"), names);
+  }
+
+  private void advanceMillis(long millis) {
+    nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+  }
+}
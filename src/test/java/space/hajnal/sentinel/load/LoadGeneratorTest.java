@@ -0,0 +1,43 @@
+package space.hajnal.sentinel.load;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Wall-clock rates on real sockets, too sensitive to a busy machine for the default test task.
+ * Runs with {@code ./gradlew soakTest}.
+ */
+@Tag("soak")
+class LoadGeneratorTest {
+
+  @Test
+  void testShortSoakDeliversEveryStream() throws Exception {
+    LoadGeneratorOptions options = LoadGeneratorOptions.builder()
+        .streams(4)
+        .bitRate(500_000)
+        .duration(Duration.ofSeconds(3))
+        .reportInterval(Duration.ofSeconds(1))
+        .build();
+
+    LoadReport report = new LoadGenerator(options).run();
+
+    assertEquals(4, report.getStreams().size());
+    assertEquals(4, report.getStreams().stream().mapToLong(StreamLoad::getSsrc).distinct().count(),
+        "Every stream needs its own SSRC");
+    for (StreamLoad stream : report.getStreams()) {
+      // 90 frames at 30 fps, minus scheduling hiccups
+      assertTrue(stream.getFramesSent() >= 80, stream.toString());
+      assertTrue(stream.getCompleteness() >= 0.9, report.toString());
+      assertTrue(stream.getLatencyP50Micros() > 0, stream.toString());
+    }
+    // 4 streams at 500 kbit/s plus the RTP headers
+    assertTrue(report.getTotal().getMegabitsPerSecond() > 1.5, report.toString());
+    assertTrue(report.getCpuCores() > 0);
+    assertTrue(report.getSenderCpuCores() > 0);
+    assertTrue(report.getHeapUsedPeakBytes() > 0);
+  }
+}
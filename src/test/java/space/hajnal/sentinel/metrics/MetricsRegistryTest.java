@@ -0,0 +1,98 @@
+package space.hajnal.sentinel.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class MetricsRegistryTest {
+
+  private final MBeanServer mBeanServer = MBeanServerFactory.newMBeanServer();
+  private final MetricsRegistry registry = new MetricsRegistry(mBeanServer);
+  private final StreamMetrics metrics = new StreamMetrics("camera-0");
+
+  @BeforeEach
+  void setUp() {
+    metrics.recordPacketReceived(1200);
+    metrics.recordPacketReceived(800);
+    metrics.recordPacketSent(1400);
+    metrics.recordFrameAssembled();
+    metrics.recordFrameSkipped();
+    metrics.recordEncode(4_000_000);
+    metrics.recordEncode(2_000_000);
+    metrics.setReceiveQueueDepthGauge(() -> 7);
+    metrics.setJitterGauge(() -> 2.5);
+    registry.register(metrics);
+  }
+
+  @Test
+  void testPublishesMBeanPerStream() throws Exception {
+    assertEquals(2L, mBeanServer.getAttribute(MetricsRegistry.objectName("camera-0"),
+        "PacketsReceived"));
+    assertEquals(2000L, mBeanServer.getAttribute(MetricsRegistry.objectName("camera-0"),
+        "BytesReceived"));
+    assertEquals(3.0, mBeanServer.getAttribute(MetricsRegistry.objectName("camera-0"),
+        "AverageEncodeMillis"));
+    assertEquals(7, mBeanServer.getAttribute(MetricsRegistry.objectName("camera-0"),
+        "ReceiveQueueDepth"));
+
+    registry.unregister("camera-0");
+
+    assertFalse(mBeanServer.isRegistered(MetricsRegistry.objectName("camera-0")));
+    assertEquals("", registry.scrape());
+  }
+
+  @Test
+  void testRegisteringAgainReplacesStream() throws Exception {
+    StreamMetrics restarted = new StreamMetrics("camera-0");
+
+    registry.register(restarted);
+
+    assertEquals(0L, mBeanServer.getAttribute(MetricsRegistry.objectName("camera-0"),
+        "PacketsReceived"));
+    assertEquals(1, registry.getStreams().size());
+  }
+
+  @Test
+  void testScrape() {
+    registry.register(new StreamMetrics("camera-1"));
+
+    String scrape = registry.scrape();
+
+    assertTrue(scrape.contains("# TYPE sentinel_packets_received_total counter\n"
+                               + "sentinel_packets_received_total{stream=\"camera-0\"} 2\n"),
+        scrape);
+    assertTrue(scrape.contains("sentinel_packets_received_total{stream=\"camera-1\"} 0\n"),
+        scrape);
+    assertTrue(scrape.contains("# TYPE sentinel_jitter_milliseconds gauge\n"
+                               + "sentinel_jitter_milliseconds{stream=\"camera-0\"} 2.5\n"),
+        scrape);
+    assertTrue(scrape.contains("sentinel_frames_skipped_total{stream=\"camera-0\"} 1\n"), scrape);
+  }
+
+  @Test
+  void testHttpEndpoint() throws Exception {
+    try (MetricsHttpServer server = new MetricsHttpServer(registry,
+        new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        HttpClient client = HttpClient.newHttpClient()) {
+      HttpResponse<String> response = client.send(HttpRequest.newBuilder(
+              URI.create("http://127.0.0.1:" + server.getPort() + "/metrics")).build(),
+          HttpResponse.BodyHandlers.ofString());
+
+      assertEquals(200, response.statusCode());
+      assertTrue(response.headers().firstValue("Content-Type").orElseThrow()
+          .startsWith("text/plain"));
+      assertEquals(registry.scrape(), response.body());
+    }
+  }
+}
@@ -0,0 +1,68 @@
+package space.hajnal.sentinel.network;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import space.hajnal.sentinel.network.model.RTCPFeedback;
+import space.hajnal.sentinel.network.model.RTPPacket;
+import space.hajnal.sentinel.network.serialization.RTCPFeedbackDeserializer;
+
+class RTCPFeedbackDeserializerTest {
+
+  private final RTCPFeedbackDeserializer deserializer = new RTCPFeedbackDeserializer();
+
+  @Test
+  void testPliRoundTrip() {
+    byte[] data = RTCPFeedback.pli(0xCAFEBABEL, 123456).toBytes();
+
+    assertEquals(12, data.length);
+    assertEquals(0x81, Byte.toUnsignedInt(data[0]), "V=2, FMT=1");
+    assertEquals(206, Byte.toUnsignedInt(data[1]));
+    assertEquals(List.of(RTCPFeedback.pli(0xCAFEBABEL, 123456)),
+        deserializer.deserialize(data, data.length));
+  }
+
+  @Test
+  void testFirRoundTrip() {
+    byte[] data = RTCPFeedback.fir(1, 0xFFFFFFF0L, 300).toBytes();
+
+    assertEquals(20, data.length);
+    assertEquals(List.of(RTCPFeedback.fir(1, 0xFFFFFFF0L, 44)),
+        deserializer.deserialize(data, data.length), "The sequence number wraps at 8 bits");
+  }
+
+  @Test
+  void testCompoundPacketSkipsOtherTypes() {
+    // An empty receiver report followed by a PLI, as RFC 4585 compound feedback is sent
+    byte[] pli = RTCPFeedback.pli(1, 2).toBytes();
+    ByteBuffer compound = ByteBuffer.allocate(8 + pli.length + 16);
+    compound.put((byte) 0x80).put((byte) 201).putShort((short) 1).putInt(1);
+    compound.put(pli);
+
+    assertEquals(List.of(RTCPFeedback.pli(1, 2)),
+        deserializer.deserialize(compound.array(), 8 + pli.length));
+  }
+
+  @Test
+  void testTruncatedPacketIsRejected() {
+    byte[] data = RTCPFeedback.fir(1, 2, 3).toBytes();
+
+    assertThrows(IllegalArgumentException.class, () -> deserializer.deserialize(data, 16));
+  }
+
+  @Test
+  void testRtpIsNotMistakenForRtcp() {
+    byte[] rtp = new RTPPacket(96, 1, 1000, 123456, new byte[]{1}, true).toBytes();
+    byte[] rtpWithMarker = new RTPPacket(127, 1, 1000, 123456, new byte[]{1}, true).toBytes();
+    byte[] pli = RTCPFeedback.pli(1, 2).toBytes();
+
+    assertFalse(RTCPFeedback.isRTCP(rtp, rtp.length));
+    assertFalse(RTCPFeedback.isRTCP(rtpWithMarker, rtpWithMarker.length));
+    assertTrue(RTCPFeedback.isRTCP(pli, pli.length));
+  }
+}
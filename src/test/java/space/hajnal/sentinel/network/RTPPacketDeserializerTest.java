@@ -9,8 +9,11 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import java.net.DatagramPacket;
 import java.nio.ByteBuffer;
 import org.junit.jupiter.api.Test;
+import java.util.List;
+import space.hajnal.sentinel.network.model.FrameMarking;
 import space.hajnal.sentinel.network.model.RTPPacket;
 import space.hajnal.sentinel.network.serialization.RTPPacketDeserializer;
+import space.hajnal.sentinel.network.serialization.RTPPacketSerializer;
 
 class RTPPacketDeserializerTest {
 
@@ -48,6 +51,41 @@ class RTPPacketDeserializerTest {
     assertEquals(originalPacket.isMarker(), deserializedPacket.isMarker(), "Marker bit mismatch");
   }
 
+  @Test
+  void testDeserialize_FrameMarkingExtensionRoundTrip() {
+    byte[] frameData = new byte[3000];
+    for (int i = 0; i < frameData.length; i++) {
+      frameData[i] = (byte) i;
+    }
+    FrameMarking marking = FrameMarking.builder()
+        .discardable(true)
+        .baseLayerSync(true)
+        .temporalId(1)
+        .tl0PicIndex(42)
+        .build();
+
+    List<RTPPacket> packets = new RTPPacketSerializer().serialize(frameData, 1400, 90_000L,
+        1234, marking);
+    RTPPacketDeserializer deserializer = new RTPPacketDeserializer();
+    ByteBuffer reassembled = ByteBuffer.allocate(frameData.length);
+
+    for (int i = 0; i < packets.size(); i++) {
+      byte[] bytes = packets.get(i).toBytes();
+      assertTrue(bytes.length <= 1400, "Packet exceeds the MTU");
+      RTPPacket packet = deserializer.deserialize(bytes);
+      reassembled.put(packet.getPayload());
+      FrameMarking received = FrameMarking.of(packet);
+
+      assertTrue(packet.isExtension(), "Extension bit should be set");
+      assertEquals(i == 0, received.isStartOfFrame());
+      assertEquals(i == packets.size() - 1, received.isEndOfFrame());
+      assertEquals(1, received.getTemporalId());
+      assertEquals(42, received.getTl0PicIndex());
+      assertTrue(received.isDiscardable());
+    }
+    assertArrayEquals(frameData, reassembled.array(), "Payload must exclude the extension");
+  }
+
   @Test
   void testDeserialize_InvalidRTPPacket_ThrowsException() {
     // Arrange: Create invalid packet data (less than RTP header size)
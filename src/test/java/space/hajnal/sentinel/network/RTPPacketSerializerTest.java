@@ -3,12 +3,15 @@ package space.hajnal.sentinel.network;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.List;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import space.hajnal.sentinel.network.model.CaptureTime;
 import space.hajnal.sentinel.network.model.RTPPacket;
+import space.hajnal.sentinel.network.serialization.RTPPacketDeserializer;
 import space.hajnal.sentinel.network.serialization.RTPPacketSerializer;
 
 class RTPPacketSerializerTest {
@@ -137,4 +140,21 @@ class RTPPacketSerializerTest {
     assertTrue(packets.get(2).isMarker(),
         "Marker bit should be set for the last packet of a frame.");
   }
+
+  @Test
+  void testCaptureTimeOnFirstPacketOnly() {
+    byte[] frameData = new byte[3000];
+    CaptureTime captureTime = new CaptureTime(1_760_000_000_123_456_789L);
+
+    List<RTPPacket> packets = serializer.serialize(frameData, 1400, 90_000, 67890, null,
+        captureTime);
+
+    RTPPacketDeserializer deserializer = new RTPPacketDeserializer();
+    RTPPacket first = deserializer.deserialize(packets.getFirst().toBytes());
+    assertEquals(captureTime, CaptureTime.of(first));
+    assertTrue(packets.stream().allMatch(packet -> packet.toBytes().length <= 1400));
+    assertNull(CaptureTime.of(packets.get(1)));
+    assertEquals(frameData.length,
+        packets.stream().mapToInt(packet -> packet.getPayload().length).sum());
+  }
 }
@@ -5,8 +5,12 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyInt;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.isNull;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
@@ -21,9 +25,13 @@ import org.bytedeco.javacv.Frame;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import space.hajnal.sentinel.codec.H264Encoder;
+import space.hajnal.sentinel.latency.LatencyStage;
+import space.hajnal.sentinel.latency.LatencyTracker;
 import space.hajnal.sentinel.network.model.RTPPacket;
 import space.hajnal.sentinel.network.model.ServerOptions;
+import space.hajnal.sentinel.network.sender.PacketTransmitter;
 import space.hajnal.sentinel.network.sender.RTPSocketSender;
 import space.hajnal.sentinel.network.serialization.RTPPacketDeserializer;
 import space.hajnal.sentinel.network.serialization.RTPPacketSerializer;
@@ -53,8 +61,10 @@ class RTPSocketSenderTest {
     when(serverOptions.getMtu()).thenReturn(mtu); // Example MTU
     when(serverOptions.getServerAddress()).thenReturn("127.0.0.1");
     when(serverOptions.getServerPort()).thenReturn(5004);
+    when(serverOptions.getSsrc()).thenReturn(123456L);
     when(h264Encoder.encode(frame)).thenReturn(emptyFrame); // Empty frame
-    when(rtpPacketSerializer.serialize(emptyFrame, mtu, 1, 12345)).thenReturn(List.of());
+    when(rtpPacketSerializer.serialize(eq(emptyFrame), eq(mtu), eq(1L), eq(12345), any(),
+        isNull(), anyInt())).thenReturn(List.of());
 
     mockSocket = mock(DatagramSocket.class);
 
@@ -93,7 +103,8 @@ class RTPSocketSenderTest {
     }
 
     when(h264Encoder.encode(frame)).thenReturn(encodedFrame);
-    when(rtpPacketSerializer.serialize(encodedFrame, 1400, timestamp, 123456)).thenReturn(
+    when(rtpPacketSerializer.serialize(eq(encodedFrame), eq(1400), eq(timestamp), eq(123456),
+        any(), isNull(), anyInt())).thenReturn(
         List.of(new RTPPacket(96, 0, timestamp, 12345, new byte[1400], false),
             new RTPPacket(96, 1, timestamp, 12345, new byte[1400], false),
             new RTPPacket(96, 2, timestamp, 12345, new byte[1400], false),
@@ -108,7 +119,8 @@ class RTPSocketSenderTest {
     ArgumentCaptor<DatagramPacket> packetCaptor = ArgumentCaptor.forClass(DatagramPacket.class);
     verify(mockSocket, atLeastOnce()).send(packetCaptor.capture());
     verify(h264Encoder, times(1)).encode(frame);
-    verify(rtpPacketSerializer, times(1)).serialize(encodedFrame, 1400, timestamp, 123456);
+    verify(rtpPacketSerializer, times(1)).serialize(eq(encodedFrame), eq(1400), eq(timestamp),
+        eq(123456), any(), isNull(), anyInt());
     verify(mockSocket, atLeastOnce()).isClosed();
     verify(mockSocket).setSendBufferSize(65536);
     RTPPacketDeserializer deserializer = new RTPPacketDeserializer();
@@ -124,6 +136,47 @@ class RTPSocketSenderTest {
     }
   }
 
+  @Test
+  void testSequenceNumbersContinueAcrossFrames() throws Exception {
+    PacketTransmitter transmitter = mock(PacketTransmitter.class);
+    when(transmitter.isOpen()).thenReturn(true);
+    RTPSocketSender sender = new RTPSocketSender(transmitter,
+        ServerOptions.builder().mtu(200).ssrc(123456).build(), h264Encoder,
+        new RTPPacketSerializer(), frameProcessor);
+
+    for (int frame = 0; frame < 3; frame++) {
+      sender.sendFrameData(new byte[]{0, 0, 0, 1, 0x41, 1, 2, 3}, frame * 3000L);
+      sender.sendFrameData(new byte[500], frame * 3000L + 1500);
+    }
+
+    ArgumentCaptor<RTPPacket> sent = ArgumentCaptor.forClass(RTPPacket.class);
+    verify(transmitter, times(12)).transmit(sent.capture());
+    List<RTPPacket> packets = sent.getAllValues();
+    for (int i = 1; i < packets.size(); i++) {
+      assertEquals((packets.get(i - 1).getSequenceNumber() + 1) & 0xFFFF,
+          packets.get(i).getSequenceNumber(), "Packet " + i + " should follow the previous one");
+    }
+  }
+
+  @Test
+  void testSentIsMarkedBeforeTheFirstPacketIsTransmitted() throws Exception {
+    PacketTransmitter transmitter = mock(PacketTransmitter.class);
+    when(transmitter.isOpen()).thenReturn(true);
+    LatencyTracker tracker = mock(LatencyTracker.class);
+    RTPSocketSender sender = new RTPSocketSender(transmitter,
+        ServerOptions.builder().mtu(200).ssrc(123456).build(), h264Encoder,
+        new RTPPacketSerializer(), frameProcessor);
+    sender.setLatencyTracker(tracker);
+
+    // A single packet, so the mark cannot fall between two transmits
+    sender.sendFrameData(new byte[100], 3000L);
+
+    // An in-process receiver marks its first packet before transmit() returns
+    InOrder inOrder = inOrder(tracker, transmitter);
+    inOrder.verify(tracker).mark(3000L, LatencyStage.SENT);
+    inOrder.verify(transmitter).transmit(any());
+  }
+
   @Test
   void testSendWithoutOpenThrowsException() {
     // Arrange
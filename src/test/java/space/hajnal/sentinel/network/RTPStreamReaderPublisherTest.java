@@ -0,0 +1,86 @@
+package space.hajnal.sentinel.network;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.net.DatagramSocket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.AfterEach;
+import space.hajnal.sentinel.network.model.RTPPacket;
+import space.hajnal.sentinel.network.receiver.RTPSocketReceiver;
+import space.hajnal.sentinel.network.video.VideoStreamProcessor;
+import space.hajnal.sentinel.pipeline.FlowPublisherVerification;
+
+class RTPStreamReaderPublisherTest extends FlowPublisherVerification<RTPPacket> {
+
+  // Hands each packet to the processing loop only when the loop is ready for it
+  private final SynchronousQueue<RTPPacket> received = new SynchronousQueue<>();
+  private final AtomicLong produced = new AtomicLong(0);
+  private final AtomicLong published = new AtomicLong(0);
+  private final AtomicLong retrievals = new AtomicLong(0);
+  private ExecutorService threadPool;
+  private RTPStreamReader rtpStreamReader;
+
+  @AfterEach
+  void tearDown() {
+    threadPool.shutdownNow();
+  }
+
+  @Override
+  protected Flow.Publisher<RTPPacket> createPublisher() {
+    VideoStreamProcessor videoStreamProcessor = mock(VideoStreamProcessor.class);
+    doAnswer(_ -> produced.incrementAndGet()).when(videoStreamProcessor).processPacket(any());
+    RTPSocketReceiver rtpSocketReceiver = mock(RTPSocketReceiver.class);
+    try {
+      when(rtpSocketReceiver.retrievePacket()).thenAnswer(_ -> {
+        retrievals.incrementAndGet();
+        return received.take();
+      });
+    } catch (InterruptedException e) {
+      throw new IllegalStateException(e);
+    }
+    threadPool = Executors.newFixedThreadPool(2);
+    rtpStreamReader = new RTPStreamReader(videoStreamProcessor, rtpSocketReceiver, threadPool);
+    rtpStreamReader.start(mock(DatagramSocket.class));
+    return rtpStreamReader;
+  }
+
+  @Override
+  protected void publish(int count) {
+    try {
+      for (int i = 0; i < count; i++) {
+        received.put(new RTPPacket(96, i, 1000, 123456, new byte[]{1}, true));
+        published.incrementAndGet();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Override
+  protected void complete() {
+    // Once the loop asks for the next packet, the previous one has been published
+    try {
+      await(() -> retrievals.get() > published.get(), "The last packet was not processed");
+    } catch (InterruptedException e) {
+      throw new IllegalStateException(e);
+    }
+    rtpStreamReader.close();
+  }
+
+  @Override
+  protected long getProduced() {
+    return produced.get();
+  }
+
+  @Override
+  protected int getBufferCapacity() {
+    return 256;
+  }
+}
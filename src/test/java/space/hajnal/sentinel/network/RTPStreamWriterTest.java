@@ -11,8 +11,10 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import java.net.DatagramSocket;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -21,8 +23,10 @@ import org.bytedeco.javacv.Frame;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import space.hajnal.sentinel.camera.FrameGrabberCallback;
 import space.hajnal.sentinel.camera.SentinelFrameGrabber;
 import space.hajnal.sentinel.network.sender.RTPSocketSender;
+import space.hajnal.sentinel.pipeline.PipelineOptions;
 
 class RTPStreamWriterTest {
 
@@ -84,6 +88,45 @@ class RTPStreamWriterTest {
     verify(mockSender, never()).send(any(), anyLong());
   }
 
+  @Test
+  void testSimulcast_EncodesAndSendsEveryLayer() throws Exception {
+    RTPSocketSender highLayer = mock(RTPSocketSender.class);
+    RTPSocketSender lowLayer = mock(RTPSocketSender.class);
+    byte[] high = {1, 2, 3};
+    byte[] low = {4};
+    when(highLayer.encode(any())).thenReturn(high);
+    when(lowLayer.encode(any())).thenReturn(low);
+    CountDownLatch sent = new CountDownLatch(2);
+    doAnswer(_ -> {
+      sent.countDown();
+      return null;
+    }).when(highLayer).sendFrameData(any(), anyLong());
+    doAnswer(_ -> {
+      sent.countDown();
+      return null;
+    }).when(lowLayer).sendFrameData(any(), anyLong());
+    Frame frame = new Frame(16, 16, Frame.DEPTH_UBYTE, 3);
+    doAnswer(invocation -> {
+      invocation.<FrameGrabberCallback>getArgument(0)
+          .onFrameGrabbed(frame, 42L);
+      return null;
+    }).when(mockFrameGrabber).capture(any());
+
+    try (RTPStreamWriter simulcastWriter = new RTPStreamWriter(List.of(highLayer, lowLayer),
+        mockFrameGrabber, Executors.newSingleThreadExecutor(), PipelineOptions.builder().build())) {
+      DatagramSocket mockSocket = mock(DatagramSocket.class);
+      simulcastWriter.start(mockSocket);
+
+      assertTrue(sent.await(1, TimeUnit.SECONDS), "Not every layer was sent");
+      verify(highLayer).open(mockSocket);
+      verify(lowLayer).open(mockSocket);
+      verify(highLayer).sendFrameData(high, 42L);
+      verify(lowLayer).sendFrameData(low, 42L);
+    } finally {
+      frame.close();
+    }
+  }
+
   @Test
   void testClose_ClosesResources() throws Exception {
     // Act
@@ -0,0 +1,136 @@
+package space.hajnal.sentinel.network.inprocess;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import space.hajnal.sentinel.camera.RTPClock;
+import space.hajnal.sentinel.codec.H264Encoder;
+import space.hajnal.sentinel.metrics.StreamMetrics;
+import space.hajnal.sentinel.network.RTPStreamReader;
+import space.hajnal.sentinel.network.model.RTCPFeedback;
+import space.hajnal.sentinel.network.model.ServerOptions;
+import space.hajnal.sentinel.network.sender.RTCPFeedbackListener;
+import space.hajnal.sentinel.network.sender.RTPSocketSender;
+import space.hajnal.sentinel.network.serialization.RTCPFeedbackDeserializer;
+import space.hajnal.sentinel.network.serialization.RTPPacketSerializer;
+import space.hajnal.sentinel.network.video.FrameProcessor;
+import space.hajnal.sentinel.network.video.VideoStreamProcessor;
+
+class InProcessTransportTest {
+
+  private static final long SSRC = 123456;
+  // Like a real stream, not at 0: while waiting for packets the processor's assembly walks the
+  // timestamps up from 0 and would skip a first frame there
+  private static final long FIRST_TIMESTAMP = 900_000;
+
+  private InProcessChannel channel;
+  private H264Encoder encoder;
+  private RTPSocketSender sender;
+  private ScheduledExecutorService scheduler;
+
+  @BeforeEach
+  void setUp() {
+    channel = new InProcessChannel(1024);
+    encoder = mock(H264Encoder.class);
+    sender = new RTPSocketSender(new InProcessTransmitter(channel),
+        ServerOptions.builder().mtu(1400).ssrc(SSRC).build(), encoder, new RTPPacketSerializer(),
+        new FrameProcessor());
+    scheduler = Executors.newSingleThreadScheduledExecutor();
+  }
+
+  @AfterEach
+  void tearDown() {
+    scheduler.shutdownNow();
+  }
+
+  @Test
+  void testFramesAssembledThroughReader() throws Exception {
+    int fps = 30;
+    int frames = 30;
+    VideoStreamProcessor processor = new VideoStreamProcessor(new FrameProcessor(), fps,
+        scheduler);
+    Map<Long, byte[]> delivered = new ConcurrentHashMap<>();
+    processor.addSubscriber(frame -> delivered.put(frame.getTimestamp(), frame.getData()));
+    InProcessReceiver receiver = new InProcessReceiver(channel);
+    StreamMetrics metrics = new StreamMetrics("in-process");
+    sender.setStreamMetrics(metrics);
+    receiver.setStreamMetrics(metrics);
+    ExecutorService readerThreads = Executors.newFixedThreadPool(2);
+    RTPStreamReader reader = new RTPStreamReader(processor, receiver, readerThreads);
+    reader.start(null);
+    sender.open(null);
+
+    SplittableRandom random = new SplittableRandom(1);
+    byte[][] sent = new byte[frames][];
+    try {
+      for (int i = 0; i < frames; i++) {
+        sent[i] = new byte[8_000];
+        random.nextBytes(sent[i]);
+        sender.sendFrameData(sent[i], FIRST_TIMESTAMP + i * RTPClock.VIDEO_CLOCK_RATE / fps);
+        Thread.sleep(1000 / fps);
+      }
+      Thread.sleep(300);
+    } finally {
+      sender.close();
+      reader.close();
+      readerThreads.shutdownNow();
+      processor.close();
+    }
+
+    assertEquals(metrics.getPacketsSent(), metrics.getPacketsReceived());
+    assertEquals(metrics.getBytesSent(), metrics.getBytesReceived());
+    assertEquals(0, channel.getDropped());
+    assertEquals(frames, delivered.size(), "Delivered " + delivered.keySet());
+    delivered.forEach((timestamp, data) -> assertArrayEquals(
+        sent[(int) ((timestamp - FIRST_TIMESTAMP) * fps / RTPClock.VIDEO_CLOCK_RATE)], data));
+  }
+
+  @Test
+  void testFeedbackReachesSender() {
+    InProcessReceiver receiver = new InProcessReceiver(channel);
+    assertFalse(receiver.sendFeedback(RTCPFeedback.pli(1, SSRC).toBytes()));
+
+    RTCPFeedbackListener listener = new RTCPFeedbackListener(List.of(sender),
+        new RTCPFeedbackDeserializer());
+    channel.setFeedbackListener(listener);
+
+    assertTrue(receiver.sendFeedback(RTCPFeedback.pli(1, SSRC).toBytes()));
+    verify(encoder, timeout(1000)).requestKeyframe();
+    assertEquals(1, listener.getKeyframeRequests());
+  }
+
+  @Test
+  void testDropsPacketsWhenReceiverFallsBehind() {
+    InProcessChannel small = new InProcessChannel(4);
+    RTPSocketSender smallSender = new RTPSocketSender(new InProcessTransmitter(small),
+        ServerOptions.builder().mtu(1400).ssrc(SSRC).build(), encoder, new RTPPacketSerializer(),
+        new FrameProcessor());
+    smallSender.open(null);
+
+    smallSender.sendFrameData(new byte[10_000], 0);
+
+    assertEquals(4, small.size());
+    assertTrue(small.getDropped() > 0);
+  }
+
+  @Test
+  void testRefusesFramesUntilOpened() {
+    assertThrows(IllegalStateException.class, () -> sender.sendFrameData(new byte[100], 0));
+  }
+}
@@ -0,0 +1,112 @@
+package space.hajnal.sentinel.network.inprocess;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import space.hajnal.sentinel.network.model.RTPPacket;
+
+class PacketRingTest {
+
+  @Test
+  void testPassesPacketsInOrderByReference() {
+    PacketRing ring = new PacketRing(4);
+    List<RTPPacket> packets = new ArrayList<>();
+    for (int round = 0; round < 3; round++) {
+      for (int i = 0; i < 3; i++) {
+        RTPPacket packet = packet(1, round * 3 + i);
+        packets.add(packet);
+        assertTrue(ring.offer(packet));
+      }
+      assertEquals(3, ring.size());
+      for (int i = 0; i < 3; i++) {
+        assertSame(packets.get(round * 3 + i), ring.poll());
+      }
+      assertNull(ring.poll());
+    }
+  }
+
+  @Test
+  void testRefusesPacketsWhenFull() {
+    PacketRing ring = new PacketRing(2);
+
+    assertTrue(ring.offer(packet(1, 0)));
+    assertTrue(ring.offer(packet(1, 1)));
+    assertFalse(ring.offer(packet(1, 2)));
+
+    assertEquals(0, ring.poll().getSequenceNumber());
+    assertTrue(ring.offer(packet(1, 3)));
+    assertEquals(1, ring.poll().getSequenceNumber());
+    assertEquals(3, ring.poll().getSequenceNumber());
+  }
+
+  @Test
+  void testRejectsCapacityNotPowerOfTwo() {
+    assertThrows(IllegalArgumentException.class, () -> new PacketRing(1000));
+  }
+
+  @Test
+  void testKeepsOrderOfEachProducer() throws Exception {
+    int producers = 4;
+    int packetsPerProducer = 20_000;
+    PacketRing ring = new PacketRing(256);
+    List<Thread> threads = new ArrayList<>();
+    for (int p = 0; p < producers; p++) {
+      int ssrc = p;
+      threads.add(Thread.ofPlatform().start(() -> {
+        for (int i = 0; i < packetsPerProducer; i++) {
+          RTPPacket packet = packet(ssrc, i);
+          while (!ring.offer(packet)) {
+            Thread.onSpinWait();
+          }
+        }
+      }));
+    }
+
+    int[] next = new int[producers];
+    for (int i = 0; i < producers * packetsPerProducer; i++) {
+      RTPPacket packet = ring.take();
+      int ssrc = (int) packet.getSsrc();
+      assertEquals(next[ssrc]++, packet.getSequenceNumber(), "Out of order from " + ssrc);
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertNull(ring.poll());
+  }
+
+  @Test
+  void testCloseWakesWaitingConsumerAfterDraining() throws Exception {
+    PacketRing ring = new PacketRing(8);
+    ring.offer(packet(1, 0));
+    CompletableFuture<Integer> taken = CompletableFuture.supplyAsync(() -> {
+      int count = 0;
+      try {
+        while (true) {
+          ring.take();
+          count++;
+        }
+      } catch (InterruptedException e) {
+        return count;
+      }
+    });
+
+    Thread.sleep(100);
+    ring.close();
+
+    assertEquals(1, taken.get(1, TimeUnit.SECONDS));
+    assertFalse(ring.offer(packet(1, 1)));
+  }
+
+  private static RTPPacket packet(long ssrc, int sequenceNumber) {
+    return new RTPPacket(96, sequenceNumber, 0, ssrc, new byte[0], false);
+  }
+}
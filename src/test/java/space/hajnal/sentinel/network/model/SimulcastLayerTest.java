@@ -0,0 +1,30 @@
+package space.hajnal.sentinel.network.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class SimulcastLayerTest {
+
+  private final ServerOptions destination = ServerOptions.builder().serverAddress("127.0.0.1")
+      .serverPort(5004).mtu(1400).build();
+
+  @Test
+  void testLayersGoToConsecutivePortsByDefault() {
+    SimulcastLayer layer = SimulcastLayer.builder().ssrc(42).build();
+
+    assertEquals(5004, layer.serverOptions(destination, 0).getServerPort());
+    ServerOptions second = layer.serverOptions(destination, 1);
+    assertEquals(5005, second.getServerPort());
+    assertEquals(42, second.getSsrc());
+    assertEquals("127.0.0.1", second.getServerAddress());
+    assertEquals(1400, second.getMtu());
+  }
+
+  @Test
+  void testExplicitPortWins() {
+    SimulcastLayer layer = SimulcastLayer.builder().ssrc(42).serverPort(6000).build();
+
+    assertEquals(6000, layer.serverOptions(destination, 1).getServerPort());
+  }
+}
@@ -0,0 +1,120 @@
+package space.hajnal.sentinel.network.receiver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import space.hajnal.sentinel.network.model.RTPPacket;
+
+class PacketDelayQueueTest {
+
+  @Test
+  @Timeout(5)
+  void testTakeReturnsPacketsInOrder() throws InterruptedException {
+    PacketDelayQueue queue = new PacketDelayQueue(4, 0);
+    RTPPacket first = packet(1);
+    RTPPacket second = packet(2);
+
+    assertTrue(queue.offer(first));
+    assertTrue(queue.offer(second));
+
+    assertEquals(2, queue.size());
+    assertSame(first, queue.take());
+    assertSame(second, queue.take());
+    assertEquals(0, queue.size());
+  }
+
+  @Test
+  @Timeout(5)
+  void testTakeWaitsForTheDelay() throws InterruptedException {
+    PacketDelayQueue queue = new PacketDelayQueue(4, 100);
+    long start = System.nanoTime();
+    queue.offer(packet(1));
+
+    queue.take();
+
+    assertTrue(System.nanoTime() - start >= 100_000_000L, "Packet was returned before its delay");
+  }
+
+  @Test
+  @Timeout(5)
+  void testTakeWakesUpWhenAPacketArrives() throws Exception {
+    PacketDelayQueue queue = new PacketDelayQueue(4, 0);
+    RTPPacket packet = packet(1);
+    Thread producer = new Thread(() -> {
+      try {
+        Thread.sleep(50);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      queue.offer(packet);
+    });
+    producer.start();
+
+    assertSame(packet, queue.take());
+    producer.join();
+  }
+
+  @Test
+  void testOfferDropsWhenFull() throws InterruptedException {
+    PacketDelayQueue queue = new PacketDelayQueue(2, 0);
+
+    assertTrue(queue.offer(packet(1)));
+    assertTrue(queue.offer(packet(2)));
+    assertFalse(queue.offer(packet(3)));
+
+    assertEquals(1, queue.take().getSequenceNumber());
+    assertTrue(queue.offer(packet(4)));
+    assertEquals(2, queue.size());
+  }
+
+  @Test
+  void testCapacityMustBeAPowerOfTwo() {
+    assertThrows(IllegalArgumentException.class, () -> new PacketDelayQueue(100, 0));
+  }
+
+  /**
+   * Runs with the other allocation tests, see {@code ReceivePathAllocationTest}.
+   */
+  @Test
+  @Tag("allocation")
+  void testOfferAndTakeDoNotAllocate() throws InterruptedException {
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    assumeTrue(threads.isThreadAllocatedMemorySupported());
+    threads.setThreadAllocatedMemoryEnabled(true);
+    PacketDelayQueue queue = new PacketDelayQueue(64, 0);
+    RTPPacket packet = packet(1);
+
+    long overhead = threads.getCurrentThreadAllocatedBytes()
+        - threads.getCurrentThreadAllocatedBytes();
+    long[] allocated = new long[5];
+    for (int round = -20; round < allocated.length; round++) {
+      long before = threads.getCurrentThreadAllocatedBytes();
+      for (int i = 0; i < 10_000; i++) {
+        queue.offer(packet);
+        queue.take();
+      }
+      long after = threads.getCurrentThreadAllocatedBytes();
+      if (round >= 0) {
+        allocated[round] = after - before - overhead;
+      }
+    }
+
+    Arrays.sort(allocated);
+    assertEquals(0, allocated[allocated.length / 2],
+        "Bytes allocated per round: " + Arrays.toString(allocated));
+  }
+
+  private static RTPPacket packet(int sequenceNumber) {
+    return new RTPPacket(96, sequenceNumber, 90_000, 1, new byte[0], false);
+  }
+}
@@ -5,6 +5,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyInt;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
@@ -63,7 +64,7 @@ class RTPSocketReceiverTest {
     buffer[1] = 0x02;
     buffer[2] = 0x03;
 
-    when(rtpPacketDeserializer.deserialize(any(byte[].class))).thenReturn(rtpPacket);
+    when(rtpPacketDeserializer.deserialize(any(byte[].class), anyInt())).thenReturn(rtpPacket);
 
     doAnswer(invocation -> {
       DatagramPacket p = invocation.getArgument(0);
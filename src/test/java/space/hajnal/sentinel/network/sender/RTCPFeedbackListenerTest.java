@@ -0,0 +1,48 @@
+package space.hajnal.sentinel.network.sender;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import space.hajnal.sentinel.network.model.RTCPFeedback;
+import space.hajnal.sentinel.network.serialization.RTCPFeedbackDeserializer;
+
+class RTCPFeedbackListenerTest {
+
+  @Test
+  void testRequestsKeyframeFromNamedSenderOnly() {
+    RTPSocketSender base = mock(RTPSocketSender.class);
+    RTPSocketSender low = mock(RTPSocketSender.class);
+    when(base.getSsrc()).thenReturn(123456L);
+    when(low.getSsrc()).thenReturn(123457L);
+    RTCPFeedbackListener listener = new RTCPFeedbackListener(List.of(base, low),
+        new RTCPFeedbackDeserializer());
+
+    byte[] pli = RTCPFeedback.pli(99, 123457).toBytes();
+    listener.onPacket(pli, pli.length);
+    byte[] fir = RTCPFeedback.fir(99, 123456, 1).toBytes();
+    listener.onPacket(fir, fir.length);
+    byte[] unknown = RTCPFeedback.pli(99, 1).toBytes();
+    listener.onPacket(unknown, unknown.length);
+
+    verify(low).requestKeyframe();
+    verify(base).requestKeyframe();
+    assertEquals(2, listener.getKeyframeRequests());
+  }
+
+  @Test
+  void testIgnoresRtp() {
+    RTPSocketSender sender = mock(RTPSocketSender.class);
+    RTCPFeedbackListener listener = new RTCPFeedbackListener(List.of(sender),
+        new RTCPFeedbackDeserializer());
+
+    byte[] rtp = {(byte) 0x80, (byte) 0xE0, 0, 1, 0, 0, 0, 0, 0, 1, (byte) 0xE2, 0x40};
+    listener.onPacket(rtp, rtp.length);
+
+    verify(sender, never()).requestKeyframe();
+  }
+}
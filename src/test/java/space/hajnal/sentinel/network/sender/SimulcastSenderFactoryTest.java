@@ -0,0 +1,47 @@
+package space.hajnal.sentinel.network.sender;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import space.hajnal.sentinel.camera.SentinelFrameGrabberOptions;
+import space.hajnal.sentinel.network.model.ServerOptions;
+import space.hajnal.sentinel.network.model.SimulcastLayer;
+import space.hajnal.sentinel.network.model.SimulcastOptions;
+import space.hajnal.sentinel.network.serialization.RTPPacketSerializer;
+import space.hajnal.sentinel.network.video.FrameProcessor;
+
+class SimulcastSenderFactoryTest {
+
+  private final ServerOptions destination = ServerOptions.builder().serverAddress("127.0.0.1")
+      .serverPort(5004).mtu(1400).build();
+  private final SentinelFrameGrabberOptions capture = SentinelFrameGrabberOptions.builder()
+      .imageWidth(640).imageHeight(480).frameRate(30).build();
+
+  @Test
+  void testCreatesOneSenderPerLayerInOrder() {
+    SimulcastOptions options = SimulcastOptions.builder()
+        .layer(SimulcastLayer.builder().imageWidth(640).imageHeight(480).bitRate(1_200_000)
+            .ssrc(1).build())
+        .layer(SimulcastLayer.builder().imageWidth(320).imageHeight(240).bitRate(300_000)
+            .ssrc(2).build())
+        .build();
+
+    try (SimulcastSenderFactory factory = new SimulcastSenderFactory()) {
+      List<RTPSocketSender> senders = factory.create(options, destination, capture,
+          new RTPPacketSerializer(), new FrameProcessor());
+
+      assertEquals(List.of(1L, 2L), senders.stream().map(RTPSocketSender::getSsrc).toList());
+    }
+  }
+
+  @Test
+  void testRequiresALayer() {
+    try (SimulcastSenderFactory factory = new SimulcastSenderFactory()) {
+      assertThrows(IllegalArgumentException.class, () -> factory.create(
+          SimulcastOptions.builder().build(), destination, capture, new RTPPacketSerializer(),
+          new FrameProcessor()));
+    }
+  }
+}
@@ -0,0 +1,141 @@
+package space.hajnal.sentinel.network.shm;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import space.hajnal.sentinel.camera.model.SentinelFrame;
+
+class SharedMemoryRingTest {
+
+  private static final int SLOT_SIZE = 256;
+
+  @TempDir
+  Path directory;
+
+  private Path path;
+  private SharedMemoryRing writer;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    path = directory.resolve("ring");
+    writer = SharedMemoryRing.create(path, 8, SLOT_SIZE);
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    writer.close();
+  }
+
+  @Test
+  void testEveryReaderReadsEveryRecord() throws IOException {
+    try (SharedMemoryRing first = SharedMemoryRing.open(path);
+        SharedMemoryRing second = SharedMemoryRing.open(path)) {
+      SharedMemoryReader firstReader = first.newReader();
+      SharedMemoryReader secondReader = second.newReader();
+      byte[] target = new byte[SLOT_SIZE];
+      for (int round = 0; round < 3; round++) {
+        for (int i = 0; i < 5; i++) {
+          assertTrue(writer.write(round * 5 + i, record(round * 5 + i), new byte[]{-1}));
+        }
+        for (SharedMemoryReader reader : new SharedMemoryReader[]{firstReader, secondReader}) {
+          for (int i = 0; i < 5; i++) {
+            int length = reader.poll(target);
+            byte[] expected = Arrays.copyOf(record(round * 5 + i), i + 2);
+            expected[i + 1] = -1;
+            assertArrayEquals(expected, Arrays.copyOf(target, length));
+            assertEquals(round * 5 + i, reader.getTimestamp());
+          }
+          assertEquals(-1, reader.poll(target));
+        }
+      }
+      assertEquals(0, firstReader.getLost());
+    }
+  }
+
+  @Test
+  void testLappedReaderSkipsToNewestRecord() throws IOException {
+    try (SharedMemoryRing ring = SharedMemoryRing.open(path)) {
+      SharedMemoryReader reader = ring.newReader();
+      for (int i = 0; i < 20; i++) {
+        writer.write(i, record(i), null);
+      }
+      byte[] target = new byte[SLOT_SIZE];
+
+      assertEquals(-1, reader.poll(target));
+      assertEquals(1, reader.getLaps());
+      assertEquals(20, reader.getLost());
+
+      writer.write(20, record(20), null);
+      assertTrue(reader.poll(target) > 0);
+      assertEquals(20, reader.getTimestamp());
+    }
+  }
+
+  @Test
+  void testRefusesRecordsLargerThanSlot() {
+    assertFalse(writer.write(0, new byte[SLOT_SIZE], new byte[1]));
+    assertEquals(0, writer.getWritePosition());
+  }
+
+  @Test
+  void testReaderCannotWrite() throws IOException {
+    try (SharedMemoryRing ring = SharedMemoryRing.open(path)) {
+      assertEquals(8, ring.getSlotCount());
+      assertEquals(SLOT_SIZE, ring.getSlotSize());
+      assertThrows(IllegalStateException.class, () -> ring.write(0, new byte[1], null));
+    }
+  }
+
+  @Test
+  void testRejectsFileThatIsNotRing() throws IOException {
+    Path other = Files.write(directory.resolve("other"), new byte[4096]);
+    assertThrows(IOException.class, () -> SharedMemoryRing.open(other));
+  }
+
+  @Test
+  void testReaderStopsAfterWriterClosedAndRecordsRead() throws Exception {
+    try (SharedMemoryRing ring = SharedMemoryRing.open(path)) {
+      SharedMemoryReader reader = ring.newReader();
+      CompletableFuture<Integer> frames = CompletableFuture.supplyAsync(() -> {
+        byte[] target = new byte[SLOT_SIZE];
+        int count = 0;
+        try {
+          while (true) {
+            SentinelFrame frame = reader.takeFrame(target);
+            assertArrayEquals(record(count), frame.getData());
+            assertEquals(count * 3000L, frame.getTimestamp());
+            count++;
+          }
+        } catch (InterruptedException e) {
+          return count;
+        }
+      });
+      SharedMemoryFrameWriter frameWriter = new SharedMemoryFrameWriter(writer);
+      for (int i = 0; i < 5; i++) {
+        frameWriter.onFrameEncoded(record(i), i * 3000L);
+      }
+      writer.close();
+
+      assertEquals(5, frames.get(1, TimeUnit.SECONDS));
+    }
+  }
+
+  private static byte[] record(int number) {
+    byte[] record = new byte[number % 5 + 1];
+    Arrays.fill(record, (byte) number);
+    return record;
+  }
+}
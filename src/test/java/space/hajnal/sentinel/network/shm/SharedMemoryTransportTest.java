@@ -0,0 +1,78 @@
+package space.hajnal.sentinel.network.shm;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import space.hajnal.sentinel.metrics.StreamMetrics;
+import space.hajnal.sentinel.network.model.RTPPacket;
+import space.hajnal.sentinel.network.model.ServerOptions;
+import space.hajnal.sentinel.network.sender.RTPSocketSender;
+import space.hajnal.sentinel.network.serialization.RTPPacketDeserializer;
+import space.hajnal.sentinel.network.serialization.RTPPacketSerializer;
+import space.hajnal.sentinel.network.video.FrameProcessor;
+
+class SharedMemoryTransportTest {
+
+  private static final int MTU = 1400;
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void testReceiverGetsPacketsAsSent() throws Exception {
+    Path path = directory.resolve("stream");
+    RTPPacketSerializer serializer = new RTPPacketSerializer();
+    SharedMemoryRing ring = SharedMemoryRing.create(path, 64, 1500);
+    List<RTPPacket> sent = new ArrayList<>();
+    RTPSocketSender sender = new RTPSocketSender(new SharedMemoryTransmitter(ring, MTU),
+        ServerOptions.builder().mtu(MTU).ssrc(4242).build(), null, serializer,
+        new FrameProcessor() {
+          @Override
+          public synchronized void addSentPacket(RTPPacket rtpPacket) {
+            sent.add(rtpPacket);
+          }
+        });
+    SharedMemoryReceiver receiver = new SharedMemoryReceiver(SharedMemoryRing.open(path),
+        new RTPPacketDeserializer());
+    StreamMetrics metrics = new StreamMetrics("shm");
+    sender.setStreamMetrics(metrics);
+    receiver.setStreamMetrics(metrics);
+    sender.open(null);
+
+    byte[] frame = new byte[20_000];
+    new SplittableRandom(7).nextBytes(frame);
+    sender.sendFrameData(frame, 90_000);
+
+    assertEquals(sent.size(), metrics.getReceiveQueueDepth());
+    for (RTPPacket packet : sent) {
+      RTPPacket received = receiver.retrievePacket();
+      assertEquals(packet.getSequenceNumber(), received.getSequenceNumber());
+      assertEquals(90_000, received.getTimestamp());
+      assertEquals(4242, received.getSsrc());
+      assertEquals(packet.isMarker(), received.isMarker());
+      assertArrayEquals(packet.getPayload(), received.getPayload());
+      assertArrayEquals(packet.toBytes(), received.toBytes());
+    }
+    assertEquals(metrics.getBytesSent(), metrics.getBytesReceived());
+
+    receiver.close();
+    assertThrows(InterruptedException.class, receiver::retrievePacket);
+    sender.close();
+    ring.close();
+  }
+
+  @Test
+  void testRejectsSlotsSmallerThanMtu() throws IOException {
+    try (SharedMemoryRing ring = SharedMemoryRing.create(directory.resolve("small"), 4, 1000)) {
+      assertThrows(IllegalArgumentException.class, () -> new SharedMemoryTransmitter(ring, MTU));
+    }
+  }
+}
@@ -0,0 +1,89 @@
+package space.hajnal.sentinel.network.video;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import space.hajnal.sentinel.network.model.RTPPacket;
+
+class FrameBufferTest {
+
+  private final FrameBuffer buffer = new FrameBuffer();
+
+  @Test
+  void testPacketsAreSortedBySequenceNumber() {
+    buffer.acquire(1000);
+    RTPPacket second = packet(11);
+    buffer.add(second);
+    buffer.add(packet(10));
+    buffer.add(packet(13));
+
+    assertEquals(3, buffer.getSize());
+    assertEquals(10, buffer.getFirstSequenceNumber());
+    assertEquals(13, buffer.getLastSequenceNumber());
+    assertSame(second, buffer.get(11));
+    assertNull(buffer.get(12), "Missing packet");
+    assertEquals(List.of(10, 11, 13), List.copyOf(buffer.toSortedMap().keySet()));
+  }
+
+  @Test
+  void testDuplicateReplacesPacket() {
+    buffer.acquire(1000);
+    buffer.add(packet(5));
+    RTPPacket duplicate = packet(5);
+    buffer.add(duplicate);
+
+    assertEquals(1, buffer.getSize());
+    assertSame(duplicate, buffer.get(5));
+  }
+
+  @Test
+  void testRejectsPacketTooFarFromFrame() {
+    buffer.acquire(1000);
+    buffer.add(packet(0));
+
+    assertFalse(buffer.add(packet(FrameBuffer.MAX_PACKETS)));
+    assertTrue(buffer.add(packet(FrameBuffer.MAX_PACKETS - 1)));
+    assertNull(buffer.get(FrameBuffer.MAX_PACKETS));
+    assertEquals(2, buffer.getSize());
+  }
+
+  @Test
+  void testFrameAcrossTheSequenceNumberWrapStaysInOrder() {
+    buffer.acquire(1000);
+    RTPPacket last = packet(1);
+    buffer.add(packet(0));
+    buffer.add(packet(65_534));
+    buffer.add(last);
+    buffer.add(packet(65_535));
+
+    assertEquals(4, buffer.getSize());
+    // Unwrapped relative to the first packet received
+    assertEquals(List.of(-2, -1, 0, 1), List.copyOf(buffer.toSortedMap().keySet()));
+    assertSame(last, buffer.get(1));
+    assertTrue(buffer.add(packet((65_534 + FrameBuffer.MAX_PACKETS - 1) & 0xFFFF)));
+    assertFalse(buffer.add(packet((65_534 + FrameBuffer.MAX_PACKETS) & 0xFFFF)));
+  }
+
+  @Test
+  void testReleaseClearsForNextFrame() {
+    buffer.acquire(1000);
+    buffer.add(packet(7));
+    buffer.release();
+
+    assertTrue(buffer.isFree());
+    buffer.acquire(4000);
+    assertEquals(4000, buffer.getTimestamp());
+    assertEquals(0, buffer.getSize());
+    assertNull(buffer.get(7), "Packet of the previous frame");
+    assertTrue(buffer.toSortedMap().isEmpty());
+  }
+
+  private static RTPPacket packet(int sequenceNumber) {
+    return new RTPPacket(96, sequenceNumber, 1000, 1, new byte[]{1}, false);
+  }
+}
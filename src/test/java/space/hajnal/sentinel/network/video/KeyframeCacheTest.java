@@ -0,0 +1,54 @@
+package space.hajnal.sentinel.network.video;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import space.hajnal.sentinel.camera.model.SentinelFrame;
+
+class KeyframeCacheTest {
+
+  private static final byte[] IDR = {0, 0, 0, 1, 0x65, 1};
+  private static final byte[] P = {0, 0, 0, 1, 0x41, 1};
+
+  @Test
+  void testNothingIsCachedBeforeFirstKeyframe() {
+    KeyframeCache cache = new KeyframeCache(4);
+    cache.add(frame(P, 1));
+
+    assertTrue(cache.getFrames().isEmpty());
+  }
+
+  @Test
+  void testNewKeyframeReplacesPreviousGop() {
+    KeyframeCache cache = new KeyframeCache(4);
+    cache.add(frame(IDR, 1));
+    cache.add(frame(P, 2));
+    SentinelFrame keyframe = frame(IDR, 3);
+    SentinelFrame p = frame(P, 4);
+    cache.add(keyframe);
+    cache.add(p);
+
+    assertEquals(List.of(keyframe, p), cache.getFrames());
+  }
+
+  @Test
+  void testOverlongGopEmptiesCacheUntilNextKeyframe() {
+    KeyframeCache cache = new KeyframeCache(2);
+    cache.add(frame(IDR, 1));
+    cache.add(frame(P, 2));
+    cache.add(frame(P, 3));
+
+    assertTrue(cache.getFrames().isEmpty(), "A truncated GOP cannot be decoded");
+
+    cache.add(frame(P, 4));
+    assertTrue(cache.getFrames().isEmpty());
+    cache.add(frame(IDR, 5));
+    assertEquals(1, cache.getFrames().size());
+  }
+
+  private static SentinelFrame frame(byte[] data, long timestamp) {
+    return SentinelFrame.builder().data(data).timestamp(timestamp).build();
+  }
+}
@@ -0,0 +1,76 @@
+package space.hajnal.sentinel.network.video;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+import space.hajnal.sentinel.camera.model.SentinelFrame;
+
+class PlayoutBufferTest {
+
+  private static final byte[] IDR = {0, 0, 1, 0x65, 1};
+  private static final byte[] P = {0, 0, 1, 0x41, 2};
+  private static final byte[] NON_REFERENCE_P = {0, 0, 1, 0x01, 3};
+
+  private final PlayoutBuffer buffer = new PlayoutBuffer(3, 30);
+
+  @Test
+  void testPlaysInOrderWithinThreshold() {
+    SentinelFrame first = frame(IDR, 0);
+    SentinelFrame second = frame(P, 3000);
+    buffer.offer(first);
+    buffer.offer(second);
+
+    assertSame(first, buffer.poll());
+    assertSame(second, buffer.poll());
+    assertNull(buffer.poll());
+    assertEquals(0, buffer.getCatchUps());
+  }
+
+  @Test
+  void testSkipsToNewestKeyframeWhenBehind() {
+    buffer.offer(frame(IDR, 0));
+    buffer.offer(frame(P, 3000));
+    buffer.offer(frame(P, 6000));
+    SentinelFrame keyframe = frame(IDR, 9000);
+    buffer.offer(keyframe);
+
+    assertSame(keyframe, buffer.poll(), "Playout should resume at the newest keyframe");
+    assertEquals(1, buffer.getCatchUps());
+    assertEquals(3, buffer.getDroppedFrames());
+    assertEquals(100, buffer.getShedLatencyMillis());
+  }
+
+  @Test
+  void testDropsOnlyNonReferenceFramesWithoutKeyframe() {
+    SentinelFrame head = frame(P, 0);
+    buffer.offer(head);
+    buffer.offer(frame(NON_REFERENCE_P, 3000));
+    SentinelFrame reference = frame(P, 6000);
+    buffer.offer(reference);
+    buffer.offer(frame(NON_REFERENCE_P, 9000));
+
+    assertEquals(2, buffer.size());
+    assertSame(head, buffer.poll());
+    assertSame(reference, buffer.poll());
+    assertEquals(2, buffer.getDroppedFrames());
+  }
+
+  @Test
+  void testKeepsReferenceFramesUntilKeyframeArrives() {
+    for (int i = 0; i < 6; i++) {
+      buffer.offer(frame(P, i * 3000L));
+    }
+    assertEquals(6, buffer.size(), "Dropping a reference frame would break decoding");
+
+    buffer.offer(frame(IDR, 18000));
+
+    assertEquals(1, buffer.size());
+    assertEquals(200, buffer.getShedLatencyMillis());
+  }
+
+  private static SentinelFrame frame(byte[] data, long timestamp) {
+    return SentinelFrame.builder().data(data).timestamp(timestamp).build();
+  }
+}
@@ -0,0 +1,130 @@
+package space.hajnal.sentinel.network.video;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import space.hajnal.sentinel.network.model.RTPPacket;
+import space.hajnal.sentinel.network.serialization.RTPPacketDeserializer;
+import space.hajnal.sentinel.network.video.simulation.PacketTrace;
+import space.hajnal.sentinel.network.video.simulation.VirtualScheduler;
+
+/**
+ * Guards the receive path against allocations creeping back in, which at packet rates turn into
+ * GC pauses and latency spikes.
+ * <p>
+ * Runs in its own JVM with {@code ./gradlew allocationTest}: once another test mocks
+ * {@link RTPPacket}, Mockito's inline instrumentation allocates on every getter call.
+ */
+@Tag("allocation")
+class ReceivePathAllocationTest {
+
+  private static final int FPS = 30;
+  private static final int WARMUP_FRAMES = 2000;
+  // A regression allocates in every round, JIT compilation and deoptimization only in a few, so
+  // the median round must allocate nothing: two of the five rounds may allocate, three may not
+  private static final int ROUNDS = 5;
+  private static final int FRAMES_PER_ROUND = 200;
+  // Slower than assembly, so the buffer reaches a steady state instead of dropping frames
+  private static final long FRAME_SPACING_MILLIS = 100;
+
+  private final com.sun.management.ThreadMXBean threads =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+  private final Logger logger = (Logger) LoggerFactory.getLogger("space.hajnal.sentinel");
+  private Level previousLevel;
+
+  @BeforeEach
+  void setUp() {
+    assumeTrue(threads.isCurrentThreadCpuTimeSupported()
+               && threads.isThreadAllocatedMemorySupported());
+    threads.setThreadAllocatedMemoryEnabled(true);
+    // Production runs without debug logging, the test must not measure the log lines
+    previousLevel = logger.getLevel();
+    logger.setLevel(Level.INFO);
+  }
+
+  @AfterEach
+  void tearDown() {
+    logger.setLevel(previousLevel);
+  }
+
+  @Test
+  void testProcessPacketDoesNotAllocate() {
+    PacketTrace trace = PacketTrace.generate(WARMUP_FRAMES + ROUNDS * FRAMES_PER_ROUND, FPS, 30, 12_000,
+        6_000, 1400, 1);
+    List<PacketTrace.Entry> packets = trace.getPackets();
+    VirtualScheduler scheduler = new VirtualScheduler(0);
+    VideoStreamProcessor processor = new VideoStreamProcessor(new FrameProcessor(), FPS,
+        scheduler, scheduler::nowMillis);
+
+    long overhead = allocatedBytes() - allocatedBytes();
+    long[] allocated = new long[ROUNDS];
+    int frame = 0;
+    int i = 0;
+    while (i < packets.size()) {
+      // Assembly is not part of the measured path, it runs on its own thread in production
+      scheduler.advanceTo(frame * FRAME_SPACING_MILLIS);
+      long timestamp = packets.get(i).getPacket().getTimestamp();
+      int end = i;
+      while (end < packets.size() && packets.get(end).getPacket().getTimestamp() == timestamp) {
+        end++;
+      }
+
+      long before = allocatedBytes();
+      for (int p = i; p < end; p++) {
+        processor.processPacket(packets.get(p).getPacket());
+      }
+      long after = allocatedBytes();
+
+      if (frame >= WARMUP_FRAMES) {
+        allocated[(frame - WARMUP_FRAMES) / FRAMES_PER_ROUND] += after - before - overhead;
+      }
+      i = end;
+      frame++;
+    }
+    processor.close();
+
+    String rounds = Arrays.toString(allocated);
+    Arrays.sort(allocated);
+    assertEquals(0, allocated[ROUNDS / 2],
+        "Bytes allocated per round of " + FRAMES_PER_ROUND + " frames: " + rounds);
+  }
+
+  @Test
+  void testDeserializeAllocatesOnlyThePacket() {
+    RTPPacketDeserializer deserializer = new RTPPacketDeserializer();
+    byte[] datagram = new RTPPacket(96, 1, 90_000, 123456, new byte[1200], true).toBytes();
+    // A receive buffer larger than the datagram, as a socket fills it
+    byte[] buffer = new byte[1500];
+    System.arraycopy(datagram, 0, buffer, 0, datagram.length);
+
+    for (int i = 0; i < 20_000; i++) {
+      deserializer.deserialize(buffer, datagram.length);
+    }
+    int count = 10_000;
+    long before = allocatedBytes();
+    long payloadBytes = 0;
+    for (int i = 0; i < count; i++) {
+      payloadBytes += deserializer.deserialize(buffer, datagram.length).getPayload().length;
+    }
+    long perPacket = (allocatedBytes() - before) / count;
+
+    assertEquals(1200L * count, payloadBytes, "The payload must not include the buffer's tail");
+    // The payload, the 12-byte header and the packet object with their headers, nothing else
+    assertTrue(perPacket <= 1200 + 128, "Bytes allocated per packet: " + perPacket);
+  }
+
+  private long allocatedBytes() {
+    return threads.getCurrentThreadAllocatedBytes();
+  }
+}
@@ -11,20 +11,35 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.util.Collections;
 import java.util.List;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import javax.imageio.ImageIO;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import space.hajnal.sentinel.camera.RTPClock;
+import space.hajnal.sentinel.network.RTPStreamReader;
 import space.hajnal.sentinel.network.model.RTPPacket;
+import space.hajnal.sentinel.network.model.ServerOptions;
+import space.hajnal.sentinel.network.receiver.RTPSocketReceiver;
+import space.hajnal.sentinel.network.sender.RTPSocketSender;
 import space.hajnal.sentinel.network.serialization.RTPPacketDeserializer;
 import space.hajnal.sentinel.network.serialization.RTPPacketSerializer;
+import space.hajnal.sentinel.network.video.simulation.ImpairmentProxy;
+import space.hajnal.sentinel.network.video.simulation.NetworkImpairment;
 
 class VideoStreamProcessorIntegrationTest {
 
@@ -106,4 +121,52 @@ class VideoStreamProcessorIntegrationTest {
     assertEquals(originalImage.getHeight(), reassembledImage.getHeight(), "Image height mismatch");
   }
 
-}
\ No newline at end of file
+  @Test
+  void testFramesDeliveredThroughImpairedLoopback() throws Exception {
+    int fps = 30;
+    int frames = 60;
+    VideoStreamProcessor processor = new VideoStreamProcessor(new FrameProcessor(), fps,
+        scheduler);
+    Set<Long> delivered = ConcurrentHashMap.newKeySet();
+    processor.addSubscriber(frame -> delivered.add(frame.getTimestamp()));
+
+    DatagramSocket receiverSocket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+    RTPSocketReceiver receiver = new RTPSocketReceiver(ServerOptions.builder().mtu(1500).build(),
+        new RTPPacketDeserializer(), 0);
+    ExecutorService readerThreads = Executors.newFixedThreadPool(2);
+    RTPStreamReader reader = new RTPStreamReader(processor, receiver, readerThreads);
+    reader.start(receiverSocket);
+
+    NetworkImpairment impairment = NetworkImpairment.builder().lossRate(0.02).jitterMillis(10)
+        .reorderRate(0.05).reorderDepth(2).duplicationRate(0.01).seed(3).build();
+    try (ImpairmentProxy proxy = new ImpairmentProxy(impairment,
+        (InetSocketAddress) receiverSocket.getLocalSocketAddress()).start()) {
+      RTPSocketSender sender = new RTPSocketSender(ServerOptions.builder()
+          .serverAddress(proxy.getLocalAddress().getHostString())
+          .serverPort(proxy.getLocalAddress().getPort())
+          .mtu(1400)
+          .build(), null, rtpPacketSerializer, new FrameProcessor());
+      sender.open(new DatagramSocket());
+
+      SplittableRandom random = new SplittableRandom(1);
+      for (int i = 0; i < frames; i++) {
+        byte[] frame = new byte[8_000];
+        random.nextBytes(frame);
+        sender.sendFrameData(frame, i * RTPClock.VIDEO_CLOCK_RATE / fps);
+        Thread.sleep(1000 / fps);
+      }
+      Thread.sleep(500);
+      sender.close();
+
+      assertTrue(proxy.getLost() > 0, "The impairment should have lost packets");
+      assertTrue(delivered.size() > frames / 2,
+          "Delivered " + delivered.size() + " of " + frames + " frames, proxy lost "
+          + proxy.getLost() + " of " + proxy.getReceived() + " packets");
+    } finally {
+      reader.close();
+      readerThreads.shutdownNow();
+      processor.close();
+    }
+  }
+
+}
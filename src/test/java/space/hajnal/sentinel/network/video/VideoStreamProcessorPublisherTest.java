@@ -0,0 +1,54 @@
+package space.hajnal.sentinel.network.video;
+
+import static org.mockito.Mockito.mock;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.AfterEach;
+import space.hajnal.sentinel.camera.model.SentinelFrame;
+import space.hajnal.sentinel.pipeline.FlowPublisherVerification;
+
+class VideoStreamProcessorPublisherTest extends FlowPublisherVerification<SentinelFrame> {
+
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+  private final AtomicLong produced = new AtomicLong(0);
+  private VideoStreamProcessor videoStreamProcessor;
+
+  @AfterEach
+  void tearDown() {
+    scheduler.shutdownNow();
+  }
+
+  @Override
+  protected Flow.Publisher<SentinelFrame> createPublisher() {
+    videoStreamProcessor = new VideoStreamProcessor(mock(FrameProcessor.class), 30, scheduler);
+    return videoStreamProcessor;
+  }
+
+  @Override
+  protected void publish(int count) {
+    for (int i = 0; i < count; i++) {
+      long timestamp = produced.get() * 3000;
+      videoStreamProcessor.notifySubscribers(SentinelFrame.builder()
+          .data(new byte[]{0, 0, 1, 0x41, (byte) i}).timestamp(timestamp).build());
+      produced.incrementAndGet();
+    }
+  }
+
+  @Override
+  protected void complete() {
+    videoStreamProcessor.close();
+  }
+
+  @Override
+  protected long getProduced() {
+    return produced.get();
+  }
+
+  @Override
+  protected int getBufferCapacity() {
+    return SubscriberOptions.builder().build().getQueueCapacity();
+  }
+}
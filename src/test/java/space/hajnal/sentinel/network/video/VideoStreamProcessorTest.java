@@ -1,17 +1,27 @@
 package space.hajnal.sentinel.network.video;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import space.hajnal.sentinel.camera.model.SentinelFrame;
 import space.hajnal.sentinel.network.model.RTPPacket;
+import space.hajnal.sentinel.network.video.simulation.VirtualScheduler;
+import space.hajnal.sentinel.pipeline.OverflowPolicy;
 
 class VideoStreamProcessorTest {
 
@@ -57,10 +67,193 @@ class VideoStreamProcessorTest {
     videoStreamProcessor.processPacket(packet2);
 
     // Assert
-    assertTrue(latch.await(3000, java.util.concurrent.TimeUnit.MILLISECONDS),
+    assertTrue(latch.await(3000, TimeUnit.MILLISECONDS),
         "Frame was not reassembled"); // need larger timeout for jitter
     assertNull(videoStreamProcessor.getFramesByTimestamp(1000L),
         "Frame buffer for timestamp 1000 should be removed");
   }
 
+
+  @Test
+  void testLateSubscriberReceivesFramesSinceLastKeyframe() throws InterruptedException {
+    SentinelFrame oldP = frame(new byte[]{0, 0, 1, 0x41, 1}, 1);
+    SentinelFrame keyframe = frame(new byte[]{0, 0, 1, 0x67, 1, 0, 0, 1, 0x65, 2}, 2);
+    SentinelFrame p = frame(new byte[]{0, 0, 1, 0x41, 3}, 3);
+    videoStreamProcessor.notifySubscribers(oldP);
+    videoStreamProcessor.notifySubscribers(keyframe);
+    videoStreamProcessor.notifySubscribers(p);
+
+    List<SentinelFrame> received = new CopyOnWriteArrayList<>();
+    CountDownLatch latch = new CountDownLatch(3);
+    videoStreamProcessor.addSubscriber(frame -> {
+      received.add(frame);
+      latch.countDown();
+    });
+    SentinelFrame next = frame(new byte[]{0, 0, 1, 0x41, 4}, 4);
+    videoStreamProcessor.notifySubscribers(next);
+
+    assertTrue(latch.await(3000, TimeUnit.MILLISECONDS));
+    assertEquals(List.of(keyframe, p, next), received,
+        "A new subscriber should start at the cached keyframe");
+  }
+
+  @Test
+  void testReplayRunsOnTheSubscribersThread() throws InterruptedException {
+    videoStreamProcessor.notifySubscribers(frame(new byte[]{0, 0, 1, 0x65, 1}, 1));
+
+    List<Thread> threads = new CopyOnWriteArrayList<>();
+    CountDownLatch latch = new CountDownLatch(1);
+    videoStreamProcessor.addSubscriber(frame -> {
+      threads.add(Thread.currentThread());
+      latch.countDown();
+    });
+
+    assertTrue(latch.await(3000, TimeUnit.MILLISECONDS));
+    assertNotSame(Thread.currentThread(), threads.get(0),
+        "Replaying must not call the listener while the cache is locked");
+  }
+
+  @Test
+  void testListenerCannotBlockAssembly() {
+    SubscriberOptions options = SubscriberOptions.builder()
+        .overflowPolicy(OverflowPolicy.BLOCK).build();
+
+    assertThrows(IllegalArgumentException.class,
+        () -> videoStreamProcessor.addSubscriber(frame -> {
+        }, options));
+  }
+
+  @Test
+  void testLostPacketRequestsKeyframe() throws InterruptedException {
+    List<Long> requested = new ArrayList<>();
+    CountDownLatch latch = new CountDownLatch(1);
+    videoStreamProcessor.setKeyframeRequestListener(ssrc -> {
+      requested.add(ssrc);
+      latch.countDown();
+    });
+
+    // Sequence number 2 never arrives
+    videoStreamProcessor.processPacket(packet(1000L, 1, false));
+    videoStreamProcessor.processPacket(packet(1000L, 3, true));
+
+    assertTrue(latch.await(3000, TimeUnit.MILLISECONDS),
+        "Losing a packet should request a keyframe");
+    assertEquals(List.of(123456L), requested);
+  }
+
+  @Test
+  void testSlowSubscriberDoesNotDelayOthers() throws InterruptedException {
+    CountDownLatch entered = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    SubscriberDispatcher slow = videoStreamProcessor.addSubscriber(frame -> {
+      entered.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }, SubscriberOptions.builder().queueCapacity(2).build());
+    CountDownLatch fastReceived = new CountDownLatch(10);
+    SubscriberDispatcher fast = videoStreamProcessor.addSubscriber(
+        frame -> fastReceived.countDown(), SubscriberOptions.builder().queueCapacity(16).build());
+
+    // Non-reference frames, so the slow subscriber only drops and does not wait for a keyframe
+    videoStreamProcessor.notifySubscribers(frame(new byte[]{0, 0, 1, 0x01, 1}, 0));
+    assertTrue(entered.await(3000, TimeUnit.MILLISECONDS));
+    for (int i = 1; i < 10; i++) {
+      videoStreamProcessor.notifySubscribers(frame(new byte[]{0, 0, 1, 0x01, 1}, i * 3000L));
+    }
+
+    assertTrue(fastReceived.await(3000, TimeUnit.MILLISECONDS),
+        "The fast subscriber must not wait for the slow one");
+    assertEquals(0, fast.getDropped());
+    assertEquals(2, slow.getLagFrames());
+    assertEquals(7, slow.getDropped(), "One frame is in the listener, two are queued");
+    assertEquals(300, slow.getLagMillis(), "Nine frames of 33 ms behind");
+    release.countDown();
+  }
+
+  @Test
+  void testSubscriberThatDropsAReferenceFrameSkipsToTheKeyframe() throws InterruptedException {
+    VirtualScheduler scheduler = new VirtualScheduler(0);
+    VideoStreamProcessor processor = new VideoStreamProcessor(frameProcessor, 30, scheduler,
+        scheduler::nowMillis);
+    byte[] predicted = {0, 0, 1, 0x41, 1};
+    byte[] idr = {0, 0, 1, 0x65, 1};
+    when(frameProcessor.reassembleFrame(any()))
+        .thenReturn(predicted, predicted, predicted, predicted, idr, predicted);
+    List<Long> requested = new CopyOnWriteArrayList<>();
+    processor.setKeyframeRequestListener(requested::add);
+    CountDownLatch entered = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    List<Long> delivered = new CopyOnWriteArrayList<>();
+    CountDownLatch done = new CountDownLatch(3);
+    SubscriberDispatcher slow = processor.addSubscriber(frame -> {
+      delivered.add(frame.getTimestamp());
+      entered.countDown();
+      done.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }, SubscriberOptions.builder().queueCapacity(1).build());
+
+    processor.processPacket(packet(0, 0, true));
+    scheduler.advanceTo(100);
+    assertTrue(entered.await(3000, TimeUnit.MILLISECONDS));
+    // Frame 1 is dropped for frame 2, which cannot be decoded without it, nor can frame 3
+    for (int i = 1; i < 5; i++) {
+      processor.processPacket(packet(i * 3000L, i, true));
+      scheduler.advanceTo((i + 1) * 100L);
+    }
+    release.countDown();
+    // A frame following too soon would evict the keyframe from the queue of one
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(3);
+    while (slow.getLagFrames() > 0 && System.nanoTime() < deadline) {
+      Thread.onSpinWait();
+    }
+    processor.processPacket(packet(5 * 3000L, 5, true));
+    scheduler.advanceTo(1000);
+
+    assertTrue(done.await(3000, TimeUnit.MILLISECONDS), "Delivered " + delivered);
+    assertEquals(List.of(0L, 4 * 3000L, 5 * 3000L), delivered,
+        "The subscriber should resume at the keyframe");
+    assertEquals(List.of(123456L), requested, "Dropping a reference frame requests a keyframe");
+    assertEquals(1, slow.getDropped());
+    assertEquals(2, slow.getSkipped());
+    processor.close();
+  }
+
+  @Test
+  void testAssemblesFramesAcrossTheTimestampWrap() {
+    VirtualScheduler scheduler = new VirtualScheduler(0);
+    VideoStreamProcessor processor = new VideoStreamProcessor(frameProcessor, 30, scheduler,
+        scheduler::nowMillis);
+    when(frameProcessor.reassembleFrame(any())).thenReturn(new byte[]{0, 0, 1, 0x41, 1});
+    List<Long> assembled = new ArrayList<>();
+    processor.setAssemblyObserver(frame -> assembled.add(frame.getTimestamp()));
+
+    List<Long> sent = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      long timestamp = (0xFFFFFFFFL - 2 * 3000 + i * 3000L) & 0xFFFFFFFFL;
+      sent.add(timestamp);
+      processor.processPacket(packet(timestamp, i, true));
+      scheduler.advanceTo((i + 1) * 100L);
+    }
+    scheduler.advanceTo(1000);
+
+    assertEquals(List.of(0xFFFFFFFFL - 6000, 0xFFFFFFFFL - 3000, 0xFFFFFFFFL, 2999L, 5999L,
+        8999L), sent);
+    assertEquals(sent, assembled, "Frames after the wrap should be assembled in order");
+    processor.close();
+  }
+
+  private static RTPPacket packet(long timestamp, int sequenceNumber, boolean marker) {
+    return new RTPPacket(96, sequenceNumber, timestamp, 123456L, new byte[]{1}, marker);
+  }
+
+  private static SentinelFrame frame(byte[] data, long timestamp) {
+    return SentinelFrame.builder().data(data).timestamp(timestamp).build();
+  }
 }
@@ -0,0 +1,170 @@
+package space.hajnal.sentinel.network.video.simulation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class ImpairmentProxyTest {
+
+  private final List<AutoCloseable> resources = new ArrayList<>();
+
+  @AfterEach
+  void tearDown() throws Exception {
+    for (AutoCloseable resource : resources) {
+      resource.close();
+    }
+  }
+
+  @Test
+  void testUnimpairedProxyForwardsEverythingInOrder() throws Exception {
+    DatagramChannel target = bind();
+    ImpairmentProxy proxy = start(NetworkImpairment.builder().build(), target);
+    DatagramChannel sender = bind();
+
+    send(sender, proxy, 100);
+
+    List<Integer> received = receive(target, 100, 2000);
+    assertEquals(100, received.size());
+    for (int i = 0; i < received.size(); i++) {
+      assertEquals(i, received.get(i));
+    }
+    assertEquals(100, proxy.getReceived());
+  }
+
+  @Test
+  void testSameSeedLosesSamePackets() throws Exception {
+    NetworkImpairment impairment = NetworkImpairment.builder().lossRate(0.2).burstStartRate(0.02)
+        .meanBurstLength(4).seed(9).build();
+
+    List<Integer> first = relay(impairment, 300);
+    List<Integer> second = relay(impairment, 300);
+
+    assertTrue(first.size() < 300 && first.size() > 100, "Received " + first.size());
+    assertEquals(first, second);
+  }
+
+  @Test
+  void testDelayHoldsPacketsBack() throws Exception {
+    DatagramChannel target = bind();
+    ImpairmentProxy proxy = start(NetworkImpairment.builder().delayMillis(80).build(), target);
+    DatagramChannel sender = bind();
+
+    long start = System.nanoTime();
+    send(sender, proxy, 1);
+    List<Integer> received = receive(target, 1, 2000);
+
+    assertEquals(List.of(0), received);
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(80));
+  }
+
+  @Test
+  void testReorderingDeliversOvertakenPacketLater() throws Exception {
+    DatagramChannel target = bind();
+    ImpairmentProxy proxy = start(NetworkImpairment.builder().reorderRate(0.2).reorderDepth(2)
+        .seed(5).build(), target);
+    DatagramChannel sender = bind();
+
+    send(sender, proxy, 200);
+    List<Integer> received = receive(target, 200, 2000);
+
+    assertEquals(200, received.size(), "Reordering must not lose packets");
+    assertTrue(proxy.getReordered() > 0);
+    boolean outOfOrder = false;
+    for (int i = 1; i < received.size(); i++) {
+      outOfOrder |= received.get(i) < received.get(i - 1);
+    }
+    assertTrue(outOfOrder, "Some packets should arrive after later ones");
+  }
+
+  @Test
+  void testBandwidthCapDropsWhatTheQueueCannotHold() throws Exception {
+    DatagramChannel target = bind();
+    // 80 kbit/s moves a 1000-byte packet in 100 ms, the queue holds about two of them
+    ImpairmentProxy proxy = start(NetworkImpairment.builder().bandwidthBitsPerSecond(80_000)
+        .queueLimitMillis(200).build(), target);
+    DatagramChannel sender = bind();
+
+    for (int i = 0; i < 20; i++) {
+      sender.send(ByteBuffer.allocate(1000).putInt(0, i), proxy.getLocalAddress());
+    }
+    List<Integer> received = receive(target, 20, 1000);
+
+    assertTrue(received.size() <= 4, "Received " + received.size());
+    assertTrue(proxy.getQueueDropped() >= 16, "Dropped " + proxy.getQueueDropped());
+  }
+
+  @Test
+  void testFeedbackFromTargetReturnsToSender() throws Exception {
+    DatagramChannel target = bind();
+    ImpairmentProxy proxy = start(NetworkImpairment.builder().lossRate(1).build(), target);
+    DatagramChannel sender = bind();
+    send(sender, proxy, 1);
+    assertTrue(receive(target, 1, 200).isEmpty(), "Media should have been lost");
+
+    target.send(ByteBuffer.allocate(4).putInt(0, 42), proxy.getLocalAddress());
+
+    List<Integer> feedback = receive(sender, 1, 2000);
+    assertEquals(List.of(42), feedback);
+  }
+
+  private List<Integer> relay(NetworkImpairment impairment, int count) throws Exception {
+    DatagramChannel target = bind();
+    send(bind(), start(impairment, target), count);
+    return receive(target, count, 300);
+  }
+
+  private ImpairmentProxy start(NetworkImpairment impairment, DatagramChannel target)
+      throws Exception {
+    ImpairmentProxy proxy = new ImpairmentProxy(impairment,
+        (InetSocketAddress) target.getLocalAddress());
+    resources.add(proxy);
+    return proxy.start();
+  }
+
+  private DatagramChannel bind() throws Exception {
+    DatagramChannel channel = DatagramChannel.open();
+    channel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    resources.add(channel);
+    return channel;
+  }
+
+  private static void send(DatagramChannel sender, ImpairmentProxy proxy, int count)
+      throws Exception {
+    for (int i = 0; i < count; i++) {
+      sender.send(ByteBuffer.allocate(4).putInt(0, i), proxy.getLocalAddress());
+      if (i % 50 == 49) {
+        Thread.sleep(5); // Stay within the socket buffers
+      }
+    }
+  }
+
+  /**
+   * Receives until the expected number of datagrams arrived or nothing came for the timeout.
+   */
+  private static List<Integer> receive(DatagramChannel channel, int expected, long timeoutMillis)
+      throws Exception {
+    channel.configureBlocking(false);
+    ByteBuffer buffer = ByteBuffer.allocate(1500);
+    List<Integer> received = new ArrayList<>();
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    while (received.size() < expected && System.nanoTime() < deadline) {
+      buffer.clear();
+      if (channel.receive(buffer) != null) {
+        received.add(buffer.getInt(0));
+        deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+      } else {
+        Thread.sleep(1);
+      }
+    }
+    return received;
+  }
+}
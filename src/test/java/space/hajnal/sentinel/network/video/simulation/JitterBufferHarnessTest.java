@@ -0,0 +1,128 @@
+package space.hajnal.sentinel.network.video.simulation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class JitterBufferHarnessTest {
+
+  private static final int FPS = 30;
+
+  private final PacketTrace trace = PacketTrace.generate(120, FPS, 30, 20_000, 3_000, 1400, 7);
+  private final JitterBufferHarness harness = new JitterBufferHarness(FPS);
+
+  @Test
+  void testSameInputsGiveSameReport() {
+    NetworkImpairment impairment = NetworkImpairment.builder().lossRate(0.02).reorderRate(0.05)
+        .reorderDepth(3).duplicationRate(0.02).jitterMillis(15).seed(3).build();
+
+    JitterBufferReport first = harness.run("combined", trace, impairment);
+    JitterBufferReport second = harness.run("combined", trace, impairment);
+
+    assertEquals(first.getPacketsReceived(), second.getPacketsReceived());
+    assertEquals(first.getFramesDelivered(), second.getFramesDelivered());
+    assertEquals(first.getLatencyP50Millis(), second.getLatencyP50Millis());
+    assertEquals(first.getLatencyP99Millis(), second.getLatencyP99Millis());
+    assertEquals(first.getLatencyMaxMillis(), second.getLatencyMaxMillis());
+  }
+
+  @Test
+  void testPerfectNetworkReceivesEveryPacket() {
+    JitterBufferReport report = harness.run("perfect", trace, NetworkImpairment.builder().build());
+
+    assertEquals(trace.size(), report.getPacketsSent());
+    assertEquals(trace.size(), report.getPacketsReceived());
+    assertEquals(120, report.getFramesSent());
+    assertEquals(report.getFramesSent(), report.getFramesDelivered() + report.getFramesDropped());
+    assertEquals(0, report.getFramesDropped(), report.toString());
+    assertTrue(report.getLatencyP50Millis() <= report.getLatencyP99Millis());
+  }
+
+  @Test
+  void testLossDeliversFewerFrames() {
+    JitterBufferReport perfect = harness.run("perfect", trace,
+        NetworkImpairment.builder().build());
+    JitterBufferReport lossy = harness.run("loss", trace,
+        NetworkImpairment.builder().lossRate(0.3).build());
+
+    assertTrue(lossy.getPacketsReceived() < perfect.getPacketsReceived());
+    assertTrue(lossy.getFramesDelivered() < perfect.getFramesDelivered(),
+        perfect + " vs " + lossy);
+  }
+
+  @Test
+  void testImpairments() {
+    List<NetworkImpairment.Arrival> lost = NetworkImpairment.builder().burstStartRate(0.05)
+        .meanBurstLength(4).build().apply(trace);
+    assertTrue(lost.size() < trace.size());
+
+    List<NetworkImpairment.Arrival> duplicated = NetworkImpairment.builder().duplicationRate(0.1)
+        .build().apply(trace);
+    assertTrue(duplicated.size() > trace.size());
+
+    List<NetworkImpairment.Arrival> reordered = NetworkImpairment.builder().reorderRate(0.1)
+        .reorderDepth(2).build().apply(trace);
+    assertEquals(trace.size(), reordered.size());
+    boolean outOfOrder = false;
+    for (int i = 1; i < reordered.size(); i++) {
+      int previous = reordered.get(i - 1).getPacket().getSequenceNumber();
+      outOfOrder |= reordered.get(i).getPacket().getSequenceNumber() < previous;
+    }
+    assertTrue(outOfOrder, "Some packets should be overtaken");
+
+    long maxDelay = NetworkImpairment.builder().jitterMillis(20).build().apply(trace).stream()
+        .mapToLong(arrival -> arrival.getArrivalTimeMillis() - arrival.getSendTimeMillis())
+        .max().orElseThrow();
+    assertTrue(maxDelay > 0 && maxDelay <= 20, "Delay was " + maxDelay);
+  }
+
+  @Test
+  void testTraceRoundTrip() throws IOException {
+    ByteArrayOutputStream recording = new ByteArrayOutputStream();
+    trace.write(recording);
+
+    PacketTrace read = PacketTrace.read(new ByteArrayInputStream(recording.toByteArray()));
+
+    assertEquals(trace.size(), read.size());
+    for (int i = 0; i < trace.size(); i++) {
+      PacketTrace.Entry expected = trace.getPackets().get(i);
+      PacketTrace.Entry actual = read.getPackets().get(i);
+      assertEquals(expected.getSendTimeMillis(), actual.getSendTimeMillis());
+      assertEquals(expected.getPacket().getSequenceNumber(),
+          actual.getPacket().getSequenceNumber());
+      assertEquals(expected.getPacket().getTimestamp(), actual.getPacket().getTimestamp());
+    }
+  }
+
+  @Test
+  void testVirtualSchedulerRunsTasksInTimeOrder() {
+    VirtualScheduler scheduler = new VirtualScheduler(0);
+    List<String> runs = new ArrayList<>();
+    scheduler.schedule(() -> runs.add("b@" + scheduler.nowMillis()), 20, TimeUnit.MILLISECONDS);
+    scheduler.schedule(() -> runs.add("a@" + scheduler.nowMillis()), 10, TimeUnit.MILLISECONDS);
+    scheduler.schedule(() -> runs.add("c@" + scheduler.nowMillis()), 20, TimeUnit.MILLISECONDS);
+    scheduler.scheduleAtFixedRate(() -> runs.add("tick@" + scheduler.nowMillis()), 0, 15,
+        TimeUnit.MILLISECONDS);
+
+    assertEquals(6, scheduler.advanceTo(30));
+
+    assertEquals(List.of("tick@0", "a@10", "tick@15", "b@20", "c@20", "tick@30"), runs);
+    assertEquals(30, scheduler.nowMillis());
+  }
+
+  @Test
+  void testPercentile() {
+    long[] sorted = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+
+    assertEquals(5, JitterBufferHarness.percentile(sorted, 50));
+    assertEquals(10, JitterBufferHarness.percentile(sorted, 95));
+    assertEquals(0, JitterBufferHarness.percentile(new long[0], 50));
+  }
+}
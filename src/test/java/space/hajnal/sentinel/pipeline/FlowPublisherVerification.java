@@ -0,0 +1,261 @@
+package space.hajnal.sentinel.pipeline;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks a {@link Flow.Publisher} against the Reactive Streams publisher and subscription rules,
+ * in the spirit of the Reactive Streams TCK. Subclasses create the publisher and drive it.
+ * <p>
+ * Rule numbers refer to the Reactive Streams specification for the JVM, version 1.0.4.
+ *
+ * @param <T> The type of the published items
+ */
+public abstract class FlowPublisherVerification<T> {
+
+  private static final long TIMEOUT_MILLIS = 3000;
+  private static final long NO_SIGNAL_MILLIS = 200;
+
+  /**
+   * @return A new publisher, the other hooks act on the one created last
+   */
+  protected abstract Flow.Publisher<T> createPublisher();
+
+  /**
+   * Publishes items, blocking while the publisher applies backpressure.
+   */
+  protected abstract void publish(int count);
+
+  /**
+   * Ends the stream, subscribers must be completed after the published items.
+   */
+  protected abstract void complete();
+
+  /**
+   * @return The number of items the publisher has produced so far
+   */
+  protected abstract long getProduced();
+
+  /**
+   * @return The number of items a subscriber without demand can hold before the producer waits
+   */
+  protected abstract int getBufferCapacity();
+
+  @Test
+  void required_spec109_mustIssueOnSubscribeBeforeAnyOtherSignal() throws Exception {
+    TestSubscriber<T> subscriber = subscribe();
+
+    assertNotNull(subscriber.awaitSubscription());
+    assertTrue(subscriber.items.isEmpty());
+  }
+
+  @Test
+  void required_spec109_subscribeNullMustThrowNullPointerException() {
+    Flow.Publisher<T> publisher = createPublisher();
+
+    assertThrows(NullPointerException.class, () -> publisher.subscribe(null));
+  }
+
+  @Test
+  void required_spec101_mustNotSignalMoreThanRequested() throws Exception {
+    TestSubscriber<T> subscriber = subscribe();
+    subscriber.awaitSubscription().request(3);
+    publishInBackground(5);
+
+    subscriber.awaitItems(3);
+    Thread.sleep(NO_SIGNAL_MILLIS);
+    assertEquals(3, subscriber.items.size(), "Only the requested items may be signalled");
+
+    subscriber.subscription.get().request(2);
+    subscriber.awaitItems(5);
+  }
+
+  @Test
+  void required_spec102_demandMustThrottleTheProducer() throws Exception {
+    TestSubscriber<T> subscriber = subscribe();
+    subscriber.awaitSubscription();
+    int count = getBufferCapacity() + 5;
+    CompletableFuture<Void> publishing = publishInBackground(count);
+
+    Thread.sleep(NO_SIGNAL_MILLIS);
+    assertFalse(publishing.isDone(), "The producer must wait for demand");
+    assertTrue(getProduced() <= getBufferCapacity() + 1,
+        "Produced " + getProduced() + " items without demand");
+
+    subscriber.subscription.get().request(Long.MAX_VALUE);
+    publishing.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    subscriber.awaitItems(count);
+  }
+
+  @Test
+  void required_spec103_mustSignalSerially() throws Exception {
+    TestSubscriber<T> subscriber = subscribe();
+    subscriber.awaitSubscription().request(Long.MAX_VALUE);
+    publishInBackground(50);
+    publishInBackground(50);
+
+    subscriber.awaitItems(100);
+    assertFalse(subscriber.overlapped.get(), "onNext must not be called concurrently");
+  }
+
+  @Test
+  void required_spec105_mustCompleteAfterPublishedItems() throws Exception {
+    TestSubscriber<T> subscriber = subscribe();
+    subscriber.awaitSubscription();
+    publish(2);
+    complete();
+
+    assertFalse(subscriber.completed.await(NO_SIGNAL_MILLIS, TimeUnit.MILLISECONDS),
+        "Queued items must be delivered before onComplete");
+    subscriber.subscription.get().request(5);
+    assertTrue(subscriber.completed.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+    assertEquals(2, subscriber.items.size());
+  }
+
+  @Test
+  void required_spec303_requestFromOnNextMustNotRecurse() throws Exception {
+    TestSubscriber<T> subscriber = subscribe();
+    subscriber.requestOnNext = true;
+    subscriber.awaitSubscription().request(1);
+    publishInBackground(20);
+
+    subscriber.awaitItems(20);
+    assertEquals(1, subscriber.maxDepth.get(), "onNext was re-entered from request");
+  }
+
+  @Test
+  void required_spec306_cancelMustStopSignalsAndReleaseTheProducer() throws Exception {
+    TestSubscriber<T> subscriber = subscribe();
+    subscriber.awaitSubscription().request(1);
+    CompletableFuture<Void> publishing = publishInBackground(getBufferCapacity() + 5);
+    subscriber.awaitItems(1);
+
+    subscriber.subscription.get().cancel();
+    subscriber.subscription.get().cancel(); // Rule 3.7, cancel is idempotent
+    subscriber.subscription.get().request(10);
+
+    publishing.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    Thread.sleep(NO_SIGNAL_MILLIS);
+    assertEquals(1, subscriber.items.size());
+  }
+
+  @Test
+  void required_spec309_nonPositiveRequestMustSignalIllegalArgumentException() throws Exception {
+    TestSubscriber<T> subscriber = subscribe();
+    subscriber.awaitSubscription().request(0);
+
+    assertTrue(subscriber.failed.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+    assertInstanceOf(IllegalArgumentException.class, subscriber.error.get());
+  }
+
+  @Test
+  void required_spec317_mustSupportDemandBeyondLongMaxValue() throws Exception {
+    TestSubscriber<T> subscriber = subscribe();
+    Flow.Subscription subscription = subscriber.awaitSubscription();
+    subscription.request(Long.MAX_VALUE);
+    subscription.request(Long.MAX_VALUE);
+    publishInBackground(10);
+
+    subscriber.awaitItems(10);
+    assertTrue(subscriber.error.get() == null, "Overflowing demand is not an error");
+  }
+
+  private TestSubscriber<T> subscribe() {
+    TestSubscriber<T> subscriber = new TestSubscriber<>();
+    createPublisher().subscribe(subscriber);
+    return subscriber;
+  }
+
+  private CompletableFuture<Void> publishInBackground(int count) {
+    CompletableFuture<Void> done = new CompletableFuture<>();
+    Thread.ofVirtual().start(() -> {
+      publish(count);
+      done.complete(null);
+    });
+    return done;
+  }
+
+  protected static void await(BooleanSupplier condition, String message)
+      throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    while (!condition.getAsBoolean()) {
+      if (System.currentTimeMillis() > deadline) {
+        throw new AssertionError(message);
+      }
+      Thread.sleep(5);
+    }
+  }
+
+  static class TestSubscriber<T> implements Flow.Subscriber<T> {
+
+    final List<T> items = new CopyOnWriteArrayList<>();
+    final AtomicReference<Flow.Subscription> subscription = new AtomicReference<>();
+    final AtomicReference<Throwable> error = new AtomicReference<>();
+    final CountDownLatch subscribed = new CountDownLatch(1);
+    final CountDownLatch completed = new CountDownLatch(1);
+    final CountDownLatch failed = new CountDownLatch(1);
+    final AtomicBoolean overlapped = new AtomicBoolean(false);
+    final AtomicInteger depth = new AtomicInteger(0);
+    final AtomicInteger maxDepth = new AtomicInteger(0);
+    volatile boolean requestOnNext = false;
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      if (!this.subscription.compareAndSet(null, subscription)) {
+        throw new AssertionError("onSubscribe must be signalled only once");
+      }
+      subscribed.countDown();
+    }
+
+    @Override
+    public void onNext(T item) {
+      if (subscription.get() == null) {
+        throw new AssertionError("onNext before onSubscribe");
+      }
+      int current = depth.incrementAndGet();
+      overlapped.compareAndSet(false, current > 1 && !requestOnNext);
+      maxDepth.accumulateAndGet(current, Math::max);
+      items.add(item);
+      if (requestOnNext) {
+        subscription.get().request(1);
+      }
+      depth.decrementAndGet();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      error.set(throwable);
+      failed.countDown();
+    }
+
+    @Override
+    public void onComplete() {
+      completed.countDown();
+    }
+
+    Flow.Subscription awaitSubscription() throws InterruptedException {
+      assertTrue(subscribed.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS), "No onSubscribe");
+      return subscription.get();
+    }
+
+    void awaitItems(int count) throws InterruptedException {
+      await(() -> items.size() >= count, "Received " + items.size() + " of " + count + " items");
+    }
+  }
+}
@@ -0,0 +1,51 @@
+package space.hajnal.sentinel.pipeline;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+class PipelineStageTest {
+
+  @Test
+  @Timeout(5)
+  void testStageTransformsAndForwards() throws InterruptedException {
+    StageQueue<Integer> input = new StageQueue<>("in", 4, OverflowPolicy.BLOCK);
+    StageQueue<String> output = new StageQueue<>("out", 4, OverflowPolicy.BLOCK);
+    PipelineStage<Integer, String> stage = new PipelineStage<>("double", input,
+        i -> String.valueOf(i * 2), output::offer);
+
+    stage.start();
+    input.offer(21);
+
+    assertEquals("42", output.poll(1, TimeUnit.SECONDS));
+    stage.close();
+    assertEquals(1, stage.getMetrics().getProcessed());
+  }
+
+  @Test
+  @Timeout(5)
+  void testFailureIsCountedAndStageKeepsRunning() throws InterruptedException {
+    StageQueue<Integer> input = new StageQueue<>("in", 4, OverflowPolicy.BLOCK);
+    CountDownLatch latch = new CountDownLatch(1);
+    PipelineStage<Integer, Void> stage = PipelineStage.sink("sink", input, i -> {
+      if (i == 0) {
+        throw new IllegalArgumentException("boom");
+      }
+      latch.countDown();
+    });
+
+    stage.start();
+    input.offer(0);
+    input.offer(1);
+
+    assertTrue(latch.await(1, TimeUnit.SECONDS), "Stage should survive a failing item");
+    assertEquals(1, stage.getMetrics().getFailed());
+    stage.close();
+    assertFalse(stage.isRunning());
+  }
+}
@@ -0,0 +1,78 @@
+package space.hajnal.sentinel.pipeline;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+class StageQueueTest {
+
+  @Test
+  void testDropOldestEvictsHead() throws InterruptedException {
+    List<Integer> dropped = new ArrayList<>();
+    StageQueue<Integer> queue = new StageQueue<>("test", 2, OverflowPolicy.DROP_OLDEST,
+        dropped::add);
+
+    queue.offer(1);
+    queue.offer(2);
+    queue.offer(3);
+
+    assertEquals(List.of(1), dropped);
+    assertEquals(1, queue.getDropped());
+    assertEquals(2, queue.take());
+    assertEquals(3, queue.take());
+  }
+
+  @Test
+  void testLatestWinsKeepsOnlyNewest() throws InterruptedException {
+    StageQueue<Integer> queue = new StageQueue<>("test", 4, OverflowPolicy.LATEST_WINS);
+
+    queue.offer(1);
+    queue.offer(2);
+    queue.offer(3);
+
+    assertEquals(1, queue.size());
+    assertEquals(2, queue.getDropped());
+    assertEquals(3, queue.take());
+  }
+
+  @Test
+  @Timeout(5)
+  void testBlockWaitsForConsumer() throws InterruptedException {
+    StageQueue<Integer> queue = new StageQueue<>("test", 1, OverflowPolicy.BLOCK);
+    queue.offer(1);
+    CountDownLatch offered = new CountDownLatch(1);
+
+    Thread producer = Thread.ofPlatform().start(() -> {
+      queue.offer(2);
+      offered.countDown();
+    });
+
+    assertFalse(offered.await(100, TimeUnit.MILLISECONDS), "Offer should block while full");
+    assertEquals(1, queue.take());
+    assertTrue(offered.await(1, TimeUnit.SECONDS), "Offer should complete after take");
+    assertEquals(2, queue.take());
+    assertEquals(0, queue.getDropped());
+    producer.join();
+  }
+
+  @Test
+  void testInterruptedBlockingOfferDropsItem() {
+    List<Integer> dropped = new ArrayList<>();
+    StageQueue<Integer> queue = new StageQueue<>("test", 1, OverflowPolicy.BLOCK, dropped::add);
+    queue.offer(1);
+
+    Thread.currentThread().interrupt();
+    boolean accepted = queue.offer(2);
+
+    assertFalse(accepted);
+    assertTrue(Thread.interrupted(), "Interrupt flag should be restored");
+    assertEquals(List.of(2), dropped);
+  }
+}
@@ -0,0 +1,197 @@
+package space.hajnal.sentinel.recording;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import space.hajnal.sentinel.camera.RTPClock;
+import space.hajnal.sentinel.network.RTPStreamReader;
+import space.hajnal.sentinel.network.inprocess.InProcessChannel;
+import space.hajnal.sentinel.network.inprocess.InProcessReceiver;
+import space.hajnal.sentinel.network.inprocess.InProcessTransmitter;
+import space.hajnal.sentinel.network.model.FrameMarking;
+import space.hajnal.sentinel.network.model.RTPPacket;
+import space.hajnal.sentinel.network.model.ServerOptions;
+import space.hajnal.sentinel.network.sender.RTPSocketSender;
+import space.hajnal.sentinel.network.serialization.RTPPacketSerializer;
+import space.hajnal.sentinel.network.video.FrameProcessor;
+import space.hajnal.sentinel.network.video.VideoStreamProcessor;
+
+class StreamRecorderTest {
+
+  private static final int MTU = 1400;
+  private static final int GOP = 5;
+
+  @TempDir
+  Path directory;
+
+  private final RTPPacketSerializer serializer = new RTPPacketSerializer();
+  private final SplittableRandom random = new SplittableRandom(3);
+
+  @Test
+  void testSegmentIndexesEveryFrame() throws IOException {
+    StreamRecorder recorder = new StreamRecorder(RecorderOptions.builder()
+        .directory(directory).stream("camera-0").build());
+    List<List<RTPPacket>> frames = new ArrayList<>();
+    for (int i = 0; i < 12; i++) {
+      frames.add(frame(i));
+      frames.getLast().forEach(recorder::record);
+    }
+    recorder.close();
+
+    List<Path> segments = segments();
+    assertEquals(1, segments.size());
+    try (SegmentReader reader = new SegmentReader(segments.getFirst())) {
+      assertEquals(frames.size(), reader.getFrameCount());
+      for (int i = 0; i < frames.size(); i++) {
+        assertEquals(timestamp(i), reader.getTimestamp(i));
+        assertEquals(i % GOP == 0, reader.isKeyframe(i), "Frame " + i);
+        List<RTPPacket> packets = reader.readFrame(i);
+        assertEquals(frames.get(i).size(), packets.size());
+        for (int p = 0; p < packets.size(); p++) {
+          assertArrayEquals(frames.get(i).get(p).toBytes(), packets.get(p).toBytes());
+        }
+      }
+      assertEquals(7, reader.findFrame(timestamp(7)));
+      assertEquals(-1, reader.findFrame(1));
+    }
+    assertEquals(frames.stream().mapToInt(List::size).sum(), recorder.getPacketsRecorded());
+  }
+
+  @Test
+  void testLatePacketDoesNotStartAFrame() throws IOException {
+    StreamRecorder recorder = new StreamRecorder(RecorderOptions.builder()
+        .directory(directory).stream("camera-0").build());
+    List<RTPPacket> first = frame(0);
+    List<RTPPacket> second = frame(1);
+    first.subList(0, first.size() - 1).forEach(recorder::record);
+    second.subList(0, 2).forEach(recorder::record);
+    // The last packet of the first frame arrives after the second frame started
+    recorder.record(first.getLast());
+    second.subList(2, second.size()).forEach(recorder::record);
+    frame(2).forEach(recorder::record);
+    recorder.close();
+
+    try (SegmentReader reader = new SegmentReader(segments().getFirst())) {
+      assertEquals(3, reader.getFrameCount());
+      assertEquals(timestamp(0), reader.getTimestamp(0));
+      assertEquals(timestamp(1), reader.getTimestamp(1));
+      assertEquals(timestamp(2), reader.getTimestamp(2));
+      assertFalse(reader.isKeyframe(1), "The late keyframe packet belongs to frame 0");
+      assertEquals(first.size() - 1, reader.readFrame(0).size());
+      assertEquals(second.size() + 1, reader.readFrame(1).size());
+    }
+  }
+
+  @Test
+  void testRotatesAtKeyframeOnceSegmentIsFull() throws IOException {
+    // Every frame takes about 10 KB, so a segment is full within a GOP but not yet overdue
+    StreamRecorder recorder = new StreamRecorder(RecorderOptions.builder()
+        .directory(directory).maxSegmentBytes(25_000).writeBufferBytes(64 * 1024).build());
+    for (int i = 0; i < 4 * GOP; i++) {
+      frame(i).forEach(recorder::record);
+    }
+    recorder.close();
+
+    List<Path> segments = segments();
+    assertEquals(4, segments.size());
+    assertEquals(4, recorder.getSegments());
+    int frames = 0;
+    for (Path segment : segments) {
+      try (SegmentReader reader = new SegmentReader(segment)) {
+        assertTrue(reader.isKeyframe(0), segment + " should start with a keyframe");
+        assertEquals(GOP, reader.getFrameCount());
+        frames += reader.getFrameCount();
+      }
+    }
+    assertEquals(4 * GOP, frames);
+  }
+
+  @Test
+  void testWritesPacketsLargerThanBuffer() throws IOException {
+    StreamRecorder recorder = new StreamRecorder(RecorderOptions.builder()
+        .directory(directory).writeBufferBytes(1024).build());
+    List<RTPPacket> packets = frame(0);
+    packets.forEach(recorder::record);
+    recorder.close();
+
+    assertEquals(0, recorder.getWriteErrors());
+    try (SegmentReader reader = new SegmentReader(segments().getFirst())) {
+      List<RTPPacket> recorded = reader.readFrame(0);
+      assertEquals(packets.size(), recorded.size());
+      for (int p = 0; p < packets.size(); p++) {
+        assertArrayEquals(packets.get(p).toBytes(), recorded.get(p).toBytes());
+      }
+    }
+  }
+
+  @Test
+  void testRecordsPacketsOfReader() throws Exception {
+    InProcessChannel channel = new InProcessChannel();
+    RTPSocketSender sender = new RTPSocketSender(new InProcessTransmitter(channel),
+        ServerOptions.builder().mtu(MTU).build(), null, serializer, new FrameProcessor());
+    ExecutorService readerThreads = Executors.newFixedThreadPool(2);
+    RTPStreamReader reader = new RTPStreamReader(mock(VideoStreamProcessor.class),
+        new InProcessReceiver(channel), readerThreads);
+    StreamRecorder recorder = new StreamRecorder(RecorderOptions.builder()
+        .directory(directory).build());
+    recorder.subscribeTo(reader);
+    reader.start(null);
+    sender.open(null);
+
+    int packets = 0;
+    try {
+      for (int i = 0; i < 10; i++) {
+        byte[] frame = new byte[5_000];
+        random.nextBytes(frame);
+        sender.sendFrameData(frame, timestamp(i));
+        packets += serializer.serialize(frame, MTU, 0, 0).size();
+      }
+      long deadline = System.currentTimeMillis() + 2000;
+      while (recorder.getPacketsRecorded() < packets && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+    } finally {
+      reader.close();
+      readerThreads.shutdownNow();
+      recorder.close();
+    }
+
+    assertEquals(packets, recorder.getPacketsRecorded());
+    assertEquals(0, recorder.getDropped());
+    try (SegmentReader segment = new SegmentReader(segments().getFirst())) {
+      assertEquals(10, segment.getFrameCount());
+      assertFalse(segment.readFrame(9).isEmpty());
+    }
+  }
+
+  private List<RTPPacket> frame(int number) {
+    byte[] data = new byte[10_000];
+    random.nextBytes(data);
+    FrameMarking marking = FrameMarking.builder().independent(number % GOP == 0).build();
+    return serializer.serialize(data, MTU, timestamp(number), 4242, marking);
+  }
+
+  private static long timestamp(int number) {
+    return 90_000 + (long) number * RTPClock.VIDEO_CLOCK_RATE / 30;
+  }
+
+  private List<Path> segments() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.filter(path -> path.toString().endsWith(".rtp")).sorted().toList();
+    }
+  }
+}
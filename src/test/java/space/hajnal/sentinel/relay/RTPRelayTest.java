@@ -0,0 +1,321 @@
+package space.hajnal.sentinel.relay;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import space.hajnal.sentinel.network.model.FrameMarking;
+import space.hajnal.sentinel.network.model.RTCPFeedback;
+import space.hajnal.sentinel.network.model.RTPPacket;
+import space.hajnal.sentinel.network.model.ServerOptions;
+import space.hajnal.sentinel.network.sender.PacketTransmitter;
+import space.hajnal.sentinel.network.sender.RTPSocketSender;
+import space.hajnal.sentinel.network.serialization.RTCPFeedbackDeserializer;
+import space.hajnal.sentinel.network.serialization.RTPPacketDeserializer;
+import space.hajnal.sentinel.network.serialization.RTPPacketSerializer;
+import space.hajnal.sentinel.network.video.FrameProcessor;
+
+class RTPRelayTest {
+
+  private static final long CAMERA_SSRC = 1111;
+  private static final InetSocketAddress CAMERA = new InetSocketAddress(
+      InetAddress.getLoopbackAddress(), 5004);
+  private static final byte[] P_FRAME = {0, 0, 0, 1, 0x41, 1, 2, 3};
+  private static final byte[] KEYFRAME = {0, 0, 0, 1, 0x67, 1, 0, 0, 0, 1, 0x65, 4, 5, 6};
+
+  private final RTPPacketSerializer serializer = new RTPPacketSerializer();
+  private final List<DatagramChannel> channels = new ArrayList<>();
+  private RTPRelay relay;
+
+  @BeforeEach
+  void setUp() {
+    relay = new RTPRelay(RelayOptions.builder().build());
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    relay.close();
+    for (DatagramChannel channel : channels) {
+      channel.close();
+    }
+  }
+
+  @Test
+  void testSubscriberStartsAtKeyframeWithItsOwnSsrc() throws Exception {
+    DatagramChannel relayChannel = bind();
+    DatagramChannel viewer = bind();
+    relay.attach(CAMERA_SSRC, (InetSocketAddress) viewer.getLocalAddress(), 7777);
+    relay.start(relayChannel);
+
+    DatagramChannel camera = bind();
+    send(camera, relayChannel, P_FRAME, 3000, false);
+    send(camera, relayChannel, KEYFRAME, 6000, true);
+    send(camera, relayChannel, P_FRAME, 9000, false);
+
+    RTPPacket first = receive(viewer);
+    assertNotNull(first, "Nothing was forwarded");
+    assertEquals(6000, first.getTimestamp(), "Forwarding should start at the keyframe");
+    assertEquals(7777, first.getSsrc());
+    assertArrayEquals(KEYFRAME, first.getPayload());
+    assertEquals(1, FrameMarking.of(first).getTl0PicIndex(), "Extension should pass unchanged");
+
+    RTPPacket second = receive(viewer);
+    assertNotNull(second);
+    assertEquals(9000, second.getTimestamp());
+
+    RelayStream stream = relay.getStreams().getFirst();
+    assertEquals(CAMERA_SSRC, stream.getSsrc());
+    assertEquals(3, stream.getPackets());
+    assertEquals(6000, stream.getLastKeyframeTimestamp());
+  }
+
+  @Test
+  void testLateSubscriberGetsCachedKeyframeOnJoin() throws Exception {
+    relay.onPacket(direct(P_FRAME, 3000, false), CAMERA);
+    relay.onPacket(direct(KEYFRAME, 6000, true), CAMERA);
+    relay.onPacket(direct(P_FRAME, 9000, false), CAMERA);
+    DatagramChannel viewer = bind();
+    RelaySubscriber subscriber = relay.attach(CAMERA_SSRC,
+        (InetSocketAddress) viewer.getLocalAddress());
+
+    relay.onPacket(direct(P_FRAME, 12000, false), CAMERA);
+
+    assertEquals(3, relay.getStreams().getFirst().getCachedPackets(),
+        "Cache should hold the keyframe and the frames after it");
+    assertEquals(6000, receive(viewer).getTimestamp());
+    assertEquals(9000, receive(viewer).getTimestamp());
+    assertEquals(12000, receive(viewer).getTimestamp());
+    assertEquals(3, subscriber.getForwarded());
+  }
+
+  @Test
+  void testSubscriberNumbersFromItsOwnBaseAcrossTheReplay() throws Exception {
+    relay.onPacket(direct(KEYFRAME, 3000, true, 40_000), CAMERA);
+    relay.onPacket(direct(P_FRAME, 6000, false, 40_001), CAMERA);
+    DatagramChannel viewer = bind();
+    relay.attach(CAMERA_SSRC, (InetSocketAddress) viewer.getLocalAddress(), 7777, 65_535);
+
+    relay.onPacket(direct(P_FRAME, 9000, false, 40_002), CAMERA);
+    // Packet 40_003 is lost
+    relay.onPacket(direct(P_FRAME, 12000, false, 40_004), CAMERA);
+    // The camera restarts its numbering
+    relay.onPacket(direct(KEYFRAME, 15000, true, 12), CAMERA);
+
+    assertEquals(65_535, receive(viewer).getSequenceNumber(), "The replay starts at the base");
+    assertEquals(0, receive(viewer).getSequenceNumber());
+    assertEquals(1, receive(viewer).getSequenceNumber(), "Live packets follow the replay");
+    assertEquals(3, receive(viewer).getSequenceNumber(), "Loss must stay visible");
+    assertEquals(4, receive(viewer).getSequenceNumber(), "A restart must not look like loss");
+  }
+
+  @Test
+  void testSubscriberSequenceNumbersIncreaseAcrossFrames() throws Exception {
+    PacketTransmitter camera = mock(PacketTransmitter.class);
+    when(camera.isOpen()).thenReturn(true);
+    RTPSocketSender sender = new RTPSocketSender(camera,
+        ServerOptions.builder().mtu(100).ssrc(CAMERA_SSRC).build(), null, serializer,
+        new FrameProcessor());
+    byte[] keyframe = Arrays.copyOf(KEYFRAME, 250);
+    byte[] pFrame = Arrays.copyOf(P_FRAME, 250);
+    sender.sendFrameData(keyframe, 3000);
+    for (int i = 2; i <= 4; i++) {
+      sender.sendFrameData(pFrame, i * 3000L);
+    }
+    ArgumentCaptor<RTPPacket> sent = ArgumentCaptor.forClass(RTPPacket.class);
+    verify(camera, atLeast(12)).transmit(sent.capture());
+    DatagramChannel viewer = bind();
+    relay.attach(CAMERA_SSRC, (InetSocketAddress) viewer.getLocalAddress(), 7777, 65_530);
+
+    for (RTPPacket packet : sent.getAllValues()) {
+      byte[] bytes = packet.toBytes();
+      relay.onPacket(ByteBuffer.allocateDirect(bytes.length).put(bytes).flip(), CAMERA);
+    }
+
+    int previous = receive(viewer).getSequenceNumber();
+    assertEquals(65_530, previous);
+    for (int i = 1; i < sent.getAllValues().size(); i++) {
+      int sequenceNumber = receive(viewer).getSequenceNumber();
+      assertEquals((previous + 1) & 0xFFFF, sequenceNumber,
+          "Packet " + i + " should follow the previous one across frames");
+      previous = sequenceNumber;
+    }
+  }
+
+  @Test
+  void testPliOnTheRelayPortIsSentToTheCamera() throws Exception {
+    DatagramChannel relayChannel = bind();
+    DatagramChannel viewer = bind();
+    relay.attach(CAMERA_SSRC, (InetSocketAddress) viewer.getLocalAddress(), 7777);
+    relay.start(relayChannel);
+    DatagramChannel camera = bind();
+    send(camera, relayChannel, KEYFRAME, 3000, true);
+    assertNotNull(receive(viewer));
+
+    viewer.send(ByteBuffer.wrap(RTCPFeedback.pli(4242, 7777).toBytes()),
+        relayChannel.getLocalAddress());
+
+    RTCPFeedback request = receiveFeedback(camera);
+    assertNotNull(request, "The keyframe request should reach the camera");
+    assertEquals(RTCPFeedback.Type.PLI, request.getType());
+    assertEquals(CAMERA_SSRC, request.getMediaSsrc());
+    assertEquals(relay.getSsrc(), request.getSenderSsrc());
+    assertEquals(1, relay.getStreams().size(), "Feedback must not register a stream");
+    assertEquals(0, relay.getRejected());
+  }
+
+  @Test
+  void testPliToTheSubscriberIsSentToTheCamera() throws Exception {
+    DatagramChannel relayChannel = bind();
+    DatagramChannel viewer = bind();
+    RelaySubscriber subscriber = relay.attach(CAMERA_SSRC,
+        (InetSocketAddress) viewer.getLocalAddress(), 7777);
+    relay.start(relayChannel);
+    DatagramChannel camera = bind();
+    send(camera, relayChannel, KEYFRAME, 3000, true);
+    // Like an RTPSocketReceiver, the viewer answers to where the packets come from
+    viewer.configureBlocking(true);
+    SocketAddress sentFrom = viewer.receive(ByteBuffer.allocate(1500));
+    viewer.send(ByteBuffer.wrap(RTCPFeedback.fir(4242, 7777, 1).toBytes()), sentFrom);
+    Thread.sleep(50);
+
+    // Feedback is read once per frame
+    send(camera, relayChannel, P_FRAME, 6000, false);
+
+    RTCPFeedback request = receiveFeedback(camera);
+    assertNotNull(request, "The keyframe request should reach the camera");
+    assertEquals(CAMERA_SSRC, request.getMediaSsrc());
+    assertEquals(1, subscriber.getKeyframeRequests());
+    assertEquals(1, relay.getKeyframeRequests());
+  }
+
+  @Test
+  void testKeyframeRequestsAreCoalesced() {
+    relay.onPacket(direct(KEYFRAME, 3000, true), CAMERA);
+    RelayStream stream = relay.getStreams().getFirst();
+    long now = System.nanoTime();
+
+    stream.requestKeyframe();
+    assertTrue(stream.takeKeyframeRequest(now));
+    stream.requestKeyframe();
+    assertFalse(stream.takeKeyframeRequest(now + TimeUnit.MILLISECONDS.toNanos(10)),
+        "A second request right after the first should wait");
+    relay.onPacket(direct(KEYFRAME, 6000, true), CAMERA);
+    assertFalse(stream.isKeyframeRequested(), "A keyframe answers the pending request");
+  }
+
+  @Test
+  void testDetachedSubscriberReceivesNothing() throws Exception {
+    DatagramChannel viewer = bind();
+    RelaySubscriber subscriber = relay.attach(CAMERA_SSRC,
+        (InetSocketAddress) viewer.getLocalAddress());
+    relay.detach(subscriber);
+
+    relay.onPacket(direct(KEYFRAME, 3000, true), CAMERA);
+
+    assertTrue(relay.getStreams().getFirst().getSubscribers().isEmpty());
+    assertEquals(0, subscriber.getForwarded());
+  }
+
+  @Test
+  void testForwardingDoesNotAllocate() throws Exception {
+    for (int i = 0; i < 3; i++) {
+      relay.attach(CAMERA_SSRC, (InetSocketAddress) bind().getLocalAddress());
+    }
+    ByteBuffer keyframe = direct(KEYFRAME, 3000, true);
+    ByteBuffer pFrame = direct(P_FRAME, 6000, false);
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    for (int i = 0; i < 20_000; i++) {
+      relay.onPacket(keyframe.position(0), CAMERA);
+      relay.onPacket(pFrame.position(0), CAMERA);
+    }
+    long before = threads.getCurrentThreadAllocatedBytes();
+    for (int i = 0; i < 10_000; i++) {
+      relay.onPacket(keyframe.position(0), CAMERA);
+      relay.onPacket(pFrame.position(0), CAMERA);
+    }
+    long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+    assertTrue(allocated < 16 * 1024,
+        "Forwarding 60000 packets allocated " + allocated + " bytes");
+    assertFalse(relay.getStreams().getFirst().getSubscribers().getFirst().isWaitingForKeyframe());
+  }
+
+  private DatagramChannel bind() throws Exception {
+    DatagramChannel channel = DatagramChannel.open();
+    channel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    channels.add(channel);
+    return channel;
+  }
+
+  private ByteBuffer direct(byte[] frame, long timestamp, boolean keyframe) {
+    byte[] bytes = packet(frame, timestamp, keyframe).toBytes();
+    return ByteBuffer.allocateDirect(bytes.length).put(bytes).flip().asReadOnlyBuffer();
+  }
+
+  private ByteBuffer direct(byte[] frame, long timestamp, boolean keyframe, int sequenceNumber) {
+    byte[] bytes = packet(frame, timestamp, keyframe).toBytes();
+    ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+    return buffer.putShort(2, (short) sequenceNumber).asReadOnlyBuffer();
+  }
+
+  private RTPPacket packet(byte[] frame, long timestamp, boolean keyframe) {
+    FrameMarking marking = FrameMarking.builder().independent(keyframe).tl0PicIndex(1).build();
+    return serializer.serialize(frame, 1400, timestamp, (int) CAMERA_SSRC, marking).getFirst();
+  }
+
+  private void send(DatagramChannel camera, DatagramChannel relayChannel, byte[] frame,
+      long timestamp, boolean keyframe) throws Exception {
+    camera.send(ByteBuffer.wrap(packet(frame, timestamp, keyframe).toBytes()),
+        relayChannel.getLocalAddress());
+  }
+
+  private static RTCPFeedback receiveFeedback(DatagramChannel channel) throws Exception {
+    channel.configureBlocking(false);
+    ByteBuffer buffer = ByteBuffer.allocate(1500);
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+    while (System.nanoTime() < deadline) {
+      if (channel.receive(buffer) != null) {
+        return new RTCPFeedbackDeserializer().deserialize(buffer.flip()).getFirst();
+      }
+      Thread.sleep(5);
+    }
+    return null;
+  }
+
+  private static RTPPacket receive(DatagramChannel channel) throws Exception {
+    channel.configureBlocking(false);
+    ByteBuffer buffer = ByteBuffer.allocate(1500);
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+    while (System.nanoTime() < deadline) {
+      if (channel.receive(buffer) != null) {
+        byte[] bytes = new byte[buffer.flip().remaining()];
+        buffer.get(bytes);
+        return new RTPPacketDeserializer().deserialize(bytes);
+      }
+      Thread.sleep(5);
+    }
+    return null;
+  }
+}